@@ -69,7 +69,6 @@ dependencies {
     implementation(libs.slf4j.api)
 
     implementation(libs.groovy.all)
-    implementation(libs.stately.concurrent.collections)
 
     testImplementation(libs.ktor.server.test.host)
     testImplementation(libs.kotlin.test.junit)
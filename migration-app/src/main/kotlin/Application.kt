@@ -1,10 +1,10 @@
 package com.quadient.migration
 
-import com.quadient.migration.api.Migration
 import com.quadient.migration.dto.StatisticsResponse
 import com.quadient.migration.route.jobModule
 import com.quadient.migration.route.rootModule
 import com.quadient.migration.route.scriptsModule
+import com.quadient.migration.service.MigrationRegistry
 import com.quadient.migration.service.Settings
 import com.quadient.migration.service.SettingsService
 import io.ktor.serialization.jackson.*
@@ -34,6 +34,11 @@ fun Application.module() {
     val env = environment.config.getEnv()
 
     val settingsService by inject<SettingsService>()
+    val migrationRegistry by inject<MigrationRegistry>()
+
+    monitor.subscribe(ApplicationStopped) {
+        migrationRegistry.close()
+    }
 
     routing {
         route("/api") {
@@ -56,12 +61,11 @@ fun Application.module() {
                     val settings = settingsService.getSettings()
 
                     try {
-                        val migration = Migration(settings.migrationConfig, settings.projectConfig)
-
-                        val documentObjects = migration.documentObjectRepository.listAll()
-                        val (unsupported, supported) = documentObjects.partition { it.skip.skipped }
+                        val counts = migrationRegistry.withMigration(settings) {
+                            it.documentObjectRepository.countBySkipped()
+                        }
 
-                        call.respond(StatisticsResponse(unsupported.size, supported.size))
+                        call.respond(StatisticsResponse(counts.getValue(true).toInt(), counts.getValue(false).toInt()))
                     } catch (e: IllegalArgumentException) {
                         log.warn("Cannot create migration instance: ${e.message}")
                         call.respond(StatisticsResponse(null, null))
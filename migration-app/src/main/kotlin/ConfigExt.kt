@@ -15,3 +15,8 @@ fun ApplicationConfig.getScriptDir() = tryGetString("scripts-dir") ?: "modules"
 fun ApplicationConfig.getFeDir() = tryGetString("fe-dir") ?: "web"
 fun ApplicationConfig.getAppDataDir() = tryGetString("app-data-dir") ?: Path("data", "app").toString()
 fun ApplicationConfig.getModulesDataDir() = tryGetString("modules-data-dir") ?: Path("data", "modules").toString()
+fun ApplicationConfig.getJobWorkers() = tryGetString("job-workers")?.toInt() ?: 4
+fun ApplicationConfig.getJobQueueSize() = tryGetString("job-queue-size")?.toInt() ?: 100
+fun ApplicationConfig.getJobLogRetentionDays() = tryGetString("job-log-retention-days")?.toInt() ?: 30
+fun ApplicationConfig.getMigrationIdleMinutes() = tryGetString("migration-idle-minutes")?.toLong() ?: 10
+fun ApplicationConfig.getMigrationMaxIdle() = tryGetString("migration-max-idle")?.toInt() ?: 4
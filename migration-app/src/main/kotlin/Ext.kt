@@ -1,23 +1,8 @@
 package com.quadient.migration
 
-import kotlinx.coroutines.sync.Semaphore
 import org.slf4j.LoggerFactory
 import java.io.BufferedWriter
 
-suspend inline fun <T> Semaphore.withPermitOrElse(
-    onUnavailable: suspend () -> Unit, action: suspend () -> T
-): T? {
-    if (!tryAcquire()) {
-        onUnavailable()
-        return null
-    }
-    return try {
-        action()
-    } finally {
-        release()
-    }
-}
-
 fun BufferedWriter.tryWriteLine(text: String) {
     try {
         write(text)
@@ -3,6 +3,8 @@ package com.quadient.migration
 import com.quadient.migration.logging.Logging
 import com.quadient.migration.service.FileStorageService
 import com.quadient.migration.service.GroovyService
+import com.quadient.migration.service.JobLogStore
+import com.quadient.migration.service.MigrationRegistry
 import com.quadient.migration.service.ScriptDiscoveryService
 import com.quadient.migration.service.ScriptJobService
 import com.quadient.migration.service.SettingsService
@@ -14,9 +16,11 @@ import org.koin.dsl.module
 fun appModules(env: ApplicationEnvironment) = module {
     single<ApplicationConfig> { env.config }
     singleOf(::SettingsService)
+    singleOf(::MigrationRegistry)
     singleOf(::ScriptDiscoveryService)
     singleOf(::GroovyService)
     singleOf(::Logging)
+    singleOf(::JobLogStore)
     singleOf(::ScriptJobService)
     singleOf(::FileStorageService)
 }
\ No newline at end of file
@@ -4,15 +4,6 @@ import com.quadient.migration.service.Job
 import com.quadient.migration.service.JobId
 import com.quadient.migration.service.ScriptId
 
-data class JobResponse(
-    val id: JobId,
-    val moduleId: ScriptId,
-    val status: Status,
-    val lastUpdated: String,
-    val logs: List<String>?,
-    val error: String?
-)
-
 data class JobListResponse(
     val id: JobId,
     val moduleId: ScriptId,
@@ -21,22 +12,25 @@ data class JobListResponse(
     val error: String?
 )
 
-fun Job.toResponse(): JobResponse {
-    return when (this) {
-        is Job.Running -> JobResponse(id, scriptId, Status.RUNNING, lastUpdated.toString(), logs, null)
-        is Job.Success -> JobResponse(id, scriptId, Status.SUCCESS, lastUpdated.toString(), logs, null)
-        is Job.Error -> JobResponse(id, scriptId, Status.ERROR, lastUpdated.toString(), logs, error)
-    }
-}
-
 fun Job.toResponseWithoutLogs(): JobListResponse {
     return when (this) {
+        is Job.Queued -> JobListResponse(id, scriptId, Status.QUEUED, lastUpdated.toString(), null)
         is Job.Running -> JobListResponse(id, scriptId, Status.RUNNING, lastUpdated.toString(), null)
         is Job.Success -> JobListResponse(id, scriptId, Status.SUCCESS, lastUpdated.toString(), null)
         is Job.Error -> JobListResponse(id, scriptId, Status.ERROR, lastUpdated.toString(), error)
+        is Job.Cancelled -> JobListResponse(id, scriptId, Status.CANCELLED, lastUpdated.toString(), null)
     }
 }
 
+val Job.status: Status
+    get() = when (this) {
+        is Job.Queued -> Status.QUEUED
+        is Job.Running -> Status.RUNNING
+        is Job.Success -> Status.SUCCESS
+        is Job.Error -> Status.ERROR
+        is Job.Cancelled -> Status.CANCELLED
+    }
+
 enum class Status {
-    RUNNING, SUCCESS, ERROR
+    QUEUED, RUNNING, SUCCESS, ERROR, CANCELLED
 }
@@ -7,7 +7,7 @@ import org.slf4j.LoggerFactory
 const val mdcId = "runId"
 
 class Logging {
-    val appender = PerIdInMemoryAppender(mdcId)
+    val appender = PerIdCallbackAppender(mdcId)
 
     init {
         val logger = LoggerFactory.getLogger("root")
@@ -21,23 +21,15 @@ class Logging {
         logbackLogger.addAppender(appender)
     }
 
-    suspend fun <T> capture(id: String, f: suspend () -> T): ResultWithLogs<T> {
-        return try {
-            ResultWithLogs(runWithMdc(mdcId, id, f), appender.map[id] ?: emptyList())
-        } finally {
-            appender.map.remove(id)
-        }
-    }
-
-    suspend fun <T> capture(id: String, onLog: (String) -> Unit, f: suspend () -> T): T {
+    /**
+     * Runs [f] on the current thread and passes every message it logs to [onLog].
+     */
+    fun <T> capture(id: String, onLog: (String) -> Unit, f: () -> T): T {
         return try {
             appender.onLogCallbacks[id] = onLog
-            runWithMdc(mdcId, id, f)
+            withMdc(mdcId, id, f)
         } finally {
-            appender.map.remove(id)
             appender.onLogCallbacks.remove(id)
         }
     }
-}
-
-data class ResultWithLogs<T>(val result: T, val logs: List<String>)
\ No newline at end of file
+}
\ No newline at end of file
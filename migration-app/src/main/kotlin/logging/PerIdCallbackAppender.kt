@@ -2,14 +2,16 @@ package com.quadient.migration.logging
 
 import ch.qos.logback.classic.spi.ILoggingEvent
 import ch.qos.logback.core.AppenderBase
-import co.touchlab.stately.collections.ConcurrentMutableList
 import java.time.Instant
 import java.time.LocalDateTime
 import java.util.*
 import java.util.concurrent.ConcurrentHashMap
 
-class PerIdInMemoryAppender(private val id: String) : AppenderBase<ILoggingEvent>() {
-    val map = ConcurrentHashMap<String, ConcurrentMutableList<String>>()
+/**
+ * Passes formatted events carrying the MDC value [id] to the callback registered for that value. Events are not kept,
+ * the callback is responsible for storing them.
+ */
+class PerIdCallbackAppender(private val id: String) : AppenderBase<ILoggingEvent>() {
     val onLogCallbacks = ConcurrentHashMap<String, (String) -> Unit>()
 
     override fun append(event: ILoggingEvent) {
@@ -17,7 +19,6 @@ class PerIdInMemoryAppender(private val id: String) : AppenderBase<ILoggingEvent
         val log = "${event.date} ${event.level} ${event.message}"
 
         onLogCallbacks[id]?.invoke(log)
-        map.getOrPut(id) { ConcurrentMutableList() }.add(log)
     }
 
     val ILoggingEvent.date: LocalDateTime
@@ -1,7 +1,9 @@
 package com.quadient.migration.route
 
-import com.quadient.migration.dto.toResponse
+import com.quadient.migration.dto.Status
+import com.quadient.migration.dto.status
 import com.quadient.migration.dto.toResponseWithoutLogs
+import com.quadient.migration.service.Job
 import com.quadient.migration.service.JobId
 import com.quadient.migration.service.ScriptId
 import com.quadient.migration.service.ScriptJobService
@@ -32,22 +34,120 @@ fun Application.jobModule() {
                     return@get
                 }
 
-                call.respond(job.toResponse())
+                // Logs are read in pages from /logs, a log of a long running job does not fit into one response
+                call.respond(job.toResponseWithoutLogs())
             }
 
-            route("/list") {
+            route("/logs") {
                 get {
-                    val moduleId = call.request.queryParameters["moduleId"]
-                    val jobs = if (moduleId == null) {
-                        scriptJobService.list()
+                    val id = call.jobIdParameter() ?: return@get
+                    val offset = call.request.queryParameters["offset"]?.toLongOrNull() ?: 0
+                    val limit = call.request.queryParameters["limit"]?.toIntOrNull() ?: DEFAULT_LOG_LINES
+
+                    call.respond(scriptJobService.readLogs(id, offset, limit))
+                }
+
+                // Server-sent events with the log lines of a job, every event carries the offset of the following
+                // line as its id, so reconnecting clients continue from Last-Event-ID. Ends with an end event once
+                // the job finished.
+                get("/tail") {
+                    val id = call.jobIdParameter() ?: return@get
+                    if (scriptJobService.get(id) == null) {
+                        call.respondText("Job not found", status = HttpStatusCode.NotFound)
+                        return@get
+                    }
+                    val offset = call.request.queryParameters["offset"]?.toLongOrNull()
+                        ?: call.request.headers["Last-Event-ID"]?.toLongOrNull()
+                        ?: 0
+
+                    call.response.cacheControl(CacheControl.NoCache(null))
+                    call.respondTextWriter(contentType = ContentType.Text.EventStream) {
+                        var next = offset
+                        while (true) {
+                            val chunk = scriptJobService.readLogs(id, next, DEFAULT_LOG_LINES)
+                            if (chunk.lines.isNotEmpty()) {
+                                write("id: ${chunk.nextOffset}\n")
+                                chunk.lines.forEach { write("data: $it\n") }
+                                write("\n")
+                                flush()
+                            }
+                            next = chunk.nextOffset
+
+                            if (chunk.lines.isEmpty() && !scriptJobService.awaitLogs(id, next)) break
+                        }
+
+                        val status = scriptJobService.get(id)?.status
+                        write("event: end\ndata: $status\n\n")
+                        flush()
+                    }
+                }
+            }
+
+            route("/cancel") {
+                post {
+                    val reqId = call.request.queryParameters["id"]
+                    if (reqId == null) {
+                        call.respondText("Missing job id", status = HttpStatusCode.BadRequest)
+                        return@post
+                    }
+
+                    // Unfinished jobs are cancelled in any project, the active one may have changed since submission
+                    val id = JobId(UUID.fromString(reqId))
+                    if (scriptJobService.cancel(id)) {
+                        call.respondText("Job cancellation requested")
+                    } else if (scriptJobService.get(id) == null) {
+                        call.respondText("Job not found", status = HttpStatusCode.NotFound)
                     } else {
-                        val id = ScriptId(moduleId)
-                        scriptJobService.list().filter { it.scriptId == id }
+                        call.respondText("Job already finished", status = HttpStatusCode.Conflict)
+                    }
+                }
+            }
+
+            route("/list") {
+                // Newest jobs first, the cursor of the next page is returned in the job-next-cursor header
+                get {
+                    val params = call.request.queryParameters
+                    val moduleId = params["moduleId"]?.let(::ScriptId)
+                    val statuses = try {
+                        params["status"]?.split(",")?.map { Status.valueOf(it.trim().uppercase()) }?.toSet()
+                    } catch (e: IllegalArgumentException) {
+                        call.respondText("Unknown job status: ${e.message}", status = HttpStatusCode.BadRequest)
+                        return@get
+                    }
+                    val filter = { job: Job ->
+                        (moduleId == null || job.scriptId == moduleId) && (statuses == null || job.status in statuses)
+                    }
+
+                    if (params["latestPerModule"]?.toBoolean() == true) {
+                        call.respond(scriptJobService.latestPerScript(filter).map { it.toResponseWithoutLogs() })
+                        return@get
+                    }
+
+                    val limit = (params["limit"]?.toIntOrNull() ?: DEFAULT_PAGE_SIZE).coerceIn(1, MAX_PAGE_SIZE)
+                    val page = try {
+                        scriptJobService.list(params["cursor"], limit, filter)
+                    } catch (e: IllegalArgumentException) {
+                        call.respondText(e.message ?: "Invalid cursor", status = HttpStatusCode.BadRequest)
+                        return@get
                     }
 
-                    call.respond(jobs.map { it.toResponseWithoutLogs() })
+                    page.nextCursor?.let { call.response.header("job-next-cursor", it) }
+                    call.respond(page.jobs.map { it.toResponseWithoutLogs() })
                 }
             }
         }
     }
 }
+
+private const val DEFAULT_LOG_LINES = 1000
+private const val DEFAULT_PAGE_SIZE = 100
+private const val MAX_PAGE_SIZE = 1000
+
+private suspend fun ApplicationCall.jobIdParameter(): JobId? {
+    val id = request.queryParameters["id"]?.let { runCatching { UUID.fromString(it) }.getOrNull() }
+    if (id == null) {
+        respondText("Missing or invalid job id", status = HttpStatusCode.BadRequest)
+        return null
+    }
+    return JobId(id)
+}
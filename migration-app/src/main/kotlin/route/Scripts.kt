@@ -1,26 +1,22 @@
 package com.quadient.migration.route
 
-import com.quadient.migration.logging.Logging
 import com.quadient.migration.service.*
 import com.quadient.migration.tryWriteLine
-import com.quadient.migration.withPermitOrElse
 import io.ktor.http.*
 import io.ktor.server.application.*
 import io.ktor.server.request.*
 import io.ktor.server.response.*
 import io.ktor.server.routing.*
-import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.channels.BufferOverflow
+import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.future.await
 import kotlinx.serialization.Serializable
 import org.koin.ktor.ext.inject
 
 fun Application.scriptsModule() {
     val settingsService by inject<SettingsService>()
     val scriptDiscoveryService by inject<ScriptDiscoveryService>()
-    val groovyService by inject<GroovyService>()
     val scriptJobService by inject<ScriptJobService>()
-    val logging by inject<Logging>()
-
-    val semaphore = Semaphore(1)
 
     routing {
         route("/api/scripts") {
@@ -39,42 +35,41 @@ fun Application.scriptsModule() {
                         return@post
                     }
 
-                    semaphore.withPermitOrElse(onUnavailable = {
+                    // A slow client misses the oldest lines instead of the server buffering the whole log, the complete
+                    // log stays in the job log file
+                    val logs = Channel<String>(STREAMED_LOG_LINES, BufferOverflow.DROP_OLDEST)
+                    val submitted = scriptJobService.submit(script, settingsService.getSettings()) { logs.trySend(it) }
+                    if (submitted == null) {
                         call.respondText(
-                            "Another script module is currently running, please try again later.",
+                            "Too many script modules are waiting to run, please try again later.",
                             status = HttpStatusCode.TooManyRequests
                         )
-
                         return@post
-                    }) {
-
-                        val job = scriptJobService.create(script.id)
-                        call.response.header("job-id", job.id.toString())
-                        call.respondOutputStream(contentType = ContentType.Text.Plain) {
-                            val writer = this.bufferedWriter()
-
-                            val result = logging.capture(script.id.toString(), {
-                                job.appendLog(it)
-                                writer.tryWriteLine(it)
-                            }) {
-                                groovyService.dispatchScript(script, settingsService.getSettings())
-                            }
+                    }
+                    // Logs are sent before the job completes, closing the channel afterward keeps all of them
+                    submitted.completion.whenComplete { _, _ -> logs.close() }
 
-                            when (result) {
-                                is RunScriptResult.Ok -> {
-                                    writer.tryWriteLine("id=${job.id};result=success\n")
-                                    scriptJobService.store(job.success())
-                                }
-
-                                is RunScriptResult.Err -> {
-                                    val message = result.ex.message ?: "Unknown error"
-                                    writer.tryWriteLine("id=${job.id};result=error;error=$message\n")
-                                    scriptJobService.store(job.error(message))
-                                }
+                    val job = submitted.job
+                    call.response.header("job-id", job.id.toString())
+                    call.respondOutputStream(contentType = ContentType.Text.Plain) {
+                        val writer = this.bufferedWriter()
+
+                        try {
+                            for (line in logs) {
+                                writer.tryWriteLine(line)
                             }
+                        } finally {
+                            // Stops feeding the channel once the call is cancelled, e.g. when the client disconnects
+                            logs.cancel()
+                        }
 
-                            writer.close()
+                        when (val finished = submitted.completion.await()) {
+                            is Job.Error -> writer.tryWriteLine("id=${job.id};result=error;error=${finished.error}\n")
+                            is Job.Cancelled -> writer.tryWriteLine("id=${job.id};result=cancelled\n")
+                            else -> writer.tryWriteLine("id=${job.id};result=success\n")
                         }
+
+                        writer.close()
                     }
                 }
             }
@@ -90,48 +85,30 @@ fun Application.scriptsModule() {
                         return@post
                     }
 
-                    semaphore.withPermitOrElse(onUnavailable = {
+                    val submitted = scriptJobService.submit(script, settingsService.getSettings())
+                    if (submitted == null) {
                         call.respondText(
-                            "Another script module is currently running, please try again later.",
+                            "Too many script modules are waiting to run, please try again later.",
                             status = HttpStatusCode.TooManyRequests
                         )
-
                         return@post
-                    }) {
-                        val job = scriptJobService.create(script.id)
-                        val (result, logs) = logging.capture(script.id.toString()) {
-                            groovyService.dispatchScript(script, settingsService.getSettings())
+                    }
+
+                    val finished = submitted.completion.await()
+                    val logs = scriptJobService.readLogs(finished.id, project = submitted.project).lines
+                    val response = when (finished) {
+                        is Job.Error -> {
+                            log.error("Script execution failed: ${finished.error}")
+                            RunScriptResponse(finished.id.toString(), ScriptResult.ERROR, logs, finished.error)
                         }
-                        job.appendLogs(logs)
-
-                        when (result) {
-                            is RunScriptResult.Ok -> {
-                                scriptJobService.store(job.success())
-                                call.respond(
-                                    HttpStatusCode.OK, RunScriptResponse(
-                                        jobId = job.id.toString(),
-                                        result = ScriptResult.SUCCESS,
-                                        logs = logs,
-                                        error = null
-                                    )
-                                )
-                            }
 
-                            is RunScriptResult.Err -> {
-                                val message = result.ex.message ?: "Unknown error"
-                                log.error("Script execution failed", result.ex)
-                                scriptJobService.store(job.error(message))
-                                call.respond(
-                                    HttpStatusCode.OK, RunScriptResponse(
-                                        jobId = job.id.toString(),
-                                        result = ScriptResult.ERROR,
-                                        logs = logs,
-                                        error = message
-                                    )
-                                )
-                            }
+                        is Job.Cancelled -> {
+                            RunScriptResponse(finished.id.toString(), ScriptResult.CANCELLED, logs, null)
                         }
+
+                        else -> RunScriptResponse(finished.id.toString(), ScriptResult.SUCCESS, logs, null)
                     }
+                    call.respond(HttpStatusCode.OK, response)
                 }
             }
 
@@ -152,6 +129,8 @@ fun Application.scriptsModule() {
     }
 }
 
+private const val STREAMED_LOG_LINES = 10_000
+
 @Serializable
 data class RunScriptRequest(val id: ScriptId)
 
@@ -160,5 +139,5 @@ data class RunScriptResponse(val jobId: String, val result: ScriptResult, val lo
 
 @Serializable
 enum class ScriptResult {
-    SUCCESS, ERROR
+    SUCCESS, ERROR, CANCELLED
 }
\ No newline at end of file
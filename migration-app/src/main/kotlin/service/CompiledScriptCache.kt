@@ -0,0 +1,118 @@
+package com.quadient.migration.service
+
+import com.quadient.migration.log
+import groovy.lang.GroovyClassLoader
+import groovy.lang.GroovyCodeSource
+import groovy.lang.Script
+import java.io.File
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Compiled script classes keyed by script path. A script is compiled again only when the hash of its content or of any
+ * `*.groovy` helper under [classpath] changes, so an edited helper is picked up by every script using it.
+ *
+ * Every compiled generation gets its own class loader. The loader is closed and classes of scripts and helper classes
+ * from [classpath] it loaded are dropped once a newer generation replaces it and runs still using it finish, so
+ * repeated edits do not keep growing Metaspace. Compilation runs outside of the map, runs of other scripts are not
+ * blocked by it and concurrent runs of the same script wait for a single compilation.
+ */
+class CompiledScriptCache(private val parent: ClassLoader, private val classpath: String) {
+    private val generations = ConcurrentHashMap<String, Generation>()
+
+    /**
+     * Runs [block] with the compiled class of the script [file], the script is compiled first when it is new or its
+     * content or helpers changed. A replaced generation is closed once the last run using it finishes.
+     */
+    fun <T> withScriptClass(file: File, block: (Class<out Script>) -> T): T {
+        val key = file.canonicalPath
+        val hash = contentHash(file)
+
+        var replaced: Generation? = null
+        val generation = generations.compute(key) { _, current ->
+            val next = if (current != null && current.hash == hash) {
+                current
+            } else {
+                Generation(hash) { compile(file) }.also {
+                    if (current != null) {
+                        log.debug("Script '$key' or its helpers changed, compiling it again")
+                        replaced = current
+                    }
+                }
+            }
+            // Acquired while the key is locked, so the generation cannot be replaced and closed in between
+            next.acquire()
+            next
+        }!!
+        replaced?.retire()
+
+        try {
+            return block(generation.scriptClass())
+        } finally {
+            generation.release()
+        }
+    }
+
+    private fun compile(file: File): Compiled {
+        val loader = GroovyClassLoader(parent).apply { addClasspath(classpath) }
+        val codeSource = GroovyCodeSource(file, Charsets.UTF_8.name()).apply { setCachable(false) }
+
+        try {
+            @Suppress("UNCHECKED_CAST")
+            val scriptClass = loader.parseClass(codeSource) as Class<out Script>
+            return Compiled(loader, scriptClass)
+        } catch (e: Throwable) {
+            loader.close()
+            throw e
+        }
+    }
+
+    /**
+     * Hash of the script and of all helper sources under [classpath], helpers are listed in a stable order.
+     */
+    private fun contentHash(file: File): String {
+        val digest = MessageDigest.getInstance("SHA-256")
+        digest.update(file.readBytes())
+
+        val root = File(classpath)
+        root.walkTopDown().filter { it.isFile && it.extension == "groovy" }.sortedBy { it.path }.forEach {
+            digest.update(it.relativeTo(root).path.toByteArray())
+            digest.update(it.readBytes())
+        }
+        return digest.digest().joinToString("") { "%02x".format(it) }
+    }
+
+    private class Compiled(val loader: GroovyClassLoader, val scriptClass: Class<out Script>)
+
+    private class Generation(val hash: String, compile: () -> Compiled) {
+        private val compiled = lazy(compile)
+        private var runs = 0
+        private var retired = false
+
+        fun scriptClass(): Class<out Script> = compiled.value.scriptClass
+
+        @Synchronized
+        fun acquire() {
+            runs++
+        }
+
+        @Synchronized
+        fun release() {
+            runs--
+            closeIfUnused()
+        }
+
+        @Synchronized
+        fun retire() {
+            retired = true
+            closeIfUnused()
+        }
+
+        private fun closeIfUnused() {
+            if (retired && runs == 0 && compiled.isInitialized()) {
+                compiled.value.loader.clearCache()
+                compiled.value.loader.close()
+            }
+        }
+    }
+}
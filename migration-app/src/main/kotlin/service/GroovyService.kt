@@ -1,21 +1,21 @@
 package com.quadient.migration.service
 
-import com.quadient.migration.api.Migration
 import com.quadient.migration.getScriptDir
 import com.quadient.migration.log
 import groovy.lang.Binding
-import groovy.lang.GroovyClassLoader
-import groovy.lang.GroovyShell
 import io.ktor.server.config.ApplicationConfig
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
+import org.codehaus.groovy.runtime.InvokerHelper
 import java.io.File
 import java.io.Writer
 
-class GroovyService(val fileStorageService: FileStorageService, val config: ApplicationConfig) {
-    private val classLoader = GroovyClassLoader(this.javaClass.classLoader).apply {
-        addClasspath(config.getScriptDir())
-    }
+class GroovyService(
+    val fileStorageService: FileStorageService,
+    val migrationRegistry: MigrationRegistry,
+    val config: ApplicationConfig,
+) {
+    private val scriptCache = CompiledScriptCache(this.javaClass.classLoader, config.getScriptDir())
 
     suspend fun dispatchScript(script: ScriptMetadata, settings: Settings) = withContext(Dispatchers.IO) {
         runScript(script, settings)
@@ -24,17 +24,17 @@ class GroovyService(val fileStorageService: FileStorageService, val config: Appl
     fun runScript(script: ScriptMetadata, settings: Settings): RunScriptResult {
         return try {
             log.debug("Running script: ${script.path}")
-            val migration = Migration(settings.migrationConfig, settings.projectConfig)
-
-            val binding = Binding()
-            binding.setVariable("migration", migration)
-            binding.setVariable("out", LogWriter())
-            binding.setVariable("DATA_DIR", fileStorageService.getStoragePath(StorageType.Modules).toString())
-
-            val shell = GroovyShell(classLoader, binding)
-            val path = File(script.path)
+            // The instance outlives the run, data may have been changed by other processes in the meantime
+            migrationRegistry.withMigration(settings, refreshCaches = true) { migration ->
+                val binding = Binding()
+                binding.setVariable("migration", migration)
+                binding.setVariable("out", LogWriter())
+                binding.setVariable("DATA_DIR", fileStorageService.getStoragePath(StorageType.Modules).toString())
 
-            shell.evaluate(path)
+                scriptCache.withScriptClass(File(script.path)) { scriptClass ->
+                    InvokerHelper.createScript(scriptClass, binding).run()
+                }
+            }
 
             RunScriptResult.Ok()
         } catch (ex: Exception) {
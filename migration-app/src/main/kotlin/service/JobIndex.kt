@@ -0,0 +1,188 @@
+package com.quadient.migration.service
+
+import com.quadient.migration.log
+import tools.jackson.databind.json.JsonMapper
+import java.io.BufferedWriter
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.time.Instant
+import java.time.format.DateTimeParseException
+import java.util.TreeMap
+import java.util.UUID
+import kotlin.io.encoding.Base64
+import kotlin.io.path.exists
+
+/**
+ * Metadata of all jobs of a project, kept in memory and persisted in the append-only file [path]. Every change appends
+ * one line with the new state of a job, the file is compacted when it is loaded and holds more outdated lines than
+ * current ones.
+ *
+ * Jobs are listed newest first by the time they were created, pages continue after the cursor of the last job of the
+ * previous page, so jobs created in the meantime do not shift the pages.
+ */
+class JobIndex private constructor(private val path: Path, private val mapper: JsonMapper) {
+    private val byId = HashMap<JobId, Key>()
+    private val ordered = TreeMap<Key, Job>()
+    private var writer: BufferedWriter? = null
+
+    /**
+     * Position of a job in the index, newest first.
+     */
+    private data class Key(val created: Instant, val id: String) : Comparable<Key> {
+        override fun compareTo(other: Key): Int {
+            val byCreated = other.created.compareTo(created)
+            return if (byCreated != 0) byCreated else id.compareTo(other.id)
+        }
+    }
+
+    internal data class IndexLine(val job: Job? = null, val created: Instant? = null, val removed: String? = null)
+
+    /**
+     * A page of jobs, [nextCursor] is null on the last page.
+     */
+    data class Page(val jobs: List<Job>, val nextCursor: String?)
+
+    @Synchronized
+    fun put(job: Job) {
+        val created = byId[job.id]?.created ?: job.lastUpdated
+        replace(job, created)
+        append(IndexLine(job, created))
+    }
+
+    @Synchronized
+    fun remove(id: JobId) {
+        byId.remove(id)?.let { ordered.remove(it) }
+        append(IndexLine(removed = id.toString()))
+    }
+
+    @Synchronized
+    fun get(id: JobId): Job? = byId[id]?.let { ordered[it] }
+
+    @Synchronized
+    fun unfinished(): List<Job> = ordered.values.filter { it is Job.Queued || it is Job.Running }
+
+    /**
+     * At most [limit] jobs matching [filter] created before the job identified by [cursor].
+     */
+    @Synchronized
+    fun page(cursor: String?, limit: Int, filter: (Job) -> Boolean = { true }): Page {
+        val after = cursor?.let(::decodeCursor)
+        val candidates = if (after != null) ordered.tailMap(after, false) else ordered
+
+        val keys = mutableListOf<Key>()
+        var hasMore = false
+        for ((key, job) in candidates) {
+            if (!filter(job)) continue
+            if (keys.size == limit) {
+                hasMore = true
+                break
+            }
+            keys.add(key)
+        }
+
+        return Page(keys.map { ordered.getValue(it) }, if (hasMore) encodeCursor(keys.last()) else null)
+    }
+
+    /**
+     * The newest job of every script, optionally limited to jobs matching [filter].
+     */
+    @Synchronized
+    fun latestPerScript(filter: (Job) -> Boolean = { true }): List<Job> {
+        return ordered.values.asSequence().filter(filter).distinctBy { it.scriptId }.toList()
+    }
+
+    private fun replace(job: Job, created: Instant) {
+        val key = Key(created, job.id.toString())
+        byId.put(job.id, key)?.let { ordered.remove(it) }
+        ordered[key] = job
+    }
+
+    private fun append(line: IndexLine) {
+        val out = writer ?: Files.newBufferedWriter(
+            path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND
+        ).also { writer = it }
+        out.write(mapper.writeValueAsString(line))
+        out.newLine()
+        out.flush()
+    }
+
+    private fun load() {
+        var lines = 0
+        Files.newBufferedReader(path).useLines { input ->
+            for (text in input) {
+                if (text.isBlank()) continue
+                lines++
+                try {
+                    val line = mapper.readValue(text, IndexLine::class.java)
+                    when {
+                        line.removed != null -> {
+                            byId.remove(JobId(UUID.fromString(line.removed)))?.let { ordered.remove(it) }
+                        }
+
+                        line.job != null -> replace(line.job, line.created ?: line.job.lastUpdated)
+                    }
+                } catch (ex: Exception) {
+                    // A line cut off by a crash while it was written
+                    log.warn("Skipping unreadable line of job index $path: ${ex.message}")
+                }
+            }
+        }
+
+        if (lines > 2 * byId.size) {
+            compact()
+        }
+    }
+
+    private fun compact() {
+        val tmp = path.resolveSibling("${path.fileName}.tmp")
+        Files.newBufferedWriter(tmp).use { out ->
+            for ((key, job) in ordered.descendingMap()) {
+                out.write(mapper.writeValueAsString(IndexLine(job, key.created)))
+                out.newLine()
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        log.debug("Compacted job index $path to ${byId.size} jobs")
+    }
+
+    private fun encodeCursor(key: Key): String {
+        return Base64.UrlSafe.encode("${key.created}|${key.id}".toByteArray())
+    }
+
+    private fun decodeCursor(cursor: String): Key {
+        val decoded = try {
+            Base64.UrlSafe.decode(cursor).decodeToString()
+        } catch (ex: IllegalArgumentException) {
+            throw IllegalArgumentException("Invalid job list cursor '$cursor'", ex)
+        }
+        val id = decoded.substringAfter('|', "")
+        require(id.isNotEmpty()) { "Invalid job list cursor '$cursor'" }
+        val created = try {
+            Instant.parse(decoded.substringBefore('|'))
+        } catch (ex: DateTimeParseException) {
+            throw IllegalArgumentException("Invalid job list cursor '$cursor'", ex)
+        }
+
+        return Key(created, id)
+    }
+
+    companion object {
+        /**
+         * Loads the index stored in [path]. When it does not exist yet, it is created from [initialJobs] paired with
+         * the time they were created.
+         */
+        fun open(path: Path, mapper: JsonMapper, initialJobs: () -> List<Pair<Job, Instant>>): JobIndex {
+            val index = JobIndex(path, mapper)
+            if (path.exists()) {
+                index.load()
+            } else {
+                Files.createDirectories(path.parent)
+                initialJobs().forEach { (job, created) -> index.replace(job, created) }
+                index.compact()
+            }
+            return index
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.quadient.migration.service
+
+import com.quadient.migration.getJobLogRetentionDays
+import com.quadient.migration.log
+import io.ktor.server.config.ApplicationConfig
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.first
+import java.io.BufferedOutputStream
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.OutputStream
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.time.Instant
+import java.time.temporal.ChronoUnit
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.io.path.exists
+import kotlin.io.path.fileSize
+import kotlin.io.path.getLastModifiedTime
+import kotlin.io.path.isDirectory
+import kotlin.io.path.listDirectoryEntries
+import kotlin.io.path.name
+import kotlin.io.path.nameWithoutExtension
+
+private const val LOG_DIR = "logs"
+private const val RING_SIZE = 1000
+
+/**
+ * Log lines of script jobs. Every job appends to its own file `<project>/logs/<job id>.log` in the app data directory
+ * and readers address the log by byte offsets, so a reader continues exactly where its previous read ended. The latest
+ * lines of running jobs are also kept in a small ring buffer, readers following a running job are served from memory.
+ *
+ * Log files older than `job-log-retention-days` (default 30) are deleted once a day.
+ */
+class JobLogStore(private val fileStorageService: FileStorageService, config: ApplicationConfig) : Closeable {
+    private val retentionDays = config.getJobLogRetentionDays()
+    private val open = ConcurrentHashMap<JobId, JobLog>()
+    private val queued = ConcurrentHashMap<JobId, CompletableDeferred<Unit>>()
+    private val retention = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "job-log-retention").apply { isDaemon = true }
+    }
+
+    init {
+        retention.scheduleWithFixedDelay(::purge, 0, 1, TimeUnit.DAYS)
+    }
+
+    /**
+     * Registers a queued job, readers following its log in [awaitAppend] wait until the job is started by [open] or
+     * finishes without starting by [close].
+     */
+    fun queue(id: JobId) {
+        queued[id] = CompletableDeferred()
+    }
+
+    /**
+     * Opens the log of a job for appending, lines appended before the log is closed can be followed by [awaitAppend].
+     */
+    fun open(project: String, id: JobId): JobLog {
+        val log = JobLog(path(project, id))
+        open[id] = log
+        queued.remove(id)?.complete(Unit)
+        return log
+    }
+
+    /**
+     * Closes the log of a finished job, readers waiting in [awaitAppend] are released. Jobs that finished while queued
+     * have no open log, only their readers are released.
+     */
+    fun close(id: JobId) {
+        open.remove(id)?.close()
+        queued.remove(id)?.complete(Unit)
+    }
+
+    /**
+     * Reads at most [limit] lines starting at byte [offset] of the log. An [offset] inside a line continues with the
+     * following line.
+     */
+    fun read(project: String, id: JobId, offset: Long = 0, limit: Int = Int.MAX_VALUE): LogChunk {
+        require(offset >= 0) { "Log offset must not be negative, got $offset" }
+
+        val log = open[id]
+        log?.readRecent(offset, limit)?.let { return it }
+        return readFile(path(project, id), offset, limit, closed = log == null)
+    }
+
+    /**
+     * Suspends until the log grows beyond [offset], queued jobs are awaited to start first. Returns false when the job
+     * finished and nothing follows [offset].
+     */
+    suspend fun awaitAppend(project: String, id: JobId, offset: Long): Boolean {
+        queued[id]?.await()
+        val log = open[id] ?: return size(project, id) > offset
+        return log.progress.first { it.size > offset || it.closed }.size > offset
+    }
+
+    /**
+     * Writes [lines] of a job stored before logs had their own files.
+     */
+    fun importLegacy(project: String, id: JobId, lines: List<String>) {
+        val path = path(project, id)
+        if (path.exists()) return
+
+        Files.createDirectories(path.parent)
+        Files.newBufferedWriter(path).use { writer ->
+            lines.forEach { writer.write(it); writer.write("\n") }
+        }
+    }
+
+    fun purge() {
+        try {
+            val cutoff = Instant.now().minus(retentionDays.toLong(), ChronoUnit.DAYS)
+            val openFiles = open.values.map { it.path }.toSet()
+            val projects = fileStorageService.list(StorageType.App).filter { it.isDirectory() }
+            for (project in projects) {
+                val dir = project.resolve(LOG_DIR)
+                if (!dir.isDirectory()) continue
+
+                dir.listDirectoryEntries("*.log")
+                    .filter { it !in openFiles && it.getLastModifiedTime().toInstant() < cutoff }
+                    .forEach {
+                        Files.deleteIfExists(it)
+                        log.debug("Deleted job log ${project.name}/${it.nameWithoutExtension} older than $retentionDays days")
+                    }
+            }
+        } catch (ex: Exception) {
+            log.warn("Failed to purge old job logs", ex)
+        }
+    }
+
+    override fun close() {
+        retention.shutdownNow()
+        open.values.forEach { it.close() }
+        open.clear()
+        queued.values.forEach { it.complete(Unit) }
+        queued.clear()
+    }
+
+    private fun size(project: String, id: JobId): Long {
+        val path = path(project, id)
+        return if (path.exists()) path.fileSize() else 0
+    }
+
+    private fun path(project: String, id: JobId): Path {
+        return fileStorageService.getStoragePath(StorageType.App, project, LOG_DIR, "$id.log")
+    }
+}
+
+/**
+ * Lines read from a job log, [nextOffset] is the byte offset to continue reading from.
+ */
+data class LogChunk(val lines: List<String>, val nextOffset: Long)
+
+/**
+ * Log of a running job. Lines are appended to the file and to a ring buffer of the latest [RING_SIZE] lines.
+ */
+class JobLog internal constructor(internal val path: Path) : Closeable {
+    private val out: OutputStream
+    private val ring = arrayOfNulls<RingLine>(RING_SIZE)
+    private var ringStart = 0
+    private var ringCount = 0
+    private var size: Long
+
+    data class Progress(val size: Long, val closed: Boolean)
+
+    internal val progress: MutableStateFlow<Progress>
+
+    private class RingLine(val offset: Long, val text: String, val length: Int)
+
+    init {
+        Files.createDirectories(path.parent)
+        out = BufferedOutputStream(
+            Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+        )
+        size = path.fileSize()
+        progress = MutableStateFlow(Progress(size, false))
+    }
+
+    /**
+     * Appends [message], messages spanning several lines are split into lines.
+     */
+    fun append(message: String) {
+        synchronized(this) {
+            for (line in message.lines()) {
+                val bytes = (line + "\n").toByteArray()
+                out.write(bytes)
+
+                val index = (ringStart + ringCount) % RING_SIZE
+                ring[index] = RingLine(size, line, bytes.size)
+                if (ringCount < RING_SIZE) ringCount++ else ringStart = (ringStart + 1) % RING_SIZE
+                size += bytes.size
+            }
+            progress.value = Progress(size, false)
+        }
+    }
+
+    /**
+     * Lines from [offset] when they are still in the ring buffer, null when the file has to be read. Flushes the file
+     * in that case, so it contains everything appended so far.
+     */
+    internal fun readRecent(offset: Long, limit: Int): LogChunk? {
+        synchronized(this) {
+            if (offset >= size) return LogChunk(emptyList(), offset)
+
+            val oldest = if (ringCount == 0) size else ring[ringStart]!!.offset
+            if (offset < oldest) {
+                out.flush()
+                return null
+            }
+
+            val lines = mutableListOf<String>()
+            var next = offset
+            for (i in 0 until ringCount) {
+                val line = ring[(ringStart + i) % RING_SIZE]!!
+                if (line.offset < offset) {
+                    // Offsets not at a line start continue with the following line
+                    next = maxOf(next, line.offset + line.length)
+                    continue
+                }
+                if (lines.size == limit) break
+                lines.add(line.text)
+                next = line.offset + line.length
+            }
+            return LogChunk(lines, next)
+        }
+    }
+
+    override fun close() {
+        synchronized(this) {
+            out.close()
+            progress.value = Progress(size, true)
+        }
+    }
+}
+
+/**
+ * Reads lines of the log file at [path]. The last line of a [closed] log is returned even without a trailing newline,
+ * a crash or a partially flushed buffer can leave it unterminated and no further write completes it.
+ */
+private fun readFile(path: Path, offset: Long, limit: Int, closed: Boolean): LogChunk {
+    if (!path.exists() || offset >= path.fileSize()) return LogChunk(emptyList(), offset)
+
+    FileChannel.open(path, StandardOpenOption.READ).use { channel ->
+        // Offsets not at a line start continue with the following line, like in the ring buffer of a running job
+        val atLineStart = offset == 0L || ByteBuffer.allocate(1).also { channel.read(it, offset - 1) }.get(0) == '\n'.code.toByte()
+        val input = Channels.newInputStream(channel.position(offset)).buffered()
+        val lines = mutableListOf<String>()
+        val line = ByteArrayOutputStream()
+        var next = offset
+        var read = 0L
+
+        if (!atLineStart) {
+            while (true) {
+                val b = input.read()
+                if (b == -1) return LogChunk(emptyList(), if (closed) offset + read else offset)
+                read++
+                if (b == '\n'.code) break
+            }
+            next = offset + read
+        }
+
+        while (lines.size < limit) {
+            val b = input.read()
+            if (b == -1) break
+            read++
+            if (b == '\n'.code) {
+                lines.add(line.toString(Charsets.UTF_8))
+                line.reset()
+                next = offset + read
+            } else {
+                line.write(b)
+            }
+        }
+
+        // A partially written last line of a running job is returned by the next read once it is complete
+        if (closed && lines.size < limit && line.size() > 0) {
+            lines.add(line.toString(Charsets.UTF_8))
+            next = offset + read
+        }
+        return LogChunk(lines, next)
+    }
+}
@@ -0,0 +1,67 @@
+package com.quadient.migration.service
+
+import com.quadient.migration.log
+import tools.jackson.databind.json.JsonMapper
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Instant
+import java.util.UUID
+import kotlin.io.path.isDirectory
+import kotlin.io.path.isRegularFile
+import kotlin.io.path.listDirectoryEntries
+import kotlin.io.path.nameWithoutExtension
+
+/**
+ * Jobs stored as one JSON file `<job id>.json` per job in [dir] by earlier versions. They are read once to create the
+ * [JobIndex] of a project and their files are deleted once the index holds them. Logs contained in the files are passed
+ * to [importLogs].
+ */
+internal class LegacyJobs(
+    private val dir: Path,
+    private val mapper: JsonMapper,
+    private val importLogs: (JobId, List<String>) -> Unit,
+) {
+    fun read(): List<Pair<Job, Instant>> {
+        return files().mapNotNull { file ->
+            try {
+                val node = Files.newBufferedReader(file).use { mapper.readTree(it) }
+                val job = mapper.treeToValue(node, Job::class.java)
+
+                val logs = node.get("logs")
+                if (logs != null && logs.isArray) {
+                    importLogs(job.id, logs.map { it.asString() })
+                    log.debug("Moved logs of job ${job.id} to a log file")
+                }
+                job to job.lastUpdated
+            } catch (ex: Exception) {
+                log.warn("Skipping unreadable job file $file: ${ex.message}")
+                null
+            }
+        }
+    }
+
+    /**
+     * Deletes the files of jobs held by [index], files of jobs that could not be read are kept.
+     */
+    fun removeImported(index: JobIndex) {
+        for (file in files()) {
+            val id = try {
+                JobId(UUID.fromString(file.nameWithoutExtension))
+            } catch (_: IllegalArgumentException) {
+                continue
+            }
+            if (index.get(id) != null) {
+                Files.deleteIfExists(file)
+            }
+        }
+
+        if (dir.isDirectory() && dir.listDirectoryEntries().isEmpty()) {
+            Files.delete(dir)
+            log.debug("Removed job files of earlier versions from $dir")
+        }
+    }
+
+    private fun files(): List<Path> {
+        return if (dir.isDirectory()) dir.listDirectoryEntries("*.json").filter { it.isRegularFile() } else emptyList()
+    }
+}
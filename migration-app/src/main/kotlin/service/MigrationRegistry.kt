@@ -0,0 +1,118 @@
+package com.quadient.migration.service
+
+import com.quadient.migration.api.MigConfig
+import com.quadient.migration.api.Migration
+import com.quadient.migration.api.ProjectConfig
+import com.quadient.migration.getMigrationIdleMinutes
+import com.quadient.migration.getMigrationMaxIdle
+import com.quadient.migration.log
+import io.ktor.server.config.ApplicationConfig
+import java.io.Closeable
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Keeps warm [Migration] instances, one per migration and project config, so requests and script runs reuse their
+ * connection pools, caches and checked database schema instead of building a new instance every time. Switching
+ * between projects keeps the instance of each of them.
+ *
+ * An instance not used by any caller for `migration-idle-minutes` (default 10) is closed. When more than
+ * `migration-max-idle` (default 4) instances are unused, the least recently used ones are closed right away. Instances
+ * in use are never closed.
+ */
+class MigrationRegistry(config: ApplicationConfig) : Closeable {
+    private val idleTimeoutMillis = TimeUnit.MINUTES.toMillis(config.getMigrationIdleMinutes())
+    private val maxIdle = config.getMigrationMaxIdle()
+    private val entries = HashMap<Key, Entry>()
+    private var closed = false
+    private val eviction = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "migration-eviction").apply { isDaemon = true }
+    }
+
+    init {
+        eviction.scheduleWithFixedDelay(::evictExpired, 1, 1, TimeUnit.MINUTES)
+    }
+
+    /**
+     * Runs [block] with the warm instance for [settings], creating it when missing. With [refreshCaches] caches of the
+     * instance are dropped first, unless other callers are using it at the same time.
+     */
+    fun <T> withMigration(settings: Settings, refreshCaches: Boolean = false, block: (Migration) -> T): T {
+        val entry = acquire(settings, refreshCaches)
+        try {
+            return block(entry.migration)
+        } finally {
+            release(entry)
+        }
+    }
+
+    @Synchronized
+    private fun acquire(settings: Settings, refreshCaches: Boolean): Entry {
+        check(!closed) { "Migration registry is closed" }
+
+        val key = Key(settings.migrationConfig, settings.projectConfig)
+        val existing = entries[key]
+        if (existing != null) {
+            // Dropping caches while other jobs run would throw away what they loaded
+            if (refreshCaches && existing.leases == 0) {
+                existing.migration.invalidateCaches()
+            }
+            existing.leases++
+            return existing
+        }
+
+        val created = Entry(key, Migration(key.migrationConfig, key.projectConfig))
+        entries[key] = created
+        created.leases++
+        return created
+    }
+
+    @Synchronized
+    private fun release(entry: Entry) {
+        entry.leases--
+        entry.lastUsed = System.currentTimeMillis()
+        if (entry.leases == 0) {
+            evictOverLimit()
+        }
+    }
+
+    @Synchronized
+    private fun evictExpired() {
+        val cutoff = System.currentTimeMillis() - idleTimeoutMillis
+        entries.values.filter { it.leases == 0 && it.lastUsed < cutoff }.forEach {
+            evict(it, "unused for ${TimeUnit.MILLISECONDS.toMinutes(idleTimeoutMillis)} minutes")
+        }
+    }
+
+    private fun evictOverLimit() {
+        val idle = entries.values.filter { it.leases == 0 }.sortedBy { it.lastUsed }
+        idle.dropLast(maxIdle).forEach { evict(it, "more than $maxIdle instances are unused") }
+    }
+
+    private fun evict(entry: Entry, reason: String) {
+        log.info("Closing migration instance of project '${entry.key.projectConfig.name}', $reason")
+        entries.remove(entry.key)
+        try {
+            entry.migration.close()
+        } catch (e: Exception) {
+            log.warn("Failed to close migration instance of project '${entry.key.projectConfig.name}'", e)
+        }
+    }
+
+    @Synchronized
+    override fun close() {
+        if (closed) return
+        closed = true
+
+        eviction.shutdownNow()
+        entries.values.forEach { it.migration.close() }
+        entries.clear()
+    }
+
+    private data class Key(val migrationConfig: MigConfig, val projectConfig: ProjectConfig)
+
+    private class Entry(val key: Key, val migration: Migration) {
+        var leases = 0
+        var lastUsed = System.currentTimeMillis()
+    }
+}
@@ -98,7 +98,8 @@ data class ScriptMetadata(
     val pkg: String,
     val needsStdin: Boolean,
     val target: Target,
-    val order: Int?
+    val order: Int?,
+    val exclusive: Boolean = false,
 ) {
     companion object {
         fun fromString(input: List<String>, filename: String, path: String, packageName: String): ScriptMetadata {
@@ -124,6 +125,7 @@ data class ScriptMetadata(
                 description = map["description"],
                 needsStdin = map["stdin"]?.toBoolean() ?: false,
                 target = map["target"]?.let { target -> Target.fromString(target.trim()) } ?: Target.All,
+                exclusive = map["exclusive"]?.toBoolean() ?: false,
                 pkg = packageName,
             )
         }
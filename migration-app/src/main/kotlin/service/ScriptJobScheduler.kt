@@ -0,0 +1,111 @@
+package com.quadient.migration.service
+
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Runs script jobs on a pool of [workers] threads. Jobs wait in a FIFO queue of at most [queueSize] entries and start
+ * as soon as a worker is free and the exclusivity rules of their project allow it:
+ * - an exclusive job runs alone, no other job of the same project runs next to it
+ * - other jobs of a project run in parallel as long as no exclusive job of the project is running
+ *
+ * A job that cannot start yet holds back later jobs of the same project, so exclusive jobs are not starved by a stream
+ * of shorter ones. Jobs of other projects may overtake it.
+ */
+class ScriptJobScheduler(private val workers: Int, private val queueSize: Int) {
+    private val threadCounter = AtomicInteger()
+    private val executor: ExecutorService = Executors.newFixedThreadPool(workers) { runnable ->
+        Thread(runnable, "script-job-${threadCounter.incrementAndGet()}").apply { isDaemon = true }
+    }
+
+    private val queued = ArrayDeque<Task>()
+    private val running = mutableMapOf<JobId, Task>()
+
+    init {
+        require(workers > 0) { "Number of job workers must be greater than 0, got $workers" }
+    }
+
+    class Task(val jobId: JobId, val project: String, val exclusive: Boolean, val run: (Task) -> Unit) {
+        @Volatile
+        var cancelled = false
+            internal set
+        internal var thread: Thread? = null
+    }
+
+    enum class CancelResult { Dequeued, Interrupted, NotFound }
+
+    /**
+     * Queues [task], returns false when the queue is full.
+     */
+    @Synchronized
+    fun submit(task: Task): Boolean {
+        if (queued.size >= queueSize) return false
+
+        queued.addLast(task)
+        dispatch()
+        return true
+    }
+
+    /**
+     * Removes a queued job from the queue or interrupts a running one. Interrupted scripts stop at the next blocking
+     * call that honours interruption. [Task.cancelled] tells the job it was cancelled, also when it was cancelled
+     * right before it started.
+     */
+    @Synchronized
+    fun cancel(jobId: JobId): CancelResult {
+        queued.firstOrNull { it.jobId == jobId }?.let {
+            queued.remove(it)
+            it.cancelled = true
+            dispatch()
+            return CancelResult.Dequeued
+        }
+
+        val task = running[jobId] ?: return CancelResult.NotFound
+        task.cancelled = true
+        task.thread?.interrupt()
+        return CancelResult.Interrupted
+    }
+
+    private fun dispatch() {
+        val heldBack = mutableSetOf<String>()
+        val iterator = queued.iterator()
+        while (running.size < workers && iterator.hasNext()) {
+            val task = iterator.next()
+            if (task.project in heldBack || !canStart(task)) {
+                heldBack.add(task.project)
+                continue
+            }
+
+            iterator.remove()
+            running[task.jobId] = task
+            executor.execute {
+                started(task)
+                try {
+                    task.run(task)
+                } finally {
+                    finished(task)
+                }
+            }
+        }
+    }
+
+    private fun canStart(task: Task): Boolean {
+        val sameProject = running.values.filter { it.project == task.project }
+        return if (task.exclusive) sameProject.isEmpty() else sameProject.none { it.exclusive }
+    }
+
+    @Synchronized
+    private fun started(task: Task) {
+        task.thread = Thread.currentThread()
+    }
+
+    @Synchronized
+    private fun finished(task: Task) {
+        task.thread = null
+        // A late interrupt must not leak into the next job of this worker
+        Thread.interrupted()
+        running.remove(task.jobId)
+        dispatch()
+    }
+}
@@ -1,141 +1,297 @@
 package com.quadient.migration.service
 
 import com.fasterxml.jackson.annotation.JsonCreator
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties
 import com.fasterxml.jackson.annotation.JsonSubTypes
 import com.fasterxml.jackson.annotation.JsonTypeInfo
 import com.fasterxml.jackson.annotation.JsonValue
+import com.quadient.migration.getJobQueueSize
+import com.quadient.migration.getJobWorkers
 import com.quadient.migration.log
+import com.quadient.migration.logging.Logging
+import io.ktor.server.config.ApplicationConfig
 import java.time.Instant
 import java.util.*
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ConcurrentHashMap
 import kotlin.concurrent.thread
-import kotlin.io.path.isDirectory
-import kotlin.io.path.isRegularFile
-import kotlin.io.path.name
 
 typealias Jobs = ConcurrentHashMap<String, ConcurrentHashMap<JobId, Job>>
 
-class ScriptJobService(val settings: SettingsService, val fileStorageService: FileStorageService) {
-    private val jobs: Jobs = readAllJobs()
-    private val projectJobs: ConcurrentHashMap<JobId, Job>
-        get() = jobs.getOrPut(settings.activeProject) { ConcurrentHashMap() }
+private const val JOB_INDEX_FILE = "jobs.jsonl"
 
-    private val runningJobs: Jobs = ConcurrentHashMap()
-    private val runningProjectJobs: ConcurrentHashMap<JobId, Job>
-        get() = runningJobs.getOrPut(settings.activeProject) { ConcurrentHashMap() }
+class ScriptJobService(
+    val settings: SettingsService,
+    val fileStorageService: FileStorageService,
+    val groovyService: GroovyService,
+    val jobLogStore: JobLogStore,
+    val logging: Logging,
+    config: ApplicationConfig,
+) {
+    // Loaded on first use of a project
+    private val indexes = ConcurrentHashMap<String, JobIndex>()
+    private val projectIndex: JobIndex
+        get() = index(settings.activeProject)
+
+    private val unfinishedJobs: Jobs = ConcurrentHashMap()
+    private val scheduler = ScriptJobScheduler(config.getJobWorkers(), config.getJobQueueSize())
+    private val completions = ConcurrentHashMap<JobId, CompletableFuture<Job>>()
 
     init {
         Runtime.getRuntime().addShutdownHook(thread(start = false) {
-            runningJobs.forEach { (project, jobsMap) ->
-                jobsMap.values.filterIsInstance<Job.Running>().forEach { running ->
-                    val errorJob = running.error("Job failed because server was shut down")
-                    log.warn("Server is shutting down, marking job ${running.id} as error")
-                    fileStorageService.writeAppJson(errorJob, project, "jobs", "${errorJob.id}.json")
+            unfinishedJobs.forEach { (project, jobsMap) ->
+                jobsMap.values.forEach { unfinished ->
+                    val errorJob = unfinished.error("Job failed because server was shut down")
+                    log.warn("Server is shutting down, marking job ${unfinished.id} as error")
+                    indexes[project]?.put(errorJob)
                 }
             }
         })
     }
 
-    fun create(id: ScriptId): Job.Running {
-        return Job.Running(JobId(UUID.randomUUID()), id, mutableListOf(), Instant.now()).also { store(it) }
+    /**
+     * Queues a run of [script] with [settings]. Messages logged by the script are passed to [onLog]. Returns null when
+     * the job queue is full.
+     */
+    fun submit(script: ScriptMetadata, settings: Settings, onLog: (String) -> Unit = {}): SubmittedJob? {
+        val project = settings.projectConfig.name
+        val job = Job.Queued(JobId(UUID.randomUUID()), script.id, Instant.now())
+        val completion = CompletableFuture<Job>()
+
+        val task = ScriptJobScheduler.Task(job.id, project, script.exclusive) { task ->
+            val finished = run(job, script, settings, task, onLog)
+            completions.remove(job.id)
+            completion.complete(finished)
+        }
+
+        jobLogStore.queue(job.id)
+        store(job, project)
+        completions[job.id] = completion
+        if (!scheduler.submit(task)) {
+            completions.remove(job.id)
+            remove(job, project)
+            jobLogStore.close(job.id)
+            return null
+        }
+
+        return SubmittedJob(job, project, completion)
+    }
+
+    /**
+     * Cancels a queued or running job of any project, it is looked up among unfinished jobs of all projects. Returns
+     * false when the job does not exist or already finished.
+     */
+    fun cancel(id: JobId): Boolean {
+        val (project, job) = findUnfinished(id) ?: return false
+
+        return when (scheduler.cancel(id)) {
+            ScriptJobScheduler.CancelResult.Dequeued -> {
+                // A dequeued job never started, so it is still queued
+                val cancelled = (job as Job.Queued).cancelled()
+                store(cancelled, project)
+                jobLogStore.close(id)
+                completions.remove(id)?.complete(cancelled)
+                true
+            }
+
+            ScriptJobScheduler.CancelResult.Interrupted -> true
+            ScriptJobScheduler.CancelResult.NotFound -> false
+        }
+    }
+
+    private fun findUnfinished(id: JobId): Pair<String, Job>? {
+        for ((project, jobs) in unfinishedJobs) {
+            jobs[id]?.let { return project to it }
+        }
+        return null
+    }
+
+    private fun run(
+        queued: Job.Queued,
+        script: ScriptMetadata,
+        settings: Settings,
+        task: ScriptJobScheduler.Task,
+        onLog: (String) -> Unit
+    ): Job {
+        val project = settings.projectConfig.name
+        if (task.cancelled) {
+            val cancelled = queued.cancelled()
+            store(cancelled, project)
+            jobLogStore.close(queued.id)
+            return cancelled
+        }
+
+        val running = queued.start()
+        store(running, project)
+        val jobLog = jobLogStore.open(project, running.id)
+
+        val finished = try {
+            val result = logging.capture(running.id.toString(), {
+                jobLog.append(it)
+                onLog(it)
+            }) {
+                groovyService.runScript(script, settings)
+            }
+
+            if (task.cancelled) {
+                running.cancelled()
+            } else when (result) {
+                is RunScriptResult.Ok -> running.success()
+                is RunScriptResult.Err -> running.error(result.ex.message ?: "Unknown error")
+            }
+        } catch (ex: Throwable) {
+            log.error("Job ${running.id} failed", ex)
+            if (task.cancelled) running.cancelled() else running.error(ex.message ?: "Unknown error")
+        } finally {
+            jobLogStore.close(running.id)
+        }
+
+        store(finished, project)
+        return finished
     }
 
-    fun store(job: Job) {
-        projectJobs[job.id] = job
+    private fun store(job: Job, project: String) {
+        index(project).put(job)
+        val unfinished = unfinishedJobs.getOrPut(project) { ConcurrentHashMap() }
         when (job) {
-            is Job.Running -> runningProjectJobs[job.id] = job
-            else -> runningProjectJobs.remove(job.id)
+            is Job.Queued, is Job.Running -> unfinished[job.id] = job
+            else -> unfinished.remove(job.id)
         }
-        fileStorageService.writeAppJson(job, settings.activeProject, "jobs", "${job.id}.json")
+    }
+
+    private fun remove(job: Job, project: String) {
+        index(project).remove(job.id)
+        unfinishedJobs[project]?.remove(job.id)
     }
 
     fun get(id: JobId): Job? {
-        return projectJobs[id]
-    }
-
-    fun list(): List<Job> {
-        return projectJobs.values.toList()
-    }
-
-    fun readAllJobs(): Jobs {
-        val projects = fileStorageService.list(StorageType.App).filter { it.isDirectory() }
-
-        val result: Jobs = ConcurrentHashMap()
-        for (projectDir in projects) {
-            val projectJobs =
-                fileStorageService.list(StorageType.App, projectDir.name, "jobs").filter { it.isRegularFile() }
-                    .mapNotNull {
-                        val job = fileStorageService.readAppJson<Job>(projectDir.name, "jobs", it.name)
-                        if (job is Job.Running) {
-                            val errorJob = job.error("Job failed because the server was shut down")
-                            log.warn("Found running job ${job.id} in project ${projectDir.name} during startup, marking as error")
-                            fileStorageService.writeAppJson(errorJob, settings.activeProject, "jobs", "${job.id}.json")
-                            errorJob
-                        } else {
-                            job
-                        }
-                    }
-                    .associateBy { it.id }
-            result[projectDir.name] = ConcurrentHashMap(projectJobs)
-        }
+        return projectIndex.get(id)
+    }
+
+    /**
+     * Jobs of the active project matching [filter], newest first, see [JobIndex.page].
+     */
+    fun list(cursor: String?, limit: Int, filter: (Job) -> Boolean = { true }): JobIndex.Page {
+        return projectIndex.page(cursor, limit, filter)
+    }
+
+    /**
+     * The newest job of every script of the active project matching [filter].
+     */
+    fun latestPerScript(filter: (Job) -> Boolean = { true }): List<Job> {
+        return projectIndex.latestPerScript(filter)
+    }
+
+    /**
+     * Reads at most [limit] log lines of job [id] starting at byte [offset], see [JobLogStore].
+     */
+    fun readLogs(
+        id: JobId,
+        offset: Long = 0,
+        limit: Int = Int.MAX_VALUE,
+        project: String = settings.activeProject
+    ): LogChunk {
+        return jobLogStore.read(project, id, offset, limit)
+    }
 
-        return result
+    /**
+     * Suspends until the log of job [id] grows beyond [offset], returns false when the job finished without doing so.
+     */
+    suspend fun awaitLogs(id: JobId, offset: Long): Boolean {
+        return jobLogStore.awaitAppend(settings.activeProject, id, offset)
+    }
+
+    private fun index(project: String): JobIndex {
+        return indexes.computeIfAbsent(project) {
+            val path = fileStorageService.getStoragePath(StorageType.App, project, JOB_INDEX_FILE)
+            val legacyJobs = LegacyJobs(
+                fileStorageService.getStoragePath(StorageType.App, project, "jobs"),
+                fileStorageService.objectMapper,
+            ) { id, lines -> jobLogStore.importLegacy(project, id, lines) }
+            val index = JobIndex.open(path, fileStorageService.objectMapper, legacyJobs::read)
+            legacyJobs.removeImported(index)
+
+            // Jobs left unfinished by a previous run of the server, jobs of this run are not loaded from the index
+            for (job in index.unfinished()) {
+                log.warn("Found unfinished job ${job.id} in project $project, marking as error")
+                index.put(job.error("Job failed because the server was shut down"))
+            }
+            index
+        }
     }
 }
 
+// Jobs stored by earlier versions contain their logs, they are moved to log files when the job index is created
+@JsonIgnoreProperties("logs")
 @JsonTypeInfo(
     use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY, property = "type"
 )
 @JsonSubTypes(
+    JsonSubTypes.Type(value = Job.Queued::class, name = "Queued"),
     JsonSubTypes.Type(value = Job.Running::class, name = "Running"),
     JsonSubTypes.Type(value = Job.Success::class, name = "Success"),
     JsonSubTypes.Type(value = Job.Error::class, name = "Error"),
+    JsonSubTypes.Type(value = Job.Cancelled::class, name = "Cancelled"),
 )
 sealed interface Job {
     val id: JobId
     val scriptId: ScriptId
-    val logs: MutableList<String>
     val lastUpdated: Instant
 
-    fun appendLog(message: String) {
-        this.logs += message
+    fun error(error: String): Error {
+        return Error(id, scriptId, error, Instant.now())
     }
 
-    fun appendLogs(logs: Iterable<String>) {
-        this.logs.addAll(logs)
+    data class Queued @JsonCreator constructor(
+        override val id: JobId,
+        override val scriptId: ScriptId,
+        override val lastUpdated: Instant
+    ) : Job {
+        fun start(): Running {
+            return Running(id, scriptId, Instant.now())
+        }
+
+        fun cancelled(): Cancelled {
+            return Cancelled(id, scriptId, Instant.now())
+        }
     }
 
     data class Running @JsonCreator constructor(
         override val id: JobId,
         override val scriptId: ScriptId,
-        override val logs: MutableList<String>,
         override val lastUpdated: Instant
     ) : Job {
-        fun error(error: String): Error {
-            return Error(id, scriptId, logs, error, Instant.now())
+        fun success(): Success {
+            return Success(id, scriptId, Instant.now())
         }
 
-        fun success(): Success {
-            return Success(id, scriptId, logs, Instant.now())
+        fun cancelled(): Cancelled {
+            return Cancelled(id, scriptId, Instant.now())
         }
     }
 
     data class Success @JsonCreator constructor(
         override val id: JobId,
         override val scriptId: ScriptId,
-        override val logs: MutableList<String>,
         override val lastUpdated: Instant
     ) : Job
 
     data class Error @JsonCreator constructor(
         override val id: JobId,
         override val scriptId: ScriptId,
-        override val logs: MutableList<String>,
         val error: String,
         override val lastUpdated: Instant
     ) : Job
+
+    data class Cancelled @JsonCreator constructor(
+        override val id: JobId,
+        override val scriptId: ScriptId,
+        override val lastUpdated: Instant
+    ) : Job
 }
 
+data class SubmittedJob(val job: Job.Queued, val project: String, val completion: CompletableFuture<Job>)
+
 @JvmInline
 value class JobId @JsonCreator constructor(val id: UUID) {
     @JsonValue
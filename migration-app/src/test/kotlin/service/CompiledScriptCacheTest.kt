@@ -0,0 +1,70 @@
+package com.quadient.migration.service
+
+import groovy.lang.Binding
+import org.codehaus.groovy.runtime.InvokerHelper
+import kotlin.io.path.createTempDirectory
+import kotlin.io.path.writeText
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNotSame
+import kotlin.test.assertSame
+
+class CompiledScriptCacheTest {
+    private val dir = createTempDirectory("scripts")
+    private val script = dir.resolve("Script.groovy")
+    private val cache = CompiledScriptCache(javaClass.classLoader, dir.toString())
+
+    @AfterTest
+    fun cleanup() {
+        dir.toFile().deleteRecursively()
+    }
+
+    @Test
+    fun `unchanged script is compiled once`() {
+        script.writeText("return 1")
+
+        val first = cache.withScriptClass(script.toFile()) { it }
+        val second = cache.withScriptClass(script.toFile()) { it }
+
+        assertSame(first, second)
+    }
+
+    @Test
+    fun `changed script is compiled again`() {
+        script.writeText("return 1")
+        val first = cache.withScriptClass(script.toFile()) { it }
+
+        script.writeText("return 2")
+        val second = cache.withScriptClass(script.toFile()) { it }
+
+        assertNotSame(first, second)
+        assertEquals(2, cache.withScriptClass(script.toFile()) { InvokerHelper.createScript(it, Binding()).run() })
+    }
+
+    @Test
+    fun `script is compiled again when a helper on the classpath changes`() {
+        val helper = dir.resolve("common").apply { toFile().mkdirs() }.resolve("Helper.groovy")
+        helper.writeText("package common\nclass Helper { static value() { 1 } }")
+        script.writeText("return common.Helper.value()")
+        assertEquals(1, cache.withScriptClass(script.toFile()) { InvokerHelper.createScript(it, Binding()).run() })
+
+        helper.writeText("package common\nclass Helper { static value() { 2 } }")
+
+        assertEquals(2, cache.withScriptClass(script.toFile()) { InvokerHelper.createScript(it, Binding()).run() })
+    }
+
+    @Test
+    fun `run of a replaced script finishes with its own class`() {
+        script.writeText("return 1")
+
+        val result = cache.withScriptClass(script.toFile()) { outdated ->
+            script.writeText("return 2")
+            val current = cache.withScriptClass(script.toFile()) { InvokerHelper.createScript(it, Binding()).run() }
+
+            listOf(InvokerHelper.createScript(outdated, Binding()).run(), current)
+        }
+
+        assertEquals(listOf<Any?>(1, 2), result)
+    }
+}
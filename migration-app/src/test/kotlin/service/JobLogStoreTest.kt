@@ -0,0 +1,53 @@
+package com.quadient.migration.service
+
+import io.ktor.server.config.MapApplicationConfig
+import kotlinx.coroutines.async
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import java.util.UUID
+import kotlin.io.path.createTempDirectory
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class JobLogStoreTest {
+    private val dir = createTempDirectory("job-logs")
+    private val config = MapApplicationConfig("app-data-dir" to dir.toString())
+    private val store = JobLogStore(FileStorageService(config), config)
+
+    @AfterTest
+    fun cleanup() {
+        store.close()
+        dir.toFile().deleteRecursively()
+    }
+
+    @Test
+    fun `tail of a queued job waits until the job logs`() = runBlocking {
+        val id = JobId(UUID.randomUUID())
+        store.queue(id)
+
+        val appended = async { store.awaitAppend("project", id, 0) }
+        delay(100)
+        assertFalse(appended.isCompleted)
+
+        store.open("project", id).append("started")
+
+        assertTrue(withTimeout(5_000) { appended.await() })
+        assertEquals(listOf("started"), store.read("project", id).lines)
+    }
+
+    @Test
+    fun `tail of a queued job ends when it finishes without starting`() = runBlocking {
+        val id = JobId(UUID.randomUUID())
+        store.queue(id)
+
+        val appended = async { store.awaitAppend("project", id, 0) }
+        delay(100)
+        store.close(id)
+
+        assertFalse(withTimeout(5_000) { appended.await() })
+    }
+}
@@ -0,0 +1,84 @@
+package com.quadient.migration.service
+
+import tools.jackson.databind.json.JsonMapper
+import tools.jackson.databind.node.ObjectNode
+import tools.jackson.module.kotlin.KotlinModule
+import java.nio.file.Path
+import java.time.Instant
+import java.util.UUID
+import kotlin.io.path.createDirectories
+import kotlin.io.path.createTempDirectory
+import kotlin.io.path.exists
+import kotlin.io.path.writeText
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+class LegacyJobsTest {
+    private val mapper = JsonMapper.builder().addModule(KotlinModule.Builder().build()).build()
+    private val dir = createTempDirectory("legacy-jobs")
+    private val jobsDir = dir.resolve("jobs")
+    private val indexPath = dir.resolve("jobs.jsonl")
+
+    @AfterTest
+    fun cleanup() {
+        dir.toFile().deleteRecursively()
+    }
+
+    @Test
+    fun `imported job files are deleted and their logs are moved`() {
+        val job = aJob()
+        writeLegacyJob(job, listOf("first", "second"))
+        val importedLogs = mutableMapOf<JobId, List<String>>()
+        val legacyJobs = LegacyJobs(jobsDir, mapper) { id, lines -> importedLogs[id] = lines }
+
+        val index = JobIndex.open(indexPath, mapper, legacyJobs::read)
+        legacyJobs.removeImported(index)
+
+        assertEquals(job, index.get(job.id))
+        assertEquals(mapOf(job.id to listOf("first", "second")), importedLogs)
+        assertFalse(jobsDir.exists())
+    }
+
+    @Test
+    fun `unreadable job files are kept`() {
+        val job = aJob()
+        val imported = writeLegacyJob(job)
+        val broken = jobsDir.resolve("${UUID.randomUUID()}.json").apply { writeText("{") }
+        val legacyJobs = LegacyJobs(jobsDir, mapper) { _, _ -> }
+
+        val index = JobIndex.open(indexPath, mapper, legacyJobs::read)
+        legacyJobs.removeImported(index)
+
+        assertEquals(job, index.get(job.id))
+        assertFalse(imported.exists())
+        assertTrue(broken.exists())
+    }
+
+    @Test
+    fun `job files left behind after the index was created are deleted on the next start`() {
+        val job = aJob()
+        val file = writeLegacyJob(job)
+        JobIndex.open(indexPath, mapper, LegacyJobs(jobsDir, mapper) { _, _ -> }::read)
+
+        val legacyJobs = LegacyJobs(jobsDir, mapper) { _, _ -> }
+        val index = JobIndex.open(indexPath, mapper, legacyJobs::read)
+        legacyJobs.removeImported(index)
+
+        assertEquals(job, index.get(job.id))
+        assertFalse(file.exists())
+    }
+
+    private fun aJob() = Job.Success(JobId(UUID.randomUUID()), ScriptId("script"), Instant.parse("2024-01-01T10:00:00Z"))
+
+    private fun writeLegacyJob(job: Job, logs: List<String> = emptyList()): Path {
+        val node = mapper.readTree(mapper.writerFor(Job::class.java).writeValueAsString(job)) as ObjectNode
+        val logsNode = node.putArray("logs")
+        logs.forEach { logsNode.add(it) }
+
+        jobsDir.createDirectories()
+        return jobsDir.resolve("${job.id}.json").apply { writeText(mapper.writeValueAsString(node)) }
+    }
+}
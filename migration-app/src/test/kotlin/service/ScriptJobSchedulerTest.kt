@@ -0,0 +1,169 @@
+package com.quadient.migration.service
+
+import com.quadient.migration.service.ScriptJobScheduler.CancelResult
+import com.quadient.migration.service.ScriptJobScheduler.Task
+import java.util.UUID
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+import kotlin.test.AfterTest
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class ScriptJobSchedulerTest {
+    private val started = LinkedBlockingQueue<JobId>()
+    private val interrupted = LinkedBlockingQueue<JobId>()
+    private val releases = ConcurrentHashMap<JobId, CountDownLatch>()
+
+    @AfterTest
+    fun cleanup() {
+        releases.values.forEach { it.countDown() }
+    }
+
+    @Test
+    fun `exclusive job waits for running jobs of its project`() {
+        val scheduler = ScriptJobScheduler(workers = 4, queueSize = 10)
+        val running = task("p1")
+        val exclusive = task("p1", exclusive = true)
+
+        scheduler.submit(running)
+        assertEquals(running.jobId, awaitStart())
+        scheduler.submit(exclusive)
+        assertNothingStarts()
+
+        release(running)
+        assertEquals(exclusive.jobId, awaitStart())
+    }
+
+    @Test
+    fun `later jobs of the project do not overtake a waiting exclusive job`() {
+        val scheduler = ScriptJobScheduler(workers = 4, queueSize = 10)
+        val running = task("p1")
+        val exclusive = task("p1", exclusive = true)
+        val later = task("p1")
+
+        scheduler.submit(running)
+        assertEquals(running.jobId, awaitStart())
+        scheduler.submit(exclusive)
+        scheduler.submit(later)
+        assertNothingStarts()
+
+        release(running)
+        assertEquals(exclusive.jobId, awaitStart())
+        assertNothingStarts()
+
+        release(exclusive)
+        assertEquals(later.jobId, awaitStart())
+    }
+
+    @Test
+    fun `jobs of other projects overtake a waiting exclusive job`() {
+        val scheduler = ScriptJobScheduler(workers = 4, queueSize = 10)
+        val running = task("p1")
+        val exclusive = task("p1", exclusive = true)
+        val otherProject = task("p2")
+
+        scheduler.submit(running)
+        assertEquals(running.jobId, awaitStart())
+        scheduler.submit(exclusive)
+        scheduler.submit(otherProject)
+
+        assertEquals(otherProject.jobId, awaitStart())
+        assertNothingStarts()
+    }
+
+    @Test
+    fun `submit returns false when the queue is full`() {
+        val scheduler = ScriptJobScheduler(workers = 1, queueSize = 1)
+
+        assertTrue(scheduler.submit(task("p1")))
+        assertTrue(scheduler.submit(task("p1")))
+        assertFalse(scheduler.submit(task("p1")))
+    }
+
+    @Test
+    fun `cancelled queued job is removed from the queue`() {
+        val scheduler = ScriptJobScheduler(workers = 1, queueSize = 10)
+        val running = task("p1")
+        val queued = task("p1")
+
+        scheduler.submit(running)
+        assertEquals(running.jobId, awaitStart())
+        scheduler.submit(queued)
+
+        assertEquals(CancelResult.Dequeued, scheduler.cancel(queued.jobId))
+        assertTrue(queued.cancelled)
+
+        release(running)
+        assertNothingStarts()
+        assertEquals(CancelResult.NotFound, scheduler.cancel(queued.jobId))
+    }
+
+    @Test
+    fun `cancelled running job is interrupted`() {
+        val scheduler = ScriptJobScheduler(workers = 1, queueSize = 10)
+        val running = task("p1")
+        val next = task("p1")
+
+        scheduler.submit(running)
+        assertEquals(running.jobId, awaitStart())
+        scheduler.submit(next)
+
+        assertEquals(CancelResult.Interrupted, scheduler.cancel(running.jobId))
+        assertTrue(running.cancelled)
+        assertEquals(running.jobId, interrupted.poll(5, TimeUnit.SECONDS))
+
+        assertEquals(next.jobId, awaitStart())
+        assertFalse(next.cancelled)
+    }
+
+    @Test
+    fun `cancelled job waiting for a pipeline stage is interrupted`() {
+        val scheduler = ScriptJobScheduler(workers = 1, queueSize = 10)
+        val stage = CompletableFuture<Unit>()
+        val id = JobId(UUID.randomUUID())
+        val waiting = Task(id, "p1", exclusive = false) {
+            started.add(id)
+            try {
+                stage.get()
+            } catch (e: InterruptedException) {
+                interrupted.add(id)
+            }
+        }
+
+        scheduler.submit(waiting)
+        assertEquals(id, awaitStart())
+
+        assertEquals(CancelResult.Interrupted, scheduler.cancel(id))
+        assertEquals(id, interrupted.poll(5, TimeUnit.SECONDS))
+        assertFalse(stage.isDone)
+    }
+
+    private fun task(project: String, exclusive: Boolean = false): Task {
+        val id = JobId(UUID.randomUUID())
+        val release = CountDownLatch(1).also { releases[id] = it }
+        return Task(id, project, exclusive) {
+            started.add(id)
+            try {
+                release.await()
+            } catch (e: InterruptedException) {
+                interrupted.add(id)
+            }
+        }
+    }
+
+    private fun release(task: Task) {
+        releases.getValue(task.jobId).countDown()
+    }
+
+    private fun awaitStart(): JobId? = started.poll(5, TimeUnit.SECONDS)
+
+    private fun assertNothingStarts() {
+        assertNull(started.poll(200, TimeUnit.MILLISECONDS))
+    }
+}
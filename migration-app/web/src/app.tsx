@@ -19,7 +19,7 @@ export default function App() {
         [settingsResult],
     );
 
-    const jobsResult = useFetch<Job[]>("/api/job/list", undefined, [settingsMemo]);
+    const jobsResult = useFetch<Job[]>("/api/job/list?latestPerModule=true", undefined, [settingsMemo]);
 
     const jobsMemo = useMemo(
         () => JSON.stringify((jobsResult.status === "ok" ? jobsResult.data : []).map((it) => it.lastUpdated)),
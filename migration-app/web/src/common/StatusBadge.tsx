@@ -1,9 +1,18 @@
 import type { RunStatus } from "@/types/job.ts";
 import { Badge } from "@/components/ui/badge.tsx";
-import { CircleCheckBig, CircleX, LoaderCircle } from "lucide-react";
+import { CircleCheckBig, CircleSlash, CircleX, Clock, LoaderCircle } from "lucide-react";
 
 export function StatusBadge({ runStatus }: { runStatus: RunStatus }) {
-    if (runStatus === "RUNNING") {
+    if (runStatus === "QUEUED") {
+        return (
+            <Badge className="h-6 bg-gray-100 dark:bg-gray-800 text-gray-800 dark:text-gray-300">
+                <>
+                    <Clock />
+                    Queued
+                </>
+            </Badge>
+        );
+    } else if (runStatus === "RUNNING") {
         return (
             <Badge className="h-6 bg-blue-100 dark:bg-blue-900 text-blue-800 dark:text-blue-300">
                 <>
@@ -30,6 +39,15 @@ export function StatusBadge({ runStatus }: { runStatus: RunStatus }) {
                 </>
             </Badge>
         );
+    } else if (runStatus === "CANCELLED") {
+        return (
+            <Badge className="h-6 bg-gray-100 dark:bg-gray-800 text-gray-800 dark:text-gray-300">
+                <>
+                    <CircleSlash />
+                    Cancelled
+                </>
+            </Badge>
+        );
     } else {
         return null;
     }
@@ -9,10 +9,10 @@ import {
     DialogTrigger,
 } from "@/components/ui/dialog.tsx";
 import { ScrollArea } from "@/components/ui/scroll-area.tsx";
-import { type ReactNode, useEffect, useRef } from "react";
+import { type ReactNode, useEffect, useRef, useState } from "react";
 import { useRequest } from "@/hooks/useRequest.ts";
 import { Card, CardContent } from "@/components/ui/card.tsx";
-import type { Job } from "@/types/job.ts";
+import type { Job, RunStatus } from "@/types/job.ts";
 import { StatusBadge } from "@/common/StatusBadge.tsx";
 import { Button } from "@/components/ui/button.tsx";
 
@@ -28,6 +28,13 @@ type LogDialogBaseProps = {
     setOpen: (open: boolean) => void;
 };
 
+type LogChunk = {
+    lines: string[];
+    nextOffset: number;
+};
+
+const LOG_PAGE_SIZE = 1000;
+
 export default function LogsDialog({ trigger, moduleName, job, setJobs, open, setOpen }: LogsDialogProps) {
     return (
         <Dialog modal open={open} onOpenChange={setOpen}>
@@ -46,13 +53,7 @@ export default function LogsDialog({ trigger, moduleName, job, setJobs, open, se
 }
 
 function LogDialogOpenContent({ moduleName, job, setJobs }: LogDialogBaseProps) {
-    useRequest<Job>({
-        url: `api/job?id=${job.id}`,
-        onSuccess: (job) => setJobs((prev) => prev.map((it) => (it.id === job.id ? job : it))),
-        onError: (error) => console.error("Failed to fetch job logs:", error),
-        condition: job.logs === undefined,
-    });
-
+    const logs = useJobLogs(job, setJobs);
     const scrollAreaRef = useRef<HTMLDivElement>(null);
 
     useEffect(() => {
@@ -76,7 +77,7 @@ function LogDialogOpenContent({ moduleName, job, setJobs }: LogDialogBaseProps)
         }
 
         viewport.scrollTop = viewport.scrollHeight;
-    }, [job?.logs]);
+    }, [logs.lines]);
 
     return (
         <>
@@ -94,11 +95,16 @@ function LogDialogOpenContent({ moduleName, job, setJobs }: LogDialogBaseProps)
                         className="pr-4"
                     >
                         <div tabIndex={0}>
-                            {job.logs?.map((log, idx) => (
+                            {logs.lines.map((log, idx) => (
                                 <div key={idx} className="text-sm mb-1 pl-[1em] indent-[-1em]">
                                     {log}
                                 </div>
                             ))}
+                            {logs.loadMore && (
+                                <Button variant="outline" size="sm" onClick={logs.loadMore}>
+                                    Load more
+                                </Button>
+                            )}
                         </div>
                     </ScrollArea>
                 </CardContent>
@@ -112,3 +118,52 @@ function LogDialogOpenContent({ moduleName, job, setJobs }: LogDialogBaseProps)
         </>
     );
 }
+
+/**
+ * Logs of a job started from this page are streamed into the job by its execution. Logs of other jobs are read from
+ * the server, unfinished jobs are followed through server-sent events and finished ones are read page by page.
+ */
+function useJobLogs(
+    job: Job,
+    setJobs: LogDialogBaseProps["setJobs"],
+): { lines: string[]; loadMore: (() => void) | undefined } {
+    const [lines, setLines] = useState<string[]>([]);
+    const [offset, setOffset] = useState(0);
+    const [nextOffset, setNextOffset] = useState<number | undefined>(undefined);
+    const [follow] = useState(job.status === "RUNNING" || job.status === "QUEUED");
+
+    useRequest<LogChunk>({
+        url: `api/job/logs?id=${job.id}&offset=${offset}&limit=${LOG_PAGE_SIZE}`,
+        onSuccess: (chunk) => {
+            setLines((prev) => [...prev, ...chunk.lines]);
+            setNextOffset(chunk.lines.length === LOG_PAGE_SIZE ? chunk.nextOffset : undefined);
+        },
+        onError: (error) => console.error("Failed to fetch job logs:", error),
+        condition: job.logs === undefined && !follow,
+    });
+
+    useEffect(() => {
+        if (job.logs !== undefined || !follow) {
+            return;
+        }
+
+        const source = new EventSource(`api/job/logs/tail?id=${job.id}`);
+        source.onmessage = (event) => setLines((prev) => [...prev, ...event.data.split("\n")]);
+        source.addEventListener("end", (event) => {
+            source.close();
+            const status = event.data as RunStatus | "null";
+            if (status !== "null") {
+                setJobs((prev) =>
+                    prev.map((it) => (it.id === job.id ? { ...it, status, lastUpdated: new Date() } : it)),
+                );
+            }
+        });
+
+        return () => source.close();
+    }, [job.id]);
+
+    return {
+        lines: job.logs ?? lines,
+        loadMore: nextOffset === undefined ? undefined : () => setOffset(nextOffset),
+    };
+}
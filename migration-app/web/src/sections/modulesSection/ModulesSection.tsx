@@ -147,7 +147,7 @@ function ModuleCard({ module, icon: Icon, job, setJobs }: ModuleCardProps) {
                 <Button
                     className="w-50"
                     type={"submit"}
-                    disabled={job?.status === "RUNNING"}
+                    disabled={job?.status === "RUNNING" || job?.status === "QUEUED"}
                     onClick={() => handleExecuteModule(module, setJobs, setLogDialogOpen)}
                 >
                     {job?.status === "RUNNING" ? (
@@ -252,5 +252,8 @@ function getJobStatusFromFinishLine(line: string): RunStatus {
     const resultKey = "result";
     const resultPart = finishLineParts.find((it) => it.startsWith(resultKey));
     const resultValue = resultPart?.substring(resultKey.length + 1);
-    return resultValue === "success" ? "SUCCESS" : "ERROR";
+    if (resultValue === "success") {
+        return "SUCCESS";
+    }
+    return resultValue === "cancelled" ? "CANCELLED" : "ERROR";
 }
@@ -1,4 +1,4 @@
-export type RunStatus = "RUNNING" | "SUCCESS" | "ERROR";
+export type RunStatus = "QUEUED" | "RUNNING" | "SUCCESS" | "ERROR" | "CANCELLED";
 
 export type Job = {
     id: string;
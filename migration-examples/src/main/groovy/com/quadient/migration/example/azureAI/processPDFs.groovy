@@ -3,6 +3,7 @@
 //! category: Parser
 //! description: Processes AzureAI files located in the folder specified by the project settings.
 //! sourceFormat: AzureAI
+//! exclusive: true
 //! ---
 package com.quadient.migration.example.azureAI
 
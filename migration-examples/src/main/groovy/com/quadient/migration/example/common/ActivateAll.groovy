@@ -3,6 +3,7 @@ package com.quadient.migration.example.common
 //! displayName: Activate All
 //! description: Sets tracking status of all assets to active so they can be deployed again
 //! category: Utils
+//! exclusive: true
 //! ---
 
 import com.quadient.migration.service.deploy.utility.ResourceType
@@ -11,19 +12,22 @@ import static com.quadient.migration.example.common.util.InitMigration.initMigra
 
 def migration = initMigration(this.binding)
 
-def all = migration.statusTrackingRepository.listAll()
-def selectedObjects = migration.projectConfig.getDocumentObjectsToProcess()
-for (status in all) {
-    if (!selectedObjects.empty) {
-        if (status.resourceType == ResourceType.DocumentObject
-            && !selectedObjects.contains(status.id.toString())) {
-            continue
+// All statuses are recorded in one unit of work committed in chunks instead of one transaction per status
+migration.inTransaction {
+    def all = migration.statusTrackingRepository.listAll()
+    def selectedObjects = migration.projectConfig.getDocumentObjectsToProcess()
+    for (status in all) {
+        if (!selectedObjects.empty) {
+            if (status.resourceType == ResourceType.DocumentObject
+                && !selectedObjects.contains(status.id.toString())) {
+                continue
+            }
         }
-    }
 
-    migration.statusTrackingRepository.active(
-        status.id.toString(),
-        status.resourceType.toString() as ResourceType,
-        [reason: "ActivateAll"]
-    )
-}
\ No newline at end of file
+        migration.statusTrackingRepository.active(
+            status.id.toString(),
+            status.resourceType.toString() as ResourceType,
+            [reason: "ActivateAll"]
+        )
+    }
+}
@@ -2,6 +2,7 @@
 //! displayName: Deploy Base Templates
 //! category: Deployment
 //! description: Deploys all base templates
+//! exclusive: true
 //! ---
 package com.quadient.migration.example.common
 
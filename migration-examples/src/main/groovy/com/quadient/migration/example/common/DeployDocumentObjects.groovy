@@ -2,6 +2,7 @@
 //! displayName: Deploy Document Objects
 //! category: Deployment
 //! description: Deploys all document objects
+//! exclusive: true
 //! ---
 package com.quadient.migration.example.common
 
@@ -2,6 +2,7 @@
 //! displayName: Deploy Styles
 //! category: Deployment
 //! description: Deploys text and paragraph style to external style definition
+//! exclusive: true
 //! ---
 package com.quadient.migration.example.common
 
@@ -4,6 +4,7 @@
 //! description: Deleted all project data from database and storage
 //! stdin: true
 //! target: gradle
+//! exclusive: true
 //! ---
 package com.quadient.migration.example.common
 
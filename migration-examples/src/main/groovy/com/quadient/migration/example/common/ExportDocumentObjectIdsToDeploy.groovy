@@ -13,7 +13,7 @@ import static com.quadient.migration.example.common.util.InitMigration.initMigra
 def migration = initMigration(this.binding)
 
 def objects = migration.documentObjectRepository
-        .listAll()
+        .listSummaries()
         .findAll { !it.internal && !it.skip.skipped }
 
 def documentObjFile = PathUtil.dataDirPath(binding, "deploy", "${migration.projectConfig.name}-document-objects").toFile()
@@ -3,6 +3,7 @@
 //! category: Mapping
 //! description: Applies all mappings to their respective Migration objects
 //! target: gradle
+//! exclusive: true
 //! ---
 package com.quadient.migration.example.common.mapping
 
@@ -3,6 +3,7 @@
 //! category: Mapping
 //! description: Imports attachment details from CSV files into the migration project, applying any updates made to the columns during editing.
 //! target: gradle
+//! exclusive: true
 //! ---
 package com.quadient.migration.example.common.mapping
 
@@ -8,6 +8,7 @@ package com.quadient.migration.example.common.mapping
 
 import com.quadient.migration.api.Migration
 import com.quadient.migration.api.dto.migrationmodel.DocumentObject
+import com.quadient.migration.api.dto.migrationmodel.DocumentObjectSummary
 import com.quadient.migration.example.common.util.Csv
 import com.quadient.migration.example.common.util.Mapping
 import com.quadient.migration.service.deploy.utility.ResourceType
@@ -23,8 +24,15 @@ def docObjPath = Mapping.csvPath(binding, migration.projectConfig.name, migratio
 run(migration, docObjPath)
 
 static void run(Migration migration, Path documentObjectsDstPath) {
-    List<DocumentObject> objects = Mapping.collectSelectedOrAll(migration, DocumentObject) { migration.documentObjectRepository.listAll() }
-        .findAll { !it.internal }
+    // Only metadata is exported, so rows are written from summaries without decoding content
+    List<DocumentObjectSummary> objects = migration.documentObjectRepository.listSummaries().findAll { !it.internal }
+
+    if (!migration.projectConfig.getDocumentObjectsToProcess().empty) {
+        // References of the selected objects are collected from their content, so these are loaded fully
+        List<DocumentObject> selected = Mapping.collectSelectedOrAll(migration, DocumentObject) { [] }
+        Set<String> selectedIds = selected.collect { it.id }.toSet()
+        objects = objects.findAll { selectedIds.contains(it.id) }
+    }
 
     documentObjectsDstPath.toFile().createParentDirectories()
 
@@ -4,6 +4,7 @@
 //! description: Imports areas with modified interactive flow names to their respective pages and templates. The import is interactive, prompting the user to select the layout CSV to import if more than one matching file is found.
 //! target: gradle
 //! stdin: true
+//! exclusive: true
 //! ---
 package com.quadient.migration.example.common.mapping
 
@@ -3,6 +3,7 @@
 //! category: Mapping
 //! description: Import table mapping from CSV. Computes and stores fingerprints, then applies pdfTaggingRule and pdfAlternateText changes. Fingerprint mismatches are logged as errors and skipped.
 //! target: gradle
+//! exclusive: true
 //! ---
 package com.quadient.migration.example.common.mapping
 
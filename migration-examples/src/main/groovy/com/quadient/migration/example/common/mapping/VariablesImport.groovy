@@ -4,6 +4,7 @@
 //! description: Imports variable structure from specified CSV files. The import is interactive, prompting the user to select variable structure CSV to import.
 //! target: gradle
 //! stdin: true
+//! exclusive: true
 //! ---
 package com.quadient.migration.example.common.mapping
 
@@ -10,6 +10,7 @@ import com.quadient.migration.api.dto.migrationmodel.*
 import com.quadient.migration.example.common.util.Csv
 import com.quadient.migration.example.common.util.PathUtil
 import com.quadient.migration.service.deploy.utility.ResourceType
+import com.quadient.migration.shared.DocumentObjectType
 import com.quadient.migration.shared.VariableRefPath
 import groovy.transform.Field
 
@@ -48,26 +49,20 @@ def header = ["Id",
               "Created",
               "Last updated"]
 
-def allDocumentObjects = migration.documentObjectRepository.listAll()
-Map<String, DocumentObject> internalDocumentObjects = [:]
-List<DocumentObject> externalDocumentObjects = []
-
-for (obj in allDocumentObjects) {
-    if (obj.internal) {
-        internalDocumentObjects[obj.id] = obj
-    } else {
-        externalDocumentObjects.add(obj)
-    }
-}
-
 def file = dstFile.toFile()
 file.createParentDirectories()
 file.withWriter { writer ->
     writer.writeLine(header.join(","))
     Map<String, Set<String>> usageMap = [:]
 
-    List<Tuple2<DocumentObject, Stats>> objectsWithStats
-            = externalDocumentObjects.collect { Tuple.tuple(it, new Stats(migration, usageMap).collect(it)) }.toList()
+    // Document objects are streamed, only reported fields and statistics of external objects are kept
+    // until all objects are processed and the usage map is complete
+    List<Tuple2<ReportedObject, Stats>> objectsWithStats = []
+    for (obj in migration.documentObjectRepository.streamAll()) {
+        if (!obj.internal) {
+            objectsWithStats.add(Tuple.tuple(new ReportedObject(obj), new Stats(migration, usageMap).collect(obj)))
+        }
+    }
 
     for (objWithStats in objectsWithStats) {
         def obj = objWithStats.getV1()
@@ -107,6 +102,24 @@ file.withWriter { writer ->
     }
 }
 
+class ReportedObject {
+    String id
+    String name
+    List<String> originLocations
+    DocumentObjectType type
+    Object created
+    Object lastUpdated
+
+    ReportedObject(DocumentObject obj) {
+        this.id = obj.id
+        this.name = obj.name
+        this.originLocations = obj.originLocations
+        this.type = obj.type
+        this.created = obj.created
+        this.lastUpdated = obj.lastUpdated
+    }
+}
+
 class Stats {
     String Id
     Migration migration
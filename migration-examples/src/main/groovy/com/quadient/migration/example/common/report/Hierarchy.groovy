@@ -19,19 +19,10 @@ import static com.quadient.migration.example.common.util.InitMigration.initMigra
 def dstFile = PathUtil.dataDirPath(binding, "hierarchy", "${migration.projectConfig.name}-hierarchy.json").toFile()
 dstFile.parentFile.mkdirs()
 
-def documentObjects = migration.documentObjectRepository.listAll()
-def displayRules = migration.displayRuleRepository.listAll()
-def textStyles = migration.textStyleRepository.listAll()
-def paragraphStyles = migration.paragraphStyleRepository.listAll()
-def attachments = migration.attachmentRepository.listAll()
-def images = migration.imageRepository.listAll()
-def variables = migration.variableRepository.listAll()
-def variableStructures = migration.variableStructureRepository.listAll()
-def baseTemplates = migration.baseTemplateRepository.listAll()
-
 def root = new Root()
 
-for (def docObj : documentObjects) {
+// Objects are streamed from the database, only the nodes of the hierarchy are kept in memory
+for (def docObj : migration.documentObjectRepository.streamAll()) {
     def node = new Child(id: docObj.id,
         name: docObj.name,
         type: ChildType.DOCUMENT_OBJECT,
@@ -42,7 +33,7 @@ for (def docObj : documentObjects) {
     root.documentObjects[node.id] = node
 }
 
-for (displayRule in displayRules) {
+for (displayRule in migration.displayRuleRepository.streamAll()) {
     def node = new Child(id: displayRule.id, name: displayRule.name, type: ChildType.DISPLAY_RULE)
     def children = displayRule.collectRefs()
     collectChildren(node, children)
@@ -50,37 +41,37 @@ for (displayRule in displayRules) {
     root.displayRules[node.id] = node
 }
 
-for (textStyle in textStyles) {
+for (textStyle in migration.textStyleRepository.streamAll()) {
     def node = new Leaf(id: textStyle.id, name: textStyle.name, type: ChildType.TEXT_STYLE)
 
     root.textStyles[node.id] = node
 }
 
-for (paragraphStyle in paragraphStyles) {
+for (paragraphStyle in migration.paragraphStyleRepository.streamAll()) {
     def node = new Leaf(id: paragraphStyle.id, name: paragraphStyle.name, type: ChildType.PARAGRAPH_STYLE)
 
     root.paragraphStyles[node.id] = node
 }
 
-for (attachment in attachments) {
+for (attachment in migration.attachmentRepository.streamAll()) {
     def node = new Leaf(id: attachment.id, name: attachment.name, type: ChildType.ATTACHMENT)
 
     root.attachments[node.id] = node
 }
 
-for (image in images) {
+for (image in migration.imageRepository.streamAll()) {
     def node = new Leaf(id: image.id, name: image.name, type: ChildType.IMAGE)
 
     root.images[node.id] = node
 }
 
-for (variable in variables) {
+for (variable in migration.variableRepository.streamAll()) {
     def node = new Leaf(id: variable.id, name: variable.name, type: ChildType.VARIABLE)
 
     root.variables[node.id] = node
 }
 
-for (variableStructure in variableStructures) {
+for (variableStructure in migration.variableStructureRepository.streamAll()) {
     def node = new Child(id: variableStructure.id, name: variableStructure.name, type: ChildType.VARIABLE_STRUCTURE)
     def children = variableStructure.collectRefs()
     collectChildren(node, children)
@@ -88,7 +79,7 @@ for (variableStructure in variableStructures) {
     root.variableStructures[node.id] = node
 }
 
-for (baseTemplate in baseTemplates) {
+for (baseTemplate in migration.baseTemplateRepository.streamAll()) {
     def node = new Leaf(id: baseTemplate.id, name: baseTemplate.name, type: ChildType.BASE_TEMPLATE)
 
     root.baseTemplates[node.id] = node
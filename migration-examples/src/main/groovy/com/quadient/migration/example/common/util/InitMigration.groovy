@@ -73,7 +73,8 @@ static Migration initMigration(Binding binding) {
             selectedDocumentObjectsFile != null ? classLoader.getResource(selectedDocumentObjectsFile).toURI().path : null,
             selectedDocumentObjects,
             subProjectId,
-            fileProjectConfig.context)
+            fileProjectConfig.context,
+            fileProjectConfig.deployPipeline)
     log.info "Preparing to start migration script with $projectConfig."
 
     return new Migration(migConfig, projectConfig)
@@ -3,6 +3,7 @@
 //! category: Parser
 //! description: Import Migration objects of Acknowledgement Letter from Source example
 //! sourceFormat: Vital example
+//! exclusive: true
 //! ---
 // This script assumes resources in the resources directory
 package com.quadient.migration.example.example
@@ -3,6 +3,7 @@
 //! category: Parser
 //! description: Import Migration objects of technical example
 //! sourceFormat: Migration model example
+//! exclusive: true
 //! ---
 package com.quadient.migration.example.example
 
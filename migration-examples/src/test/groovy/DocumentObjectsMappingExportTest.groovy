@@ -19,7 +19,7 @@ class DocumentObjectsMappingExportTest {
         Path mappingFile = Paths.get(dir.path, "testProject.csv")
         def migration = Utils.mockMigration()
 
-        when(migration.documentObjectRepository.listAll()).thenReturn([
+        when(migration.documentObjectRepository.listSummaries()).thenReturn([
                 new DocumentObjectBuilder("empty", DocumentObjectType.Block).build(),
                 new DocumentObjectBuilder("should not be listed because internal", DocumentObjectType.Block).internal(true).build(),
                 new DocumentObjectBuilder("full", DocumentObjectType.Page)
@@ -39,7 +39,7 @@ class DocumentObjectsMappingExportTest {
                         .variableStructureRef("struct")
                         .baseTemplateRef("tmplRef")
                         .build(),
-        ])
+        ].collect { it.toSummary() })
 
         when(migration.statusTrackingRepository.findLastEventRelevantToOutput(any(), any(), any())).thenReturn(new Active())
 
@@ -69,7 +69,7 @@ class DocumentObjectsMappingExportTest {
         when(migration.projectConfig.getDocumentObjectsToProcess()).thenReturn(["selected template"])
         when(migration.documentObjectRepository.listIds(["selected template"])).thenReturn([selectedTemplate])
         when(migration.referenceCollector.collectAllObjects(selectedTemplate)).thenReturn([referencedBlock] as Set)
-        when(migration.documentObjectRepository.listAll()).thenReturn([selectedTemplate, referencedBlock, unselectedBlock])
+        when(migration.documentObjectRepository.listSummaries()).thenReturn([selectedTemplate, referencedBlock, unselectedBlock].collect { it.toSummary() })
 
         when(migration.statusTrackingRepository.findLastEventRelevantToOutput(any(), any(), any())).thenReturn(new Active())
 
@@ -5,6 +5,7 @@ plugins {
     `java-library`
     id("maven-publish")
     alias(libs.plugins.owasp.dependencycheck)
+    alias(libs.plugins.jmh)
 }
 
 group = "com.quadient"
@@ -70,6 +71,7 @@ dependencies {
     implementation(libs.koin.annotations)
 
     implementation(libs.postgresql)
+    implementation(libs.hikaricp)
     implementation(libs.flyway.core)
     implementation(libs.flyway.database.postgresql)
 
@@ -103,6 +105,8 @@ dependencies {
     testImplementation(libs.testcontainers.postgresql)
     testRuntimeOnly(libs.junit.platform.launcher)
 
+    jmhImplementation(libs.mockk)
+
     constraints {
         // ktor CVE fixes
         implementation("org.springframework.security:spring-security-crypto:7.0.6")
@@ -115,3 +119,23 @@ tasks.test {
     useJUnitPlatform()
 }
 
+kotlin {
+    // Benchmarks fill repository caches through internal API
+    target.compilations.named("jmh") { associateWith(target.compilations.getByName("main")) }
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh.asProvider())
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+
+    // -PjmhIncludes=DocumentObjectBuilder runs only matching benchmarks
+    // -PjmhParams=output=Designer;depth=2,8 overrides the output types and sizes of the synthetic document objects
+    findProperty("jmhIncludes")?.let { includes.add(it.toString()) }
+    findProperty("jmhParams")?.toString()?.split(";")?.filter { it.isNotBlank() }?.forEach { param ->
+        val (name, values) = param.split("=", limit = 2)
+        benchmarkParameters.put(name.trim(), objects.listProperty(String::class.java).value(values.split(",").map { it.trim() }))
+    }
+}
+
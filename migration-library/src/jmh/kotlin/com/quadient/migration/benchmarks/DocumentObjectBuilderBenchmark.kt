@@ -0,0 +1,67 @@
+package com.quadient.migration.benchmarks
+
+import com.quadient.migration.api.InspireOutput
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Level
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Warmup
+import java.io.OutputStream
+import java.util.concurrent.TimeUnit
+
+/**
+ * [InspireDocumentObjectBuilder.buildDocumentObject][com.quadient.migration.service.inspirebuilder.InspireDocumentObjectBuilder.buildDocumentObject]
+ * of a synthetic template for every output type, with repositories and IPS data served from memory by
+ * [InMemoryProject]. Allocations per built object are reported by the gc profiler, sizes are overridden with
+ * `-PjmhParams`.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class DocumentObjectBuilderBenchmark {
+
+    @Param("Designer", "Interactive", "Evolve")
+    lateinit var output: InspireOutput
+
+    @Param("1", "8")
+    var depth: Int = 0
+
+    @Param("20")
+    var tableRows: Int = 0
+
+    @Param("5")
+    var tableColumns: Int = 0
+
+    @Param("50")
+    var displayRules: Int = 0
+
+    private lateinit var project: InMemoryProject
+
+    @Setup(Level.Trial)
+    fun setUp() {
+        project = InMemoryProject(SyntheticProject.create(depth, tableRows, tableColumns, displayRules), output)
+
+        // Loads fonts, style definition and base template into the IcmDataCache, later builds do not touch IPS
+        project.builder.buildDocumentObject(project.model.root)
+    }
+
+    @Benchmark
+    fun buildDocumentObject(): String {
+        return project.builder.buildDocumentObject(project.model.root)
+    }
+
+    @Benchmark
+    fun buildDocumentObjectToStream() {
+        project.builder.buildDocumentObject(project.model.root, OutputStream.nullOutputStream())
+    }
+}
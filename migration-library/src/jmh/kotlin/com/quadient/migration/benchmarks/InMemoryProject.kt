@@ -0,0 +1,145 @@
+package com.quadient.migration.benchmarks
+
+import com.quadient.migration.api.CacheConfig
+import com.quadient.migration.api.InspireOutput
+import com.quadient.migration.api.ProjectConfig
+import com.quadient.migration.api.ProjectName
+import com.quadient.migration.api.dto.migrationmodel.MigrationObject
+import com.quadient.migration.api.repository.AttachmentRepository
+import com.quadient.migration.api.repository.BaseTemplateRepository
+import com.quadient.migration.api.repository.DisplayRuleRepository
+import com.quadient.migration.api.repository.DocumentObjectRepository
+import com.quadient.migration.api.repository.ImageRepository
+import com.quadient.migration.api.repository.ParagraphStyleRepository
+import com.quadient.migration.api.repository.Repository
+import com.quadient.migration.api.repository.RepositoryCache
+import com.quadient.migration.api.repository.StatusTrackingRepository
+import com.quadient.migration.api.repository.TextStyleRepository
+import com.quadient.migration.api.repository.VariableRepository
+import com.quadient.migration.api.repository.VariableStructureRepository
+import com.quadient.migration.service.DesignerIcmDataCache
+import com.quadient.migration.service.DesignerResourcePathProvider
+import com.quadient.migration.service.EvolveIcmDataCache
+import com.quadient.migration.service.EvolveResourcePathProvider
+import com.quadient.migration.service.InteractiveIcmDataCache
+import com.quadient.migration.service.InteractiveResourcePathProvider
+import com.quadient.migration.service.inspirebuilder.DesignerDocumentObjectBuilder
+import com.quadient.migration.service.inspirebuilder.InspireDocumentObjectBuilder
+import com.quadient.migration.service.inspirebuilder.InspireVariableStructureBuilder
+import com.quadient.migration.service.inspirebuilder.InteractiveDocumentObjectBuilder
+import com.quadient.migration.service.ipsclient.IpsService
+import com.quadient.migration.shared.IcmPath
+import io.mockk.every
+import io.mockk.mockk
+import org.jetbrains.exposed.v1.jdbc.Database
+import java.sql.SQLException
+
+/**
+ * Repositories of a [SyntheticProject] served from memory. The cache of every repository is replaced by a complete one
+ * holding the objects of the model, so builders never query the database. The database of the repositories refuses
+ * every connection, a lookup of an object missing in the model fails at once instead of waiting for a server. IPS is
+ * stubbed, it only answers while [IcmDataCache][com.quadient.migration.service.IcmDataCache] loads fonts, style
+ * definition and the base template on the first build.
+ */
+class InMemoryProject(val model: SyntheticProject, val output: InspireOutput) {
+    private val projectName = ProjectName("benchmark")
+
+    private val statusTrackingRepository = StatusTrackingRepository(projectName, database)
+    val documentObjectRepository = DocumentObjectRepository(projectName, statusTrackingRepository, database)
+        .apply { preload(model.documentObjects) }
+    val textStyleRepository = TextStyleRepository(projectName, statusTrackingRepository, database)
+        .apply { preload(model.textStyles) }
+    val paragraphStyleRepository = ParagraphStyleRepository(projectName, statusTrackingRepository, database)
+        .apply { preload(model.paragraphStyles) }
+    val variableRepository = VariableRepository(projectName, database).apply { preload(model.variables) }
+    val variableStructureRepository = VariableStructureRepository(projectName, database)
+        .apply { preload(listOf(model.variableStructure)) }
+    val displayRuleRepository = DisplayRuleRepository(projectName, statusTrackingRepository, database)
+        .apply { preload(model.displayRules) }
+    val imageRepository = ImageRepository(projectName, statusTrackingRepository, database).apply { preload(emptyList()) }
+    val attachmentRepository = AttachmentRepository(projectName, statusTrackingRepository, database).apply { preload(emptyList()) }
+    val baseTemplateRepository = BaseTemplateRepository(projectName, statusTrackingRepository, database).apply { preload(emptyList()) }
+
+    val config = ProjectConfig(
+        name = "benchmark",
+        baseTemplatePath = "icm://Interactive/benchmark/BaseTemplates/BaseTemplate.wfd",
+        inputDataPath = "icm://Interactive/benchmark/Data/data.xml",
+        interactiveTenant = "benchmark",
+        inspireOutput = output,
+        defaultVariableStructure = SyntheticProject.VARIABLE_STRUCTURE_ID,
+        defaultLanguage = "en_us",
+    )
+
+    val builder: InspireDocumentObjectBuilder = createBuilder()
+
+    private fun createBuilder(): InspireDocumentObjectBuilder {
+        val variableStructureBuilder = InspireVariableStructureBuilder(variableRepository, variableStructureRepository, config)
+        return when (output) {
+            InspireOutput.Designer -> {
+                val resourcePathProvider = DesignerResourcePathProvider(config)
+                DesignerDocumentObjectBuilder(
+                    documentObjectRepository,
+                    textStyleRepository,
+                    paragraphStyleRepository,
+                    variableRepository,
+                    variableStructureBuilder,
+                    displayRuleRepository,
+                    imageRepository,
+                    attachmentRepository,
+                    resourcePathProvider,
+                    config,
+                    DesignerIcmDataCache(stubIpsService("icm://Fonts/arial.ttf"), resourcePathProvider),
+                    baseTemplateRepository,
+                )
+            }
+
+            InspireOutput.Interactive, InspireOutput.Evolve -> {
+                val fontPath = "icm://Interactive/${config.interactiveTenant}/Resources/Fonts/arial.ttf"
+                val (resourcePathProvider, icmDataCache) = if (output == InspireOutput.Evolve) {
+                    EvolveResourcePathProvider(config).let { it to EvolveIcmDataCache(stubIpsService(fontPath), it) }
+                } else {
+                    InteractiveResourcePathProvider(config).let { it to InteractiveIcmDataCache(stubIpsService(fontPath), it) }
+                }
+                InteractiveDocumentObjectBuilder(
+                    documentObjectRepository,
+                    textStyleRepository,
+                    paragraphStyleRepository,
+                    variableRepository,
+                    variableStructureBuilder,
+                    displayRuleRepository,
+                    imageRepository,
+                    attachmentRepository,
+                    config,
+                    resourcePathProvider,
+                    icmDataCache,
+                    baseTemplateRepository,
+                )
+            }
+        }
+    }
+
+    private fun stubIpsService(fontPath: String): IpsService {
+        val ipsService = mockk<IpsService>()
+        every { ipsService.gatherFontData(any()) } returns "Arial,Regular,$fontPath;"
+        every { ipsService.fileExists(any<IcmPath>()) } returns (output != InspireOutput.Designer)
+        every { ipsService.wfd2xml(any<IcmPath>()) } returns "<Workflow><Layout><Layout></Layout></Layout></Workflow>"
+        return ipsService
+    }
+
+    private fun <T : MigrationObject> Repository<T>.preload(objects: Collection<T>) {
+        val cache = RepositoryCache<T>(CacheConfig(maxEntries = maxOf(objects.size, 1))) { 1 }
+        // putAll marks the cache complete, so listAll answers from it as well
+        cache.putAll(objects)
+        cacheField.set(this, cache)
+    }
+
+    companion object {
+        // The cache is private to Repository, benchmarks replace it instead of extending the repository API
+        private val cacheField = Repository::class.java.getDeclaredField("cache").apply { isAccessible = true }
+
+        // Repositories are bound to a database, connecting to it fails without touching the network
+        private val database = Database.connect(
+            getNewConnection = { throw SQLException("Benchmark repositories have no database, the object is not part of the synthetic project") }
+        )
+    }
+}
@@ -0,0 +1,157 @@
+package com.quadient.migration.benchmarks
+
+import com.quadient.migration.api.dto.migrationmodel.DisplayRule
+import com.quadient.migration.api.dto.migrationmodel.DocumentObject
+import com.quadient.migration.api.dto.migrationmodel.ParagraphStyle
+import com.quadient.migration.api.dto.migrationmodel.TextStyle
+import com.quadient.migration.api.dto.migrationmodel.Variable
+import com.quadient.migration.api.dto.migrationmodel.VariableStructure
+import com.quadient.migration.api.dto.migrationmodel.builder.DisplayRuleBuilder
+import com.quadient.migration.api.dto.migrationmodel.builder.DocumentObjectBuilder
+import com.quadient.migration.api.dto.migrationmodel.builder.ParagraphStyleBuilder
+import com.quadient.migration.api.dto.migrationmodel.builder.TextStyleBuilder
+import com.quadient.migration.api.dto.migrationmodel.builder.VariableBuilder
+import com.quadient.migration.api.dto.migrationmodel.builder.VariableStructureBuilder
+import com.quadient.migration.shared.DataType
+import com.quadient.migration.shared.DocumentObjectType
+import com.quadient.migration.shared.millimeters
+import com.quadient.migration.shared.points
+
+/**
+ * Migration model of a generated project. [root] is a template referencing a chain of `depth` internal blocks, each
+ * block references the next one under a display rule. The template and every block have styled paragraphs with
+ * variables, a first match over all display rules, a select by language and a table of `tableRows` x `tableColumns`.
+ */
+class SyntheticProject private constructor(
+    val root: DocumentObject,
+    val documentObjects: List<DocumentObject>,
+    val displayRules: List<DisplayRule>,
+    val variables: List<Variable>,
+    val variableStructure: VariableStructure,
+    val textStyles: List<TextStyle>,
+    val paragraphStyles: List<ParagraphStyle>,
+) {
+    companion object {
+        const val VARIABLE_STRUCTURE_ID = "VS_benchmark"
+
+        private val LANGUAGES = listOf("en_us", "de", "fr", "es")
+        private const val VARIABLES = 20
+        private const val STYLES = 10
+        private const val PARAGRAPHS = 5
+
+        fun create(depth: Int, tableRows: Int, tableColumns: Int, displayRules: Int): SyntheticProject {
+            val variables = (1..VARIABLES).map {
+                VariableBuilder("V_$it").name("Variable $it").dataType(DataType.String).build()
+            }
+            val languageVariable = VariableBuilder("V_language").name("Language").dataType(DataType.String).build()
+            val variableStructure = VariableStructureBuilder(VARIABLE_STRUCTURE_ID)
+                .apply { variables.forEach { addVariable(it.id, "Data.Clients.Value") } }
+                .addVariable(languageVariable.id, "Data.Language")
+                .languageVariable(languageVariable.id)
+                .build()
+
+            val rules = (1..maxOf(displayRules, 1)).map {
+                DisplayRuleBuilder("R_$it").comparison { variable(variables[it % VARIABLES]).equals().value("Value $it") }
+                    .build()
+            }
+            val textStyles = (1..STYLES).map {
+                TextStyleBuilder("TS_$it").definition {
+                    fontFamily("Arial")
+                    size((8 + it).points())
+                    bold(it % 2 == 0)
+                    italic(it % 3 == 0)
+                }.build()
+            }
+            val paragraphStyles = (1..STYLES).map {
+                ParagraphStyleBuilder("PS_$it").definition {
+                    spaceBefore(it.millimeters())
+                    leftIndent((it * 2).millimeters())
+                }.build()
+            }
+
+            val blocks = (depth downTo 1).fold(emptyList<DocumentObject>()) { nested, level ->
+                val builder = DocumentObjectBuilder("B_$level", DocumentObjectType.Block).internal(true)
+                addContent(builder, level, variables, rules, textStyles, paragraphStyles, tableRows, tableColumns)
+                nested.firstOrNull()?.let { builder.documentObjectRef(it.id, rules[level % rules.size].id) }
+                listOf(builder.build()) + nested
+            }
+            val root = DocumentObjectBuilder("T_root", DocumentObjectType.Template)
+                .variableStructureRef(VARIABLE_STRUCTURE_ID)
+                .apply { addContent(this, 0, variables, rules, textStyles, paragraphStyles, tableRows, tableColumns) }
+                .apply { blocks.firstOrNull()?.let { documentObjectRef(it.id) } }
+                .build()
+
+            return SyntheticProject(
+                root,
+                blocks + root,
+                rules,
+                variables + languageVariable,
+                variableStructure,
+                textStyles,
+                paragraphStyles,
+            )
+        }
+
+        private fun addContent(
+            builder: DocumentObjectBuilder,
+            level: Int,
+            variables: List<Variable>,
+            rules: List<DisplayRule>,
+            textStyles: List<TextStyle>,
+            paragraphStyles: List<ParagraphStyle>,
+            tableRows: Int,
+            tableColumns: Int,
+        ) {
+            repeat(PARAGRAPHS) { i ->
+                builder.paragraph {
+                    styleRef(paragraphStyles[(level + i) % STYLES])
+                    text {
+                        styleRef(textStyles[(level + i) % STYLES])
+                        string("Level $level paragraph $i with ")
+                        variableRef(variables[(level + i) % VARIABLES])
+                        string(" & <special> characters")
+                    }
+                }
+            }
+
+            builder.firstMatch {
+                rules.forEachIndexed { i, rule ->
+                    case {
+                        displayRuleRef(rule.id)
+                        paragraph { string("Level $level case $i") }
+                    }
+                }
+                defaultString("Level $level default")
+            }
+
+            builder.selectByLanguage {
+                for (languageCode in LANGUAGES) {
+                    case {
+                        language(languageCode)
+                        paragraph { string("Level $level in $languageCode") }
+                    }
+                }
+            }
+
+            builder.table {
+                repeat(tableRows) { row ->
+                    addRow {
+                        repeat(tableColumns) { column ->
+                            addCell {
+                                paragraph {
+                                    text {
+                                        string("Cell $row/$column ")
+                                        variableRef(variables[(row + column) % VARIABLES])
+                                    }
+                                }
+                            }
+                        }
+                        if (row % 2 == 1) {
+                            displayRuleRef(rules[row % rules.size])
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
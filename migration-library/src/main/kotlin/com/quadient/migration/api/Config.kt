@@ -9,7 +9,8 @@ import java.net.URI
 data class MigConfig(
     val dbConfig: DbConfig = DbConfig(),
     val inspireConfig: InspireConfig = InspireConfig(),
-    val storageRoot: String? = null
+    val storageRoot: String? = null,
+    val cacheConfig: CacheConfig = CacheConfig(),
 ) {
     companion object {
         val objectMapper = TomlMapper.builder().addModule(KotlinModule.Builder().build()).build()
@@ -45,6 +46,7 @@ data class ProjectConfig(
     val selectedDocumentObjects: List<String>? = null,
     val subProjectId: String? = null,
     val context: Map<String, Any> = emptyMap(),
+    val deployPipeline: DeployPipelineConfig = DeployPipelineConfig(),
 ) {
     private val _selectedDocumentObjects by lazy {
         if (selectedDocumentObjects != null) {
@@ -79,12 +81,25 @@ data class ProjectConfig(
     }
 }
 
+/**
+ * Database connection. Connections are pooled, at most [poolSize] connections are open and callers wait up to
+ * [poolWaitTimeoutSeconds] for a free one. [statementCacheSize] prepared statements are cached per connection and
+ * a statement is prepared on the server after it was executed [prepareThreshold] times. Units of work started by
+ * [Migration.withUnitOfWork] commit after every [transactionChunkSize] written rows.
+ */
 data class DbConfig(
     val host: String = "localhost",
     val port: Int = 5432,
     val dbName: String = "migrationdb",
     val user: String = "migrationadmin",
-    val password: String = "password"
+    val password: String = "password",
+    val poolSize: Int = 10,
+    val poolMinIdle: Int = 2,
+    val poolWaitTimeoutSeconds: Int = 30,
+    val poolIdleTimeoutSeconds: Int = 600,
+    val statementCacheSize: Int = 256,
+    val prepareThreshold: Int = 5,
+    val transactionChunkSize: Int = 1000,
 ) {
     fun connectionString() = "jdbc:postgresql://$host:$port/$dbName?reWriteBatchedInserts=true"
 }
@@ -106,6 +121,51 @@ data class EvolveConfig(
     val publishRuleActionId: String,
 )
 
-data class IpsConfig(val host: String = "localhost", val port: Int = 30354, val timeoutSeconds: Int = 120)
+data class IpsConfig(
+    val host: String = "localhost",
+    val port: Int = 30354,
+    val timeoutSeconds: Int = 120,
+    val poolSize: Int = 1,
+    val poolWaitTimeoutSeconds: Int = 600,
+    val poolHealthCheckIntervalSeconds: Int = 30,
+)
+
+/**
+ * Opt-in pipelined deployment of document objects. When enabled, WFD XML of document objects is built on a pool of
+ * [buildThreads] workers while finished objects are uploaded on a pool of [uploadThreads] workers. Uploads keep the
+ * dependency order, an object is uploaded only after all objects it references were processed. At most
+ * [maxPendingUploads] objects are built or waiting for upload at the same time.
+ *
+ * Built XML is written straight into a spool kept in memory as UTF-8 up to [maxPendingUploadBytes] in total, a
+ * document crossing the limit continues in a temporary file. Heap used by built XML is therefore bounded by
+ * [maxPendingUploadBytes].
+ *
+ * Builds running on several [buildThreads] read repositories and the ICM data cache concurrently, which relies on
+ * both being safe for concurrent use.
+ *
+ * Effective upload parallelism is also limited by [IpsConfig.poolSize].
+ */
+data class DeployPipelineConfig(
+    val enabled: Boolean = false,
+    val buildThreads: Int = Runtime.getRuntime().availableProcessors(),
+    val uploadThreads: Int = 4,
+    val maxPendingUploads: Int = 64,
+    val maxPendingUploadBytes: Long = 64L * 1024 * 1024,
+)
+
+/**
+ * Cache of migration objects kept by each repository. [CachePolicy.Lru] keeps at most [maxEntries] recently used
+ * objects, [CachePolicy.SizeWeighted] keeps recently used objects up to the total weight of [maxWeight] where
+ * the weight of an object grows with the size of its content and [CachePolicy.None] disables the cache.
+ */
+data class CacheConfig(
+    val policy: CachePolicy = CachePolicy.Lru,
+    val maxEntries: Int = 10_000,
+    val maxWeight: Long = 100_000,
+)
+
+enum class CachePolicy {
+    Lru, SizeWeighted, None
+}
 
 data class PathsConfig(val images: IcmPath? = null, val fonts: IcmPath? = null, val documents: IcmPath? = null, val attachments: IcmPath? = null)
\ No newline at end of file
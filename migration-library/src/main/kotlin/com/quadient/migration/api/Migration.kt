@@ -1,6 +1,10 @@
 package com.quadient.migration.api
 
 import com.quadient.migration.api.repository.*
+import com.quadient.migration.persistence.DatabasePool
+import com.quadient.migration.persistence.DbPoolMetrics
+import com.quadient.migration.persistence.UnitOfWork
+import com.quadient.migration.persistence.repository.ReferenceInternalRepository
 import com.quadient.migration.service.LocalStorage
 import com.quadient.migration.service.RefCollector
 import com.quadient.migration.service.ReferenceValidator
@@ -37,15 +41,18 @@ import com.quadient.migration.service.ipsclient.display
 import okhttp3.OkHttpClient
 import org.flywaydb.core.Flyway
 import org.jetbrains.exposed.v1.jdbc.Database
+import org.jetbrains.exposed.v1.jdbc.transactions.TransactionManager
 import org.koin.core.KoinApplication
 import org.koin.dsl.bind
 import org.koin.dsl.koinApplication
 import org.koin.dsl.module
 import com.quadient.migration.tools.logger
 import org.koin.plugin.module.dsl.single
+import java.io.Closeable
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 
-class Migration(val config: MigConfig, val projectConfig: ProjectConfig) {
+class Migration(val config: MigConfig, val projectConfig: ProjectConfig) : Closeable {
     private val logger by logger()
     private val projectName = ProjectName(projectConfig.name)
 
@@ -94,17 +101,21 @@ class Migration(val config: MigConfig, val projectConfig: ProjectConfig) {
                 .build()
         }
 
-        single<VariableRepository>()
-        single<DocumentObjectRepository>()
-        single<TextStyleRepository>()
-        single<ParagraphStyleRepository>()
-        single<VariableStructureRepository>()
-        single<DisplayRuleRepository>()
-        single<BaseTemplateRepository>()
-        single<ImageRepository>()
-        single<AttachmentRepository>()
-        single<StatusTrackingRepository>()
-        single<MappingRepository>()
+        // Repositories run their transactions on the database of this instance, not on the default one of Exposed
+        single<VariableRepository> { VariableRepository(projectName, database) }
+        single<DocumentObjectRepository> { DocumentObjectRepository(projectName, get(), database) }
+        single<TextStyleRepository> { TextStyleRepository(projectName, get(), database) }
+        single<ParagraphStyleRepository> { ParagraphStyleRepository(projectName, get(), database) }
+        single<VariableStructureRepository> { VariableStructureRepository(projectName, database) }
+        single<DisplayRuleRepository> { DisplayRuleRepository(projectName, get(), database) }
+        single<BaseTemplateRepository> { BaseTemplateRepository(projectName, get(), database) }
+        single<ImageRepository> { ImageRepository(projectName, get(), database) }
+        single<AttachmentRepository> { AttachmentRepository(projectName, get(), database) }
+        single<StatusTrackingRepository> { StatusTrackingRepository(projectName, database) }
+        single<MappingRepository> {
+            MappingRepository(projectName, get(), get(), get(), get(), get(), get(), get(), get(), get(), database)
+        }
+        single<ReferenceGraph> { ReferenceGraph.of(projectName.name, database) }
 
         single<LocalStorage>()
 
@@ -154,19 +165,51 @@ class Migration(val config: MigConfig, val projectConfig: ProjectConfig) {
 
     private val ipsService: IpsService by lazy { koin.get() }
 
+    /**
+     * Current state of the database connection pool.
+     */
+    fun dbPoolMetrics(): DbPoolMetrics = databasePool.metrics()
+
+    /**
+     * Runs [block] in a single database transaction joined by all repository calls made by the current thread. The
+     * transaction is committed after every [chunkSize] written rows, so large imports commit a few times instead of
+     * once per object. Nested calls join the running unit of work, see [UnitOfWork].
+     */
+    @JvmOverloads
+    fun <T> withUnitOfWork(chunkSize: Int = config.dbConfig.transactionChunkSize, block: (UnitOfWork) -> T): T {
+        return UnitOfWork.run(chunkSize, database, block)
+    }
+
+    /**
+     * Variant of [withUnitOfWork] with the configured chunk size for blocks that do not need the unit of work.
+     */
+    fun <T> inTransaction(block: () -> T): T = withUnitOfWork { block() }
+
+    /**
+     * Cache counters of all repositories keyed by the repository name.
+     */
+    fun cacheStats(): Map<String, CacheStats> = repositories.associate { it::class.simpleName!! to it.cacheStats() }
+
+    /**
+     * Drops objects cached by repositories and data loaded from ICM. Long living instances call this before a unit of
+     * work that has to see changes made by other processes.
+     */
+    fun invalidateCaches() {
+        repositories.forEach { it.invalidateAll() }
+        koin.get<IcmDataCache>().invalidateAll()
+    }
+
+    private val databasePool = DatabasePool(config.dbConfig)
+    private val database = Database.connect(databasePool.dataSource)
+    private val closed = AtomicBoolean(false)
+    private val shutdownHook = Thread {
+        logUnsupportedIpsVersion()
+        logger.trace("Shutdown hook triggered")
+        close()
+    }
+
     init {
-        Database.connect(
-            url = config.dbConfig.connectionString(),
-            driver = "org.postgresql.Driver",
-            user = config.dbConfig.user,
-            password = config.dbConfig.password
-        )
-
-        Flyway.configure()
-            .dataSource(config.dbConfig.connectionString(), config.dbConfig.user, config.dbConfig.password)
-            .locations("classpath:com/quadient/migration/persistence/upgrade")
-            .load()
-            .migrate()
+        migrateSchema()
 
         repositories.add(variableRepository)
         repositories.add(documentObjectRepository)
@@ -177,39 +220,79 @@ class Migration(val config: MigConfig, val projectConfig: ProjectConfig) {
         repositories.add(baseTemplateRepository)
         repositories.add(imageRepository)
         repositories.add(attachmentRepository)
+        repositories.forEach { it.configureCache(config.cacheConfig) }
+
+        if (ReferenceInternalRepository(projectName.name, database).backfill { repositories.forEach { it.rebuildReferences() } }) {
+            logger.info("Rebuilt stored references of project '$projectName'")
+        }
 
         logger.debug("Setting up shutdown hook for IPS service")
-        Runtime.getRuntime().addShutdownHook(Thread {
-                val version = ipsService.client.version
-                if (version != null) {
-                    if (version.isSupportedMajorVersion() && !version.isSupportedVersion()) {
-                        logger.warn("""
-                            
-                            ************************************************************
-                            *                                                          *
-                            * WARNING: Connected to unsupported IPS version $version   *
-                            *                                                          *
-                            ************************************************************
-                            """.trimIndent()
-                        )
-                        logger.warn(
-                            "Supported IPS versions are: ${
-                                Version.SUPPORTED_VERSION_RANGES.joinToString(
-                                    prefix = "[",
-                                    postfix = "]"
-                                ) { it.display() }
-                            }"
-                        )
-                    }
-                }
-
-                logger.trace("Shutdown hook triggered, closing IPS service connections")
-                ipsService.close()
-            }
-        )
+        Runtime.getRuntime().addShutdownHook(shutdownHook)
 
         logger.debug("Migration initialized")
     }
+
+    /**
+     * Closes IPS connections, releases the reference graph, unregisters the database from Exposed and closes the
+     * connection pool. Called by the shutdown hook when not called before.
+     */
+    override fun close() {
+        if (!closed.compareAndSet(false, true)) return
+
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook)
+            } catch (_: IllegalStateException) {
+                // JVM is already shutting down, the hook runs or ran on its own
+            }
+        }
+
+        logger.trace("Closing IPS service connections")
+        ipsService.close()
+        koinApp.close()
+
+        ReferenceGraph.release(database)
+
+        logger.trace("Closing database connection pool, {}", databasePool.metrics())
+        TransactionManager.closeAndUnregister(database)
+        databasePool.close()
+    }
+
+    private fun migrateSchema() {
+        val flyway = Flyway.configure()
+            .dataSource(databasePool.dataSource)
+            .locations("classpath:com/quadient/migration/persistence/upgrade")
+            .load()
+        // Reading flyway_schema_history is cheap compared to migrate, which locks the history table
+        if (flyway.info().pending().isNotEmpty()) {
+            flyway.migrate()
+        } else {
+            logger.debug("Database schema is up to date")
+        }
+    }
+
+    private fun logUnsupportedIpsVersion() {
+        val version = ipsService.version ?: return
+        if (version.isSupportedMajorVersion() && !version.isSupportedVersion()) {
+            logger.warn("""
+                
+                ************************************************************
+                *                                                          *
+                * WARNING: Connected to unsupported IPS version $version   *
+                *                                                          *
+                ************************************************************
+                """.trimIndent()
+            )
+            logger.warn(
+                "Supported IPS versions are: ${
+                    Version.SUPPORTED_VERSION_RANGES.joinToString(
+                        prefix = "[",
+                        postfix = "]"
+                    ) { it.display() }
+                }"
+            )
+        }
+    }
 }
 
 @JvmInline
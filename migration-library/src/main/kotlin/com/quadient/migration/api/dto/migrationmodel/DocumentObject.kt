@@ -39,4 +39,21 @@ data class DocumentObject(
 
         return contentRefs + pdfMetadataRefs + setOfNotNull(displayRuleRef, variableStructureRef, baseTemplateRef)
     }
+
+    fun toSummary() = DocumentObjectSummary(
+        id = id,
+        name = name,
+        type = type,
+        internal = internal == true,
+        targetFolder = targetFolder,
+        originLocations = originLocations,
+        customFields = customFields,
+        displayRuleRef = displayRuleRef,
+        variableStructureRef = variableStructureRef,
+        baseTemplate = baseTemplate,
+        skip = skip,
+        subject = subject,
+        created = created,
+        lastUpdated = lastUpdated,
+    )
 }
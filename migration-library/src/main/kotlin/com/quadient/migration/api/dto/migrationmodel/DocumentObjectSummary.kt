@@ -0,0 +1,27 @@
+package com.quadient.migration.api.dto.migrationmodel
+
+import com.quadient.migration.shared.DocumentObjectType
+import com.quadient.migration.shared.SkipOptions
+import kotlin.time.Instant
+
+/**
+ * Document object without its content, options, PDF metadata and metadata, read without decoding them from the
+ * database. Use [com.quadient.migration.api.repository.DocumentObjectRepository.find] or
+ * [com.quadient.migration.api.repository.DocumentObjectRepository.findContent] to load the rest on demand.
+ */
+data class DocumentObjectSummary(
+    val id: String,
+    val name: String?,
+    val type: DocumentObjectType,
+    val internal: Boolean,
+    val targetFolder: String?,
+    val originLocations: List<String>,
+    val customFields: CustomFieldMap,
+    val displayRuleRef: DisplayRuleRef?,
+    val variableStructureRef: VariableStructureRef?,
+    val baseTemplate: BaseTemplateLocation?,
+    val skip: SkipOptions,
+    val subject: String?,
+    val created: Instant?,
+    val lastUpdated: Instant?,
+)
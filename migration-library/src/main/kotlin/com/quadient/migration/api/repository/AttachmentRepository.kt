@@ -1,27 +1,28 @@
 package com.quadient.migration.api.repository
 
 import com.quadient.migration.api.ProjectName
+import com.quadient.migration.api.dto.migrationmodel.AttachmentRef
 import com.quadient.migration.api.dto.migrationmodel.CustomFieldMap
 import com.quadient.migration.api.dto.migrationmodel.Attachment
 import com.quadient.migration.api.dto.migrationmodel.MigrationObject
-import com.quadient.migration.persistence.table.DocumentObjectTable
 import com.quadient.migration.persistence.table.AttachmentTable
 import com.quadient.migration.service.deploy.utility.ResourceType
 import com.quadient.migration.shared.AttachmentType
 import com.quadient.migration.shared.MetadataEntry
 import com.quadient.migration.tools.concat
-import kotlin.time.toJavaInstant
 import kotlinx.serialization.json.Json
 import org.jetbrains.exposed.v1.core.ResultRow
 import org.jetbrains.exposed.v1.core.eq
+import org.jetbrains.exposed.v1.jdbc.Database
 import org.jetbrains.exposed.v1.jdbc.selectAll
-import org.jetbrains.exposed.v1.jdbc.transactions.transaction
 import org.jetbrains.exposed.v1.jdbc.upsertReturning
-import java.sql.Types
 import kotlin.time.Clock
 
-class AttachmentRepository(projectName: ProjectName, private val statusTrackingRepository: StatusTrackingRepository) :
-    Repository<Attachment>(AttachmentTable, projectName.name) {
+class AttachmentRepository(
+    projectName: ProjectName,
+    private val statusTrackingRepository: StatusTrackingRepository,
+    database: Database? = null,
+) : Repository<Attachment>(AttachmentTable, projectName.name, database) {
 
     override fun fromDb(row: ResultRow): Attachment {
         return Attachment(
@@ -41,11 +42,7 @@ class AttachmentRepository(projectName: ProjectName, private val statusTrackingR
     }
 
     override fun findUsages(id: String): List<MigrationObject> {
-        return transaction {
-            DocumentObjectTable.selectAll().where { DocumentObjectTable.projectName eq projectName }
-                .map { DocumentObjectTable.fromResultRow(it) }.filter { it.collectRefs().any { it.id == id } }
-                .distinct()
-        }
+        return findDocumentObjectUsages(AttachmentRef(id))
     }
 
     override fun upsert(dto: Attachment) {
@@ -79,39 +76,19 @@ class AttachmentRepository(projectName: ProjectName, private val statusTrackingR
     override fun upsertBatch(dtos: Collection<Attachment>) {
         if (dtos.isEmpty()) return
 
-        val columns = listOf(
-            "id", "project_name", "name", "origin_locations", "custom_fields",
-            "created", "last_updated", "source_path", "target_folder", "attachment_type", "skip", "metadata", "target_image_id"
-        )
-        val sql = createSql(columns, dtos.size)
-        val now = Clock.System.now()
-
-        upsertBatchInternal(dtos) {
-            val stmt = it.prepareStatement(sql)
-            var index = 1
-            dtos.forEach { dto ->
-                val existingItem = find(dto.id)
-
-                if (existingItem == null) {
-                    statusTrackingRepository.active(dto.id, ResourceType.Attachment)
-                }
+        val columns = listOf("source_path", "target_folder", "attachment_type", "skip", "metadata", "target_image_id")
 
-                stmt.setString(index++, dto.id)
-                stmt.setString(index++, this@AttachmentRepository.projectName)
-                stmt.setString(index++, dto.name)
-                stmt.setArray(index++, it.createArrayOf("text", existingItem?.originLocations.concat(dto.originLocations).distinct().toTypedArray()))
-                stmt.setObject(index++, Json.encodeToString(dto.customFields.inner), Types.OTHER)
-                stmt.setTimestamp(index++, java.sql.Timestamp.from((existingItem?.created ?: now).toJavaInstant()))
-                stmt.setTimestamp(index++, java.sql.Timestamp.from(now.toJavaInstant()))
-                stmt.setString(index++, dto.sourcePath)
-                stmt.setString(index++, dto.targetFolder)
-                stmt.setString(index++, dto.attachmentType.name)
-                stmt.setObject(index++, Json.encodeToString(dto.skip), Types.OTHER)
-                stmt.setObject(index++, Json.encodeToString<List<MetadataEntry>>(dto.metadata), Types.OTHER)
-                stmt.setString(index++, dto.targetImageId)
-            }
-
-            stmt.executeUpdate()
+        val activate = { objects: Collection<Attachment>, existing: Map<String, Attachment> ->
+            val created = objects.filter { it.id !in existing }
+            statusTrackingRepository.activeAll(ResourceType.Attachment, created.associate { it.id to emptyMap() })
+        }
+        upsertBatchInternal(dtos, columns, activate) { dto, _ ->
+            string(dto.sourcePath)
+            string(dto.targetFolder)
+            string(dto.attachmentType.name)
+            string(Json.encodeToString(dto.skip))
+            string(Json.encodeToString<List<MetadataEntry>>(dto.metadata))
+            string(dto.targetImageId)
         }
     }
 }
@@ -9,21 +9,21 @@ import com.quadient.migration.api.dto.migrationmodel.MigrationObject
 import com.quadient.migration.api.dto.migrationmodel.VariableStructureRef
 import com.quadient.migration.api.dto.migrationmodel.toDb
 import com.quadient.migration.persistence.table.DisplayRuleTable
-import com.quadient.migration.persistence.table.DocumentObjectTable
 import com.quadient.migration.service.deploy.utility.ResourceType
 import com.quadient.migration.tools.concat
 import kotlin.time.Clock
-import kotlin.time.toJavaInstant
 import kotlinx.serialization.json.Json
-import java.sql.Types
 import org.jetbrains.exposed.v1.core.ResultRow
 import org.jetbrains.exposed.v1.core.eq
+import org.jetbrains.exposed.v1.jdbc.Database
 import org.jetbrains.exposed.v1.jdbc.selectAll
-import org.jetbrains.exposed.v1.jdbc.transactions.transaction
 import org.jetbrains.exposed.v1.jdbc.upsertReturning
 
-class DisplayRuleRepository(projectName: ProjectName, private val statusTrackingRepository: StatusTrackingRepository) :
-    Repository<DisplayRule>(DisplayRuleTable, projectName.name) {
+class DisplayRuleRepository(
+    projectName: ProjectName,
+    private val statusTrackingRepository: StatusTrackingRepository,
+    database: Database? = null,
+) : Repository<DisplayRule>(DisplayRuleTable, projectName.name, database) {
 
     override fun fromDb(row: ResultRow): DisplayRule {
         return DisplayRule(
@@ -45,54 +45,37 @@ class DisplayRuleRepository(projectName: ProjectName, private val statusTracking
     }
 
     override fun findUsages(id: String): List<MigrationObject> {
-        return transaction {
-            DocumentObjectTable.selectAll().where { DocumentObjectTable.projectName eq projectName }
-                .map { DocumentObjectTable.fromResultRow(it) }
-                .filter { it.collectRefs().any { it.id == id } }
-                .distinct()
-        }
+        return findDocumentObjectUsages(DisplayRuleRef(id))
+    }
+
+    /**
+     * New objects that are not internal and internal objects that are no longer internal become active.
+     */
+    private fun isActivated(dto: DisplayRule, existingItem: DisplayRule?): Boolean {
+        return (existingItem == null && dto.internal != true) || (dto.internal == false && existingItem?.internal == true)
     }
 
     override fun upsertBatch(dtos: Collection<DisplayRule>) {
         if (dtos.isEmpty()) return
 
         val columns = listOf(
-            "id", "project_name", "name", "origin_locations", "custom_fields",
-            "created", "last_updated", "definition",
-            "target_id", "internal", "subject", "target_folder",
+            "definition", "target_id", "internal", "subject", "target_folder",
             "base_template", "variable_structure_ref", "metadata"
         )
-        val sql = createSql(columns, dtos.size)
-        val now = Clock.System.now()
-
-        upsertBatchInternal(dtos) {
-            val stmt = it.prepareStatement(sql)
-            var index = 1
-            dtos.forEach { dto ->
-                val existingItem = find(dto.id)
 
-                if ((existingItem == null && dto.internal != true) || (dto.internal == false && existingItem?.internal == true)) {
-                    statusTrackingRepository.active(dto.id, ResourceType.DisplayRule)
-                }
-
-                stmt.setString(index++, dto.id)
-                stmt.setString(index++, this@DisplayRuleRepository.projectName)
-                stmt.setString(index++, dto.name)
-                stmt.setArray(index++, it.createArrayOf("text", existingItem?.originLocations.concat(dto.originLocations).distinct().toTypedArray()))
-                stmt.setObject(index++, Json.encodeToString(dto.customFields.inner), Types.OTHER)
-                stmt.setTimestamp(index++, java.sql.Timestamp.from((existingItem?.created ?: now).toJavaInstant()))
-                stmt.setTimestamp(index++, java.sql.Timestamp.from(now.toJavaInstant()))
-                stmt.setObject(index++, dto.definition?.let { Json.encodeToString(it) }, Types.OTHER)
-                stmt.setString(index++, dto.targetId?.id)
-                stmt.setBoolean(index++, dto.internal)
-                stmt.setString(index++, dto.subject)
-                stmt.setString(index++, dto.targetFolder)
-                stmt.setObject(index++, dto.baseTemplate?.let { Json.encodeToString(it.toDb()) }, Types.OTHER)
-                stmt.setString(index++, dto.variableStructureRef?.id)
-                stmt.setObject(index++, Json.encodeToString(dto.metadata), Types.OTHER)
-            }
-
-            stmt.executeUpdate()
+        val activate = { objects: Collection<DisplayRule>, existing: Map<String, DisplayRule> ->
+            val activated = objects.filter { isActivated(it, existing[it.id]) }
+            statusTrackingRepository.activeAll(ResourceType.DisplayRule, activated.associate { it.id to emptyMap() })
+        }
+        upsertBatchInternal(dtos, columns, activate) { dto, _ ->
+            string(dto.definition?.let { Json.encodeToString(it) })
+            string(dto.targetId?.id)
+            bool(dto.internal)
+            string(dto.subject)
+            string(dto.targetFolder)
+            string(dto.baseTemplate?.let { Json.encodeToString(it.toDb()) })
+            string(dto.variableStructureRef?.id)
+            string(Json.encodeToString(dto.metadata))
         }
     }
 
@@ -102,7 +85,7 @@ class DisplayRuleRepository(projectName: ProjectName, private val statusTracking
 
             val now = Clock.System.now()
 
-            if ((existingItem == null && dto.internal != true) || (dto.internal == false && existingItem?.internal == true)) {
+            if (isActivated(dto, existingItem)) {
                 statusTrackingRepository.active(dto.id, ResourceType.DisplayRule)
             }
 
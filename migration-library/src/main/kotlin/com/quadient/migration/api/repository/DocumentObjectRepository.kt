@@ -1,8 +1,11 @@
 package com.quadient.migration.api.repository
 
 import com.quadient.migration.api.ProjectName
+import com.quadient.migration.api.dto.migrationmodel.DocumentContent
 import com.quadient.migration.api.dto.migrationmodel.DocumentObject
 import com.quadient.migration.api.dto.migrationmodel.DocumentObjectFilter
+import com.quadient.migration.api.dto.migrationmodel.DocumentObjectRef
+import com.quadient.migration.api.dto.migrationmodel.DocumentObjectSummary
 import com.quadient.migration.api.dto.migrationmodel.MigrationObject
 import com.quadient.migration.api.dto.migrationmodel.toDb
 import com.quadient.migration.persistence.table.DocumentObjectTable
@@ -12,21 +15,26 @@ import com.quadient.migration.api.dto.migrationmodel.PageOptions
 import com.quadient.migration.tools.concat
 import com.quadient.migration.tools.logger
 import kotlin.time.Clock
-import kotlin.time.toJavaInstant
 import kotlinx.serialization.json.Json
 import org.jetbrains.exposed.v1.core.Op
 import org.jetbrains.exposed.v1.core.ResultRow
 import org.jetbrains.exposed.v1.core.and
+import org.jetbrains.exposed.v1.core.count
 import org.jetbrains.exposed.v1.core.eq
 import org.jetbrains.exposed.v1.core.inList
 import org.jetbrains.exposed.v1.core.lowerCase
+import org.jetbrains.exposed.v1.jdbc.Database
+import org.jetbrains.exposed.v1.jdbc.select
+import org.jetbrains.exposed.v1.json.extract
 import org.jetbrains.exposed.v1.jdbc.selectAll
 import org.jetbrains.exposed.v1.jdbc.transactions.transaction
 import org.jetbrains.exposed.v1.jdbc.upsertReturning
-import java.sql.Types
 
-class DocumentObjectRepository(projectName: ProjectName, private val statusTrackingRepository: StatusTrackingRepository) :
-    Repository<DocumentObject>(DocumentObjectTable, projectName.name) {
+class DocumentObjectRepository(
+    projectName: ProjectName,
+    private val statusTrackingRepository: StatusTrackingRepository,
+    database: Database? = null,
+) : Repository<DocumentObject>(DocumentObjectTable, projectName.name, database) {
 
     val logger by logger()
 
@@ -34,66 +42,104 @@ class DocumentObjectRepository(projectName: ProjectName, private val statusTrack
         return list(filterByDocumentObjectFilter(documentObjectFilter))
     }
 
+    /**
+     * Lists document objects without their content, see [DocumentObjectSummary]. Summaries are not cached.
+     */
+    fun listSummaries(): List<DocumentObjectSummary> {
+        return listSummaries(Op.TRUE)
+    }
+
+    fun listSummaries(documentObjectFilter: DocumentObjectFilter): List<DocumentObjectSummary> {
+        return listSummaries(filterByDocumentObjectFilter(documentObjectFilter))
+    }
+
+    fun listSummaries(customFilter: Op<Boolean>): List<DocumentObjectSummary> {
+        return transaction(database) {
+            DocumentObjectTable.select(DocumentObjectTable.summaryColumns)
+                .where(customFilter and filter())
+                .orderBy(DocumentObjectTable.id)
+                .map(DocumentObjectTable::summaryFromResultRow)
+        }
+    }
+
+    /**
+     * Number of document objects keyed by their [com.quadient.migration.shared.SkipOptions.skipped] flag, counted by
+     * the database. Both keys are always present.
+     */
+    fun countBySkipped(): Map<Boolean, Long> {
+        val skipped = DocumentObjectTable.skip.extract<String>("skipped")
+        val count = DocumentObjectTable.id.count()
+        val counts = transaction(database) {
+            DocumentObjectTable.select(skipped, count)
+                .where(filter())
+                .groupBy(skipped)
+                .associate { (it[skipped] == "true") to it[count] }
+        }
+        return mapOf(true to (counts[true] ?: 0L), false to (counts[false] ?: 0L))
+    }
+
+    /**
+     * Loads only the content of document object [id], served from the cache when the whole object is cached.
+     */
+    fun findContent(id: String): List<DocumentContent>? {
+        cached(id)?.let { return it.content }
+
+        return transaction(database) {
+            DocumentObjectTable.select(DocumentObjectTable.content)
+                .where(filter(id))
+                .firstOrNull()
+                ?.let { row -> row[DocumentObjectTable.content]?.map(DocumentContent::fromDbContent) ?: emptyList() }
+        }
+    }
+
     override fun fromDb(row: ResultRow): DocumentObject = DocumentObjectTable.fromResultRow(row)
 
+    override fun weightOf(obj: DocumentObject): Long = 1L + obj.content.size
+
     override fun findUsages(id: String): List<MigrationObject> {
-        return transaction {
-            DocumentObjectTable.selectAll().where { DocumentObjectTable.projectName eq projectName }
-                .map { DocumentObjectTable.fromResultRow(it) }.filter { it.collectRefs().any { it.id == id } }
-                .distinct()
-        }
+        return findDocumentObjectUsages(DocumentObjectRef(id))
     }
 
 
+    /**
+     * New objects that are not internal and internal objects that are no longer internal become active.
+     */
+    private fun isActivated(dto: DocumentObject, existingItem: DocumentObject?): Boolean {
+        return (existingItem == null && dto.internal != true) || (dto.internal == false && existingItem?.internal == true)
+    }
+
     override fun upsertBatch(dtos: Collection<DocumentObject>) {
         if (dtos.isEmpty()) return
 
         val columns = listOf(
-            "id", "project_name", "type", "name", "content", "internal", "target_folder",
-            "origin_locations", "custom_fields", "created", "last_updated", "display_rule_ref",
-            "variable_structure_ref", "base_template", "options", "pdf_metadata", "metadata", "skip", "subject"
+            "type", "content", "internal", "target_folder", "display_rule_ref", "variable_structure_ref",
+            "base_template", "options", "pdf_metadata", "metadata", "skip", "subject"
         )
-        val sql = createSql(columns, dtos.size)
-        val now = Clock.System.now()
-
-        upsertBatchInternal(dtos) {
-            val stmt = it.prepareStatement(sql)
-            var index = 1
-            dtos.forEach { dto ->
-                val existingItem = find(dto.id)
-                when (dto.type) {
-                    DocumentObjectType.Page -> require(dto.options == null || dto.options is PageOptions)
-                    else -> require(dto.options == null || dto.options !is PageOptions)
-                }
-
-                if ((existingItem == null && dto.internal != true) || (dto.internal == false && existingItem?.internal == true)) {
-                    statusTrackingRepository.active(
-                        dto.id, ResourceType.DocumentObject, mapOf("type" to dto.type.toString())
-                    )
-                }
-
-                stmt.setString(index++, dto.id)
-                stmt.setString(index++, this@DocumentObjectRepository.projectName)
-                stmt.setString(index++, dto.type.name)
-                stmt.setString(index++, dto.name)
-                stmt.setObject(index++, Json.encodeToString(dto.content.toDb()), Types.OTHER)
-                stmt.setBoolean(index++, dto.internal == true)
-                stmt.setString(index++, dto.targetFolder)
-                stmt.setArray(index++, it.createArrayOf("text", existingItem?.originLocations.concat(dto.originLocations).distinct().toTypedArray()))
-                stmt.setObject(index++, Json.encodeToString(dto.customFields.inner), Types.OTHER)
-                stmt.setTimestamp(index++, java.sql.Timestamp.from((existingItem?.created ?: now).toJavaInstant()))
-                stmt.setTimestamp(index++, java.sql.Timestamp.from(now.toJavaInstant()))
-                stmt.setString(index++, dto.displayRuleRef?.id)
-                stmt.setString(index++, dto.variableStructureRef?.id)
-                stmt.setObject(index++, dto.baseTemplate?.let { Json.encodeToString(it.toDb()) }, Types.OTHER)
-                stmt.setObject(index++, dto.options?.let { Json.encodeToString(it.toDb()) }, Types.OTHER)
-                stmt.setObject(index++, dto.pdfMetadata?.let { Json.encodeToString(it.toDb()) }, Types.OTHER)
-                stmt.setObject(index++, dto.metadata.let { Json.encodeToString(it) }, Types.OTHER)
-                stmt.setObject(index++, Json.encodeToString(dto.skip), Types.OTHER)
-                stmt.setString(index++, dto.subject)
+
+        val activate = { objects: Collection<DocumentObject>, existing: Map<String, DocumentObject> ->
+            val activated = objects.filter { isActivated(it, existing[it.id]) }
+            statusTrackingRepository.activeAll(
+                ResourceType.DocumentObject, activated.associate { it.id to mapOf("type" to it.type.toString()) }
+            )
+        }
+        upsertBatchInternal(dtos, columns, activate) { dto, _ ->
+            when (dto.type) {
+                DocumentObjectType.Page -> require(dto.options == null || dto.options is PageOptions)
+                else -> require(dto.options == null || dto.options !is PageOptions)
             }
 
-            stmt.executeUpdate()
+            string(dto.type.name)
+            string(Json.encodeToString(dto.content.toDb()))
+            bool(dto.internal == true)
+            string(dto.targetFolder)
+            string(dto.displayRuleRef?.id)
+            string(dto.variableStructureRef?.id)
+            string(dto.baseTemplate?.let { Json.encodeToString(it.toDb()) })
+            string(dto.options?.let { Json.encodeToString(it.toDb()) })
+            string(dto.pdfMetadata?.let { Json.encodeToString(it.toDb()) })
+            string(Json.encodeToString(dto.metadata))
+            string(Json.encodeToString(dto.skip))
+            string(dto.subject)
         }
     }
 
@@ -108,7 +154,7 @@ class DocumentObjectRepository(projectName: ProjectName, private val statusTrack
 
             val now = Clock.System.now()
 
-            if ((existingItem == null && dto.internal != true) || (dto.internal == false && existingItem?.internal == true)) {
+            if (isActivated(dto, existingItem)) {
                 statusTrackingRepository.active(
                     dto.id, ResourceType.DocumentObject, mapOf("type" to dto.type.toString())
                 )
@@ -3,25 +3,26 @@ package com.quadient.migration.api.repository
 import com.quadient.migration.api.ProjectName
 import com.quadient.migration.api.dto.migrationmodel.CustomFieldMap
 import com.quadient.migration.api.dto.migrationmodel.Image
+import com.quadient.migration.api.dto.migrationmodel.ImageRef
 import com.quadient.migration.api.dto.migrationmodel.MigrationObject
-import com.quadient.migration.persistence.table.DocumentObjectTable
 import com.quadient.migration.persistence.table.ImageTable
 import com.quadient.migration.service.deploy.utility.ResourceType
 import com.quadient.migration.shared.IcmPath
 import com.quadient.migration.shared.ImageType
 import com.quadient.migration.tools.concat
 import kotlin.time.Clock
-import kotlin.time.toJavaInstant
 import kotlinx.serialization.json.Json
-import java.sql.Types
 import org.jetbrains.exposed.v1.core.eq
 import org.jetbrains.exposed.v1.core.ResultRow
+import org.jetbrains.exposed.v1.jdbc.Database
 import org.jetbrains.exposed.v1.jdbc.selectAll
-import org.jetbrains.exposed.v1.jdbc.transactions.transaction
 import org.jetbrains.exposed.v1.jdbc.upsertReturning
 
-class ImageRepository(projectName: ProjectName, private val statusTrackingRepository: StatusTrackingRepository) :
-    Repository<Image>(ImageTable, projectName.name) {
+class ImageRepository(
+    projectName: ProjectName,
+    private val statusTrackingRepository: StatusTrackingRepository,
+    database: Database? = null,
+) : Repository<Image>(ImageTable, projectName.name, database) {
 
     override fun fromDb(row: ResultRow): Image {
         return Image(
@@ -43,11 +44,7 @@ class ImageRepository(projectName: ProjectName, private val statusTrackingReposi
     }
 
     override fun findUsages(id: String): List<MigrationObject> {
-        return transaction {
-            DocumentObjectTable.selectAll().where { DocumentObjectTable.projectName eq projectName }
-                .map { DocumentObjectTable.fromResultRow(it) }.filter { it.collectRefs().any { it.id == id } }
-                .distinct()
-        }
+        return findDocumentObjectUsages(ImageRef(id))
     }
 
     override fun upsert(dto: Image) {
@@ -84,41 +81,23 @@ class ImageRepository(projectName: ProjectName, private val statusTrackingReposi
         if (dtos.isEmpty()) return
 
         val columns = listOf(
-            "id", "project_name", "name", "origin_locations", "custom_fields",
-            "created", "last_updated", "source_path", "image_type", "options",
-            "target_folder", "metadata", "skip", "alternate_text", "target_attachment_id"
+            "source_path", "image_type", "options", "target_folder", "metadata", "skip", "alternate_text",
+            "target_attachment_id"
         )
-        val sql = createSql(columns, dtos.size)
-        val now = Clock.System.now()
-
-        upsertBatchInternal(dtos) {
-            val stmt = it.prepareStatement(sql)
-            var index = 1
-            dtos.forEach { dto ->
-                val existingItem = find(dto.id)
-
-                if (existingItem == null) {
-                    statusTrackingRepository.active(dto.id, ResourceType.Image)
-                }
 
-                stmt.setString(index++, dto.id)
-                stmt.setString(index++, this@ImageRepository.projectName)
-                stmt.setString(index++, dto.name)
-                stmt.setArray(index++, it.createArrayOf("text", existingItem?.originLocations.concat(dto.originLocations).distinct().toTypedArray()))
-                stmt.setObject(index++, Json.encodeToString(dto.customFields.inner), Types.OTHER)
-                stmt.setTimestamp(index++, java.sql.Timestamp.from((existingItem?.created ?: now).toJavaInstant()))
-                stmt.setTimestamp(index++, java.sql.Timestamp.from(now.toJavaInstant()))
-                stmt.setString(index++, dto.sourcePath)
-                stmt.setString(index++, dto.imageType?.toString() ?: ImageType.Unknown.toString())
-                stmt.setObject(index++, dto.options?.let { Json.encodeToString(it) }, Types.OTHER)
-                stmt.setString(index++, dto.targetFolder)
-                stmt.setObject(index++, Json.encodeToString(dto.metadata), Types.OTHER)
-                stmt.setObject(index++, Json.encodeToString(dto.skip), Types.OTHER)
-                stmt.setString(index++, dto.alternateText)
-                stmt.setString(index++, dto.targetAttachmentId)
-            }
-
-            stmt.executeUpdate()
+        val activate = { objects: Collection<Image>, existing: Map<String, Image> ->
+            val created = objects.filter { it.id !in existing }
+            statusTrackingRepository.activeAll(ResourceType.Image, created.associate { it.id to emptyMap() })
+        }
+        upsertBatchInternal(dtos, columns, activate) { dto, _ ->
+            string(dto.sourcePath)
+            string(dto.imageType?.toString() ?: ImageType.Unknown.toString())
+            string(dto.options?.let { Json.encodeToString(it) })
+            string(dto.targetFolder)
+            string(Json.encodeToString(dto.metadata))
+            string(Json.encodeToString(dto.skip))
+            string(dto.alternateText)
+            string(dto.targetAttachmentId)
         }
     }
 }
\ No newline at end of file
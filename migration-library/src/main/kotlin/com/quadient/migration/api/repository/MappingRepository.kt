@@ -13,6 +13,7 @@ import com.quadient.migration.api.dto.migrationmodel.Mapping
 import com.quadient.migration.api.dto.migrationmodel.MappingItem
 import com.quadient.migration.api.dto.migrationmodel.MigrationObject
 import com.quadient.migration.api.dto.migrationmodel.VariableStructure
+import com.quadient.migration.persistence.UnitOfWork
 import com.quadient.migration.persistence.migrationmodel.MappingItemEntity
 import com.quadient.migration.persistence.repository.MappingInternalRepository
 import com.quadient.migration.persistence.table.AttachmentTable
@@ -26,6 +27,7 @@ import com.quadient.migration.persistence.table.TextStyleTable
 import com.quadient.migration.persistence.table.VariableStructureTable
 import com.quadient.migration.persistence.table.VariableTable
 import org.jetbrains.exposed.v1.core.inList
+import org.jetbrains.exposed.v1.jdbc.Database
 import org.jetbrains.exposed.v1.jdbc.transactions.transaction
 import com.quadient.migration.tools.logger
 
@@ -40,12 +42,13 @@ class MappingRepository(
     private val variableStructureRepository: VariableStructureRepository,
     private val displayRuleRepository: DisplayRuleRepository,
     private val baseTemplateRepository: BaseTemplateRepository,
+    private val database: Database? = null,
 ) {
     private val logger by logger()
-    private val internalRepository = MappingInternalRepository(projectName.name)
+    private val internalRepository = MappingInternalRepository(projectName.name, database)
 
     fun listAll(): List<Mapping> {
-        return transaction { internalRepository.listAll().map { it.toDto() } }
+        return transaction(database) { internalRepository.listAll().map { it.toDto() } }
     }
 
     fun applyAll() = applyAll {}
@@ -65,15 +68,18 @@ class MappingRepository(
     }
 
     fun upsert(id: String, mapping: MappingItem): Mapping {
-        return transaction { internalRepository.upsert(id, mapping.toDb()).toDto() }
+        val result = transaction(database) { internalRepository.upsert(id, mapping.toDb()).toDto() }
+        UnitOfWork.current()?.recordWrites(1)
+        return result
     }
 
     fun upsertBatch(entries: Map<String, MappingItem>) {
-        return transaction { internalRepository.upsertBatch(entries.map { (k, v) -> k to v.toDb() }) }
+        transaction(database) { internalRepository.upsertBatch(entries.map { (k, v) -> k to v.toDb() }) }
+        UnitOfWork.current()?.recordWrites(entries.size)
     }
 
     fun getDocumentObjectMapping(id: String): MappingItem.DocumentObject {
-        return transaction {
+        return transaction(database) {
             (internalRepository.find<MappingItemEntity.DocumentObject>(id) ?: MappingItemEntity.DocumentObject(
                 name = null,
                 internal = null,
@@ -340,7 +346,7 @@ class MappingRepository(
         table: MigrationObjectTable,
         noinline onError: (String) -> Unit = {},
     ) {
-        transaction {
+        transaction(database) {
             val mappings = internalRepository
                 .listByType(T::class)
                 .associate { it.resourceId.value to it.mapping as T }
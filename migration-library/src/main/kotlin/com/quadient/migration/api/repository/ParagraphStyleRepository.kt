@@ -8,23 +8,23 @@ import com.quadient.migration.api.dto.migrationmodel.ParagraphStyleDefinition
 import com.quadient.migration.api.dto.migrationmodel.ParagraphStyleRef
 import com.quadient.migration.api.dto.migrationmodel.Tab
 import com.quadient.migration.api.dto.migrationmodel.Tabs
-import com.quadient.migration.persistence.table.DocumentObjectTable
 import com.quadient.migration.persistence.table.ParagraphStyleTable
 import com.quadient.migration.service.deploy.utility.ResourceType
 import com.quadient.migration.tools.concat
 import kotlin.time.Clock
-import kotlin.time.toJavaInstant
 import kotlinx.serialization.json.Json
-import java.sql.Types
 import org.jetbrains.exposed.v1.core.ResultRow
 import org.jetbrains.exposed.v1.core.eq
+import org.jetbrains.exposed.v1.jdbc.Database
 import org.jetbrains.exposed.v1.jdbc.selectAll
-import org.jetbrains.exposed.v1.jdbc.transactions.transaction
 import org.jetbrains.exposed.v1.jdbc.upsertReturning
 import kotlin.collections.map
 
-class ParagraphStyleRepository(projectName: ProjectName, private val statusTrackingRepository: StatusTrackingRepository) :
-    Repository<ParagraphStyle>(ParagraphStyleTable, projectName.name) {
+class ParagraphStyleRepository(
+    projectName: ProjectName,
+    private val statusTrackingRepository: StatusTrackingRepository,
+    database: Database? = null,
+) : Repository<ParagraphStyle>(ParagraphStyleTable, projectName.name, database) {
     override fun fromDb(row: ResultRow): ParagraphStyle {
         val definitionEntity = row[ParagraphStyleTable.definition]
         val definition = ParagraphStyleDefinition(
@@ -59,11 +59,7 @@ class ParagraphStyleRepository(projectName: ProjectName, private val statusTrack
     }
 
     override fun findUsages(id: String): List<MigrationObject> {
-        return transaction {
-            DocumentObjectTable.selectAll().where { DocumentObjectTable.projectName eq projectName }
-                .map { DocumentObjectTable.fromResultRow(it) }.filter { it.collectRefs().any { it.id == id } }
-                .distinct()
-        }
+        return findDocumentObjectUsages(ParagraphStyleRef(id))
     }
 
     override fun upsert(dto: ParagraphStyle) {
@@ -93,35 +89,15 @@ class ParagraphStyleRepository(projectName: ProjectName, private val statusTrack
     override fun upsertBatch(dtos: Collection<ParagraphStyle>) {
         if (dtos.isEmpty()) return
 
-        val columns = listOf(
-            "id", "project_name", "name", "origin_locations", "custom_fields",
-            "created", "last_updated", "definition", "target_id"
-        )
-        val sql = createSql(columns, dtos.size)
-        val now = Clock.System.now()
-
-        upsertBatchInternal(dtos) {
-            val stmt = it.prepareStatement(sql)
-            var index = 1
-            dtos.forEach { dto ->
-                val existingItem = find(dto.id)
-
-                if (existingItem == null) {
-                    statusTrackingRepository.active(dto.id, ResourceType.ParagraphStyle)
-                }
+        val columns = listOf("definition", "target_id")
 
-                stmt.setString(index++, dto.id)
-                stmt.setString(index++, this@ParagraphStyleRepository.projectName)
-                stmt.setString(index++, dto.name)
-                stmt.setArray(index++, it.createArrayOf("text", existingItem?.originLocations.concat(dto.originLocations).distinct().toTypedArray()))
-                stmt.setObject(index++, Json.encodeToString(dto.customFields.inner), Types.OTHER)
-                stmt.setTimestamp(index++, java.sql.Timestamp.from((existingItem?.created ?: now).toJavaInstant()))
-                stmt.setTimestamp(index++, java.sql.Timestamp.from(now.toJavaInstant()))
-                stmt.setObject(index++, Json.encodeToString(dto.definition.toDb()), Types.OTHER)
-                stmt.setString(index++, dto.targetId?.id)
-            }
-
-            stmt.executeUpdate()
+        val activate = { objects: Collection<ParagraphStyle>, existing: Map<String, ParagraphStyle> ->
+            val created = objects.filter { it.id !in existing }
+            statusTrackingRepository.activeAll(ResourceType.ParagraphStyle, created.associate { it.id to emptyMap() })
+        }
+        upsertBatchInternal(dtos, columns, activate) { dto, _ ->
+            string(Json.encodeToString(dto.definition.toDb()))
+            string(dto.targetId?.id)
         }
     }
 }
@@ -0,0 +1,232 @@
+package com.quadient.migration.api.repository
+
+import com.quadient.migration.api.dto.migrationmodel.Attachment
+import com.quadient.migration.api.dto.migrationmodel.AttachmentRef
+import com.quadient.migration.api.dto.migrationmodel.BaseTemplate
+import com.quadient.migration.api.dto.migrationmodel.BaseTemplateRef
+import com.quadient.migration.api.dto.migrationmodel.DisplayRule
+import com.quadient.migration.api.dto.migrationmodel.DisplayRuleRef
+import com.quadient.migration.api.dto.migrationmodel.DocumentObject
+import com.quadient.migration.api.dto.migrationmodel.DocumentObjectRef
+import com.quadient.migration.api.dto.migrationmodel.Image
+import com.quadient.migration.api.dto.migrationmodel.ImageRef
+import com.quadient.migration.api.dto.migrationmodel.MigrationObject
+import com.quadient.migration.api.dto.migrationmodel.ParagraphStyle
+import com.quadient.migration.api.dto.migrationmodel.ParagraphStyleRef
+import com.quadient.migration.api.dto.migrationmodel.Ref
+import com.quadient.migration.api.dto.migrationmodel.RefValidatable
+import com.quadient.migration.api.dto.migrationmodel.TextStyle
+import com.quadient.migration.api.dto.migrationmodel.TextStyleRef
+import com.quadient.migration.api.dto.migrationmodel.Variable
+import com.quadient.migration.api.dto.migrationmodel.VariableRef
+import com.quadient.migration.api.dto.migrationmodel.VariableStructure
+import com.quadient.migration.api.dto.migrationmodel.VariableStructureRef
+import com.quadient.migration.persistence.table.AttachmentTable
+import com.quadient.migration.persistence.table.BaseTemplateTable
+import com.quadient.migration.persistence.table.DisplayRuleTable
+import com.quadient.migration.persistence.table.DocumentObjectTable
+import com.quadient.migration.persistence.table.ImageTable
+import com.quadient.migration.persistence.table.MigrationObjectTable
+import com.quadient.migration.persistence.table.ParagraphStyleTable
+import com.quadient.migration.persistence.table.TextStyleTable
+import com.quadient.migration.persistence.table.VariableStructureTable
+import com.quadient.migration.persistence.table.VariableTable
+import org.jetbrains.exposed.v1.jdbc.Database
+import org.jetbrains.exposed.v1.jdbc.transactions.TransactionManager
+import java.lang.ref.WeakReference
+import java.util.WeakHashMap
+import kotlin.reflect.KClass
+
+/**
+ * In memory index of references between migration objects of a single project.
+ *
+ * Nodes are identified by their [Ref] (document object refs without a display rule) and edges are the result
+ * of [RefValidatable.collectRefs] of the object.
+ *
+ * Edges are resolved lazily per object and cached. A type of objects is complete once it was loaded through the
+ * loader registered by its [Repository], which happens on the first [allReferences] call for the type.
+ * Repositories keep the graph up to date on upsert and delete, so the graph is shared by all repositories and
+ * services of the same project, see [of]. Reverse lookups are answered by the persisted references instead,
+ * see [Repository.findUsages].
+ *
+ * The graph is kept alive by the repositories and services using it, not by the registry behind [of], so it is
+ * released together with them.
+ */
+class ReferenceGraph internal constructor() {
+    private val references = HashMap<Ref, Set<Ref>?>()
+    private val loaders = HashMap<KClass<out Ref>, () -> Sequence<MigrationObject>>()
+    private val loadedTypes = HashSet<KClass<out Ref>>()
+
+    /**
+     * Direct references of the object identified by [ref]. When the object is not indexed yet, it is obtained
+     * through [resolve] and its references are cached.
+     * @return references of the object or null when the object does not exist
+     */
+    fun referencesOf(ref: Ref, resolve: (Ref) -> RefValidatable?): Set<Ref>? {
+        val node = ref.toNode()
+        synchronized(this) {
+            if (references.containsKey(node)) {
+                return references[node]
+            }
+            if (node::class in loadedTypes) {
+                return null
+            }
+        }
+
+        val resolved = resolve(node)
+        synchronized(this) {
+            if (!references.containsKey(node)) {
+                references[node] = resolved?.collectRefs()
+            }
+            return references[node]
+        }
+    }
+
+    /**
+     * All existing objects of the given types together with their direct references. Types are loaded first
+     * if they were not loaded yet.
+     */
+    fun allReferences(types: Collection<KClass<out Ref>>): Map<Ref, Set<Ref>> {
+        types.forEach(::ensureLoaded)
+        synchronized(this) {
+            return buildMap {
+                for ((node, refs) in references) {
+                    if (refs != null && node::class in types) {
+                        put(node, refs)
+                    }
+                }
+            }
+        }
+    }
+
+    internal fun register(table: MigrationObjectTable, loader: () -> Sequence<MigrationObject>) {
+        synchronized(this) {
+            loaders[refType(table)] = loader
+        }
+    }
+
+    internal fun put(obj: MigrationObject) {
+        val node = refOf(obj)
+        val refs = (obj as? RefValidatable)?.collectRefs() ?: emptySet()
+        synchronized(this) {
+            references[node] = refs
+        }
+    }
+
+    internal fun remove(table: MigrationObjectTable, id: String) {
+        synchronized(this) {
+            references[refOf(table, id)] = null
+        }
+    }
+
+    internal fun clear(table: MigrationObjectTable) {
+        val type = refType(table)
+        synchronized(this) {
+            references.keys.removeAll { type.isInstance(it) }
+            loadedTypes.add(type)
+        }
+    }
+
+    /**
+     * Forgets the references of object [id] or of all objects stored in [table] when [id] is null. They are resolved
+     * again on the next lookup and the type is loaded again on the next [allReferences] call.
+     */
+    internal fun invalidate(table: MigrationObjectTable, id: String? = null) {
+        val type = refType(table)
+        synchronized(this) {
+            if (id == null) {
+                references.keys.removeAll { type.isInstance(it) }
+            } else {
+                references.remove(refOf(table, id))
+            }
+            loadedTypes.remove(type)
+        }
+    }
+
+    private fun ensureLoaded(type: KClass<out Ref>) {
+        val loader = synchronized(this) {
+            if (type in loadedTypes) {
+                return
+            }
+            loaders[type] ?: error("Unable to load references of '${type.simpleName}', no repository is registered.")
+        }
+
+        // Only the references are kept, so the objects are not held in memory while the type is loaded
+        val loaded = loader().associate { refOf(it) to ((it as? RefValidatable)?.collectRefs() ?: emptySet()) }
+        synchronized(this) {
+            if (loadedTypes.add(type)) {
+                // Objects put or removed while the loader ran are newer than the loaded snapshot, removed ones
+                // are kept as null entries
+                loaded.forEach { (node, refs) -> if (node !in references) references[node] = refs }
+            }
+        }
+    }
+
+    companion object {
+        // Graphs are referenced weakly, their loaders capture repositories holding the database used as the key
+        private val graphs = WeakHashMap<Database, MutableMap<String, WeakReference<ReferenceGraph>>>()
+
+        /**
+         * Graph of the given project in [database], the primary database of Exposed when null.
+         */
+        fun of(projectName: String, database: Database? = null): ReferenceGraph {
+            val graphDatabase = database ?: TransactionManager.primaryDatabase
+                ?: error("Reference graph of project '$projectName' requested before database connection was made.")
+            return synchronized(graphs) {
+                val projects = graphs.getOrPut(graphDatabase) { mutableMapOf() }
+                projects[projectName]?.get() ?: ReferenceGraph().also { projects[projectName] = WeakReference(it) }
+            }
+        }
+
+        /**
+         * Forgets graphs of all projects in [database], so a later [of] call creates new ones.
+         */
+        internal fun release(database: Database) {
+            synchronized(graphs) {
+                graphs.remove(database)
+            }
+        }
+
+        fun refOf(obj: MigrationObject): Ref = when (obj) {
+            is DocumentObject -> DocumentObjectRef(obj.id)
+            is Image -> ImageRef(obj.id)
+            is Attachment -> AttachmentRef(obj.id)
+            is TextStyle -> TextStyleRef(obj.id)
+            is ParagraphStyle -> ParagraphStyleRef(obj.id)
+            is DisplayRule -> DisplayRuleRef(obj.id)
+            is Variable -> VariableRef(obj.id)
+            is VariableStructure -> VariableStructureRef(obj.id)
+            is BaseTemplate -> BaseTemplateRef(obj.id)
+            else -> error("Unsupported migration object type '${obj::class.simpleName}'.")
+        }
+
+        internal fun refOf(table: MigrationObjectTable, id: String): Ref = when (table) {
+            DocumentObjectTable -> DocumentObjectRef(id)
+            ImageTable -> ImageRef(id)
+            AttachmentTable -> AttachmentRef(id)
+            TextStyleTable -> TextStyleRef(id)
+            ParagraphStyleTable -> ParagraphStyleRef(id)
+            DisplayRuleTable -> DisplayRuleRef(id)
+            VariableTable -> VariableRef(id)
+            VariableStructureTable -> VariableStructureRef(id)
+            BaseTemplateTable -> BaseTemplateRef(id)
+            else -> error("Unsupported table '${table.tableName}'.")
+        }
+
+        internal fun tableOf(ref: Ref): MigrationObjectTable = when (ref) {
+            is DocumentObjectRef -> DocumentObjectTable
+            is ImageRef -> ImageTable
+            is AttachmentRef -> AttachmentTable
+            is TextStyleRef -> TextStyleTable
+            is ParagraphStyleRef -> ParagraphStyleTable
+            is DisplayRuleRef -> DisplayRuleTable
+            is VariableRef -> VariableTable
+            is VariableStructureRef -> VariableStructureTable
+            is BaseTemplateRef -> BaseTemplateTable
+        }
+
+        private fun refType(table: MigrationObjectTable): KClass<out Ref> = refOf(table, "_")::class
+
+        private fun Ref.toNode(): Ref = if (this is DocumentObjectRef && displayRuleRef != null) DocumentObjectRef(id) else this
+    }
+}
@@ -1,71 +1,138 @@
 package com.quadient.migration.api.repository
 
+import com.quadient.migration.api.CacheConfig
 import com.quadient.migration.api.dto.migrationmodel.MigrationObject
 import com.quadient.migration.api.dto.migrationmodel.Ref
 import com.quadient.migration.api.dto.migrationmodel.RefValidatable
+import com.quadient.migration.persistence.BulkLoader
+import com.quadient.migration.persistence.BulkRow
+import com.quadient.migration.persistence.MAX_IN_LIST_SIZE
+import com.quadient.migration.persistence.UnitOfWork
+import com.quadient.migration.persistence.repository.ReferenceInternalRepository
+import com.quadient.migration.persistence.table.DocumentObjectTable
 import com.quadient.migration.persistence.table.MigrationObjectTable
-import com.quadient.migration.tools.getOrPutOrNull
+import com.quadient.migration.persistence.table.ReferenceTable
+import com.quadient.migration.tools.SingleFlight
+import com.quadient.migration.tools.concat
+import kotlinx.serialization.json.Json
+import org.jetbrains.exposed.v1.core.JoinType
 import org.jetbrains.exposed.v1.core.Op
 import org.jetbrains.exposed.v1.core.ResultRow
 import org.jetbrains.exposed.v1.core.and
 import org.jetbrains.exposed.v1.core.eq
+import org.jetbrains.exposed.v1.core.greater
 import org.jetbrains.exposed.v1.core.inList
+import org.jetbrains.exposed.v1.jdbc.Database
 import org.jetbrains.exposed.v1.jdbc.JdbcTransaction
 import org.jetbrains.exposed.v1.jdbc.deleteWhere
 import org.jetbrains.exposed.v1.jdbc.selectAll
 import org.jetbrains.exposed.v1.jdbc.transactions.transaction
+import java.util.stream.Stream
+import kotlin.time.Clock
+import kotlin.streams.asStream
 
+/**
+ * Migration objects of one project stored in [table]. Transactions run on [database], the default database of Exposed
+ * when null.
+ */
 abstract class Repository<T : MigrationObject>(
-    protected val table: MigrationObjectTable, protected val projectName: String
+    protected val table: MigrationObjectTable,
+    protected val projectName: String,
+    protected val database: Database? = null,
 ) {
-    private val cache = mutableMapOf<String, T>()
-    private var allCached = false
+    @Volatile
+    private var cache = RepositoryCache(CacheConfig(), ::weightOf)
+    private val loads = SingleFlight<String, T?>()
+
+    val referenceGraph: ReferenceGraph = ReferenceGraph.of(projectName, database)
+    private val references = ReferenceInternalRepository(projectName, database)
+
+    init {
+        referenceGraph.register(table) { sequenceAll() }
+    }
 
     abstract fun fromDb(row: ResultRow): T
 
     fun listAll(): List<T> {
-        if (allCached) {
-            return cache.values.toList()
+        cache.values()?.let { return it }
+
+        val result = transaction(database) { table.selectAll().where(filter()).map(::fromDb) }
+        cache.putAll(result)
+        return result
+    }
+
+    /**
+     * Lazily reads all objects of the project ordered by id. Objects are fetched in pages of [batchSize] using keyset
+     * pagination on the id, each page in its own transaction, and they are not cached by the repository, so only
+     * a single page is held in memory at a time.
+     */
+    fun sequenceAll(batchSize: Int = DEFAULT_BATCH_SIZE): Sequence<T> {
+        require(batchSize > 0) { "Batch size must be positive, was $batchSize." }
+        return sequence {
+            var lastId: String? = null
+            do {
+                val page = listPage(lastId, batchSize)
+                yieldAll(page)
+                lastId = page.lastOrNull()?.id
+            } while (page.size == batchSize)
         }
-        return transaction {
-            val result = table.selectAll().where(filter()).map {
-                val result = fromDb(it)
-                cache[result.id] = result
-                result
+    }
+
+    /**
+     * Java [Stream] variant of [sequenceAll].
+     */
+    fun streamAll(batchSize: Int = DEFAULT_BATCH_SIZE): Stream<T> {
+        return sequenceAll(batchSize).asStream()
+    }
+
+    private fun listPage(afterId: String?, limit: Int): List<T> {
+        return transaction(database) {
+            var condition = filter()
+            if (afterId != null) {
+                condition = condition and (table.id greater afterId)
             }
-            allCached = true
-            result
+            table.selectAll().where(condition).orderBy(table.id).limit(limit).map(::fromDb)
         }
     }
 
     open fun listIds(ids: List<String>): List<T> {
-        return transaction {
+        return transaction(database) {
             table.selectAll().where((table.id inList ids) and filter()).map {
                 val result = fromDb(it)
-                cache[result.id] = result
+                cache.put(result)
                 result
             }
         }
     }
 
     open fun list(customFilter: Op<Boolean>): List<T> {
-        return transaction {
+        return transaction(database) {
             table.selectAll().where(customFilter and filter()).map {
                 val result = fromDb(it)
-                cache[result.id] = result
+                cache.put(result)
                 result
             }
         }
     }
 
     fun find(id: String): T? {
-        return cache.getOrPutOrNull(id) {
-            transaction {
-                table.selectAll().where(filter(id)).firstOrNull()?.let(::fromDb)
+        cache.get(id)?.let { return it }
+
+        // Concurrent lookups of the same object share a single query
+        return loads.load(id) {
+            val result = transaction(database) { table.selectAll().where(filter(id)).firstOrNull()?.let(::fromDb) }
+            if (result != null) {
+                cache.put(result)
             }
+            result
         }
     }
 
+    /**
+     * Object [id] when it is cached, the database is not queried.
+     */
+    protected fun cached(id: String): T? = cache.get(id)
+
     fun findOrFail(id: String): T {
         val model = find(id)
         return if (model != null) {
@@ -77,11 +144,11 @@ abstract class Repository<T : MigrationObject>(
     }
 
     fun findByName(name: String): T? {
-        val found = cache.values.find { it.name == name }
-        return found ?: transaction {
+        val found = cache.find { it.name == name }
+        return found ?: transaction(database) {
             val result = table.selectAll().where(filter(name = name)).firstOrNull()?.let(::fromDb)
             if (result != null) {
-                cache[result.id] = result
+                cache.put(result)
             }
             result
         }
@@ -96,28 +163,69 @@ abstract class Repository<T : MigrationObject>(
     }
 
     fun findRefs(id: String): List<Ref> {
-        val model = find(id)
-        if (model != null && model is RefValidatable) {
-            return model.collectRefs().toList()
-        }
-        return emptyList()
+        val refs = referenceGraph.referencesOf(ReferenceGraph.refOf(table, id)) { find(id) as? RefValidatable }
+        return refs?.toList() ?: emptyList()
+    }
+
+    /**
+     * Replaces the cache of this repository, objects cached so far are dropped.
+     */
+    fun configureCache(config: CacheConfig) {
+        cache = RepositoryCache(config, ::weightOf)
     }
 
+    fun cacheStats(): CacheStats = cache.stats()
+
+    /**
+     * Drops the cached object [id], to be called when the object was changed outside of this repository,
+     * e.g. by another process.
+     */
+    fun invalidate(id: String) {
+        cache.remove(id)
+        referenceGraph.invalidate(table, id)
+    }
+
+    /**
+     * Drops all cached objects of this repository, see [invalidate].
+     */
+    fun invalidateAll() {
+        cache.clear()
+        referenceGraph.invalidate(table)
+    }
+
+    /**
+     * Weight of [obj] in the cache with [com.quadient.migration.api.CachePolicy.SizeWeighted] policy.
+     */
+    protected open fun weightOf(obj: T): Long = 1
+
     fun delete(id: String) {
         cache.remove(id)
-        transaction { table.deleteWhere { filter(id = id) } }
+        transaction(database) {
+            table.deleteWhere { filter(id = id) }
+            references.delete(table, id)
+        }
+        referenceGraph.remove(table, id)
+        UnitOfWork.current()?.recordWrites(1, this)
     }
 
     fun deleteAll(): Int {
         cache.clear()
-        return transaction { table.deleteWhere { filter() } }
+        val result = transaction(database) {
+            references.deleteAll(table)
+            table.deleteWhere { filter() }
+        }
+        referenceGraph.clear(table)
+        UnitOfWork.current()?.recordWrites(result, this)
+        return result
     }
 
     fun destroy() {
         cache.clear()
-        transaction {
+        transaction(database) {
+            references.deleteAll(table)
             exec("DROP TABLE ${table.tableName}")
         }
+        referenceGraph.clear(table)
     }
 
     protected fun filter(id: String? = null, name: String? = null): Op<Boolean> {
@@ -132,55 +240,114 @@ abstract class Repository<T : MigrationObject>(
     }
 
     protected fun upsertInternal(block: JdbcTransaction.() -> ResultRow): T {
-        return transaction {
+        val result = transaction(database) {
             val result = fromDb(block())
-            cache[result.id] = result
+            references.replace(table, listOf(result))
+            cache.put(result)
             result
         }
+        referenceGraph.put(result)
+        UnitOfWork.current()?.recordWrites(1, this)
+        return result
     }
 
     fun count(): Long {
-        return transaction {
+        return transaction(database) {
             table.selectAll().where(filter()).count()
         }
     }
 
-    protected fun <D : MigrationObject> upsertBatchInternal(dtos: Collection<D>, block: (java.sql.Connection) -> Unit) {
-        transaction {
-            block(connection.connection as java.sql.Connection)
+    /**
+     * Bulk upsert of [dtos] used by [upsertBatch]. Existing objects are prefetched by id in bulk and rows are loaded
+     * with `COPY` and merged in chunks by [BulkLoader], so batches are not limited by the number of bind
+     * parameters. Common columns of all migration objects are written here, [columns] are the remaining columns
+     * written by [writeRow] in the same order. When [dtos] contain the same id more than once, the last one is used.
+     *
+     * [afterWrite] receives the written objects and objects that existed before the upsert by id. It runs in the same
+     * transaction as the upsert and before the writes are recorded in the current [UnitOfWork], so rows it writes are
+     * committed in the same chunk as the objects.
+     */
+    protected fun upsertBatchInternal(
+        dtos: Collection<T>,
+        columns: List<String>,
+        afterWrite: (objects: Collection<T>, existing: Map<String, T>) -> Unit = { _, _ -> },
+        writeRow: BulkRow.(dto: T, existing: T?) -> Unit,
+    ) {
+        val objects = dtos.associateBy { it.id }.values
+        val now = Clock.System.now()
+
+        transaction(database) {
+            val existing = findExisting(objects.map { it.id })
+            val loader = BulkLoader(connection.connection as java.sql.Connection, table.tableName, COMMON_COLUMNS + columns)
+            loader.merge(objects) { dto ->
+                val existingItem = existing[dto.id]
+                string(dto.id)
+                string(this@Repository.projectName)
+                string(dto.name)
+                textArray(existingItem?.originLocations.concat(dto.originLocations).distinct())
+                string(Json.encodeToString(dto.customFields.inner))
+                timestamp(existingItem?.created ?: now)
+                timestamp(now)
+                writeRow(dto, existingItem)
+            }
+            references.replace(table, objects)
+            afterWrite(objects, existing)
         }
-        cacheObjects(dtos)
+        // Stored rows differ from the objects only in merged columns, so they are not read back. References come from
+        // the content, which is written as is.
+        for (obj in objects) {
+            cache.remove(obj.id)
+            referenceGraph.put(obj)
+        }
+        UnitOfWork.current()?.recordWrites(objects.size, this)
     }
 
-    protected fun createSql(columns: List<String>, dtoCount: Int): String {
-        val placeholders = (1..columns.size).joinToString(",", prefix = "(", postfix = ")") { "?" }
-        val values = (1..dtoCount).joinToString(",") { placeholders }
-        val setOnConflict = columns.filter { it != "created" }.joinToString(", ") { "$it = EXCLUDED.$it" }
-
-        val sql = """
-        INSERT INTO ${table.tableName} (${columns.joinToString(", ")})
-        VALUES $values
-        ON CONFLICT (id, project_name) DO UPDATE SET $setOnConflict
-        """.trimIndent()
+    private fun findExisting(ids: Collection<String>): Map<String, T> {
+        val result = mutableMapOf<String, T>()
+        val missing = ids.filter { id -> cache.get(id)?.also { result[id] = it } == null }
+        for (chunk in missing.chunked(MAX_IN_LIST_SIZE)) {
+            table.selectAll().where(filter() and (table.id inList chunk)).forEach {
+                val obj = fromDb(it)
+                result[obj.id] = obj
+            }
+        }
+        return result
+    }
 
-        return sql
+    /**
+     * Rebuilds persisted references of all objects of this repository from their content.
+     */
+    internal fun rebuildReferences() {
+        transaction(database) {
+            references.deleteAll(table)
+            references.replace(table, table.selectAll().where(filter()).map(::fromDb))
+        }
     }
 
-    protected fun <D : MigrationObject> cacheObjects(dto: Collection<D>) {
-        val ids = dto.map { it.id }.toSet()
-        transaction {
-            for (obj in table.selectAll().where(table.projectName eq projectName and (table.id inList ids))
-                .map(::fromDb)) {
-                cache[obj.id] = obj
-            }
+    /**
+     * Document objects that directly reference [ref], resolved by a join over the persisted references.
+     */
+    protected fun findDocumentObjectUsages(ref: Ref): List<MigrationObject> {
+        return transaction(database) {
+            DocumentObjectTable
+                .join(ReferenceTable, JoinType.INNER, DocumentObjectTable.id, ReferenceTable.sourceId) {
+                    ReferenceTable.projectName eq DocumentObjectTable.projectName
+                }
+                .selectAll()
+                .where(references.usagesFilter(DocumentObjectTable, ref))
+                .orderBy(DocumentObjectTable.id)
+                .map { DocumentObjectTable.fromResultRow(it) }
         }
     }
 
+    /**
+     * Pages through the objects with OFFSET, prefer [sequenceAll] for iterating over the whole project.
+     */
     fun listAllBatched(limit: Int, offset: Long): List<T> {
-        return transaction {
+        return transaction(database) {
             val result = table.selectAll().orderBy(table.id).limit(limit).offset(offset).where(filter()).map {
                 val result = fromDb(it)
-                cache[result.id] = result
+                cache.put(result)
                 result
             }
             result
@@ -192,4 +359,11 @@ abstract class Repository<T : MigrationObject>(
     abstract fun upsert(dto: T)
 
     abstract fun upsertBatch(dtos: Collection<T>)
+
+    companion object {
+        const val DEFAULT_BATCH_SIZE = 500
+
+        private val COMMON_COLUMNS =
+            listOf("id", "project_name", "name", "origin_locations", "custom_fields", "created", "last_updated")
+    }
 }
\ No newline at end of file
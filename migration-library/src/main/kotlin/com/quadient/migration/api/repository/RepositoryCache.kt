@@ -0,0 +1,106 @@
+package com.quadient.migration.api.repository
+
+import com.quadient.migration.api.CacheConfig
+import com.quadient.migration.api.CachePolicy
+import com.quadient.migration.api.dto.migrationmodel.MigrationObject
+
+/**
+ * Counters of a repository cache. [hits] and [misses] count lookups by id and by predicate, [evictions] count objects
+ * dropped because the cache was full.
+ */
+data class CacheStats(val hits: Long, val misses: Long, val evictions: Long, val size: Int, val weight: Long)
+
+/**
+ * Objects cached by a [Repository]. Objects are evicted in least recently used order once the total weight exceeds
+ * the limit given by [CacheConfig]. With [CachePolicy.Lru] every object weighs 1, with [CachePolicy.SizeWeighted]
+ * the weight is given by [weigher] and with [CachePolicy.None] nothing is cached.
+ */
+internal class RepositoryCache<T : MigrationObject>(config: CacheConfig, private val weigher: (T) -> Long) {
+    private class Entry<T>(val value: T, val weight: Long)
+
+    private val policy = config.policy
+    private val maxWeight = when (config.policy) {
+        CachePolicy.Lru -> config.maxEntries.toLong()
+        CachePolicy.SizeWeighted -> config.maxWeight
+        CachePolicy.None -> 0
+    }
+
+    private val entries = LinkedHashMap<String, Entry<T>>(16, 0.75f, true)
+    private var weight = 0L
+    private var hits = 0L
+    private var misses = 0L
+    private var evictions = 0L
+
+    // Set when all objects of the project were loaded and none of them were evicted since
+    private var complete = false
+
+    @Synchronized
+    fun get(id: String): T? {
+        val entry = entries[id]
+        if (entry == null) misses++ else hits++
+        return entry?.value
+    }
+
+    @Synchronized
+    fun find(predicate: (T) -> Boolean): T? {
+        val entry = entries.values.firstOrNull { predicate(it.value) }
+        if (entry == null) misses++ else hits++
+        return entry?.value
+    }
+
+    @Synchronized
+    fun put(value: T) {
+        if (policy == CachePolicy.None) return
+
+        val entry = Entry(value, if (policy == CachePolicy.Lru) 1 else weigher(value))
+        entries.put(value.id, entry)?.let { weight -= it.weight }
+        weight += entry.weight
+        evict()
+    }
+
+    /**
+     * Stores all objects of the project, [values] returns them afterwards until an object is evicted.
+     */
+    @Synchronized
+    fun putAll(values: Collection<T>) {
+        if (policy == CachePolicy.None) return
+
+        val evictionsBefore = evictions
+        values.forEach(::put)
+        complete = evictions == evictionsBefore
+    }
+
+    /**
+     * All objects of the project or null when they are not all cached.
+     */
+    @Synchronized
+    fun values(): List<T>? {
+        return if (complete) entries.values.map { it.value } else null
+    }
+
+    @Synchronized
+    fun remove(id: String) {
+        entries.remove(id)?.let { weight -= it.weight }
+        complete = false
+    }
+
+    @Synchronized
+    fun clear() {
+        entries.clear()
+        weight = 0
+        complete = false
+    }
+
+    @Synchronized
+    fun stats(): CacheStats = CacheStats(hits, misses, evictions, entries.size, weight)
+
+    private fun evict() {
+        val iterator = entries.values.iterator()
+        while (weight > maxWeight && iterator.hasNext()) {
+            weight -= iterator.next().weight
+            iterator.remove()
+            evictions++
+            complete = false
+        }
+    }
+}
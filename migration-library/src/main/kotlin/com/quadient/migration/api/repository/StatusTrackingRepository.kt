@@ -3,42 +3,69 @@ package com.quadient.migration.api.repository
 import StatusTrackingInternalRepository
 import com.quadient.migration.api.InspireOutput
 import com.quadient.migration.api.ProjectName
+import com.quadient.migration.api.dto.migrationmodel.ResourceId
 import com.quadient.migration.api.dto.migrationmodel.StatusTracking
 import com.quadient.migration.data.Active
 import com.quadient.migration.data.Deployed
 import com.quadient.migration.data.Error
 import com.quadient.migration.data.StatusEvent
+import com.quadient.migration.persistence.UnitOfWork
 import com.quadient.migration.service.deploy.utility.ResourceType
 import com.quadient.migration.shared.IcmPath
 import kotlin.time.Instant
 import kotlin.uuid.Uuid
+import org.jetbrains.exposed.v1.jdbc.Database
 import org.jetbrains.exposed.v1.jdbc.transactions.transaction
 
-class StatusTrackingRepository(projectName: ProjectName) {
-    val internalRepository = StatusTrackingInternalRepository(projectName.name)
+class StatusTrackingRepository(projectName: ProjectName, private val database: Database? = null) {
+    val internalRepository = StatusTrackingInternalRepository(projectName.name, database)
 
     fun listAll(): List<StatusTracking> {
-        return transaction { internalRepository.listAll().map { it.toDto() } }
+        return transaction(database) { internalRepository.listAll() }
     }
 
     fun find(id: String, resourceType: ResourceType): StatusTracking? {
-        return transaction { internalRepository.find(id, resourceType)?.toDto() }
+        return transaction(database) { internalRepository.find(id, resourceType) }
     }
 
     fun findLastEvent(id: String, resourceType: ResourceType): StatusEvent? {
-        return transaction { find(id, resourceType)?.statusEvents?.lastOrNull() }
+        return transaction(database) { internalRepository.findLastEvent(id, resourceType) }
     }
 
     fun findEventsRelevantToOutput(id: String, resourceType: ResourceType, output: InspireOutput): List<StatusEvent> {
-        return transaction { internalRepository.findEventsRelevantToOutput(id, resourceType, output) }
+        return transaction(database) { internalRepository.findEventsRelevantToOutput(id, resourceType, output) }
     }
 
     fun findLastEventRelevantToOutput(id: String, resourceType: ResourceType, output: InspireOutput): StatusEvent? {
-        return transaction { internalRepository.findLastEventRelevantToOutput(id, resourceType, output) }
+        return transaction(database) { internalRepository.findLastEventRelevantToOutput(id, resourceType, output) }
+    }
+
+    /**
+     * Bulk variant of [findEventsRelevantToOutput]. Objects without any tracked status are missing in the result.
+     */
+    fun findEventsRelevantToOutput(
+        keys: Collection<ResourceId>, output: InspireOutput
+    ): Map<ResourceId, List<StatusEvent>> {
+        return internalRepository.findEventsRelevantToOutput(keys, output)
+    }
+
+    /**
+     * Bulk variant of [findLastEventRelevantToOutput]. Objects without any tracked status are missing in the result.
+     */
+    fun findLastEventsRelevantToOutput(keys: Collection<ResourceId>, output: InspireOutput): Map<ResourceId, StatusEvent> {
+        return internalRepository.findLastEventsRelevantToOutput(keys, output)
     }
 
     fun active(id: String, resourceType: ResourceType, data: Map<String, String> = emptyMap()): StatusTracking {
-        return transaction { upsert(id, resourceType, Active(data = data)) }
+        return transaction(database) { upsert(id, resourceType, Active(data = data)) }
+    }
+
+    /**
+     * Bulk variant of [active], records an active status of every object in [dataById] with its data.
+     */
+    fun activeAll(resourceType: ResourceType, dataById: Map<String, Map<String, String>>) {
+        transaction(database) { internalRepository.upsertAll(resourceType, dataById.mapValues { (_, data) -> Active(data = data) }) }
+        UnitOfWork.current()?.recordWrites(dataById.size)
     }
 
     fun error(
@@ -86,11 +113,20 @@ class StatusTrackingRepository(projectName: ProjectName) {
         return upsert(id, resourceType, Deployed(deploymentId, timestamp, output, icmPath, data))
     }
 
+    /**
+     * Appends [event] to the history of the object and returns the whole history including [event].
+     */
     fun upsert(id: String, resourceType: ResourceType, event: StatusEvent): StatusTracking {
-        return transaction { internalRepository.upsert(id, resourceType, event).toDto() }
+        val result = transaction(database) {
+            internalRepository.upsert(id, resourceType, event)
+            // Read in the same transaction, so the history ends with the event just recorded
+            internalRepository.find(id, resourceType)!!
+        }
+        UnitOfWork.current()?.recordWrites(1)
+        return result
     }
 
     fun deleteAll() {
-        return transaction { internalRepository.deleteAll() }
+        return transaction(database) { internalRepository.deleteAll() }
     }
 }
\ No newline at end of file
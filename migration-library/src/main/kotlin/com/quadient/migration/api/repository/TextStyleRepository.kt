@@ -6,23 +6,23 @@ import com.quadient.migration.api.dto.migrationmodel.MigrationObject
 import com.quadient.migration.api.dto.migrationmodel.TextStyle
 import com.quadient.migration.api.dto.migrationmodel.TextStyleDefinition
 import com.quadient.migration.api.dto.migrationmodel.TextStyleRef
-import com.quadient.migration.persistence.table.DocumentObjectTable
 import com.quadient.migration.persistence.table.TextStyleTable
 import com.quadient.migration.service.deploy.utility.ResourceType
 import com.quadient.migration.tools.concat
 import kotlin.time.Clock
 import org.jetbrains.exposed.v1.core.ResultRow
-import kotlin.time.toJavaInstant
 import kotlinx.serialization.json.Json
 import org.jetbrains.exposed.v1.core.eq
-import java.sql.Types
+import org.jetbrains.exposed.v1.jdbc.Database
 import org.jetbrains.exposed.v1.jdbc.selectAll
-import org.jetbrains.exposed.v1.jdbc.transactions.transaction
 import org.jetbrains.exposed.v1.jdbc.upsertReturning
 import kotlin.collections.map
 
-class TextStyleRepository(projectName: ProjectName, private val statusTrackingRepository: StatusTrackingRepository) :
-    Repository<TextStyle>(TextStyleTable, projectName.name) {
+class TextStyleRepository(
+    projectName: ProjectName,
+    private val statusTrackingRepository: StatusTrackingRepository,
+    database: Database? = null,
+) : Repository<TextStyle>(TextStyleTable, projectName.name, database) {
 
     override fun fromDb(row: ResultRow): TextStyle {
         val definitionEntity = row[TextStyleTable.definition]
@@ -51,12 +51,7 @@ class TextStyleRepository(projectName: ProjectName, private val statusTrackingRe
     }
 
     override fun findUsages(id: String): List<MigrationObject> {
-        return transaction {
-            DocumentObjectTable.selectAll().where { DocumentObjectTable.projectName eq projectName }
-                .map { DocumentObjectTable.fromResultRow(it) }
-                .filter { it.collectRefs().any { it.id == id } }
-                .distinct()
-        }
+        return findDocumentObjectUsages(TextStyleRef(id))
     }
 
     override fun upsert(dto: TextStyle) {
@@ -86,35 +81,15 @@ class TextStyleRepository(projectName: ProjectName, private val statusTrackingRe
     override fun upsertBatch(dtos: Collection<TextStyle>) {
         if (dtos.isEmpty()) return
 
-        val columns = listOf(
-            "id", "project_name", "name", "origin_locations", "custom_fields",
-            "created", "last_updated", "definition", "target_id"
-        )
-        val sql = createSql(columns, dtos.size)
-        val now = Clock.System.now()
-
-        upsertBatchInternal(dtos) {
-            val stmt = it.prepareStatement(sql)
-            var index = 1
-            dtos.forEach { dto ->
-                val existingItem = find(dto.id)
-
-                if (existingItem == null) {
-                    statusTrackingRepository.active(dto.id, ResourceType.TextStyle)
-                }
+        val columns = listOf("definition", "target_id")
 
-                stmt.setString(index++, dto.id)
-                stmt.setString(index++, this@TextStyleRepository.projectName)
-                stmt.setString(index++, dto.name)
-                stmt.setArray(index++, it.createArrayOf("text", existingItem?.originLocations.concat(dto.originLocations).distinct().toTypedArray()))
-                stmt.setObject(index++, Json.encodeToString(dto.customFields.inner), Types.OTHER)
-                stmt.setTimestamp(index++, java.sql.Timestamp.from((existingItem?.created ?: now).toJavaInstant()))
-                stmt.setTimestamp(index++, java.sql.Timestamp.from(now.toJavaInstant()))
-                stmt.setObject(index++, Json.encodeToString(dto.definition.toDb()), Types.OTHER)
-                stmt.setString(index++, dto.targetId?.id)
-            }
-
-            stmt.executeUpdate()
+        val activate = { objects: Collection<TextStyle>, existing: Map<String, TextStyle> ->
+            val created = objects.filter { it.id !in existing }
+            statusTrackingRepository.activeAll(ResourceType.TextStyle, created.associate { it.id to emptyMap() })
+        }
+        upsertBatchInternal(dtos, columns, activate) { dto, _ ->
+            string(Json.encodeToString(dto.definition.toDb()))
+            string(dto.targetId?.id)
         }
     }
 }
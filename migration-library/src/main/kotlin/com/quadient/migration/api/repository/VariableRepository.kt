@@ -4,22 +4,21 @@ import com.quadient.migration.api.ProjectName
 import com.quadient.migration.api.dto.migrationmodel.CustomFieldMap
 import com.quadient.migration.api.dto.migrationmodel.MigrationObject
 import com.quadient.migration.api.dto.migrationmodel.Variable
-import com.quadient.migration.persistence.table.DocumentObjectTable
+import com.quadient.migration.api.dto.migrationmodel.VariableRef
 import com.quadient.migration.persistence.table.VariableTable
 import com.quadient.migration.shared.DataType
 import com.quadient.migration.tools.concat
 import kotlin.time.Clock
-import kotlin.time.toJavaInstant
-import kotlinx.serialization.json.Json
-import java.sql.Types
 import org.jetbrains.exposed.v1.core.eq
 import org.jetbrains.exposed.v1.core.ResultRow
+import org.jetbrains.exposed.v1.jdbc.Database
 import org.jetbrains.exposed.v1.jdbc.selectAll
 import org.jetbrains.exposed.v1.jdbc.transactions.transaction
 import org.jetbrains.exposed.v1.jdbc.upsertReturning
 import kotlin.collections.map
 
-class VariableRepository(projectName: ProjectName) : Repository<Variable>(VariableTable, projectName.name) {
+class VariableRepository(projectName: ProjectName, database: Database? = null) :
+    Repository<Variable>(VariableTable, projectName.name, database) {
     override fun fromDb(row: ResultRow): Variable {
         return Variable(
             id = row[VariableTable.id].value,
@@ -34,11 +33,7 @@ class VariableRepository(projectName: ProjectName) : Repository<Variable>(Variab
     }
 
     override fun findUsages(id: String): List<MigrationObject> {
-        return transaction {
-            DocumentObjectTable.selectAll().where { DocumentObjectTable.projectName eq projectName }
-                .map { DocumentObjectTable.fromResultRow(it) }.filter { it.collectRefs().any { it.id == id } }
-                .distinct()
-        }
+        return findDocumentObjectUsages(VariableRef(id))
     }
 
     override fun upsert(dto: Variable) {
@@ -64,31 +59,11 @@ class VariableRepository(projectName: ProjectName) : Repository<Variable>(Variab
     override fun upsertBatch(dtos: Collection<Variable>) {
         if (dtos.isEmpty()) return
 
-        val columns = listOf(
-            "id", "project_name", "name", "origin_locations", "custom_fields",
-            "created", "last_updated", "data_type", "default_value"
-        )
-        val sql = createSql(columns, dtos.size)
-        val now = Clock.System.now()
-
-        upsertBatchInternal(dtos) {
-            val stmt = it.prepareStatement(sql)
-            var index = 1
-            dtos.forEach { dto ->
-                val existingItem = find(dto.id)
-
-                stmt.setString(index++, dto.id)
-                stmt.setString(index++, this@VariableRepository.projectName)
-                stmt.setString(index++, dto.name)
-                stmt.setArray(index++, it.createArrayOf("text", existingItem?.originLocations.concat(dto.originLocations).distinct().toTypedArray()))
-                stmt.setObject(index++, Json.encodeToString(dto.customFields.inner), Types.OTHER)
-                stmt.setTimestamp(index++, java.sql.Timestamp.from((existingItem?.created ?: now).toJavaInstant()))
-                stmt.setTimestamp(index++, java.sql.Timestamp.from(now.toJavaInstant()))
-                stmt.setString(index++, dto.dataType.toString())
-                stmt.setString(index++, dto.defaultValue)
-            }
+        val columns = listOf("data_type", "default_value")
 
-            stmt.executeUpdate()
+        upsertBatchInternal(dtos, columns) { dto, _ ->
+            string(dto.dataType.toString())
+            string(dto.defaultValue)
         }
     }
 }
\ No newline at end of file
@@ -5,22 +5,21 @@ import com.quadient.migration.api.dto.migrationmodel.CustomFieldMap
 import com.quadient.migration.api.dto.migrationmodel.MigrationObject
 import com.quadient.migration.api.dto.migrationmodel.VariableRef
 import com.quadient.migration.api.dto.migrationmodel.VariableStructure
-import com.quadient.migration.persistence.table.DocumentObjectTable
+import com.quadient.migration.api.dto.migrationmodel.VariableStructureRef
 import com.quadient.migration.persistence.table.VariableStructureTable
 import com.quadient.migration.tools.concat
 import kotlin.time.Clock
-import kotlin.time.toJavaInstant
 import kotlinx.serialization.json.Json
-import java.sql.Types
 import org.jetbrains.exposed.v1.core.ResultRow
 import org.jetbrains.exposed.v1.core.eq
+import org.jetbrains.exposed.v1.jdbc.Database
 import org.jetbrains.exposed.v1.jdbc.selectAll
 import org.jetbrains.exposed.v1.jdbc.transactions.transaction
 import org.jetbrains.exposed.v1.jdbc.upsertReturning
 import kotlin.collections.map
 
-class VariableStructureRepository(projectName: ProjectName) :
-    Repository<VariableStructure>(VariableStructureTable, projectName.name) {
+class VariableStructureRepository(projectName: ProjectName, database: Database? = null) :
+    Repository<VariableStructure>(VariableStructureTable, projectName.name, database) {
 
     override fun fromDb(row: ResultRow): VariableStructure {
         return VariableStructure(
@@ -36,11 +35,7 @@ class VariableStructureRepository(projectName: ProjectName) :
     }
 
     override fun findUsages(id: String): List<MigrationObject> {
-        return transaction {
-            DocumentObjectTable.selectAll().where { DocumentObjectTable.projectName eq projectName }
-                .map { DocumentObjectTable.fromResultRow(it) }.filter { it.collectRefs().any { it.id == id } }
-                .distinct()
-        }
+        return findDocumentObjectUsages(VariableStructureRef(id))
     }
 
     override fun upsert(dto: VariableStructure) {
@@ -66,31 +61,11 @@ class VariableStructureRepository(projectName: ProjectName) :
     override fun upsertBatch(dtos: Collection<VariableStructure>) {
         if (dtos.isEmpty()) return
 
-        val columns = listOf(
-            "id", "project_name", "name", "origin_locations", "custom_fields",
-            "created", "last_updated", "structure", "language_variable"
-        )
-        val sql = createSql(columns, dtos.size)
-        val now = Clock.System.now()
-
-        upsertBatchInternal(dtos) {
-            val stmt = it.prepareStatement(sql)
-            var index = 1
-            dtos.forEach { dto ->
-                val existingItem = find(dto.id)
-
-                stmt.setString(index++, dto.id)
-                stmt.setString(index++, this@VariableStructureRepository.projectName)
-                stmt.setString(index++, dto.name)
-                stmt.setArray(index++, it.createArrayOf("text", existingItem?.originLocations.concat(dto.originLocations).distinct().toTypedArray()))
-                stmt.setObject(index++, Json.encodeToString(dto.customFields.inner), Types.OTHER)
-                stmt.setTimestamp(index++, java.sql.Timestamp.from((existingItem?.created ?: now).toJavaInstant()))
-                stmt.setTimestamp(index++, java.sql.Timestamp.from(now.toJavaInstant()))
-                stmt.setObject(index++, Json.encodeToString(dto.structure), Types.OTHER)
-                stmt.setString(index++, dto.languageVariable?.id)
-            }
+        val columns = listOf("structure", "language_variable")
 
-            stmt.executeUpdate()
+        upsertBatchInternal(dtos, columns) { dto, _ ->
+            string(Json.encodeToString(dto.structure))
+            string(dto.languageVariable?.id)
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+package com.quadient.migration.persistence
+
+import org.postgresql.PGConnection
+import java.io.StringReader
+import java.sql.Connection
+import java.time.LocalDateTime
+import java.time.ZoneId
+import kotlin.time.Instant
+import kotlin.time.toJavaInstant
+
+/**
+ * Largest number of values bound to a single `IN` list, keeps queries well below the limit of 65535 bind parameters
+ * per statement.
+ */
+internal const val MAX_IN_LIST_SIZE = 10_000
+
+/**
+ * Values of a single row written by [BulkLoader], in the order of the loader columns.
+ */
+class BulkRow internal constructor(private val csv: StringBuilder) {
+    internal var size = 0
+        private set
+
+    fun string(value: String?) {
+        separator()
+        if (value != null) {
+            quoted(value)
+        }
+    }
+
+    fun bool(value: Boolean) {
+        separator()
+        csv.append(if (value) 't' else 'f')
+    }
+
+    fun timestamp(value: Instant) {
+        // Exposed binds timestamps without time zone as local date times of the JVM time zone, rows copied here have to
+        // hold the same value as rows written by Exposed
+        string(LocalDateTime.ofInstant(value.toJavaInstant(), ZoneId.systemDefault()).toString())
+    }
+
+    fun textArray(values: List<String>) {
+        val literal = values.joinToString(",", prefix = "{", postfix = "}") {
+            "\"" + it.replace("\\", "\\\\").replace("\"", "\\\"") + "\""
+        }
+        string(literal)
+    }
+
+    private fun separator() {
+        if (size++ > 0) {
+            csv.append(',')
+        }
+    }
+
+    private fun quoted(value: String) {
+        csv.append('"')
+        for (c in value) {
+            if (c == '"') csv.append('"')
+            csv.append(c)
+        }
+        csv.append('"')
+    }
+}
+
+/**
+ * Upserts rows into [table] keyed by `(id, project_name)`. Rows are streamed with `COPY` into a temporary staging
+ * table and merged with `INSERT ... ON CONFLICT` in chunks of [chunkSize] rows, so the number of rows is not limited by
+ * the number of bind parameters and only a single chunk is kept in memory. Columns in [keepOnUpdate] keep their
+ * stored value when the row already exists.
+ *
+ * Must be used inside a transaction, the staging table is dropped on commit.
+ */
+internal class BulkLoader(
+    private val connection: Connection,
+    private val table: String,
+    private val columns: List<String>,
+    private val keepOnUpdate: Set<String> = setOf("created"),
+    private val chunkSize: Int = DEFAULT_CHUNK_SIZE,
+) {
+    private val stagingTable = "bulk_$table"
+    private val columnList = columns.joinToString(", ")
+
+    fun <D> merge(items: Collection<D>, writeRow: BulkRow.(D) -> Unit): Int {
+        if (items.isEmpty()) return 0
+
+        execute("CREATE TEMP TABLE IF NOT EXISTS $stagingTable ON COMMIT DROP AS SELECT $columnList FROM $table WITH NO DATA")
+
+        val copyApi = connection.unwrap(PGConnection::class.java).copyAPI
+        val copySql = "COPY $stagingTable ($columnList) FROM STDIN WITH (FORMAT csv)"
+
+        var merged = 0
+        for (chunk in items.chunked(chunkSize)) {
+            val csv = StringBuilder()
+            for (item in chunk) {
+                val row = BulkRow(csv)
+                row.writeRow(item)
+                check(row.size == columns.size) { "Bulk row of '$table' has ${row.size} values, expected ${columns.size}." }
+                csv.append('\n')
+            }
+
+            execute("TRUNCATE $stagingTable")
+            copyApi.copyIn(copySql, StringReader(csv.toString()))
+            merged += connection.createStatement().use { it.executeUpdate(mergeSql()) }
+        }
+        return merged
+    }
+
+    private fun mergeSql(): String {
+        val setOnConflict = columns.filter { it !in keepOnUpdate }.joinToString(", ") { "$it = EXCLUDED.$it" }
+        return """
+        INSERT INTO $table ($columnList)
+        SELECT $columnList FROM $stagingTable
+        ON CONFLICT (id, project_name) DO UPDATE SET $setOnConflict
+        """.trimIndent()
+    }
+
+    private fun execute(sql: String) {
+        connection.createStatement().use { it.execute(sql) }
+    }
+
+    companion object {
+        const val DEFAULT_CHUNK_SIZE = 1000
+    }
+}
@@ -0,0 +1,88 @@
+package com.quadient.migration.persistence
+
+import com.quadient.migration.api.DbConfig
+import com.zaxxer.hikari.HikariConfig
+import com.zaxxer.hikari.HikariDataSource
+import com.zaxxer.hikari.metrics.IMetricsTracker
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory
+import java.io.Closeable
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.LongAccumulator
+import javax.sql.DataSource
+
+/**
+ * Snapshot of the database connection pool. [acquired] counts connections handed out by the pool, [totalWaitMs] and
+ * [maxWaitMs] are the time callers spent waiting for them and [timeouts] counts callers that gave up waiting.
+ */
+data class DbPoolMetrics(
+    val active: Int,
+    val idle: Int,
+    val total: Int,
+    val waiting: Int,
+    val acquired: Long,
+    val totalWaitMs: Long,
+    val maxWaitMs: Long,
+    val timeouts: Long,
+)
+
+/**
+ * Pool of database connections shared by Exposed and Flyway, configured by [DbConfig].
+ */
+class DatabasePool(config: DbConfig) : Closeable {
+    private val acquired = AtomicLong()
+    private val totalWaitNanos = AtomicLong()
+    private val maxWaitNanos = LongAccumulator(Math::max, 0)
+    private val timeouts = AtomicLong()
+
+    private val hikari = HikariDataSource(HikariConfig().apply {
+        poolName = "migration-db"
+        jdbcUrl = config.connectionString()
+        driverClassName = "org.postgresql.Driver"
+        username = config.user
+        password = config.password
+        maximumPoolSize = config.poolSize
+        minimumIdle = config.poolMinIdle.coerceAtMost(config.poolSize)
+        connectionTimeout = TimeUnit.SECONDS.toMillis(config.poolWaitTimeoutSeconds.toLong())
+        idleTimeout = TimeUnit.SECONDS.toMillis(config.poolIdleTimeoutSeconds.toLong())
+
+        // Server side prepared statements are cached per connection by the driver
+        addDataSourceProperty("prepareThreshold", config.prepareThreshold)
+        addDataSourceProperty("preparedStatementCacheQueries", config.statementCacheSize)
+
+        metricsTrackerFactory = MetricsTrackerFactory { _, _ -> WaitTimeTracker() }
+    })
+
+    val dataSource: DataSource
+        get() = hikari
+
+    fun metrics(): DbPoolMetrics {
+        val pool = hikari.hikariPoolMXBean
+        return DbPoolMetrics(
+            active = pool?.activeConnections ?: 0,
+            idle = pool?.idleConnections ?: 0,
+            total = pool?.totalConnections ?: 0,
+            waiting = pool?.threadsAwaitingConnection ?: 0,
+            acquired = acquired.get(),
+            totalWaitMs = TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()),
+            maxWaitMs = TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()),
+            timeouts = timeouts.get(),
+        )
+    }
+
+    override fun close() {
+        hikari.close()
+    }
+
+    private inner class WaitTimeTracker : IMetricsTracker {
+        override fun recordConnectionAcquiredNanos(elapsedAcquiredNanos: Long) {
+            acquired.incrementAndGet()
+            totalWaitNanos.addAndGet(elapsedAcquiredNanos)
+            maxWaitNanos.accumulate(elapsedAcquiredNanos)
+        }
+
+        override fun recordConnectionTimeout() {
+            timeouts.incrementAndGet()
+        }
+    }
+}
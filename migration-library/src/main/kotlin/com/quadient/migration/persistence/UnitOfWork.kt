@@ -0,0 +1,80 @@
+package com.quadient.migration.persistence
+
+import com.quadient.migration.api.repository.Repository
+import org.jetbrains.exposed.v1.jdbc.Database
+import org.jetbrains.exposed.v1.jdbc.JdbcTransaction
+import org.jetbrains.exposed.v1.jdbc.transactions.transaction
+
+/**
+ * Database transaction shared by all repository calls made by the current thread inside
+ * [com.quadient.migration.api.Migration.withUnitOfWork]. Repository methods join the transaction instead of committing
+ * on their own, the transaction is committed after every [chunkSize] written rows and once more when the unit of work
+ * finishes.
+ *
+ * When the unit of work fails, rows written since the last commit are rolled back and caches of the affected
+ * repositories are dropped. Chunks committed before the failure are kept.
+ */
+class UnitOfWork private constructor(
+    private val transaction: JdbcTransaction,
+    private val database: Database?,
+    val chunkSize: Int,
+) {
+    private var pendingWrites = 0
+    private val touched = mutableSetOf<Repository<*>>()
+
+    /**
+     * Commits rows written so far without waiting for the chunk to fill up.
+     */
+    fun commit() {
+        transaction.commit()
+        pendingWrites = 0
+        touched.clear()
+    }
+
+    internal fun recordWrites(count: Int, repository: Repository<*>? = null) {
+        if (repository != null) {
+            touched.add(repository)
+        }
+        pendingWrites += count
+        if (pendingWrites >= chunkSize) {
+            commit()
+        }
+    }
+
+    companion object {
+        private val current = ThreadLocal<UnitOfWork>()
+
+        /**
+         * Unit of work of the current thread, null when called outside of one.
+         */
+        fun current(): UnitOfWork? = current.get()
+
+        /**
+         * Runs [block] in a new unit of work on [database], the default database of Exposed when null. Nested calls
+         * on the same database join the unit of work that is already running.
+         */
+        internal fun <T> run(chunkSize: Int, database: Database? = null, block: (UnitOfWork) -> T): T {
+            require(chunkSize > 0) { "Chunk size must be positive, was $chunkSize." }
+            val outer = current.get()
+            if (outer != null && outer.database == database) {
+                return block(outer)
+            }
+
+            return transaction(database) {
+                // Chunks may already be committed, repeating the block on failure would apply them twice
+                maxAttempts = 1
+
+                val unitOfWork = UnitOfWork(this, database, chunkSize)
+                current.set(unitOfWork)
+                try {
+                    block(unitOfWork)
+                } catch (e: Throwable) {
+                    unitOfWork.touched.forEach { it.invalidateAll() }
+                    throw e
+                } finally {
+                    if (outer != null) current.set(outer) else current.remove()
+                }
+            }
+        }
+    }
+}
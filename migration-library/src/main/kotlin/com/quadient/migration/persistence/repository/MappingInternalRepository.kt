@@ -7,19 +7,20 @@ import kotlinx.serialization.json.Json
 import org.jetbrains.exposed.v1.core.and
 import org.jetbrains.exposed.v1.core.dao.id.CompositeID
 import org.jetbrains.exposed.v1.core.eq
+import org.jetbrains.exposed.v1.jdbc.Database
 import org.jetbrains.exposed.v1.jdbc.transactions.transaction
 import java.sql.Types
 import kotlin.reflect.KClass
 
-class MappingInternalRepository(val projectName: String) {
+class MappingInternalRepository(val projectName: String, @PublishedApi internal val database: Database? = null) {
     fun listAll(): List<MappingEntity> {
-        return transaction {
+        return transaction(database) {
             MappingEntity.find { MappingTable.projectName eq projectName }.toList()
         }
     }
 
     fun listByType(type: KClass<out MappingItemEntity>): List<MappingEntity> {
-        return transaction {
+        return transaction(database) {
             MappingEntity.find {
                 (MappingTable.projectName eq projectName) and (MappingTable.type eq type.simpleName)
             }.toList()
@@ -27,7 +28,7 @@ class MappingInternalRepository(val projectName: String) {
     }
 
     inline fun <reified T : MappingItemEntity> find(id: String): T? {
-        return transaction {
+        return transaction(database) {
             val id = CompositeID {
                 it[MappingTable.projectName] = projectName
                 it[MappingTable.type] =
@@ -59,7 +60,7 @@ class MappingInternalRepository(val projectName: String) {
             ON CONFLICT (id, type, project_name) DO UPDATE SET $setOnConflict
         """.trimIndent()
 
-        transaction {
+        transaction(database) {
             val stmt = (connection.connection as java.sql.Connection).prepareStatement(sql)
             var index = 1
             entries.forEach { (id, mapping) ->
@@ -73,7 +74,7 @@ class MappingInternalRepository(val projectName: String) {
     }
 
     fun upsert(id: String, mapping: MappingItemEntity): MappingEntity {
-        return transaction {
+        return transaction(database) {
             val id = CompositeID {
                 it[MappingTable.projectName] = projectName
                 it[MappingTable.type] = requireNotNull(mapping::class.simpleName)
@@ -89,7 +90,7 @@ class MappingInternalRepository(val projectName: String) {
     }
 
     fun deleteAll() {
-        transaction {
+        transaction(database) {
             MappingEntity.find { MappingTable.projectName eq projectName }.forEach { it.delete() }
         }
     }
@@ -0,0 +1,98 @@
+package com.quadient.migration.persistence.repository
+
+import com.quadient.migration.api.dto.migrationmodel.MigrationObject
+import com.quadient.migration.api.dto.migrationmodel.Ref
+import com.quadient.migration.api.dto.migrationmodel.RefValidatable
+import com.quadient.migration.api.repository.ReferenceGraph
+import com.quadient.migration.persistence.MAX_IN_LIST_SIZE
+import com.quadient.migration.persistence.table.MigrationObjectTable
+import com.quadient.migration.persistence.table.ReferenceBackfillTable
+import com.quadient.migration.persistence.table.ReferenceTable
+import org.jetbrains.exposed.v1.core.Op
+import org.jetbrains.exposed.v1.core.and
+import org.jetbrains.exposed.v1.core.eq
+import org.jetbrains.exposed.v1.core.inList
+import org.jetbrains.exposed.v1.jdbc.Database
+import org.jetbrains.exposed.v1.jdbc.batchInsert
+import org.jetbrains.exposed.v1.jdbc.deleteWhere
+import org.jetbrains.exposed.v1.jdbc.selectAll
+import org.jetbrains.exposed.v1.jdbc.transactions.transaction
+
+/**
+ * Persisted direct references between migration objects of a project, one row per source object and referenced
+ * object. Rows are written in the same transaction as the source object so that reverse lookups can be answered
+ * by an indexed join on (project_name, target_type, target_id).
+ */
+class ReferenceInternalRepository(val projectName: String, private val database: Database? = null) {
+    /**
+     * Replaces stored references of [objects] stored in [table] with the result of their [RefValidatable.collectRefs].
+     */
+    fun replace(table: MigrationObjectTable, objects: Collection<MigrationObject>) {
+        if (objects.isEmpty()) return
+
+        val edges = objects.flatMap { obj ->
+            val refs = (obj as? RefValidatable)?.collectRefs() ?: emptySet()
+            refs.map { obj.id to it }.distinctBy { (_, ref) -> ReferenceGraph.tableOf(ref).tableName to ref.id }
+        }
+
+        transaction(database) {
+            for (ids in objects.map { it.id }.chunked(MAX_IN_LIST_SIZE)) {
+                ReferenceTable.deleteWhere { sourceFilter(table) and (ReferenceTable.sourceId inList ids) }
+            }
+            ReferenceTable.batchInsert(edges, shouldReturnGeneratedValues = false) { (sourceId, target) ->
+                this[ReferenceTable.projectName] = projectName
+                this[ReferenceTable.sourceType] = table.tableName
+                this[ReferenceTable.sourceId] = sourceId
+                this[ReferenceTable.targetType] = ReferenceGraph.tableOf(target).tableName
+                this[ReferenceTable.targetId] = target.id
+            }
+        }
+    }
+
+    fun delete(table: MigrationObjectTable, id: String) {
+        transaction(database) {
+            ReferenceTable.deleteWhere { sourceFilter(table) and (ReferenceTable.sourceId eq id) }
+        }
+    }
+
+    fun deleteAll(table: MigrationObjectTable) {
+        transaction(database) {
+            ReferenceTable.deleteWhere { sourceFilter(table) }
+        }
+    }
+
+    /**
+     * Condition selecting references pointing to [target] from objects stored in [sourceTable].
+     */
+    fun usagesFilter(sourceTable: MigrationObjectTable, target: Ref): Op<Boolean> {
+        return sourceFilter(sourceTable) and
+            (ReferenceTable.targetType eq ReferenceGraph.tableOf(target).tableName) and
+            (ReferenceTable.targetId eq target.id)
+    }
+
+    /**
+     * Runs [rebuild] when the project still has objects created before references were persisted
+     * and marks the project as done afterwards.
+     */
+    fun backfill(rebuild: () -> Unit): Boolean {
+        return transaction(database) {
+            val pending = ReferenceBackfillTable.selectAll()
+                .where(ReferenceBackfillTable.projectName eq projectName)
+                .forUpdate()
+                .any()
+            if (pending) {
+                rebuild()
+                ReferenceBackfillTable.deleteWhere { backfillFilter() }
+            }
+            pending
+        }
+    }
+
+    private fun sourceFilter(table: MigrationObjectTable): Op<Boolean> {
+        return (ReferenceTable.projectName eq projectName) and (ReferenceTable.sourceType eq table.tableName)
+    }
+
+    private fun backfillFilter(): Op<Boolean> {
+        return ReferenceBackfillTable.projectName eq projectName
+    }
+}
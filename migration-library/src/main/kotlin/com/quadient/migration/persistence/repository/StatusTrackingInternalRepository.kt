@@ -1,64 +1,162 @@
 import com.quadient.migration.api.InspireOutput
+import com.quadient.migration.api.dto.migrationmodel.ResourceId
+import com.quadient.migration.api.dto.migrationmodel.StatusTracking
 import com.quadient.migration.data.Active
 import com.quadient.migration.data.Deployed
 import com.quadient.migration.data.Error
 import com.quadient.migration.data.StatusEvent
-import com.quadient.migration.persistence.table.StatusTrackingEntity
-import com.quadient.migration.persistence.table.StatusTrackingTable
+import com.quadient.migration.persistence.table.StatusEventLatestTable
+import com.quadient.migration.persistence.table.StatusEventTable
+import com.quadient.migration.persistence.table.outputKey
 import com.quadient.migration.service.deploy.utility.ResourceType
 import com.quadient.migration.shared.IcmPath
 import kotlin.time.Instant
-import org.jetbrains.exposed.v1.core.dao.id.CompositeID
+import kotlinx.serialization.json.Json
+import org.jetbrains.exposed.v1.core.Column
+import org.jetbrains.exposed.v1.core.Expression
+import org.jetbrains.exposed.v1.core.Op
+import org.jetbrains.exposed.v1.core.QueryBuilder
+import org.jetbrains.exposed.v1.core.SortOrder
+import org.jetbrains.exposed.v1.core.and
 import org.jetbrains.exposed.v1.core.eq
+import org.jetbrains.exposed.v1.core.inList
+import org.jetbrains.exposed.v1.core.less
+import org.jetbrains.exposed.v1.jdbc.Database
+import org.jetbrains.exposed.v1.jdbc.batchInsert
+import org.jetbrains.exposed.v1.jdbc.batchUpsert
+import org.jetbrains.exposed.v1.jdbc.deleteWhere
+import org.jetbrains.exposed.v1.jdbc.insert
+import org.jetbrains.exposed.v1.jdbc.select
+import org.jetbrains.exposed.v1.jdbc.selectAll
 import org.jetbrains.exposed.v1.jdbc.transactions.transaction
+import org.jetbrains.exposed.v1.jdbc.upsert
 import kotlin.uuid.Uuid
 
-class StatusTrackingInternalRepository(val projectName: String) {
-    fun listAll(): List<StatusTrackingEntity> {
-        return transaction {
-            StatusTrackingEntity.find { StatusTrackingTable.projectName eq projectName }.toList()
+/**
+ * Status events are appended to [StatusEventTable] and the last event of each object per output is kept
+ * in [StatusEventLatestTable], so recording an event never rewrites the history and the last relevant event
+ * is a primary key lookup.
+ */
+class StatusTrackingInternalRepository(val projectName: String, private val database: Database? = null) {
+    fun listAll(): List<StatusTracking> {
+        return transaction(database) {
+            StatusEventTable.selectAll()
+                .where(StatusEventTable.projectName eq projectName)
+                .orderBy(
+                    StatusEventTable.resourceType to SortOrder.ASC,
+                    StatusEventTable.resourceId to SortOrder.ASC,
+                    StatusEventTable.seq to SortOrder.ASC,
+                )
+                .groupBy(
+                    { ResourceId(it[StatusEventTable.resourceId], ResourceType.valueOf(it[StatusEventTable.resourceType])) },
+                    { it[StatusEventTable.event] },
+                )
+                .map { (key, events) -> StatusTracking(key.id, projectName, key.type, events) }
         }
     }
 
-    fun find(id: String, resourceType: ResourceType): StatusTrackingEntity? {
-        return transaction {
-            StatusTrackingEntity.findById(CompositeID {
-                it[StatusTrackingTable.projectName] = projectName
-                it[StatusTrackingTable.resourceType] = resourceType.name
-                it[StatusTrackingTable.resourceId] = id
-            })
+    fun find(id: String, resourceType: ResourceType): StatusTracking? {
+        return transaction(database) {
+            val events = StatusEventTable.select(StatusEventTable.event)
+                .where(eventFilter(id, resourceType))
+                .orderBy(StatusEventTable.seq)
+                .map { it[StatusEventTable.event] }
+
+            if (events.isEmpty()) null else StatusTracking(id, projectName, resourceType, events)
         }
     }
 
     fun findLastEvent(id: String, resourceType: ResourceType): StatusEvent? {
-        return find(id, resourceType)?.statusEvents?.lastOrNull()
+        return transaction(database) {
+            StatusEventLatestTable.select(StatusEventLatestTable.event)
+                .where(latestFilter(id, resourceType))
+                .orderBy(StatusEventLatestTable.seq, SortOrder.DESC)
+                .limit(1)
+                .firstOrNull()
+                ?.get(StatusEventLatestTable.event)
+        }
     }
 
     fun findEventsRelevantToOutput(id: String, resourceType: ResourceType, output: InspireOutput): List<StatusEvent> {
-        return transaction {
-            find(id, resourceType)?.statusEvents?.filter {
-                when (it) {
-                    is Active -> true
-                    is Deployed -> it.output == output
-                    is Error -> it.output == output
-                }
-            } ?: emptyList()
+        return transaction(database) {
+            StatusEventTable.select(StatusEventTable.event)
+                .where(eventFilter(id, resourceType) and (StatusEventTable.output inList relevantOutputs(output)))
+                .orderBy(StatusEventTable.seq)
+                .map { it[StatusEventTable.event] }
         }
     }
 
     fun findLastEventRelevantToOutput(id: String, resourceType: ResourceType, output: InspireOutput): StatusEvent? {
-        return transaction {
-            find(id, resourceType)?.statusEvents?.lastOrNull {
-                when (it) {
-                    is Active -> true
-                    is Deployed -> it.output == output
-                    is Error -> it.output == output
+        return transaction(database) {
+            StatusEventLatestTable.select(StatusEventLatestTable.event)
+                .where(latestFilter(id, resourceType) and (StatusEventLatestTable.output inList relevantOutputs(output)))
+                .orderBy(StatusEventLatestTable.seq, SortOrder.DESC)
+                .limit(1)
+                .firstOrNull()
+                ?.get(StatusEventLatestTable.event)
+        }
+    }
+
+    /**
+     * Events relevant to [output] of all the given objects, fetched with a single query per resource type.
+     * Objects without any tracked status are missing in the result.
+     */
+    fun findEventsRelevantToOutput(
+        keys: Collection<ResourceId>, output: InspireOutput
+    ): Map<ResourceId, List<StatusEvent>> {
+        val sql = """
+            SELECT id, event::text AS event
+            FROM ${StatusEventTable.nameInDatabaseCase()}
+            WHERE project_name = ? AND resource_type = ? AND id = ANY(?) AND output IN (?, ?)
+            ORDER BY id, seq
+        """.trimIndent()
+
+        return findRelevantEvents(sql, keys, output)
+    }
+
+    /**
+     * Last event relevant to [output] of all the given objects, fetched with a single query per resource type.
+     * Objects without any tracked status are missing in the result.
+     */
+    fun findLastEventsRelevantToOutput(keys: Collection<ResourceId>, output: InspireOutput): Map<ResourceId, StatusEvent> {
+        val sql = """
+            SELECT DISTINCT ON (id) id, event::text AS event
+            FROM ${StatusEventLatestTable.nameInDatabaseCase()}
+            WHERE project_name = ? AND resource_type = ? AND id = ANY(?) AND output IN (?, ?)
+            ORDER BY id, seq DESC
+        """.trimIndent()
+
+        return findRelevantEvents(sql, keys, output).mapValues { it.value.last() }
+    }
+
+    private fun findRelevantEvents(
+        sql: String, keys: Collection<ResourceId>, output: InspireOutput
+    ): Map<ResourceId, List<StatusEvent>> {
+        if (keys.isEmpty()) return emptyMap()
+
+        return transaction(database) {
+            val jdbcConnection = connection.connection as java.sql.Connection
+            val result = mutableMapOf<ResourceId, MutableList<StatusEvent>>()
+            jdbcConnection.prepareStatement(sql).use { stmt ->
+                for ((resourceType, ids) in keys.groupBy({ it.type }, { it.id })) {
+                    stmt.setString(1, projectName)
+                    stmt.setString(2, resourceType.name)
+                    stmt.setArray(3, jdbcConnection.createArrayOf("varchar", ids.distinct().toTypedArray()))
+                    stmt.setString(4, StatusEventLatestTable.ANY_OUTPUT)
+                    stmt.setString(5, output.name)
+                    stmt.executeQuery().use { rs ->
+                        while (rs.next()) {
+                            val event = Json.decodeFromString<StatusEvent>(rs.getString("event"))
+                            result.getOrPut(ResourceId(rs.getString("id"), resourceType)) { mutableListOf() }.add(event)
+                        }
+                    }
                 }
             }
+            result
         }
     }
 
-    fun active(id: String, resourceType: ResourceType, data: Map<String, String> = emptyMap()): StatusTrackingEntity {
+    fun active(id: String, resourceType: ResourceType, data: Map<String, String> = emptyMap()): StatusEvent {
         return upsert(id, resourceType, Active(data = data))
     }
 
@@ -71,7 +169,7 @@ class StatusTrackingInternalRepository(val projectName: String) {
         output: InspireOutput,
         message: String,
         data: Map<String, String> = emptyMap(),
-    ): StatusTrackingEntity {
+    ): StatusEvent {
         return upsert(id, resourceType, Error(deploymentId, timestamp, output, icmPath, message, data))
     }
 
@@ -83,29 +181,99 @@ class StatusTrackingInternalRepository(val projectName: String) {
         icmPath: IcmPath?,
         output: InspireOutput,
         data: Map<String, String> = emptyMap(),
-    ): StatusTrackingEntity {
+    ): StatusEvent {
         return upsert(id, resourceType, Deployed(deploymentId, timestamp, output, icmPath, data))
     }
 
-    fun upsert(id: String, resourceType: ResourceType, event: StatusEvent): StatusTrackingEntity {
-        return transaction {
-            val id = CompositeID {
-                it[StatusTrackingTable.projectName] = projectName
-                it[StatusTrackingTable.resourceType] = resourceType.name
-                it[StatusTrackingTable.resourceId] = id
+    /**
+     * Appends [event] to the history of the object and returns it, the history is not read back.
+     */
+    fun upsert(id: String, resourceType: ResourceType, event: StatusEvent): StatusEvent {
+        return transaction(database) {
+            val project = this@StatusTrackingInternalRepository.projectName
+            val seq = StatusEventTable.insert {
+                it[StatusEventTable.resourceId] = id
+                it[StatusEventTable.resourceType] = resourceType.name
+                it[StatusEventTable.projectName] = project
+                it[StatusEventTable.output] = event.outputKey()
+                it[StatusEventTable.event] = event
+            } get StatusEventTable.seq
+
+            StatusEventLatestTable.upsert(where = { isNewerEvent() }) {
+                it[StatusEventLatestTable.resourceId] = id
+                it[StatusEventLatestTable.resourceType] = resourceType.name
+                it[StatusEventLatestTable.projectName] = project
+                it[StatusEventLatestTable.output] = event.outputKey()
+                it[StatusEventLatestTable.seq] = seq
+                it[StatusEventLatestTable.event] = event
+            }
+
+            event
+        }
+    }
+
+    /**
+     * Bulk variant of [upsert] appending one event to the history of each object in [events] keyed by object id.
+     */
+    fun upsertAll(resourceType: ResourceType, events: Map<String, StatusEvent>) {
+        if (events.isEmpty()) return
+
+        transaction(database) {
+            val project = this@StatusTrackingInternalRepository.projectName
+            val inserted = StatusEventTable.batchInsert(events.entries) { (id, event) ->
+                this[StatusEventTable.resourceId] = id
+                this[StatusEventTable.resourceType] = resourceType.name
+                this[StatusEventTable.projectName] = project
+                this[StatusEventTable.output] = event.outputKey()
+                this[StatusEventTable.event] = event
             }
 
-            StatusTrackingEntity.findByIdAndUpdate(id) {
-                it.statusEvents += event
-            } ?: StatusTrackingEntity.new(id) {
-                this.statusEvents = listOf(event)
+            StatusEventLatestTable.batchUpsert(inserted, where = { isNewerEvent() }, shouldReturnGeneratedValues = false) { row ->
+                this[StatusEventLatestTable.resourceId] = row[StatusEventTable.resourceId]
+                this[StatusEventLatestTable.resourceType] = resourceType.name
+                this[StatusEventLatestTable.projectName] = project
+                this[StatusEventLatestTable.output] = row[StatusEventTable.output]
+                this[StatusEventLatestTable.seq] = row[StatusEventTable.seq]
+                this[StatusEventLatestTable.event] = row[StatusEventTable.event]
             }
         }
     }
 
+    /**
+     * Condition of replacing the latest event on conflict. Concurrent writers of the same object and output may
+     * commit in any order, an event with a lower [StatusEventTable.seq] must not replace a newer one.
+     */
+    private fun isNewerEvent(): Op<Boolean> {
+        return StatusEventLatestTable.seq less excluded(StatusEventLatestTable.seq)
+    }
+
     fun deleteAll() {
-        return transaction {
-            StatusTrackingEntity.find { StatusTrackingTable.projectName eq projectName }.forEach { it.delete() }
+        return transaction(database) {
+            StatusEventLatestTable.deleteWhere { StatusEventLatestTable.projectName eq this@StatusTrackingInternalRepository.projectName }
+            StatusEventTable.deleteWhere { StatusEventTable.projectName eq this@StatusTrackingInternalRepository.projectName }
         }
     }
+
+    private fun eventFilter(id: String, resourceType: ResourceType): Op<Boolean> {
+        return (StatusEventTable.projectName eq projectName) and
+            (StatusEventTable.resourceType eq resourceType.name) and
+            (StatusEventTable.resourceId eq id)
+    }
+
+    private fun latestFilter(id: String, resourceType: ResourceType): Op<Boolean> {
+        return (StatusEventLatestTable.projectName eq projectName) and
+            (StatusEventLatestTable.resourceType eq resourceType.name) and
+            (StatusEventLatestTable.resourceId eq id)
+    }
+
+    private fun relevantOutputs(output: InspireOutput) = listOf(StatusEventLatestTable.ANY_OUTPUT, output.name)
+}
+
+/**
+ * Value of [column] proposed for insertion, usable in the conflict update of an upsert.
+ */
+private fun <T> excluded(column: Column<T>): Expression<T> = object : Expression<T>() {
+    override fun toQueryBuilder(queryBuilder: QueryBuilder) {
+        queryBuilder.append("EXCLUDED.${column.nameInDatabaseCase()}")
+    }
 }
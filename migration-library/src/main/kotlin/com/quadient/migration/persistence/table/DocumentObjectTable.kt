@@ -6,6 +6,7 @@ import com.quadient.migration.api.dto.migrationmodel.DisplayRuleRef
 import com.quadient.migration.api.dto.migrationmodel.DocumentContent
 import com.quadient.migration.api.dto.migrationmodel.DocumentObject
 import com.quadient.migration.api.dto.migrationmodel.DocumentObjectOptions
+import com.quadient.migration.api.dto.migrationmodel.DocumentObjectSummary
 import com.quadient.migration.api.dto.migrationmodel.PdfMetadata
 import com.quadient.migration.api.dto.migrationmodel.VariableStructureRef
 import com.quadient.migration.persistence.migrationmodel.BaseTemplateLocationEntity
@@ -16,6 +17,7 @@ import com.quadient.migration.shared.DocumentObjectType
 import com.quadient.migration.shared.MetadataEntry
 import com.quadient.migration.shared.SkipOptions
 import kotlinx.serialization.json.Json
+import org.jetbrains.exposed.v1.core.Column
 import org.jetbrains.exposed.v1.core.ResultRow
 import org.jetbrains.exposed.v1.json.jsonb
 
@@ -55,4 +57,31 @@ object DocumentObjectTable : MigrationObjectTable("document_object") {
             subject = result[subject],
         )
     }
+
+    /**
+     * Columns read by [summaryFromResultRow], large JSONB columns are left out.
+     */
+    val summaryColumns: List<Column<*>> = listOf(
+        id, name, type, internal, targetFolder, originLocations, customFields, displayRuleRef, variableStructureRef,
+        baseTemplate, skip, subject, created, lastUpdated
+    )
+
+    fun summaryFromResultRow(result: ResultRow): DocumentObjectSummary {
+        return DocumentObjectSummary(
+            id = result[id].value,
+            name = result[name],
+            type = DocumentObjectType.valueOf(result[type]),
+            internal = result[internal],
+            targetFolder = result[targetFolder],
+            originLocations = result[originLocations],
+            customFields = CustomFieldMap(result[customFields].toMutableMap()),
+            displayRuleRef = result[displayRuleRef]?.let { DisplayRuleRef(it) },
+            variableStructureRef = result[variableStructureRef]?.let { VariableStructureRef(it) },
+            baseTemplate = result[baseTemplate]?.let { BaseTemplateLocation.fromDb(it) },
+            skip = result[skip],
+            subject = result[subject],
+            created = result[created],
+            lastUpdated = result[lastUpdated],
+        )
+    }
 }
@@ -0,0 +1,19 @@
+package com.quadient.migration.persistence.table
+
+import org.jetbrains.exposed.v1.core.Table
+
+object ReferenceTable : Table("reference") {
+    val projectName = varchar("project_name", 50)
+    val sourceType = varchar("source_type", 50)
+    val sourceId = varchar("source_id", 255)
+    val targetType = varchar("target_type", 50)
+    val targetId = varchar("target_id", 255)
+
+    override val primaryKey = PrimaryKey(projectName, sourceType, sourceId, targetType, targetId)
+}
+
+object ReferenceBackfillTable : Table("reference_backfill") {
+    val projectName = varchar("project_name", 50)
+
+    override val primaryKey = PrimaryKey(projectName)
+}
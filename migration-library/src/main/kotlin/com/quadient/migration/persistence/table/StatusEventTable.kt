@@ -0,0 +1,48 @@
+package com.quadient.migration.persistence.table
+
+import com.quadient.migration.data.Active
+import com.quadient.migration.data.Deployed
+import com.quadient.migration.data.Error
+import com.quadient.migration.data.StatusEvent
+import kotlinx.serialization.json.Json
+import org.jetbrains.exposed.v1.core.Table
+import org.jetbrains.exposed.v1.json.jsonb
+
+/**
+ * Append only history of status events. Events of a single object are ordered by [seq].
+ */
+object StatusEventTable : Table("status_event") {
+    val seq = long("seq").autoIncrement()
+    val resourceId = varchar("id", 255)
+    val resourceType = varchar("resource_type", 255)
+    val projectName = varchar("project_name", 50)
+    val output = varchar("output", 50)
+    val event = jsonb<StatusEvent>("event", Json)
+
+    override val primaryKey = PrimaryKey(seq)
+}
+
+/**
+ * Last status event of each object per [output], maintained together with [StatusEventTable].
+ */
+object StatusEventLatestTable : Table("status_event_latest") {
+    val resourceId = varchar("id", 255)
+    val resourceType = varchar("resource_type", 255)
+    val projectName = varchar("project_name", 50)
+    val output = varchar("output", 50)
+    val seq = long("seq")
+    val event = jsonb<StatusEvent>("event", Json)
+
+    override val primaryKey = PrimaryKey(projectName, resourceType, resourceId, output)
+
+    /**
+     * Value of the output column for events that are not bound to any output.
+     */
+    const val ANY_OUTPUT = ""
+}
+
+fun StatusEvent.outputKey(): String = when (this) {
+    is Active -> StatusEventLatestTable.ANY_OUTPUT
+    is Deployed -> output.name
+    is Error -> output.name
+}
@@ -0,0 +1,54 @@
+package com.quadient.migration.persistence.upgrade
+
+import org.flywaydb.core.api.migration.BaseJavaMigration
+import org.flywaydb.core.api.migration.Context
+
+class V18__reference_table : BaseJavaMigration() {
+    override fun migrate(context: Context) {
+        val connection = context.connection
+        connection.createStatement().use { stmt ->
+            stmt.execute(
+                """
+                CREATE TABLE IF NOT EXISTS reference (
+                    project_name VARCHAR(50) NOT NULL,
+                    source_type VARCHAR(50) NOT NULL,
+                    source_id VARCHAR(255) NOT NULL,
+                    target_type VARCHAR(50) NOT NULL,
+                    target_id VARCHAR(255) NOT NULL,
+                    PRIMARY KEY (project_name, source_type, source_id, target_type, target_id)
+                )
+                """.trimIndent()
+            )
+            stmt.execute(
+                """
+                CREATE INDEX IF NOT EXISTS reference_target_idx
+                ON reference (project_name, target_type, target_id)
+                """.trimIndent()
+            )
+
+            // References are stored inside of the serialized content of the objects, extracting them requires
+            // the current object model. Projects with existing objects are only marked here and their references
+            // are rebuilt by the library on the next start, see ReferenceInternalRepository.backfill.
+            stmt.execute(
+                """
+                CREATE TABLE IF NOT EXISTS reference_backfill (
+                    project_name VARCHAR(50) NOT NULL,
+                    PRIMARY KEY (project_name)
+                )
+                """.trimIndent()
+            )
+
+            val tables = listOf(
+                "document_object", "image", "attachment", "text_style", "paragraph_style", "display_rule",
+                "variable", "variable_structure", "base_template"
+            )
+            stmt.execute(
+                """
+                INSERT INTO reference_backfill (project_name)
+                ${tables.joinToString("\nUNION\n") { "SELECT project_name FROM $it" }}
+                ON CONFLICT DO NOTHING
+                """.trimIndent()
+            )
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.quadient.migration.persistence.upgrade
+
+import org.flywaydb.core.api.migration.BaseJavaMigration
+import org.flywaydb.core.api.migration.Context
+
+class V19__status_event_table : BaseJavaMigration() {
+    override fun migrate(context: Context) {
+        val connection = context.connection
+        connection.createStatement().use { stmt ->
+            stmt.execute(
+                """
+                CREATE TABLE IF NOT EXISTS status_event (
+                    seq BIGSERIAL NOT NULL,
+                    id VARCHAR(255) NOT NULL,
+                    resource_type VARCHAR(255) NOT NULL,
+                    project_name VARCHAR(50) NOT NULL,
+                    output VARCHAR(50) NOT NULL,
+                    event JSONB NOT NULL,
+                    PRIMARY KEY (seq)
+                )
+                """.trimIndent()
+            )
+            stmt.execute(
+                """
+                CREATE INDEX IF NOT EXISTS status_event_resource_idx
+                ON status_event (project_name, resource_type, id, seq)
+                """.trimIndent()
+            )
+            stmt.execute(
+                """
+                CREATE TABLE IF NOT EXISTS status_event_latest (
+                    id VARCHAR(255) NOT NULL,
+                    resource_type VARCHAR(255) NOT NULL,
+                    project_name VARCHAR(50) NOT NULL,
+                    output VARCHAR(50) NOT NULL,
+                    seq BIGINT NOT NULL,
+                    event JSONB NOT NULL,
+                    PRIMARY KEY (project_name, resource_type, id, output)
+                )
+                """.trimIndent()
+            )
+
+            // Active events are not bound to any output and are stored with an empty output
+            stmt.execute(
+                """
+                INSERT INTO status_event (seq, id, resource_type, project_name, output, event)
+                SELECT row_number() OVER (ORDER BY t.project_name, t.resource_type, t.id, e.position),
+                       t.id, t.resource_type, t.project_name, COALESCE(e.event->>'output', ''), e.event
+                FROM status_tracking t
+                CROSS JOIN LATERAL jsonb_array_elements(t.status_events) WITH ORDINALITY AS e(event, position)
+                """.trimIndent()
+            )
+            stmt.execute(
+                """
+                SELECT setval(
+                    pg_get_serial_sequence('status_event', 'seq'),
+                    COALESCE((SELECT MAX(seq) FROM status_event), 0) + 1,
+                    false
+                )
+                """.trimIndent()
+            )
+            stmt.execute(
+                """
+                INSERT INTO status_event_latest (id, resource_type, project_name, output, seq, event)
+                SELECT DISTINCT ON (project_name, resource_type, id, output)
+                       id, resource_type, project_name, output, seq, event
+                FROM status_event
+                ORDER BY project_name, resource_type, id, output, seq DESC
+                """.trimIndent()
+            )
+
+            stmt.execute("DROP TABLE status_tracking")
+        }
+    }
+}
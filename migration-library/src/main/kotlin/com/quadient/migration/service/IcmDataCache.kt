@@ -7,6 +7,7 @@ import com.quadient.migration.shared.IcmPath
 import kotlinx.serialization.SerialName
 import kotlinx.serialization.Serializable
 import kotlinx.serialization.json.Json
+import com.quadient.migration.tools.LoadingCache
 import com.quadient.migration.tools.logger
 import kotlin.collections.toList
 import tools.jackson.databind.JsonNode
@@ -21,24 +22,30 @@ abstract class IcmDataCache(
     private val logger by logger()
     private val lenientJson = Json { ignoreUnknownKeys = true }
     private val xmlMapper by lazy { XmlMapper.builder().addModule(KotlinModule.Builder().build()).build() }
-    private val baseTemplateCache = mutableMapOf<IcmPath, BaseTemplateData?>()
-    private val wfd2XmlCache = mutableMapOf<IcmPath, String>()
+    // Loads are single flight, concurrent requests for the same path share one IPS round trip
+    private val baseTemplateCache = LoadingCache<IcmPath, BaseTemplateData?>()
+    private val wfd2XmlCache = LoadingCache<IcmPath, String>()
+    private val fileExistence = LoadingCache<IcmPath, Boolean>()
 
     val font: Map<FontKey, String> by lazy {
         fontDataStringToMap(ipsService.gatherFontData(resourcePathProvider.getFontRootFolder()))
     }
 
     fun wfd2Xml(path: IcmPath): String {
-        return wfd2XmlCache.getOrPut(path) {
-            ipsService.wfd2xml(path)
-        }
+        return wfd2XmlCache.getOrLoad(path, ipsService::wfd2xml)
     }
 
-    private val fileExistence: MutableMap<IcmPath, Boolean> = mutableMapOf()
     fun fileExists(path: IcmPath): Boolean {
-        return fileExistence.getOrPut(path) {
-            ipsService.fileExists(path)
-        }
+        return fileExistence.getOrLoad(path, ipsService::fileExists)
+    }
+
+    /**
+     * Drops loaded base templates, converted WFDs and file existence checks. Font and style definition data are kept.
+     */
+    fun invalidateAll() {
+        baseTemplateCache.invalidateAll()
+        wfd2XmlCache.invalidateAll()
+        fileExistence.invalidateAll()
     }
 
     val styleDefinitionData: StyleDefinitionData? by lazy {
@@ -88,19 +95,18 @@ abstract class IcmDataCache(
     }
 
     fun getOrLoadBaseTemplateData(path: IcmPath): BaseTemplateData? {
-        if (baseTemplateCache.containsKey(path)) return baseTemplateCache[path]
+        return baseTemplateCache.getOrLoad(path, ::loadBaseTemplateData)
+    }
 
+    private fun loadBaseTemplateData(path: IcmPath): BaseTemplateData? {
         if (!fileExists(path)) {
-            baseTemplateCache[path] = null
             return null
         }
 
         return try {
-            val xml = ipsService.wfd2xml(path)
-            parseBaseTemplateData(xml).also { baseTemplateCache[path] = it }
+            parseBaseTemplateData(ipsService.wfd2xml(path))
         } catch (e: Exception) {
             logger.warn("Failed to load base template data from '$path'.", e)
-            baseTemplateCache[path] = null
             null
         }
     }
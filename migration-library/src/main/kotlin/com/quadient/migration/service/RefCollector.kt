@@ -18,6 +18,7 @@ import com.quadient.migration.api.repository.DisplayRuleRepository
 import com.quadient.migration.api.repository.DocumentObjectRepository
 import com.quadient.migration.api.repository.ImageRepository
 import com.quadient.migration.api.repository.ParagraphStyleRepository
+import com.quadient.migration.api.repository.ReferenceGraph
 import com.quadient.migration.api.repository.TextStyleRepository
 import com.quadient.migration.api.repository.VariableRepository
 import com.quadient.migration.api.repository.VariableStructureRepository
@@ -32,6 +33,7 @@ class RefCollector(
     private val variableRepository: VariableRepository,
     private val variableStructureRepository: VariableStructureRepository,
     private val baseTemplateRepository: BaseTemplateRepository,
+    private val referenceGraph: ReferenceGraph,
 ) {
     fun <T: RefValidatable> collectAllRefs(obj: T, breakFn: (MigrationObject) -> Boolean = { true }): Set<Ref> {
         return obj.collectAllRefs(breakFn)
@@ -84,7 +86,7 @@ class RefCollector(
             val migObject = resolve(current)
             if (!onVisit(current, migObject)) continue
             if (!breakFn(migObject)) continue
-            if (migObject is RefValidatable) queue.addAll(migObject.collectRefs())
+            if (migObject is RefValidatable) queue.addAll(referenceGraph.referencesOf(current) { migObject }.orEmpty())
         }
     }
 }
\ No newline at end of file
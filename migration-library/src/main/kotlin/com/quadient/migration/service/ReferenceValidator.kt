@@ -7,6 +7,7 @@ import com.quadient.migration.api.repository.DocumentObjectRepository
 import com.quadient.migration.api.repository.AttachmentRepository
 import com.quadient.migration.api.repository.ImageRepository
 import com.quadient.migration.api.repository.ParagraphStyleRepository
+import com.quadient.migration.api.repository.ReferenceGraph
 import com.quadient.migration.api.repository.TextStyleRepository
 import com.quadient.migration.api.repository.VariableRepository
 import com.quadient.migration.api.repository.VariableStructureRepository
@@ -21,6 +22,7 @@ class ReferenceValidator(
     private val imageRepository: ImageRepository,
     private val attachmentRepository: AttachmentRepository,
     private val baseTemplateRepository: BaseTemplateRepository,
+    private val referenceGraph: ReferenceGraph,
 ) {
     /**
      * Validates all objects in the database.
@@ -29,21 +31,12 @@ class ReferenceValidator(
      * @return MissingRefs containing list of missing references
      */
     fun validateAll(): MissingRefs {
-        val documentObjects = documentObjectRepository.listAll()
-        val variables = variableRepository.listAll()
-        val paragraphStyles = paragraphStyleRepository.listAll()
-        val textStyles = textStyleRepository.listAll()
-        val dataStructures = variableStructureRepository.listAll()
-        val displayRules = displayRuleRepository.listAll()
-        val images = imageRepository.listAll()
-        val attachments = attachmentRepository.listAll()
-        val baseTemplates = baseTemplateRepository.listAll()
-        val alreadyValidatedRefs = mutableSetOf<Ref>()
+        val references = referenceGraph.allReferences(validatedTypes)
 
-        val missingRefs =
-            (documentObjects + variables + paragraphStyles + textStyles + dataStructures + displayRules + images + attachments + baseTemplates).mapNotNull {
-                    validate(it, alreadyValidatedRefs).missingRefs.ifEmpty { null }
-        }.flatten()
+        // Every object is validated, so checking direct references of all objects covers the transitive ones too
+        val missingRefs = validatedTypes.flatMap { type ->
+            references.entries.filter { type.isInstance(it.key) }.sortedBy { it.key.id }.flatMap { it.value }
+        }.filter { referenceGraph.referencesOf(it, ::resolve) == null }
 
         return MissingRefs(missingRefs.distinct())
     }
@@ -64,119 +57,50 @@ class ReferenceValidator(
                 continue
             }
 
-            when (current) {
-                is DocumentObjectRef -> {
-                    val documentObject = documentObjectRepository.find(current.id)
-
-                    if (documentObject == null) {
-                        missingRefs.add(current)
-                    } else {
-                        validatedRefs.add(current)
-                        queue.addAll(documentObject.collectRefs())
-                        alreadyValidRefs.add(current)
-                    }
-                }
-
-                is VariableRef -> {
-                    val variable = variableRepository.find(current.id)
-
-                    if (variable != null) {
-                        validatedRefs.add(current)
-                        alreadyValidRefs.add(current)
-                    } else {
-                        missingRefs.add(current)
-                    }
-                }
-
-                is ParagraphStyleRef -> {
-                    val style = paragraphStyleRepository.find(current.id)
-
-                    if (style != null) {
-                        validatedRefs.add(current)
-                        alreadyValidRefs.add(current)
-                        queue.addAll(style.collectRefs())
-                    } else {
-                        missingRefs.add(current)
-                    }
-                }
-
-                is TextStyleRef -> {
-                    val style = textStyleRepository.find(current.id)
-
-                    if (style != null) {
-                        validatedRefs.add(current)
-                        alreadyValidRefs.add(current)
-                        queue.addAll(style.collectRefs())
-                    } else {
-                        missingRefs.add(current)
-                    }
-                }
-
-                is DisplayRuleRef -> {
-                    val rule = displayRuleRepository.find(current.id)
-
-                    if (rule != null) {
-                        validatedRefs.add(current)
-                        alreadyValidRefs.add(current)
-                        queue.addAll(rule.collectRefs())
-                    } else {
-                        missingRefs.add(current)
-                    }
-                }
-
-                is ImageRef -> {
-                    val image = imageRepository.find(current.id)
-
-                    if (image != null) {
-                        validatedRefs.add(current)
-                        alreadyValidRefs.add(current)
-                        queue.addAll(image.collectRefs())
-                    } else {
-                        missingRefs.add(current)
-                    }
-                }
-
-                is AttachmentRef -> {
-                    val attachment = attachmentRepository.find(current.id)
-
-                    if (attachment != null) {
-                        validatedRefs.add(current)
-                        alreadyValidRefs.add(current)
-                        queue.addAll(attachment.collectRefs())
-                    } else {
-                        missingRefs.add(current)
-                    }
-                }
-
-                is VariableStructureRef -> {
-                    val variableStructure = variableStructureRepository.find(current.id)
-                    
-                    if (variableStructure != null) {
-                        validatedRefs.add(current)
-                        alreadyValidRefs.add(current)
-                        queue.addAll(variableStructure.collectRefs())
-                    } else {
-                        missingRefs.add(current)
-                    }
-                }
-
-                is BaseTemplateRef -> {
-                    val baseTemplate = baseTemplateRepository.find(current.id)
+            val refs = referenceGraph.referencesOf(current, ::resolve)
+            if (refs == null) {
+                missingRefs.add(current)
+                continue
+            }
 
-                    if (baseTemplate != null) {
-                        validatedRefs.add(current)
-                        alreadyValidRefs.add(current)
-                    } else {
-                        missingRefs.add(current)
-                    }
-                }
+            validatedRefs.add(current)
+            alreadyValidRefs.add(current)
+            when (current) {
+                is VariableRef, is BaseTemplateRef -> {}
+                is DocumentObjectRef, is ParagraphStyleRef, is TextStyleRef, is DisplayRuleRef, is ImageRef,
+                is AttachmentRef, is VariableStructureRef -> queue.addAll(refs)
             }
         }
 
         return ValidationResult(validatedRefs, missingRefs)
     }
 
+    private fun resolve(ref: Ref): RefValidatable? = when (ref) {
+        is DocumentObjectRef -> documentObjectRepository.find(ref.id)
+        is VariableRef -> variableRepository.find(ref.id)
+        is ParagraphStyleRef -> paragraphStyleRepository.find(ref.id)
+        is TextStyleRef -> textStyleRepository.find(ref.id)
+        is DisplayRuleRef -> displayRuleRepository.find(ref.id)
+        is ImageRef -> imageRepository.find(ref.id)
+        is AttachmentRef -> attachmentRepository.find(ref.id)
+        is VariableStructureRef -> variableStructureRepository.find(ref.id)
+        is BaseTemplateRef -> baseTemplateRepository.find(ref.id)
+    }
+
     data class ValidationResult(val validatedRefs: List<Ref>, val missingRefs: List<Ref>)
     data class MissingRefs(val missingRefs: List<Ref>)
-}
 
+    private companion object {
+        val validatedTypes = listOf(
+            DocumentObjectRef::class,
+            VariableRef::class,
+            ParagraphStyleRef::class,
+            TextStyleRef::class,
+            VariableStructureRef::class,
+            DisplayRuleRef::class,
+            ImageRef::class,
+            AttachmentRef::class,
+            BaseTemplateRef::class,
+        )
+    }
+}
@@ -1,9 +1,11 @@
 package com.quadient.migration.service.deploy
 
+import com.quadient.migration.api.DeployPipelineConfig
 import com.quadient.migration.api.ProjectConfig
 import com.quadient.migration.api.repository.StatusTrackingRepository
 import com.quadient.migration.data.Active
 import com.quadient.migration.data.Deployed
+import com.quadient.migration.data.StatusEvent
 import com.quadient.migration.api.dto.migrationmodel.DisplayRuleRef
 import com.quadient.migration.api.dto.migrationmodel.DocumentObject
 import com.quadient.migration.api.dto.migrationmodel.DocumentObjectRef
@@ -13,7 +15,9 @@ import com.quadient.migration.api.dto.migrationmodel.BaseTemplateRef
 import com.quadient.migration.api.dto.migrationmodel.DisplayRule
 import com.quadient.migration.api.dto.migrationmodel.Image
 import com.quadient.migration.api.dto.migrationmodel.ImageRef
+import com.quadient.migration.api.dto.migrationmodel.MigrationObject
 import com.quadient.migration.api.dto.migrationmodel.ParagraphStyleRef
+import com.quadient.migration.api.dto.migrationmodel.ResourceId
 import com.quadient.migration.api.dto.migrationmodel.ResourceRef
 import com.quadient.migration.api.dto.migrationmodel.TextStyleRef
 import com.quadient.migration.api.dto.migrationmodel.VariableRef
@@ -43,6 +47,8 @@ import com.quadient.migration.service.deploy.utility.ProgressReporterImpl
 import com.quadient.migration.service.deploy.utility.ResourceType
 import com.quadient.migration.service.deploy.utility.ResultTracker
 import com.quadient.migration.service.deploy.utility.ResultTrackerImpl
+import com.quadient.migration.service.deploy.utility.SynchronizedResultTracker
+import com.quadient.migration.service.deploy.utility.UploadSpool
 import com.quadient.migration.service.deploy.utility.ValidationResult
 import com.quadient.migration.service.inspirebuilder.InspireDocumentObjectBuilder
 import com.quadient.migration.service.ResourcePathProvider
@@ -57,6 +63,16 @@ import com.quadient.migration.shared.IcmPath
 import com.quadient.migration.shared.ImageType
 import com.quadient.migration.shared.toIcmPath
 import com.quadient.migration.tools.logger
+import java.io.OutputStream
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
+import org.slf4j.MDC
 import kotlin.collections.plus
 import kotlin.uuid.Uuid
 import com.quadient.migration.data.Error as StatusError
@@ -91,7 +107,11 @@ sealed class DeployClient(
 {
     protected val logger by logger()
 
-    abstract fun uploadDocumentObject(obj: DocumentObject, targetPath: IcmPath, wfdXml: String): OperationResult
+    /**
+     * Uploads WFD XML of [obj] written by [writeXml]. The stream passed to [writeXml] is buffered by the implementation,
+     * so writers do not need to buffer it themselves.
+     */
+    abstract fun uploadDocumentObject(obj: DocumentObject, targetPath: IcmPath, writeXml: (OutputStream) -> Unit): OperationResult
     abstract fun uploadImage(img: Image, targetPath: IcmPath, data: ByteArray): OperationResult
     abstract fun uploadAttachment(att: Attachment, targetPath: IcmPath, data: ByteArray): OperationResult
     abstract fun uploadDisplayRule(rule: DisplayRule, targetPath: IcmPath, data: ByteArray): OperationResult
@@ -101,7 +121,7 @@ sealed class DeployClient(
     abstract fun deployDocumentObjectsInternal(
         documentObjects: List<DocumentObject>,
         tracker: ResultTracker,
-        uploadDocumentObject: (DocumentObject, IcmPath, String) -> OperationResult,
+        uploadDocumentObject: (DocumentObject, IcmPath, (OutputStream) -> Unit) -> OperationResult,
         uploadImage: (Image, IcmPath, ByteArray) -> OperationResult,
         uploadAttachment: (Attachment, IcmPath, ByteArray) -> OperationResult,
         uploadDisplayRule: (DisplayRule, IcmPath, ByteArray) -> OperationResult,
@@ -121,15 +141,17 @@ sealed class DeployClient(
         }
 
         val tracker = ResultTrackerImpl(statusTrackingRepository, projectConfig.inspireOutput)
-        val result = if (skipDependencies) {
-            val ordered = refInheritanceService.apply(deployOrder(documentObjects))
-            deployDocumentObjectsInternal(ordered, tracker, ::uploadDocumentObject, ::uploadImage, ::uploadAttachment, ::uploadDisplayRule)
+        val ordered = if (skipDependencies) {
+            refInheritanceService.apply(deployOrder(documentObjects))
         } else {
             val dependencies = documentObjects.flatMap { it.findDependencies() }.filter { it.internal != true }
-            val ordered = refInheritanceService.apply(deployOrder((documentObjects + dependencies).toSet().toList()))
-            deployDocumentObjectsInternal(ordered, tracker, ::uploadDocumentObject, ::uploadImage, ::uploadAttachment, ::uploadDisplayRule)
+            refInheritanceService.apply(deployOrder((documentObjects + dependencies).toSet().toList()))
         }
 
+        val result = deployDocumentObjectsInternal(
+            ordered, tracker, ::uploadDocumentObject, ::uploadImage, ::uploadAttachment, ::uploadDisplayRule
+        )
+
         runPostProcessors(result)
 
         return result
@@ -141,6 +163,47 @@ sealed class DeployClient(
         deployImageCb: (Image, IcmPath, ByteArray) -> OperationResult,
         deployAttachmentCb: (Attachment, IcmPath, ByteArray) -> OperationResult,
     ) {
+        val resourceRefs = collectResourceRefs(documentObjects, tracker)
+        val statuses = prefetchResourceStatuses(resourceRefs)
+        for (resourceRef in resourceRefs) {
+            when (resourceRef) {
+                is ImageRef -> deployImage(resourceRef, tracker, statuses, deployImageCb)
+                is AttachmentRef -> deployAttachment(resourceRef, tracker, statuses, deployAttachmentCb)
+            }
+        }
+    }
+
+    /**
+     * Walks the same objects as [deployDocumentObjectsInternal] and runs the same status and metadata checks, but only
+     * resolves the target paths of the objects that would be deployed and passes them to [track]. No WFD XML is built
+     * and no image or attachment data is read from storage.
+     */
+    protected open fun planDeployment(
+        documentObjects: List<DocumentObject>,
+        tracker: ResultTracker,
+        track: (MigrationObject, ResourceType, IcmPath) -> Unit,
+    ): DeploymentResult {
+        val resourceRefs = collectResourceRefs(documentObjects, tracker)
+        val resourceStatuses = prefetchResourceStatuses(resourceRefs)
+        for (resourceRef in resourceRefs) {
+            when (resourceRef) {
+                is ImageRef -> prepareImageDeployment(resourceRef, tracker, resourceStatuses)
+                    ?.let { (image, targetPath) -> track(image, ResourceType.Image, targetPath) }
+
+                is AttachmentRef -> prepareAttachmentDeployment(resourceRef, tracker, resourceStatuses)
+                    ?.let { (attachment, targetPath) -> track(attachment, ResourceType.Attachment, targetPath) }
+            }
+        }
+
+        val statuses = prefetchStatuses(ResourceType.DocumentObject, documentObjects.map { it.id })
+        for (obj in documentObjects) {
+            prepareDocumentObjectDeployment(obj, tracker, statuses)?.let { track(obj, ResourceType.DocumentObject, it) }
+        }
+
+        return tracker.deploymentResult
+    }
+
+    private fun collectResourceRefs(documentObjects: List<DocumentObject>, tracker: ResultTracker): List<ResourceRef> {
         val allResourceRefs = documentObjects.flatMap {
             try {
                 it.getAllDocumentObjectResourceRefs()
@@ -151,30 +214,61 @@ sealed class DeployClient(
         }.map { resolveAlias(it, imageRepository, attachmentRepository) }
          .distinct()
 
-        for (resourceRef in allResourceRefs) {
-            when (resourceRef) {
-                is ImageRef -> deployImage(resourceRef, tracker, deployImageCb)
-                is AttachmentRef -> deployAttachment(resourceRef, tracker, deployAttachmentCb)
-            }
-        }
+        return allResourceRefs
+    }
+
+    private fun prefetchResourceStatuses(resourceRefs: List<ResourceRef>): PrefetchedStatuses {
+        return prefetchStatuses(ResourceType.Image, resourceRefs.filterIsInstance<ImageRef>().map { it.id }) +
+            prefetchStatuses(ResourceType.Attachment, resourceRefs.filterIsInstance<AttachmentRef>().map { it.id })
     }
 
     private fun deployImage(
         imageRef: ImageRef,
         tracker: ResultTracker,
+        statuses: PrefetchedStatuses,
         deployImage: (Image, IcmPath, ByteArray) -> OperationResult,
     ) {
-        if (!shouldDeployObject(imageRef.id, ResourceType.Image, imageRef.id.toIcmPath(), tracker.deploymentResult)) {
-            logger.info("Skipping deployment of '${imageRef.id}' as it is not marked for deployment.")
+        val (imageModel, icmImagePath) = prepareImageDeployment(imageRef, tracker, statuses) ?: return
+
+        logger.debug("Starting deployment of image '${imageModel.nameOrId()}'.")
+        val sourcePath = imageModel.sourcePath!!
+        val readResult = storage.readSafely(sourcePath)
+        if (readResult is ReadResult.Error) {
+            val message = "Error while reading image source data: ${readResult.errorMessage}."
+            logger.error(message)
+            tracker.errorImage(imageModel.id, icmImagePath, message)
             return
         }
 
+        val imageData = (readResult as ReadResult.Success).result
+        logger.trace("Loaded image data of size ${imageData.size} from storage.")
+
+        val uploadResult = deployImage(imageModel, icmImagePath, imageData)
+        if (uploadResult is OperationResult.Failure) {
+            tracker.errorImage(imageModel.id, icmImagePath, uploadResult.message)
+            return
+        }
+
+        logger.debug("Deployment of image '{}' to '{}' is successful.", imageModel.nameOrId(), icmImagePath)
+        tracker.deployedImage(imageModel.id, icmImagePath)
+    }
+
+    private fun prepareImageDeployment(
+        imageRef: ImageRef,
+        tracker: ResultTracker,
+        statuses: PrefetchedStatuses,
+    ): Pair<Image, IcmPath>? {
+        if (!shouldDeployObject(imageRef.id, ResourceType.Image, imageRef.id.toIcmPath(), tracker.deploymentResult, statuses)) {
+            logger.info("Skipping deployment of '${imageRef.id}' as it is not marked for deployment.")
+            return null
+        }
+
         val imageModel = imageRepository.find(imageRef.id)
         if (imageModel == null) {
             val message = "Image '${imageRef.id}' not found."
             logger.error(message)
             tracker.errorImage(imageRef.id, null, message)
-            return
+            return null
         }
 
         val icmImagePath = resourcePathProvider.getImagePath(imageModel)
@@ -185,14 +279,14 @@ sealed class DeployClient(
             val keys = invalidMetadata.joinToString(", ", prefix = "[", postfix = "]")
             val message = "Metadata of image '${imageModel.id}' contains invalid keys: $keys"
             tracker.errorImage(imageModel.id, icmImagePath, message)
-            return
+            return null
         }
 
         if (imageModel.imageType == ImageType.Unknown) {
             val message = "Skipping deployment of image '${imageModel.nameOrId()}' due to unknown image type."
             logger.warn(message)
             tracker.warningImage(imageModel.id, icmImagePath, message)
-            return
+            return null
         }
 
         if (imageModel.skip.skipped) {
@@ -200,47 +294,58 @@ sealed class DeployClient(
             val message = "Image '${imageModel.nameOrId()}' is skipped.$reason"
             logger.warn(message)
             tracker.warningImage(imageModel.id, icmImagePath, message)
-            return
+            return null
         }
 
         if (imageModel.sourcePath.isNullOrBlank()) {
             val message = "Skipping deployment of image '${imageModel.nameOrId()}' due to missing source path."
             logger.warn(message)
             tracker.warningImage(imageModel.id, icmImagePath, message)
-            return
+            return null
         }
 
-        logger.debug("Starting deployment of image '${imageModel.nameOrId()}'.")
-        val sourcePath = imageModel.sourcePath!!
+        return imageModel to icmImagePath
+    }
+
+    private fun deployAttachment(
+        attachmentRef: AttachmentRef,
+        tracker: ResultTracker,
+        statuses: PrefetchedStatuses,
+        deployAttachment: (Attachment, IcmPath, ByteArray) -> OperationResult,
+        ) {
+        val (attachmentModel, icmFilePath) = prepareAttachmentDeployment(attachmentRef, tracker, statuses) ?: return
+
+        logger.debug("Starting deployment of attachment '${attachmentModel.nameOrId()}'.")
+        val sourcePath = attachmentModel.sourcePath!!
         val readResult = storage.readSafely(sourcePath)
         if (readResult is ReadResult.Error) {
-            val message = "Error while reading image source data: ${readResult.errorMessage}."
+            val message = "Error while reading attachment source data: ${readResult.errorMessage}."
             logger.error(message)
-            tracker.errorImage(imageModel.id, icmImagePath, message)
+            tracker.errorAttachment(attachmentModel.id, icmFilePath, message)
             return
         }
 
-        val imageData = (readResult as ReadResult.Success).result
-        logger.trace("Loaded image data of size ${imageData.size} from storage.")
+        val attachmentData = (readResult as ReadResult.Success).result
+        logger.trace("Loaded attachment data of size ${attachmentData.size} from storage.")
 
-        val uploadResult = deployImage(imageModel, icmImagePath, imageData)
+        val uploadResult = deployAttachment(attachmentModel, icmFilePath, attachmentData)
         if (uploadResult is OperationResult.Failure) {
-            tracker.errorImage(imageModel.id, icmImagePath, uploadResult.message)
+            tracker.errorAttachment(attachmentModel.id, icmFilePath, uploadResult.message)
             return
         }
 
-        logger.debug("Deployment of image '{}' to '{}' is successful.", imageModel.nameOrId(), icmImagePath)
-        tracker.deployedImage(imageModel.id, icmImagePath)
+        logger.debug("Deployment of attachment '{}' to '{}' is successful.", attachmentModel.nameOrId(), icmFilePath)
+        tracker.deployedAttachment(attachmentModel.id, icmFilePath)
     }
 
-    private fun deployAttachment(
+    private fun prepareAttachmentDeployment(
         attachmentRef: AttachmentRef,
         tracker: ResultTracker,
-        deployAttachment: (Attachment, IcmPath, ByteArray) -> OperationResult,
-        ) {
-        if (!shouldDeployObject(attachmentRef.id, ResourceType.Attachment, attachmentRef.id.toIcmPath(), tracker.deploymentResult)) {
+        statuses: PrefetchedStatuses,
+    ): Pair<Attachment, IcmPath>? {
+        if (!shouldDeployObject(attachmentRef.id, ResourceType.Attachment, attachmentRef.id.toIcmPath(), tracker.deploymentResult, statuses)) {
             logger.info("Skipping deployment of attachment '${attachmentRef.id}' as it is not marked for deployment.")
-            return
+            return null
         }
 
         val attachmentModel = attachmentRepository.find(attachmentRef.id)
@@ -248,7 +353,7 @@ sealed class DeployClient(
             val message = "Attachment '${attachmentRef.id}' not found."
             logger.error(message)
             tracker.errorAttachment(attachmentRef.id, null, message)
-            return
+            return null
         }
 
         val icmFilePath = resourcePathProvider.getAttachmentPath(attachmentModel)
@@ -258,43 +363,43 @@ sealed class DeployClient(
             val message = "Attachment '${attachmentModel.nameOrId()}' is skipped.$reason"
             logger.warn(message)
             tracker.warningAttachment(attachmentModel.id, icmFilePath, message)
-            return
+            return null
         }
 
         if (attachmentModel.sourcePath.isNullOrBlank()) {
             val message = "Skipping deployment of attachment '${attachmentModel.nameOrId()}' due to missing source path."
             logger.warn(message)
             tracker.warningAttachment(attachmentModel.id, icmFilePath, message)
-            return
+            return null
         }
 
-        logger.debug("Starting deployment of attachment '${attachmentModel.nameOrId()}'.")
-        val sourcePath = attachmentModel.sourcePath!!
-        val readResult = storage.readSafely(sourcePath)
-        if (readResult is ReadResult.Error) {
-            val message = "Error while reading attachment source data: ${readResult.errorMessage}."
-            logger.error(message)
-            tracker.errorAttachment(attachmentModel.id, icmFilePath, message)
-            return
-        }
-
-        val attachmentData = (readResult as ReadResult.Success).result
-        logger.trace("Loaded attachment data of size ${attachmentData.size} from storage.")
+        return attachmentModel to icmFilePath
+    }
 
-        val uploadResult = deployAttachment(attachmentModel, icmFilePath, attachmentData)
-        if (uploadResult is OperationResult.Failure) {
-            tracker.errorAttachment(attachmentModel.id, icmFilePath, uploadResult.message)
-            return
+    /**
+     * Loads the last status of all the given objects in bulk, so that the following [shouldDeployObject] calls
+     * given the result do not query the status one by one.
+     */
+    protected fun prefetchStatuses(resourceType: ResourceType, ids: Collection<String>): PrefetchedStatuses {
+        val keys = ids.distinct().map { ResourceId(it, resourceType) }
+        if (keys.isEmpty()) {
+            return PrefetchedStatuses(mutableMapOf())
         }
 
-        logger.debug("Deployment of attachment '{}' to '{}' is successful.", attachmentModel.nameOrId(), icmFilePath)
-        tracker.deployedAttachment(attachmentModel.id, icmFilePath)
+        val events = statusTrackingRepository.findLastEventsRelevantToOutput(keys, projectConfig.inspireOutput)
+        return PrefetchedStatuses(keys.associateWithTo(mutableMapOf()) { events[it] })
     }
 
     protected fun shouldDeployObject(
-        id: String, resourceType: ResourceType, targetPath: IcmPath?, deploymentResult: DeploymentResult
+        id: String,
+        resourceType: ResourceType,
+        targetPath: IcmPath?,
+        deploymentResult: DeploymentResult,
+        statuses: PrefetchedStatuses,
     ): Boolean {
-        val currentStatus = statusTrackingRepository.findLastEventRelevantToOutput(id, resourceType, projectConfig.inspireOutput)
+        val currentStatus = statuses.take(ResourceId(id, resourceType)) {
+            statusTrackingRepository.findLastEventRelevantToOutput(id, resourceType, projectConfig.inspireOutput)
+        }
 
         return when (currentStatus) {
             null -> {
@@ -320,6 +425,170 @@ sealed class DeployClient(
         }
     }
 
+    /**
+     * Pipelined variant of the document object deploy loop, used when [ProjectConfig.deployPipeline] is enabled.
+     *
+     * Status and metadata checks run serially on the calling thread. WFD XML of the remaining objects is then built
+     * on a pool of [DeployPipelineConfig.buildThreads] workers and uploaded on [DeployPipelineConfig.uploadThreads]
+     * workers. An object is only uploaded after every object of the previous [deployLevels] level has finished,
+     * so dependencies still reach ICM before their dependents. At most [DeployPipelineConfig.maxPendingUploads]
+     * objects are in flight at the same time. Built XML is written straight into an [UploadSpool], in memory up to
+     * [DeployPipelineConfig.maxPendingUploadBytes] and in temporary files beyond that, and uploaded from there.
+     * Workers log with the MDC of the calling thread.
+     *
+     * Exceptions accepted by [isRecoverable] are recorded as an error of the object. Any other exception stops the
+     * deployment, objects not started yet are skipped, work in flight is cancelled and the exception is rethrown. An
+     * interrupt of the calling thread cancels the deployment the same way.
+     */
+    protected fun deployDocumentObjectsPipelined(
+        documentObjects: List<DocumentObject>,
+        tracker: ResultTracker,
+        statuses: PrefetchedStatuses,
+        uploadDocumentObject: (DocumentObject, IcmPath, (OutputStream) -> Unit) -> OperationResult,
+        isRecoverable: (Exception) -> Boolean,
+    ): DeploymentResult {
+        val config = projectConfig.deployPipeline
+        val deployable = documentObjects.mapNotNull { obj ->
+            prepareDocumentObjectDeployment(obj, tracker, statuses)?.let { obj to it }
+        }
+        val targetPaths = deployable.associate { (obj, targetPath) -> obj.id to targetPath }
+        val levels = deployLevels(deployable.map { it.first })
+
+        val sharedTracker = SynchronizedResultTracker(tracker)
+        val inFlight = Semaphore(config.maxPendingUploads)
+        val spool = UploadSpool(config.maxPendingUploadBytes)
+        val fatalError = AtomicReference<Throwable?>()
+        val failed = CompletableFuture<Void>()
+        val submitted = mutableListOf<CompletableFuture<Unit>>()
+        val mdc = MDC.getCopyOfContextMap()
+        val buildExecutor = pipelineExecutor("deploy-build", config.buildThreads, mdc)
+        val uploadExecutor = pipelineExecutor("deploy-upload", config.uploadThreads, mdc)
+
+        try {
+            var previousLevel: CompletableFuture<Void> = CompletableFuture.completedFuture(null)
+            levels@ for (level in levels) {
+                val levelFutures = mutableListOf<CompletableFuture<Unit>>()
+                for (obj in level) {
+                    inFlight.acquire()
+                    if (fatalError.get() != null) break@levels
+
+                    val targetPath = targetPaths.getValue(obj.id)
+                    val stopIfFailed = {
+                        if (fatalError.get() != null) throw CancellationException("Deployment stopped by a previous error")
+                    }
+                    val future = CompletableFuture.supplyAsync({
+                        stopIfFailed()
+                        spool.add { out -> documentObjectBuilder.buildDocumentObject(obj, out) }
+                    }, buildExecutor).thenCombineAsync(previousLevel, { pending, _ ->
+                        pending.use {
+                            stopIfFailed()
+                            uploadDocumentObject(obj, targetPath, it)
+                        }
+                    }, uploadExecutor).handle { result, error ->
+                        try {
+                            val cancelled = (error as? CompletionException)?.cause ?: error
+                            if (cancelled !is CancellationException) {
+                                recordPipelinedResult(obj, targetPath, result, error, sharedTracker, isRecoverable)
+                            }
+                        } catch (e: Throwable) {
+                            if (fatalError.compareAndSet(null, e)) failed.complete(null)
+                        } finally {
+                            inFlight.release()
+                        }
+                    }
+                    levelFutures.add(future)
+                    submitted.add(future)
+                }
+                previousLevel = CompletableFuture.allOf(*levelFutures.toTypedArray())
+            }
+
+            // get() unlike join() returns on interrupt, so a cancelled job does not wait for the remaining levels
+            CompletableFuture.anyOf(CompletableFuture.allOf(*submitted.toTypedArray()), failed).get()
+        } catch (e: InterruptedException) {
+            logger.info("Deployment of document objects was interrupted, cancelling remaining uploads.")
+            throw e
+        } finally {
+            submitted.forEach { it.cancel(true) }
+            buildExecutor.shutdownNow()
+            uploadExecutor.shutdownNow()
+            spool.close()
+        }
+
+        fatalError.get()?.let { throw it }
+        return tracker.deploymentResult
+    }
+
+    private fun pipelineExecutor(name: String, threads: Int, mdc: Map<String, String>?): ExecutorService {
+        val counter = AtomicInteger()
+        return Executors.newFixedThreadPool(threads) { runnable ->
+            val withMdc = Runnable {
+                if (mdc != null) MDC.setContextMap(mdc)
+                try {
+                    runnable.run()
+                } finally {
+                    MDC.clear()
+                }
+            }
+            Thread(withMdc, "$name-${counter.incrementAndGet()}").apply { isDaemon = true }
+        }
+    }
+
+    private fun recordPipelinedResult(
+        obj: DocumentObject,
+        targetPath: IcmPath,
+        result: OperationResult?,
+        failure: Throwable?,
+        tracker: ResultTracker,
+        isRecoverable: (Exception) -> Boolean,
+    ) {
+        if (failure != null) {
+            val cause = (failure as? CompletionException)?.cause ?: failure
+            if (cause !is Exception || !isRecoverable(cause)) {
+                throw cause
+            }
+            tracker.errorDocumentObject(obj.id, targetPath, obj.type, cause.message ?: "")
+            return
+        }
+
+        when (result) {
+            OperationResult.Success -> {
+                logger.debug("Deployment of '$targetPath' is successful.")
+                tracker.deployedDocumentObject(obj.id, targetPath, obj.type)
+            }
+
+            is OperationResult.Failure -> {
+                logger.error("Failed to deploy '$targetPath'.")
+                tracker.errorDocumentObject(obj.id, targetPath, obj.type, result.message)
+            }
+
+            null -> error("Upload of '$targetPath' returned no result.")
+        }
+    }
+
+    protected fun prepareDocumentObjectDeployment(
+        obj: DocumentObject,
+        tracker: ResultTracker,
+        statuses: PrefetchedStatuses,
+    ): IcmPath? {
+        val targetPath = resourcePathProvider.getDocumentObjectPath(obj)
+
+        if (!shouldDeployObject(obj.id, ResourceType.DocumentObject, targetPath, tracker.deploymentResult, statuses)) {
+            logger.info("Skipping deployment of '${obj.id}' as it is not marked for deployment.")
+            return null
+        }
+
+        val invalidMetadata = obj.getInvalidMetadataKeys()
+        if (invalidMetadata.isNotEmpty()) {
+            logger.error("Failed to deploy '$targetPath' due to invalid metadata.")
+            val keys = invalidMetadata.joinToString(", ", prefix = "[", postfix = "]")
+            val message = "Metadata of document object '${obj.id}' contains invalid keys: $keys"
+            tracker.errorDocumentObject(obj.id, targetPath, obj.type, message)
+            return null
+        }
+
+        return targetPath
+    }
+
     fun progressReport(deployId: Uuid? = null): ProgressReport {
         val documentObjects = if (projectConfig.getDocumentObjectsToProcess().isNotEmpty()) {
             getDocumentObjectsToDeploy(projectConfig.getDocumentObjectsToProcess())
@@ -338,29 +607,14 @@ sealed class DeployClient(
             } else {
                 getAllDocumentObjectsToDeploy()
             }
-            return runConflictValidation(documentObjects, ::deployDocumentObjectsInternal)
+            return runConflictValidation(documentObjects, ::planDeployment)
         } finally {
             pp.forEach(::addPostProcessor)
         }
     }
 
     private fun DocumentObject.findDependencies(): List<DocumentObject> {
-        val dependencies = mutableListOf<DocumentObject>()
-        this.collectRefs().forEach { ref ->
-            when (ref) {
-                is DisplayRuleRef, is TextStyleRef, is ParagraphStyleRef, is VariableRef, is VariableStructureRef, is BaseTemplateRef -> {}
-                is ImageRef -> {}
-                is AttachmentRef -> {}
-                is DocumentObjectRef -> {
-                    val model = documentObjectRepository.findOrFail(ref.id)
-                    if (shouldIncludeDependency(model)) {
-                        dependencies.add(model)
-                    }
-                    dependencies.addAll(model.findDependencies())
-                }
-            }
-        }
-        return dependencies
+        return deployOrder.findDependencies(this, ::shouldIncludeDependency)
     }
 
     private fun DocumentObject.getAllDocumentObjectResourceRefs(): List<ResourceRef> {
@@ -383,4 +637,16 @@ sealed class DeployClient(
 
         return resources
     }
-}
\ No newline at end of file
+
+    /**
+     * Last statuses loaded in bulk by [prefetchStatuses] for one deploy run. Each status is taken only once, objects
+     * that are checked again later read their current status from the repository.
+     */
+    protected class PrefetchedStatuses(private val events: MutableMap<ResourceId, StatusEvent?>) {
+        operator fun plus(other: PrefetchedStatuses) = PrefetchedStatuses((events + other.events).toMutableMap())
+
+        fun take(key: ResourceId, load: () -> StatusEvent?): StatusEvent? {
+            return if (events.containsKey(key)) events.remove(key) else load()
+        }
+    }
+}
@@ -40,6 +40,7 @@ import org.jetbrains.exposed.v1.core.and
 import org.jetbrains.exposed.v1.core.eq
 import org.jetbrains.exposed.v1.core.inList
 import org.jetbrains.exposed.v1.json.extract
+import java.io.OutputStream
 import kotlin.uuid.Uuid
 
 class DesignerDeployClient(
@@ -130,8 +131,9 @@ class DesignerDeployClient(
         error("Base template deployment is not supported for Designer output.")
     }
 
-    override fun uploadDocumentObject(obj: DocumentObject, targetPath: IcmPath, wfdXml: String): OperationResult {
-        return ipsService.xml2wfd(wfdXml, targetPath)
+    override fun uploadDocumentObject(obj: DocumentObject, targetPath: IcmPath, writeXml: (OutputStream) -> Unit): OperationResult {
+        // Streamed through a temporary file, so large layouts are not held in memory as a whole
+        return ipsService.xml2wfd(targetPath, writeXml)
     }
 
     override fun uploadImage(img: Image, targetPath: IcmPath, data: ByteArray): OperationResult {
@@ -149,33 +151,24 @@ class DesignerDeployClient(
     override fun deployDocumentObjectsInternal(
         documentObjects: List<DocumentObject>,
         tracker: ResultTracker,
-        uploadDocumentObject: (DocumentObject, IcmPath, String) -> OperationResult,
+        uploadDocumentObject: (DocumentObject, IcmPath, (OutputStream) -> Unit) -> OperationResult,
         uploadImage: (Image, IcmPath, ByteArray) -> OperationResult,
         uploadAttachment: (Attachment, IcmPath, ByteArray) -> OperationResult,
         uploadDisplayRule: (DisplayRule, IcmPath, ByteArray) -> OperationResult,
     ): DeploymentResult {
         deployImagesAndAttachments(documentObjects, tracker, uploadImage, uploadAttachment)
 
-        for (it in documentObjects) {
-            val targetPath = resourcePathProvider.getDocumentObjectPath(it)
-
-            if (!shouldDeployObject(it.id, ResourceType.DocumentObject, targetPath, tracker.deploymentResult)) {
-                logger.info("Skipping deployment of '${it.id}' as it is not marked for deployment.")
-                continue
-            }
+        val statuses = prefetchStatuses(ResourceType.DocumentObject, documentObjects.map { it.id })
+        if (projectConfig.deployPipeline.enabled) {
+            return deployDocumentObjectsPipelined(documentObjects, tracker, statuses, uploadDocumentObject) { true }
+        }
 
-            val invalidMetadata = it.getInvalidMetadataKeys()
-            if (invalidMetadata.isNotEmpty()) {
-                logger.error("Failed to deploy '$targetPath' due to invalid metadata.")
-                val keys = invalidMetadata.joinToString(", ", prefix = "[", postfix = "]")
-                val message = "Metadata of document object '${it.id}' contains invalid keys: $keys"
-                tracker.errorDocumentObject(it.id, targetPath, it.type, message)
-                continue
-            }
+        for (it in documentObjects) {
+            val targetPath = prepareDocumentObjectDeployment(it, tracker, statuses) ?: continue
 
             try {
-                val templateWfdXml  = documentObjectBuilder.buildDocumentObject(it)
-                when (val xml2wfdResult = uploadDocumentObject(it, targetPath, templateWfdXml)) {
+                val xml2wfdResult = uploadDocumentObject(it, targetPath) { out -> documentObjectBuilder.buildDocumentObject(it, out) }
+                when (xml2wfdResult) {
                     OperationResult.Success -> {
                         logger.debug("Deployment of $targetPath is successful.")
                         tracker.deployedDocumentObject(it.id, targetPath, it.type)
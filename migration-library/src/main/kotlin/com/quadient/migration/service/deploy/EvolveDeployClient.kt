@@ -36,6 +36,7 @@ import com.quadient.migration.shared.Categorization
 import com.quadient.migration.shared.DocumentObjectType
 import com.quadient.migration.shared.IcmPath
 import com.quadient.migration.shared.toIcmPath
+import java.io.OutputStream
 import java.util.UUID
 
 class EvolveDeployClient(
@@ -101,7 +102,7 @@ class EvolveDeployClient(
         }
     }
 
-    override fun uploadDocumentObject(obj: DocumentObject, targetPath: IcmPath, wfdXml: String): OperationResult {
+    override fun uploadDocumentObject(obj: DocumentObject, targetPath: IcmPath, writeXml: (OutputStream) -> Unit): OperationResult {
         val ipsMemLocation = "memory://${UUID.randomUUID()}"
         try {
             val runCommandType = obj.type.toRunCommandType()
@@ -112,7 +113,7 @@ class EvolveDeployClient(
                 baseTemplate = baseTemplatePath,
                 type = runCommandType,
                 moduleName = "DocumentLayout",
-                xmlContent = wfdXml,
+                writeXml = writeXml,
                 outputPath = ipsMemLocation
             )
 
@@ -13,6 +13,7 @@ import com.quadient.migration.api.dto.migrationmodel.DisplayRuleRef
 import com.quadient.migration.api.dto.migrationmodel.DocumentObjectRef
 import com.quadient.migration.api.dto.migrationmodel.Image
 import com.quadient.migration.api.dto.migrationmodel.ImageRef
+import com.quadient.migration.api.dto.migrationmodel.MigrationObject
 import com.quadient.migration.api.dto.migrationmodel.ParagraphStyleRef
 import com.quadient.migration.api.dto.migrationmodel.TextStyleRef
 import com.quadient.migration.api.dto.migrationmodel.VariableRef
@@ -62,6 +63,7 @@ import org.jetbrains.exposed.v1.core.eq
 import org.jetbrains.exposed.v1.core.inList
 import org.jetbrains.exposed.v1.json.extract
 import kotlin.collections.plus
+import java.io.OutputStream
 import kotlin.uuid.Uuid
 
 open class InteractiveDeployClient(
@@ -163,7 +165,7 @@ open class InteractiveDeployClient(
         }
     }
 
-    override fun uploadDocumentObject(obj: DocumentObject, targetPath: IcmPath, wfdXml: String): OperationResult {
+    override fun uploadDocumentObject(obj: DocumentObject, targetPath: IcmPath, writeXml: (OutputStream) -> Unit): OperationResult {
         val runCommandType = obj.type.toRunCommandType()
         return ipsService.deployJld(
             baseTemplate = resourcePathProvider.getBaseTemplateFullPath(
@@ -171,7 +173,7 @@ open class InteractiveDeployClient(
             ) { baseTemplateRepository.findOrFail(it) },
             type = runCommandType,
             moduleName = "DocumentLayout",
-            xmlContent = wfdXml,
+            writeXml = writeXml,
             outputPath = targetPath
         )
     }
@@ -197,11 +199,12 @@ open class InteractiveDeployClient(
 
         val baseTemplates = baseTemplateRepository.listAll()
         logger.info("Found ${baseTemplates.size} base template(s) in the repository.")
+        val statuses = prefetchStatuses(ResourceType.BaseTemplate, baseTemplates.map { it.id })
 
         for (baseTemplate in baseTemplates) {
             val targetPath = resourcePathProvider.getBaseTemplatePath(baseTemplate)
 
-            if (!shouldDeployObject(baseTemplate.id, ResourceType.BaseTemplate, targetPath, tracker.deploymentResult)) {
+            if (!shouldDeployObject(baseTemplate.id, ResourceType.BaseTemplate, targetPath, tracker.deploymentResult, statuses)) {
                 logger.info("Skipping deployment of '${baseTemplate.id}' as it is not marked for deployment.")
                 continue
             }
@@ -276,38 +279,10 @@ open class InteractiveDeployClient(
         tracker: ResultTracker,
         deployDisplayRule: (DisplayRule, IcmPath, ByteArray) -> OperationResult,
     ) {
-        val enrichedRules = documentObjects
-            .flatMap {
-                try {
-                    it.getAllExternalDisplayRules()
-                } catch (e: IllegalStateException) {
-                    tracker.deploymentResult.errors.add(DeploymentError(it.id, e.message ?: ""))
-                    emptyList()
-                }
-            }
-            .distinctBy { it.rule.id }
-
+        val enrichedRules = collectDisplayRules(documentObjects, tracker)
+        val statuses = prefetchStatuses(ResourceType.DisplayRule, enrichedRules.map { it.rule.id })
         for (enrichedRule in enrichedRules) {
-            val resolvedRule = enrichedRule.rule.resolveTarget(displayRuleRepository::findOrFail)
-            val rule = resolvedRule.copy(
-                baseTemplate = resolvedRule.baseTemplate ?: enrichedRule.inheritedBaseTemplate,
-                variableStructureRef = resolvedRule.variableStructureRef ?: enrichedRule.inheritedVariableStructureRef,
-            )
-            val targetPath = resourcePathProvider.getDisplayRulePath(rule)
-
-            if (!shouldDeployObject(rule.id, ResourceType.DisplayRule, targetPath, tracker.deploymentResult)) {
-                logger.info("Skipping deployment of '${rule.id}' as it is not marked for deployment.")
-                continue
-            }
-
-            val invalidMetadata = rule.getInvalidMetadataKeys()
-            if (invalidMetadata.isNotEmpty()) {
-                logger.error("Failed to deploy '$targetPath' due to invalid metadata.")
-                val keys = invalidMetadata.joinToString(", ", prefix = "[", postfix = "]")
-                val message = "Metadata of display rule '${rule.id}' contains invalid keys: $keys"
-                tracker.errorDisplayRule(rule.id, targetPath, message)
-                continue
-            }
+            val (rule, targetPath) = prepareDisplayRuleDeployment(enrichedRule, tracker, statuses) ?: continue
 
             val variableStructureId = rule.variableStructureRef?.id ?: projectConfig.defaultVariableStructure
             val variableStructure=
@@ -324,13 +299,6 @@ open class InteractiveDeployClient(
                 variableRepository.find(id) ?: error("Unable to find variable '$id' referenced from display rule '${rule.id}'")
             }
 
-            if (rule.definition?.containsFunction() == true) {
-                val message = "External display rule '${rule.id}' contains functions. Will fallback to internal display rule"
-                logger.warn(message)
-                tracker.warningDisplayRule(rule.id, targetPath, message)
-                continue
-            }
-
             val baseTemplatePath = try {
                 resourcePathProvider.getBaseTemplateFullPath(
                     projectConfig, rule.baseTemplate
@@ -353,10 +321,74 @@ open class InteractiveDeployClient(
         }
     }
 
+    override fun planDeployment(
+        documentObjects: List<DocumentObject>,
+        tracker: ResultTracker,
+        track: (MigrationObject, ResourceType, IcmPath) -> Unit,
+    ): DeploymentResult {
+        val enrichedRules = collectDisplayRules(documentObjects, tracker)
+        val statuses = prefetchStatuses(ResourceType.DisplayRule, enrichedRules.map { it.rule.id })
+        for (enrichedRule in enrichedRules) {
+            prepareDisplayRuleDeployment(enrichedRule, tracker, statuses)
+                ?.let { (rule, targetPath) -> track(rule, ResourceType.DisplayRule, targetPath) }
+        }
+
+        return super.planDeployment(documentObjects, tracker, track)
+    }
+
+    private fun collectDisplayRules(documentObjects: List<DocumentObject>, tracker: ResultTracker): List<EnrichedDisplayRule> {
+        return documentObjects
+            .flatMap {
+                try {
+                    it.getAllExternalDisplayRules()
+                } catch (e: IllegalStateException) {
+                    tracker.deploymentResult.errors.add(DeploymentError(it.id, e.message ?: ""))
+                    emptyList()
+                }
+            }
+            .distinctBy { it.rule.id }
+    }
+
+    private fun prepareDisplayRuleDeployment(
+        enrichedRule: EnrichedDisplayRule,
+        tracker: ResultTracker,
+        statuses: PrefetchedStatuses,
+    ): Pair<DisplayRule, IcmPath>? {
+        val resolvedRule = enrichedRule.rule.resolveTarget(displayRuleRepository::findOrFail)
+        val rule = resolvedRule.copy(
+            baseTemplate = resolvedRule.baseTemplate ?: enrichedRule.inheritedBaseTemplate,
+            variableStructureRef = resolvedRule.variableStructureRef ?: enrichedRule.inheritedVariableStructureRef,
+        )
+        val targetPath = resourcePathProvider.getDisplayRulePath(rule)
+
+        if (!shouldDeployObject(rule.id, ResourceType.DisplayRule, targetPath, tracker.deploymentResult, statuses)) {
+            logger.info("Skipping deployment of '${rule.id}' as it is not marked for deployment.")
+            return null
+        }
+
+        val invalidMetadata = rule.getInvalidMetadataKeys()
+        if (invalidMetadata.isNotEmpty()) {
+            logger.error("Failed to deploy '$targetPath' due to invalid metadata.")
+            val keys = invalidMetadata.joinToString(", ", prefix = "[", postfix = "]")
+            val message = "Metadata of display rule '${rule.id}' contains invalid keys: $keys"
+            tracker.errorDisplayRule(rule.id, targetPath, message)
+            return null
+        }
+
+        if (rule.definition?.containsFunction() == true) {
+            val message = "External display rule '${rule.id}' contains functions. Will fallback to internal display rule"
+            logger.warn(message)
+            tracker.warningDisplayRule(rule.id, targetPath, message)
+            return null
+        }
+
+        return rule to targetPath
+    }
+
     override fun deployDocumentObjectsInternal(
         documentObjects: List<DocumentObject>,
         tracker: ResultTracker,
-        uploadDocumentObject: (DocumentObject, IcmPath, String) -> OperationResult,
+        uploadDocumentObject: (DocumentObject, IcmPath, (OutputStream) -> Unit) -> OperationResult,
         uploadImage: (Image, IcmPath, ByteArray) -> OperationResult,
         uploadAttachment: (Attachment, IcmPath, ByteArray) -> OperationResult,
         uploadDisplayRule: (DisplayRule, IcmPath, ByteArray) -> OperationResult,
@@ -364,26 +396,16 @@ open class InteractiveDeployClient(
         deployImagesAndAttachments(documentObjects, tracker, uploadImage, uploadAttachment)
         deployDisplayRules(documentObjects, tracker, uploadDisplayRule)
 
-        for (it in documentObjects) {
-            val targetPath = resourcePathProvider.getDocumentObjectPath(it)
-
-            if (!shouldDeployObject(it.id, ResourceType.DocumentObject, targetPath, tracker.deploymentResult)) {
-                logger.info("Skipping deployment of '${it.id}' as it is not marked for deployment.")
-                continue
-            }
+        val statuses = prefetchStatuses(ResourceType.DocumentObject, documentObjects.map { it.id })
+        if (projectConfig.deployPipeline.enabled) {
+            return deployDocumentObjectsPipelined(documentObjects, tracker, statuses, uploadDocumentObject) { it is IllegalStateException }
+        }
 
-            val invalidMetadata = it.getInvalidMetadataKeys()
-            if (invalidMetadata.isNotEmpty()) {
-                logger.error("Failed to deploy '$targetPath' due to invalid metadata.")
-                val keys = invalidMetadata.joinToString(", ", prefix = "[", postfix = "]")
-                val message = "Metadata of document object '${it.id}' contains invalid keys: $keys"
-                tracker.errorDocumentObject(it.id, targetPath, it.type, message)
-                continue
-            }
+        for (it in documentObjects) {
+            val targetPath = prepareDocumentObjectDeployment(it, tracker, statuses) ?: continue
 
             try {
-                val documentObjectXml = documentObjectBuilder.buildDocumentObject(it)
-                when (val editResult = uploadDocumentObject(it, targetPath, documentObjectXml)) {
+                when (val editResult = uploadDocumentObject(it, targetPath) { out -> documentObjectBuilder.buildDocumentObject(it, out) }) {
                     OperationResult.Success -> {
                         logger.debug("Deployment of '$targetPath' is successful.")
                         tracker.deployedDocumentObject(it.id, targetPath, it.type)
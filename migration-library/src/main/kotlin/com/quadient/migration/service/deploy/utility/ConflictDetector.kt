@@ -1,10 +1,7 @@
 package com.quadient.migration.service.deploy.utility
 
 import com.quadient.migration.api.InspireOutput
-import com.quadient.migration.api.dto.migrationmodel.Attachment
-import com.quadient.migration.api.dto.migrationmodel.DisplayRule
 import com.quadient.migration.api.dto.migrationmodel.DocumentObject
-import com.quadient.migration.api.dto.migrationmodel.Image
 import com.quadient.migration.api.dto.migrationmodel.MigrationObject
 import com.quadient.migration.api.dto.migrationmodel.ResourceId
 import com.quadient.migration.api.dto.migrationmodel.StatusTracking
@@ -15,7 +12,6 @@ import com.quadient.migration.api.repository.ImageRepository
 import com.quadient.migration.api.repository.StatusTrackingRepository
 import com.quadient.migration.data.Deployed
 import com.quadient.migration.service.ResourcePathProvider
-import com.quadient.migration.service.ipsclient.OperationResult
 import com.quadient.migration.service.resolveTarget
 import com.quadient.migration.shared.IcmPath
 import com.quadient.migration.tools.computeIfPresentOrPut
@@ -33,25 +29,13 @@ class ConflictDetectorImpl(
 ) : ConflictDetector {
     private val logger by logger()
 
-    override fun runConflictValidation(documentObjects: List<DocumentObject>, deployFn: DeployFn): ValidationResult {
+    override fun runConflictValidation(documentObjects: List<DocumentObject>, planFn: PlanFn): ValidationResult {
         val pathsToResourcesMap: PathToResources = mutableMapOf()
-        val trackingFn: (ResourceType) -> ((MigrationObject, IcmPath, Any) -> OperationResult) = { type ->
-            { obj, targetPath, _ ->
-                val key = ResourceId(obj.id, type)
-                pathsToResourcesMap.computeIfPresentOrPut(targetPath, setOf(key)) { it + key }
-                OperationResult.Success
-            }
+        val deploymentResult = planFn(documentObjects, ResultTrackerImpl(null, output)) { obj, type, targetPath ->
+            val key = ResourceId(obj.id, type)
+            pathsToResourcesMap.computeIfPresentOrPut(targetPath, setOf(key)) { it + key }
         }
 
-        val deploymentResult = deployFn(
-            documentObjects,
-            ResultTrackerImpl(null, output),
-            trackingFn(ResourceType.DocumentObject),
-            trackingFn(ResourceType.Image),
-            trackingFn(ResourceType.Attachment),
-            trackingFn(ResourceType.DisplayRule),
-        )
-
         val previouslyDeployedPaths: PathToResources = mutableMapOf()
         val allStatusTracking = statusTrackingRepository.listAll()
 
@@ -110,13 +94,14 @@ class ConflictDetectorImpl(
     }.getOrNull()
 }
 
-typealias DeployFn = (
+/**
+ * Resolves the target paths of the given document objects and the resources they use without deploying anything,
+ * every object that would be deployed is passed to `track` together with its path.
+ */
+typealias PlanFn = (
     documentObjects: List<DocumentObject>,
     tracker: ResultTracker,
-    deployDocumentObject: (DocumentObject, IcmPath, String) -> OperationResult,
-    deployImage: (Image, IcmPath, ByteArray) -> OperationResult,
-    deployAttachment: (Attachment, IcmPath, ByteArray) -> OperationResult,
-    deployDisplayRule: (DisplayRule, IcmPath, ByteArray) -> OperationResult
+    track: (MigrationObject, ResourceType, IcmPath) -> Unit,
 ) -> DeploymentResult
 
 typealias PathToResources = MutableMap<IcmPath, Set<ResourceId>>
@@ -132,5 +117,5 @@ data class ValidationResult(
 }
 
 interface ConflictDetector {
-    fun runConflictValidation(documentObjects: List<DocumentObject>, deployFn: DeployFn): ValidationResult
+    fun runConflictValidation(documentObjects: List<DocumentObject>, planFn: PlanFn): ValidationResult
 }
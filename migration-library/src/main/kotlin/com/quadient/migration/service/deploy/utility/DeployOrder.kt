@@ -1,111 +1,146 @@
 package com.quadient.migration.service.deploy.utility
 
-import com.quadient.migration.api.dto.migrationmodel.AttachmentRef
-import com.quadient.migration.api.dto.migrationmodel.BaseTemplateRef
-import com.quadient.migration.api.dto.migrationmodel.DisplayRuleRef
 import com.quadient.migration.api.dto.migrationmodel.DocumentObject
 import com.quadient.migration.api.dto.migrationmodel.DocumentObjectRef
-import com.quadient.migration.api.dto.migrationmodel.ImageRef
-import com.quadient.migration.api.dto.migrationmodel.ParagraphStyleRef
 import com.quadient.migration.api.dto.migrationmodel.Ref
-import com.quadient.migration.api.dto.migrationmodel.TextStyleRef
-import com.quadient.migration.api.dto.migrationmodel.VariableRef
-import com.quadient.migration.api.dto.migrationmodel.VariableStructureRef
 import com.quadient.migration.api.repository.DocumentObjectRepository
+import com.quadient.migration.api.repository.ReferenceGraph
 import com.quadient.migration.tools.logger
 
 interface DeployOrder {
     fun deployOrder(documentObjects: List<DocumentObject>): List<DocumentObject>
+
+    /**
+     * Splits [documentObjects] into dependency levels (waves). Objects of one level reference only objects of previous
+     * levels (or objects outside the given list) and can be deployed concurrently. Objects keep their input order
+     * within a level.
+     */
+    fun deployLevels(documentObjects: List<DocumentObject>): List<List<DocumentObject>>
 }
 
-class DeployOrderImpl(private val documentObjectRepository: DocumentObjectRepository) : DeployOrder {
+class DeployOrderImpl(
+    private val documentObjectRepository: DocumentObjectRepository,
+    private val referenceGraph: ReferenceGraph,
+) : DeployOrder {
     val logger by logger()
 
     override fun deployOrder(documentObjects: List<DocumentObject>): List<DocumentObject> {
-        val documentObjectIds = documentObjects.map { it.id }.toSet()
+        return deployLevels(documentObjects).flatten()
+    }
 
-        val deployOrder = mutableListOf<DocumentObject>()
+    override fun deployLevels(documentObjects: List<DocumentObject>): List<List<DocumentObject>> {
+        val dependencies = buildDependencyIndex(documentObjects)
 
-        var toCheck = documentObjects.map { obj ->
-            DocObjectWithRef(obj, obj.collectAllDocumentObjectRefs().map { it.id }.toSet())
+        val dependents = List(documentObjects.size) { mutableListOf<Int>() }
+        val remainingDependencies = IntArray(documentObjects.size)
+        dependencies.forEachIndexed { i, deps ->
+            remainingDependencies[i] = deps.size
+            deps.forEach { dependents[it].add(i) }
         }
-        val deployed = mutableSetOf<String>()
 
-        var lastSize = toCheck.size
-        while (deployed.size < documentObjects.size) {
-            val (canDeploy, cantDeploy) = toCheck.partition { docObj ->
-                docObj.documentObjectRefs.all {
-                    deployed.contains(it) || !documentObjectIds.contains(it)
+        val deployLevels = mutableListOf<List<DocumentObject>>()
+        var level = documentObjects.indices.filter { remainingDependencies[it] == 0 }
+        var scheduled = 0
+        while (level.isNotEmpty()) {
+            deployLevels.add(level.map { documentObjects[it] })
+            scheduled += level.size
+
+            val nextLevel = mutableListOf<Int>()
+            for (i in level) {
+                for (dependent in dependents[i]) {
+                    if (--remainingDependencies[dependent] == 0) {
+                        nextLevel.add(dependent)
+                    }
                 }
             }
+            level = nextLevel.sorted()
+        }
 
-            if (cantDeploy.isEmpty()) {
-                for (item in canDeploy) {
-                    deployOrder.add(item.obj)
-                }
-                return deployOrder
-            }
+        if (scheduled < documentObjects.size) {
+            val cycle = findCycle(dependencies, remainingDependencies).joinToString(" -> ") { "'${documentObjects[it].id}'" }
+            logger.error("Cannot determine deploy order. Document objects reference each other in a cycle: $cycle")
+            throw RuntimeException("Cannot determine deploy order because of circular reference: $cycle")
+        }
 
-            if (lastSize == cantDeploy.size) {
-                logger.error(
-                    "Cannot determine deploy order. Either circular reference or some references are missing. Deployed: ${
-                        deployed.joinToString(
-                            separator = ",", prefix = "'[", postfix = "]'"
-                        )
-                    }, Can deploy: ${
-                        canDeploy.joinToString(
-                            separator = ",", prefix = "'[", postfix = "]'"
-                        )
-                    }, Cannot deploy: ${cantDeploy.joinToString(separator = ",", prefix = "'[", postfix = "]'")}"
-                )
-                throw RuntimeException("Cannot determine deploy order. Either circular reference or some references are missing.")
-            }
+        return deployLevels
+    }
 
-            for (item in canDeploy) {
-                deployOrder.add(item.obj)
-                deployed.add(item.obj.id)
+    /**
+     * For each document object returns indexes of the [documentObjects] it has to be deployed after. References
+     * to objects outside the list are followed through the [referenceGraph], so an object depending on a deployed
+     * object through an internal one still gets the edge. Objects of the list are not expanded further, their own
+     * dependencies are covered by their own edges.
+     */
+    private fun buildDependencyIndex(documentObjects: List<DocumentObject>): List<Set<Int>> {
+        val indexesById = documentObjects.indices.groupBy { documentObjects[it].id }
+
+        return documentObjects.map { obj ->
+            val result = mutableSetOf<Int>()
+            val queue = ArrayDeque(obj.collectDocumentObjectRefs())
+            val visited = mutableSetOf<String>()
+
+            while (queue.isNotEmpty()) {
+                val ref = queue.removeFirst()
+                if (!visited.add(ref.id)) {
+                    continue
+                }
+
+                val indexes = indexesById[ref.id]
+                if (indexes != null) {
+                    result.addAll(indexes)
+                } else {
+                    val refs = referenceGraph.referencesOf(ref) { documentObjectRepository.find(it.id) }
+                    refs?.let { queue.addAll(it.filterIsInstance<DocumentObjectRef>()) }
+                }
             }
 
-            lastSize = cantDeploy.size
-            toCheck = cantDeploy
+            result
         }
-
-        return deployOrder
     }
 
-    private fun DocumentObject.collectAllDocumentObjectRefs(): Set<DocumentObjectRef> {
-        val result = mutableSetOf<DocumentObjectRef>()
+    /**
+     * Walks unresolved dependencies starting from any object that could not be scheduled. Every such object has
+     * at least one unresolved dependency, so the walk has to return to an already visited object.
+     */
+    private fun findCycle(dependencies: List<Set<Int>>, remainingDependencies: IntArray): List<Int> {
+        val path = mutableListOf<Int>()
+        val positions = mutableMapOf<Int, Int>()
+
+        var current = remainingDependencies.indices.first { remainingDependencies[it] > 0 }
+        while (current !in positions) {
+            positions[current] = path.size
+            path.add(current)
+            current = dependencies[current].first { remainingDependencies[it] > 0 }
+        }
 
-        val queue = this.collectRefs().toMutableList()
-        val visited = mutableSetOf<Ref>()
+        return path.subList(positions.getValue(current), path.size) + current
+    }
 
-        while (queue.isNotEmpty()) {
-            val ref = queue.removeFirst()
-            if (!visited.add(ref)) {
-                continue
-            }
+    /**
+     * Document objects referenced by [documentObject] directly or through other document objects for which
+     * [include] returns true, in depth first order. Fails when any of the referenced objects does not exist.
+     */
+    fun findDependencies(documentObject: DocumentObject, include: (DocumentObject) -> Boolean): List<DocumentObject> {
+        val dependencies = mutableListOf<DocumentObject>()
+        val visited = mutableSetOf<String>()
+
+        fun visit(refs: Collection<Ref>) {
+            for (ref in refs.filterIsInstance<DocumentObjectRef>()) {
+                if (!visited.add(ref.id)) {
+                    continue
+                }
 
-            when (ref) {
-                is DocumentObjectRef -> {
-                    result.add(ref)
-                    val obj = documentObjectRepository.find(ref.id)
-                    if (obj != null) {
-                        queue.addAll(obj.collectRefs())
-                    }
+                val model = documentObjectRepository.findOrFail(ref.id)
+                if (include(model)) {
+                    dependencies.add(model)
                 }
-                is DisplayRuleRef -> {}
-                is ParagraphStyleRef -> {}
-                is AttachmentRef -> {}
-                is ImageRef -> {}
-                is TextStyleRef -> {}
-                is VariableRef -> {}
-                is VariableStructureRef -> {}
-                is BaseTemplateRef -> {}
+                visit(referenceGraph.referencesOf(ref) { model }.orEmpty())
             }
         }
 
-        return result
+        visit(documentObject.collectRefs())
+        return dependencies
     }
 
-    private data class DocObjectWithRef(val obj: DocumentObject, val documentObjectRefs: Set<String>)
-}
\ No newline at end of file
+    private fun DocumentObject.collectDocumentObjectRefs() = collectRefs().filterIsInstance<DocumentObjectRef>()
+}
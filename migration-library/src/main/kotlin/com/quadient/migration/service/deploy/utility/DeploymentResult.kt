@@ -236,4 +236,57 @@ class ResultTrackerImpl(
         )
         deploymentResult.errors.add(DeploymentError(id, message))
     }
-}
\ No newline at end of file
+}
+/**
+ * [ResultTracker] that can be shared by several deployment workers. All tracking calls are serialized, so status
+ * tracking and the underlying [DeploymentResult] lists are never updated concurrently.
+ */
+class SynchronizedResultTracker(private val delegate: ResultTracker) : ResultTracker {
+    private val lock = Any()
+
+    override val deploymentResult: DeploymentResult
+        get() = delegate.deploymentResult
+    override val deploymentId: Uuid
+        get() = delegate.deploymentId
+    override val timestamp: Instant
+        get() = delegate.timestamp
+
+    override fun deployedDocumentObject(id: String, icmPath: IcmPath, type: DocumentObjectType) =
+        synchronized(lock) { delegate.deployedDocumentObject(id, icmPath, type) }
+
+    override fun deployedImage(id: String, icmPath: IcmPath) =
+        synchronized(lock) { delegate.deployedImage(id, icmPath) }
+
+    override fun errorDocumentObject(id: String, icmPath: IcmPath, type: DocumentObjectType, message: String) =
+        synchronized(lock) { delegate.errorDocumentObject(id, icmPath, type, message) }
+
+    override fun errorImage(id: String, icmPath: IcmPath?, message: String) =
+        synchronized(lock) { delegate.errorImage(id, icmPath, message) }
+
+    override fun warningImage(id: String, icmPath: IcmPath?, message: String) =
+        synchronized(lock) { delegate.warningImage(id, icmPath, message) }
+
+    override fun deployedAttachment(id: String, icmPath: IcmPath) =
+        synchronized(lock) { delegate.deployedAttachment(id, icmPath) }
+
+    override fun errorAttachment(id: String, icmPath: IcmPath?, message: String) =
+        synchronized(lock) { delegate.errorAttachment(id, icmPath, message) }
+
+    override fun warningAttachment(id: String, icmPath: IcmPath?, message: String) =
+        synchronized(lock) { delegate.warningAttachment(id, icmPath, message) }
+
+    override fun deployedDisplayRule(id: String, targetPath: IcmPath) =
+        synchronized(lock) { delegate.deployedDisplayRule(id, targetPath) }
+
+    override fun warningDisplayRule(id: String, path: IcmPath, message: String) =
+        synchronized(lock) { delegate.warningDisplayRule(id, path, message) }
+
+    override fun errorDisplayRule(id: String, path: IcmPath, message: String) =
+        synchronized(lock) { delegate.errorDisplayRule(id, path, message) }
+
+    override fun deployedBaseTemplate(id: String, targetPath: IcmPath) =
+        synchronized(lock) { delegate.deployedBaseTemplate(id, targetPath) }
+
+    override fun errorBaseTemplate(id: String, targetPath: IcmPath?, message: String) =
+        synchronized(lock) { delegate.errorBaseTemplate(id, targetPath, message) }
+}
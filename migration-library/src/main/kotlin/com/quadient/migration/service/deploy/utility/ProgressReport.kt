@@ -12,6 +12,7 @@ import com.quadient.migration.api.dto.migrationmodel.DocumentObjectRef
 import com.quadient.migration.api.dto.migrationmodel.ImageRef
 import com.quadient.migration.api.dto.migrationmodel.ParagraphStyleRef
 import com.quadient.migration.api.dto.migrationmodel.Ref
+import com.quadient.migration.api.dto.migrationmodel.ResourceId
 import com.quadient.migration.api.dto.migrationmodel.TextStyleRef
 import com.quadient.migration.api.dto.migrationmodel.VariableRef
 import com.quadient.migration.api.dto.migrationmodel.VariableStructureRef
@@ -19,9 +20,11 @@ import com.quadient.migration.api.repository.AttachmentRepository
 import com.quadient.migration.api.repository.DisplayRuleRepository
 import com.quadient.migration.api.repository.DocumentObjectRepository
 import com.quadient.migration.api.repository.ImageRepository
+import com.quadient.migration.api.repository.ReferenceGraph
 import com.quadient.migration.api.repository.StatusTrackingRepository
 import com.quadient.migration.data.Active
 import com.quadient.migration.data.Deployed
+import com.quadient.migration.data.StatusEvent
 import com.quadient.migration.service.inspirebuilder.InspireDocumentObjectBuilder
 import com.quadient.migration.service.ResourcePathProvider
 import com.quadient.migration.shared.IcmPath
@@ -46,6 +49,7 @@ class ProgressReporterImpl(
     private val statusTrackingRepository: StatusTrackingRepository,
     private val resourcePathProvider: ResourcePathProvider,
     private val output: InspireOutput,
+    private val referenceGraph: ReferenceGraph,
 ) : ProgressReporter {
     override fun createProgressReport(objects: List<DocumentObject>, deployId: Uuid?): ProgressReport {
         val lastDeployment = deployId?.let { LastDeployment(it, Clock.System.now()) } ?: getLastDeployEvent()
@@ -54,11 +58,13 @@ class ProgressReporterImpl(
 
         val queue: MutableList<Ref> = mutableListOf()
         val alreadyVisitedRefs = mutableSetOf<Pair<String, KClass<*>>>()
+        val statuses = StatusEvents()
+        statuses.prefetch(objects.map { ResourceId(it.id, ResourceType.DocumentObject) })
 
         for (obj in objects) {
             val nextIcmPath = resourcePathProvider.getDocumentObjectPath(obj)
-            val deployKind = obj.getDeployKind(nextIcmPath)
-            val lastStatus = obj.getLastStatus(lastDeployment)
+            val deployKind = obj.getDeployKind(nextIcmPath, statuses)
+            val lastStatus = obj.getLastStatus(lastDeployment, statuses)
 
             report.addDocumentObject(
                 id = obj.id,
@@ -72,7 +78,7 @@ class ProgressReporterImpl(
                 errorMessage = lastStatus.errorMessage,
             )
             alreadyVisitedRefs.add(Pair(obj.id, DocumentObjectRef::class))
-            val refs = obj.collectRefs()
+            val refs = referenceGraph.referencesOf(DocumentObjectRef(obj.id)) { obj }.orEmpty()
             queue.addAll(refs)
         }
 
@@ -84,6 +90,11 @@ class ProgressReporterImpl(
             }
             alreadyVisitedRefs.add(Pair(ref.id, ref::class))
 
+            val statusKey = ref.statusKey()
+            if (statusKey != null && !statuses.isLoaded(statusKey)) {
+                statuses.prefetch(queue.mapNotNull { it.statusKey() } + statusKey)
+            }
+
             val resource = when (ref) {
                 is DocumentObjectRef -> {
                     when (val obj = documentObjectRepository.find(ref.id)) {
@@ -108,8 +119,8 @@ class ProgressReporterImpl(
                                 } else {
                                     resourcePathProvider.getDocumentObjectPath(obj)
                                 }
-                            val deployKind = obj.getDeployKind(nextIcmPath)
-                            val lastStatus = obj.getLastStatus(lastDeployment)
+                            val deployKind = obj.getDeployKind(nextIcmPath, statuses)
+                            val lastStatus = obj.getLastStatus(lastDeployment, statuses)
 
 
                             report.addDocumentObject(
@@ -146,8 +157,8 @@ class ProgressReporterImpl(
                         }
                         else -> {
                             val nextIcmPath = resourcePathProvider.getImagePath(img)
-                            val deployKind = img.getDeployKind(nextIcmPath)
-                            val lastStatus = img.getLastStatus(lastDeployment)
+                            val deployKind = img.getDeployKind(nextIcmPath, statuses)
+                            val lastStatus = img.getLastStatus(lastDeployment, statuses)
 
                             report.addImage(
                                 id = img.id,
@@ -183,8 +194,8 @@ class ProgressReporterImpl(
                         }
                         else -> {
                             val nextIcmPath = resourcePathProvider.getAttachmentPath(attachment)
-                            val deployKind = attachment.getDeployKind(nextIcmPath)
-                            val lastStatus = attachment.getLastStatus(lastDeployment)
+                            val deployKind = attachment.getDeployKind(nextIcmPath, statuses)
+                            val lastStatus = attachment.getLastStatus(lastDeployment, statuses)
 
                             report.addAttachment(
                                 id = attachment.id,
@@ -222,8 +233,8 @@ class ProgressReporterImpl(
                                 }
                                 else -> {
                                     val nextIcmPath = if (!rule.internal) resourcePathProvider.getDisplayRulePath(rule) else null
-                                    val deployKind = rule.getDeployKind(nextIcmPath)
-                                    val lastStatus = rule.getLastStatus(lastDeployment)
+                                    val deployKind = rule.getDeployKind(nextIcmPath, statuses)
+                                    val lastStatus = rule.getLastStatus(lastDeployment, statuses)
 
                                     report.addDisplayRule(
                                         id = rule.id,
@@ -252,7 +263,7 @@ class ProgressReporterImpl(
             }
 
             if (resource != null) {
-                val refs = resource.collectRefs()
+                val refs = referenceGraph.referencesOf(ref) { resource }.orEmpty()
                 queue.addAll(refs)
             }
         }
@@ -266,10 +277,11 @@ class ProgressReporterImpl(
         resourceType: ResourceType,
         output: InspireOutput,
         internal: Boolean,
+        statuses: StatusEvents,
     ): LastStatus {
         if (internal) return LastStatus.Inlined
 
-        val objectEvents = statusTrackingRepository.findEventsRelevantToOutput(id, resourceType, output)
+        val objectEvents = statuses[ResourceId(id, resourceType)]
             .filter { ev -> lastDeployment?.timestamp?.let { ev.timestamp <= it } ?: true }
         val lastEvent = objectEvents.lastOrNull()
         val lastDeployEvent = objectEvents.lastOrNull { it is Deployed || it is StatusError }
@@ -314,66 +326,69 @@ class ProgressReporterImpl(
         }
     }
 
-    private fun DocumentObject.getLastStatus(lastDeployment: LastDeployment?): LastStatus {
+    private fun DocumentObject.getLastStatus(lastDeployment: LastDeployment?, statuses: StatusEvents): LastStatus {
         return getLastStatus(
             id = this.id,
             lastDeployment = lastDeployment,
             resourceType = ResourceType.DocumentObject,
             output = output,
             internal = documentObjectBuilder.shouldIncludeInternalDependency(this),
+            statuses = statuses,
         )
     }
 
-    private fun Image.getLastStatus(lastDeployment: LastDeployment?): LastStatus {
+    private fun Image.getLastStatus(lastDeployment: LastDeployment?, statuses: StatusEvents): LastStatus {
         return getLastStatus(
             id = this.id,
             lastDeployment = lastDeployment,
             resourceType = ResourceType.Image,
             output = output,
             internal = false,
+            statuses = statuses,
         )
     }
 
-    private fun Attachment.getLastStatus(lastDeployment: LastDeployment?): LastStatus {
+    private fun Attachment.getLastStatus(lastDeployment: LastDeployment?, statuses: StatusEvents): LastStatus {
         return getLastStatus(
             id = this.id,
             lastDeployment = lastDeployment,
             resourceType = ResourceType.Attachment,
             output = output,
             internal = false,
+            statuses = statuses,
         )
     }
 
-    private fun DocumentObject.getDeployKind(nextIcmPath: IcmPath?): DeployKind {
+    private fun DocumentObject.getDeployKind(nextIcmPath: IcmPath?, statuses: StatusEvents): DeployKind {
         return getDeployKind(
             this.id,
             ResourceType.DocumentObject,
-            output,
             documentObjectBuilder.shouldIncludeInternalDependency(this),
             nextIcmPath,
+            statuses,
         )
     }
 
-    private fun Image.getDeployKind(nextIcmPath: IcmPath?): DeployKind {
-        return getDeployKind(this.id, ResourceType.Image, output, false, nextIcmPath)
+    private fun Image.getDeployKind(nextIcmPath: IcmPath?, statuses: StatusEvents): DeployKind {
+        return getDeployKind(this.id, ResourceType.Image, false, nextIcmPath, statuses)
     }
 
-    private fun Attachment.getDeployKind(nextIcmPath: IcmPath?): DeployKind {
-        return getDeployKind(this.id, ResourceType.Attachment, output, false, nextIcmPath)
+    private fun Attachment.getDeployKind(nextIcmPath: IcmPath?, statuses: StatusEvents): DeployKind {
+        return getDeployKind(this.id, ResourceType.Attachment, false, nextIcmPath, statuses)
     }
 
     private fun getDeployKind(
         id: String,
         resourceType: ResourceType,
-        output: InspireOutput,
         internal: Boolean = false,
         nextIcmPath: IcmPath?,
+        statuses: StatusEvents,
     ): DeployKind {
         if (internal) {
             return DeployKind.Inline
         }
 
-        val objectEvents = statusTrackingRepository.findEventsRelevantToOutput(id, resourceType, output)
+        val objectEvents = statuses[ResourceId(id, resourceType)]
         val lastEvent = objectEvents.lastOrNull()
         return if (lastEvent is Active || lastEvent is StatusError) {
             val lastDeployEvent = objectEvents.filterIsInstance<Deployed>().lastOrNull()
@@ -389,19 +404,54 @@ class ProgressReporterImpl(
         }
     }
 
-    private fun DisplayRule.getDeployKind(nextIcmPath: IcmPath?): DeployKind {
-        return getDeployKind(this.id, ResourceType.DisplayRule, output, this.internal, nextIcmPath)
+    private fun DisplayRule.getDeployKind(nextIcmPath: IcmPath?, statuses: StatusEvents): DeployKind {
+        return getDeployKind(this.id, ResourceType.DisplayRule, this.internal, nextIcmPath, statuses)
     }
 
-    private fun DisplayRule.getLastStatus(lastDeployment: LastDeployment?): LastStatus {
+    private fun DisplayRule.getLastStatus(lastDeployment: LastDeployment?, statuses: StatusEvents): LastStatus {
         return getLastStatus(
             id = this.id,
             lastDeployment = lastDeployment,
             resourceType = ResourceType.DisplayRule,
             output = output,
             internal = this.internal,
+            statuses = statuses,
         )
     }
+
+    private fun Ref.statusKey(): ResourceId? = when (this) {
+        is DocumentObjectRef -> ResourceId(id, ResourceType.DocumentObject)
+        is ImageRef -> ResourceId(id, ResourceType.Image)
+        is AttachmentRef -> ResourceId(id, ResourceType.Attachment)
+        is DisplayRuleRef -> ResourceId(id, ResourceType.DisplayRule)
+        else -> null
+    }
+
+    /**
+     * Status events of the objects of a single report, loaded in bulk as the report discovers the objects.
+     */
+    private inner class StatusEvents {
+        private val events = HashMap<ResourceId, List<StatusEvent>>()
+
+        fun isLoaded(key: ResourceId) = key in events
+
+        fun prefetch(keys: Collection<ResourceId>) {
+            val missing = keys.filter { it !in events }.distinct()
+            if (missing.isEmpty()) {
+                return
+            }
+
+            val found = statusTrackingRepository.findEventsRelevantToOutput(missing, output)
+            for (key in missing) {
+                events[key] = found[key].orEmpty()
+            }
+        }
+
+        operator fun get(key: ResourceId): List<StatusEvent> {
+            prefetch(listOf(key))
+            return events.getValue(key)
+        }
+    }
 }
 
 enum class DeployKind {
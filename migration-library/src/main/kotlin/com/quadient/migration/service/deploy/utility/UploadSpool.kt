@@ -0,0 +1,140 @@
+package com.quadient.migration.service.deploy.utility
+
+import com.quadient.migration.service.ipsclient.BuiltXml
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.OutputStream
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.io.path.fileSize
+import kotlin.io.path.inputStream
+import kotlin.io.path.outputStream
+
+/**
+ * Built documents of the deploy pipeline waiting for upload. Documents are written into memory while the total size of
+ * pending documents stays within [maxMemoryBytes], a document crossing the limit is moved to a temporary file while it
+ * is being written and continues there. Temporary files are deleted once their document is uploaded or the spool is
+ * closed.
+ */
+class UploadSpool(private val maxMemoryBytes: Long) : Closeable {
+    private val memoryBytes = AtomicLong()
+    private val files = ConcurrentHashMap.newKeySet<Path>()
+
+    val pendingMemoryBytes: Long
+        get() = memoryBytes.get()
+
+    val pendingFiles: Int
+        get() = files.size
+
+    /**
+     * Stores the document written by [write], the document is written once and never held as a whole outside of the
+     * spool.
+     */
+    fun add(write: (OutputStream) -> Unit): PendingUpload {
+        val output = SpillingOutputStream()
+        try {
+            output.use(write)
+        } catch (e: Throwable) {
+            output.discard()
+            throw e
+        }
+        return output.result()
+    }
+
+    override fun close() {
+        files.toList().forEach(::delete)
+    }
+
+    private fun delete(file: Path) {
+        files.remove(file)
+        Files.deleteIfExists(file)
+    }
+
+    /**
+     * Built document waiting for upload, it is written by [invoke] as many times as needed and [close] releases its
+     * memory or temporary file.
+     */
+    sealed interface PendingUpload : BuiltXml, Closeable
+
+    private inner class InMemory(private var content: ByteArrayOutputStream?) : PendingUpload {
+        override val size = content!!.size().toLong()
+
+        override fun invoke(output: OutputStream) {
+            checkNotNull(content) { "Upload was already released" }.writeTo(output)
+            output.flush()
+        }
+
+        override fun close() {
+            if (content != null) memoryBytes.addAndGet(-size)
+            content = null
+        }
+    }
+
+    private inner class Spooled(private val file: Path) : PendingUpload {
+        override val size = file.fileSize()
+
+        override fun invoke(output: OutputStream) {
+            file.inputStream().use { it.copyTo(output) }
+            output.flush()
+        }
+
+        override fun close() {
+            delete(file)
+        }
+    }
+
+    /**
+     * Writes into memory reserved from the spool and switches to a temporary file once the reservation would exceed
+     * [maxMemoryBytes].
+     */
+    private inner class SpillingOutputStream : OutputStream() {
+        private var memory: ByteArrayOutputStream? = ByteArrayOutputStream()
+        private var file: Path? = null
+        private var fileOutput: OutputStream? = null
+
+        override fun write(b: Int) {
+            write(byteArrayOf(b.toByte()), 0, 1)
+        }
+
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            val buffer = memory
+            if (buffer != null) {
+                if (memoryBytes.addAndGet(len.toLong()) <= maxMemoryBytes) {
+                    buffer.write(b, off, len)
+                    return
+                }
+                memoryBytes.addAndGet(-len.toLong())
+                spill(buffer)
+            }
+            fileOutput!!.write(b, off, len)
+        }
+
+        private fun spill(buffer: ByteArrayOutputStream) {
+            val spooled = Files.createTempFile("migration-deploy-", ".xml")
+            files.add(spooled)
+            file = spooled
+            fileOutput = spooled.outputStream().buffered().also { buffer.writeTo(it) }
+            memory = null
+            memoryBytes.addAndGet(-buffer.size().toLong())
+        }
+
+        override fun flush() {
+            fileOutput?.flush()
+        }
+
+        override fun close() {
+            fileOutput?.close()
+        }
+
+        fun result(): PendingUpload = file?.let(::Spooled) ?: InMemory(memory)
+
+        fun discard() {
+            fileOutput?.close()
+            file?.let(::delete)
+            memory?.let { memoryBytes.addAndGet(-it.size().toLong()) }
+            memory = null
+        }
+    }
+}
@@ -35,6 +35,7 @@ import com.quadient.wfdxml.api.module.Layout
 import com.quadient.wfdxml.internal.layoutnodes.FlowAreaImpl
 import com.quadient.wfdxml.internal.layoutnodes.PageImpl
 import com.quadient.wfdxml.internal.layoutnodes.PagesImpl
+import java.io.OutputStream
 
 class DesignerDocumentObjectBuilder(
     documentObjectRepository: DocumentObjectRepository,
@@ -80,6 +81,24 @@ class DesignerDocumentObjectBuilder(
     }
 
     override fun buildDocumentObject(documentObject: DocumentObject): String {
+        val documentObjectXml = buildWorkFlow(documentObject).build()
+        return if (projectConfig.sourceBaseTemplatePath.isNullOrBlank()) {
+            documentObjectXml
+        } else {
+            enrichLayoutWithSourceBaseTemplate(icmDataCache, documentObjectXml, projectConfig.sourceBaseTemplatePath.toIcmPath())
+        }
+    }
+
+    override fun buildDocumentObject(documentObject: DocumentObject, output: OutputStream) {
+        if (projectConfig.sourceBaseTemplatePath.isNullOrBlank()) {
+            buildWorkFlow(documentObject).build(output)
+        } else {
+            // Enriching with the source base template edits the finished XML
+            super.buildDocumentObject(documentObject, output)
+        }
+    }
+
+    private fun buildWorkFlow(documentObject: DocumentObject): WfdXmlBuilder {
         val builder = WfdXmlBuilder()
         val layout = builder.addLayout()
         layout.name = "DocumentLayout"
@@ -161,12 +180,7 @@ class DesignerDocumentObjectBuilder(
             layout.pages.setMainFlow(flowAreaFlow)
         }
 
-        val documentObjectXml = builder.build()
-        return if (projectConfig.sourceBaseTemplatePath.isNullOrBlank()) {
-            documentObjectXml
-        } else {
-            enrichLayoutWithSourceBaseTemplate(icmDataCache, documentObjectXml, projectConfig.sourceBaseTemplatePath.toIcmPath())
-        }
+        return builder
     }
 
     override fun shouldIncludeInternalDependency(documentObject: DocumentObject): Boolean {
@@ -118,6 +118,7 @@ import com.quadient.migration.api.dto.migrationmodel.QrCode
 import com.quadient.migration.shared.Size
 import com.quadient.wfdxml.api.layoutnodes.Flow.WebEditingType.SECTION
 import com.quadient.wfdxml.api.layoutnodes.email.EmailComponentContent
+import java.io.OutputStream
 
 abstract class InspireDocumentObjectBuilder(
     protected val documentObjectRepository: DocumentObjectRepository,
@@ -138,6 +139,14 @@ abstract class InspireDocumentObjectBuilder(
 
     abstract fun buildDocumentObject(documentObject: DocumentObject): String
 
+    /**
+     * Writes the result of [buildDocumentObject] in UTF-8 into [output]. Builders able to export the XML while it is
+     * written override this, so the XML is never held in memory as a whole.
+     */
+    open fun buildDocumentObject(documentObject: DocumentObject, output: OutputStream) {
+        output.writer(Charsets.UTF_8).apply { write(buildDocumentObject(documentObject)); flush() }
+    }
+
     abstract fun shouldIncludeInternalDependency(documentObject: DocumentObject): Boolean
 
     protected fun collectLanguages(documentObject: DocumentObject): List<String> {
@@ -0,0 +1,11 @@
+package com.quadient.migration.service.ipsclient
+
+import java.io.OutputStream
+
+/**
+ * Writer of XML that was already built and is [size] bytes long. [IpsService] uploads it with the known size instead
+ * of collecting or spooling it first.
+ */
+interface BuiltXml : (OutputStream) -> Unit {
+    val size: Long
+}
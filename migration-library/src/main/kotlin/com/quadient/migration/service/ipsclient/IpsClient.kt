@@ -11,13 +11,20 @@ import tools.jackson.module.kotlin.readValue
 import kotlinx.serialization.Serializable
 import com.quadient.migration.tools.logger
 import java.io.BufferedInputStream
+import java.io.ByteArrayOutputStream
 import java.io.Closeable
+import java.io.OutputStream
 import java.io.OutputStreamWriter
 import java.net.InetSocketAddress
 import java.net.Socket
+import java.nio.file.Path
 import java.util.*
+import kotlin.io.path.fileSize
+import kotlin.io.path.inputStream
 import kotlin.time.Duration
 
+private const val UPLOAD_CHUNK_SIZE = 64 * 1024
+
 class IpsClient(private val host: String, private val port: Int, private val timeout: Duration) : Closeable {
     private val _connection = lazy { IpsConnection() }
     private val connection: IpsConnection by _connection
@@ -31,6 +38,14 @@ class IpsClient(private val host: String, private val port: Int, private val tim
             return connection.version
         }
 
+    /**
+     * True once the connection failed or IPS answered outside the protocol, the client has to be closed then. Commands
+     * failed by IPS leave the connection usable.
+     */
+    @Volatile
+    var broken = false
+        private set
+
     private val xmlMapper by lazy { XmlMapper.builder().addModule(KotlinModule.Builder().build()).build() }
 
     fun ackJob(jobId: JobId): IpsResult<Unit, Unit, Unit> {
@@ -76,23 +91,48 @@ class IpsClient(private val host: String, private val port: Int, private val tim
     }
 
     fun upload(path: String, bytes: ByteArray): IpsResult<Unit, Unit, Unit> {
+        return upload(path, bytes.size.toLong()) { it.write(bytes) }
+    }
+
+    /**
+     * Uploads the bytes written into [content] without copying them into a new array.
+     */
+    fun upload(path: String, content: ByteArrayOutputStream): IpsResult<Unit, Unit, Unit> {
+        return upload(path, content.size().toLong()) { content.writeTo(it) }
+    }
+
+    /**
+     * Uploads content of [file] in chunks, the file is not loaded into memory as a whole.
+     */
+    fun upload(path: String, file: Path): IpsResult<Unit, Unit, Unit> {
+        return upload(path, file.fileSize()) { out -> file.inputStream().use { it.copyTo(out, UPLOAD_CHUNK_SIZE) } }
+    }
+
+    /**
+     * Uploads [size] bytes written by [write], the content must be exactly [size] bytes long.
+     */
+    fun upload(path: String, size: Long, write: (OutputStream) -> Unit): IpsResult<Unit, Unit, Unit> {
         try {
-            val command = "upload $path;${bytes.count()}"
+            val command = "upload $path;$size"
             connection.writeLine(command).getOrElse { return IpsFailedWriteException(command, it).toIpsResult() }
 
             var line = connection.readLine()
             if (line != "ok;upload-start") {
+                connection.expectError(line)
                 return IpsClientException("Failed to upload file. Expected upload start, got '$line'").toIpsResult()
             }
-            connection.socket.outputStream.write(bytes)
+            write(connection.socket.outputStream)
 
             line = connection.readLine()
             if (line != "ok;upload-finish") {
+                broken = true
                 return IpsClientException("Failed to upload file. Expected upload finish, got '$line'").toIpsResult()
             }
 
             return IpsResult.Ok(IpsResponse("ok;"))
         } catch (e: Exception) {
+            // Part of the content may have been sent already
+            broken = true
             return IpsClientException("Failed to write bytes to ips", e).toIpsResult()
         }
     }
@@ -104,19 +144,25 @@ class IpsClient(private val host: String, private val port: Int, private val tim
 
             val response = connection.readLine().split(";")
             if (response.getOrNull(0) != "ok" || response.getOrNull(1)?.toLongOrNull() == null) {
+                connection.expectError(response.joinToString(";"))
                 return IpsClientException("Failed to download file. Expected byte size, got $response").toIpsResult()
             }
             val bytesToRead = response[1].toInt()
             val bytes = ByteArray(bytesToRead)
-            connection.reader.readNBytes(bytes, 0, bytesToRead)
+            if (connection.reader.readNBytes(bytes, 0, bytesToRead) < bytesToRead) {
+                broken = true
+                return IpsClientException("Failed to download file. Connection closed before $bytesToRead bytes were read").toIpsResult()
+            }
 
             val line = connection.readLine()
             if (line != "ok;download-finish") {
+                broken = true
                 return IpsClientException("Failed to upload file. Expected download finish, got '$line'").toIpsResult()
             }
 
             return IpsResult.Ok(IpsResponse("ok;"), bytes)
         } catch (e: Exception) {
+            broken = true
             return IpsClientException("Failed to read bytes from ips", e).toIpsResult()
         }
     }
@@ -141,7 +187,10 @@ class IpsClient(private val host: String, private val port: Int, private val tim
         val status = when (response) {
             "ok;finished" -> WaitForJobResult.Finished
             "ok;expired" -> WaitForJobResult.Expired
-            else -> return IpsClientException("Failed to read response from ips, invalid status: $response").toIpsResult()
+            else -> {
+                connection.expectError(response)
+                return IpsClientException("Failed to read response from ips, invalid status: $response").toIpsResult()
+            }
         }
 
         return IpsResult.Ok(IpsResponse(response), status)
@@ -320,12 +369,12 @@ class IpsClient(private val host: String, private val port: Int, private val tim
         fun readLine(): String {
             val buf = StringBuilder()
 
-            var c = reader.read()
+            var c = read()
             while (c != -1) {
                 val char = c.toChar()
 
                 if (char == '\r') {
-                    val c2 = reader.read()
+                    val c2 = read()
                     if (c2 == -1) {
                         break
                     }
@@ -339,7 +388,7 @@ class IpsClient(private val host: String, private val port: Int, private val tim
                 }
 
                 buf.append(char)
-                c = reader.read()
+                c = read()
             }
 
             val line = buf.toString()
@@ -347,6 +396,29 @@ class IpsClient(private val host: String, private val port: Int, private val tim
             return line
         }
 
+        private fun read(): Int {
+            val c = try {
+                reader.read()
+            } catch (e: Exception) {
+                broken = true
+                throw e
+            }
+            if (c == -1) {
+                // Closed by IPS
+                broken = true
+            }
+            return c
+        }
+
+        /**
+         * Marks the connection broken unless [line] is an error reported by IPS, which leaves it in a known state.
+         */
+        fun expectError(line: String) {
+            if (!line.startsWith("error;")) {
+                broken = true
+            }
+        }
+
         fun readLineWithTimeout(timeoutSeconds: Int): String {
             val originalTimeout = socket.soTimeout
             try {
@@ -362,6 +434,7 @@ class IpsClient(private val host: String, private val port: Int, private val tim
                 val response = IpsResponse(readLine())
                 return response.toIpsResult()
             } catch (e: Exception) {
+                broken = true
                 IpsClientException("Failed to read response", e).toIpsResult()
             }
         }
@@ -369,14 +442,14 @@ class IpsClient(private val host: String, private val port: Int, private val tim
         fun write(message: String) = writer.runCatching {
             write(message)
             flush()
-        }
+        }.onFailure { broken = true }
 
         fun writeLine(message: String) = writer.runCatching {
             logger.trace("Executing ips command: {}", message)
             write(message)
             write("\n")
             flush()
-        }
+        }.onFailure { broken = true }
 
         override fun close() {
             reader.close()
@@ -0,0 +1,148 @@
+package com.quadient.migration.service.ipsclient
+
+import com.quadient.migration.tools.logger
+import java.io.Closeable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedDeque
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import kotlin.time.Duration
+import kotlin.time.TimeSource
+
+/**
+ * Bounded pool of [IpsClient] connections. Each client owns exactly one socket, so the pool size is the maximum
+ * number of IPS commands that can be in flight at the same time.
+ *
+ * A client borrowed through [withClient] is bound to the calling thread for the duration of the block, nested
+ * [withClient] calls on the same thread reuse it. This keeps multistep operations (upload, open, edit, close)
+ * on a single connection and prevents a thread from deadlocking on its own pool.
+ *
+ * A client is returned to the pool after the block unless it is [IpsClient.broken], so commands failed by IPS do not
+ * cost a reconnect.
+ */
+class IpsClientPool(
+    private val size: Int,
+    private val waitTimeout: Duration,
+    private val healthCheckInterval: Duration,
+    private val clientFactory: () -> IpsClient,
+) : Closeable {
+    private val logger by logger()
+    private val permits = Semaphore(size, true)
+    private val idle = ConcurrentLinkedDeque<IdleClient>()
+    private val clients = ConcurrentHashMap.newKeySet<IpsClient>()
+
+    @PublishedApi
+    internal val current = ThreadLocal<IpsClient?>()
+
+    @Volatile
+    private var closed = false
+
+    init {
+        require(size > 0) { "IPS connection pool size must be greater than 0, got $size" }
+    }
+
+    /**
+     * Version reported by any of the already connected clients, null when no connection was made yet.
+     */
+    val version: Version?
+        get() = clients.firstNotNullOfOrNull { it.version }
+
+    val openConnections: Int
+        get() = clients.size
+
+    val idleConnections: Int
+        get() = idle.size
+
+    inline fun <T> withClient(block: (IpsClient) -> T): T {
+        val held = current.get()
+        if (held != null) {
+            return block(held)
+        }
+
+        val client = borrow()
+        current.set(client)
+        try {
+            return block(client)
+        } finally {
+            current.remove()
+            release(client, broken = client.broken)
+        }
+    }
+
+    @PublishedApi
+    internal fun borrow(): IpsClient {
+        check(!closed) { "IPS connection pool is closed" }
+
+        if (!permits.tryAcquire(waitTimeout.inWholeMilliseconds, TimeUnit.MILLISECONDS)) {
+            throw IpsClientException("Timed out after $waitTimeout waiting for a free IPS connection. Pool size: $size")
+        }
+
+        try {
+            while (true) {
+                val candidate = idle.pollFirst() ?: break
+                if (candidate.idleSince.elapsedNow() < healthCheckInterval || isHealthy(candidate.client)) {
+                    return candidate.client
+                }
+                discard(candidate.client)
+            }
+
+            val client = clientFactory()
+            clients.add(client)
+            return client
+        } catch (e: Throwable) {
+            permits.release()
+            throw e
+        }
+    }
+
+    @PublishedApi
+    internal fun release(client: IpsClient, broken: Boolean) {
+        try {
+            if (broken || closed) {
+                discard(client)
+            } else {
+                idle.offerFirst(IdleClient(client, TimeSource.Monotonic.markNow()))
+            }
+        } finally {
+            permits.release()
+        }
+    }
+
+    private fun isHealthy(client: IpsClient): Boolean {
+        val result = try {
+            client.ping()
+        } catch (e: Exception) {
+            logger.debug("IPS connection health check failed", e)
+            return false
+        }
+
+        if (result.isNotOk()) {
+            logger.debug("IPS connection health check failed: {}", result)
+            return false
+        }
+
+        return true
+    }
+
+    private fun discard(client: IpsClient) {
+        clients.remove(client)
+        try {
+            client.close()
+        } catch (e: Exception) {
+            logger.debug("Failed to close IPS connection", e)
+        }
+    }
+
+    override fun close() {
+        closed = true
+        while (true) {
+            val candidate = idle.pollFirst() ?: break
+            discard(candidate.client)
+        }
+        for (client in clients) {
+            discard(client)
+        }
+    }
+
+    private data class IdleClient(val client: IpsClient, val idleSince: TimeSource.Monotonic.ValueTimeMark)
+}
@@ -13,63 +13,114 @@ import kotlinx.serialization.json.JsonElement
 import kotlinx.serialization.json.jsonArray
 import kotlinx.serialization.json.jsonObject
 import kotlinx.serialization.json.jsonPrimitive
+import com.quadient.migration.tools.LoadingCache
 import com.quadient.migration.tools.logger
+import java.io.ByteArrayOutputStream
 import java.io.Closeable
+import java.io.OutputStream
+import java.nio.file.Files
 import java.util.*
+import kotlin.io.path.fileSize
+import kotlin.io.path.outputStream
 import kotlin.text.startsWith
 import kotlin.time.Duration.Companion.seconds
 
 class IpsService(private val config: IpsConfig) : Closeable, IcmClient {
     private val xmlMapper by lazy { XmlMapper.builder().addModule(KotlinModule.Builder().build()).build() }
 
-    private val _client = lazy { IpsClient(config.host, config.port, config.timeoutSeconds.seconds) }
-    val client: IpsClient by _client
+    private val pool = IpsClientPool(
+        size = config.poolSize,
+        waitTimeout = config.poolWaitTimeoutSeconds.seconds,
+        healthCheckInterval = config.poolHealthCheckIntervalSeconds.seconds,
+    ) { IpsClient(config.host, config.port, config.timeoutSeconds.seconds) }
+
+    /**
+     * IPS version reported by the first established connection, null when no connection was made yet.
+     */
+    val version: Version?
+        get() = pool.version
 
     private val logger by logger()
-    private val uploadedResources: MutableMap<String, UploadedFile> = mutableMapOf()
+    private val uploadedResources = LoadingCache<String, UploadedFile>()
+
+    /**
+     * Runs [block] with a connection borrowed from the pool. All IPS commands issued inside the block
+     * on the current thread share the same connection.
+     */
+    fun <T> withClient(block: (IpsClient) -> T): T = pool.withClient(block)
 
     fun xml2wfd(wfdXml: String, outputPath: IcmPath): OperationResult {
         return xml2wfd(wfdXml, outputPath.toString())
     }
 
     fun xml2wfd(wfdXml: String, outputPath: String): OperationResult {
-        val wfdXmlIpsLocation = "memory://${UUID.randomUUID()}"
+        return xml2wfd(outputPath) { client, location -> client.upload(location, wfdXml.toByteArray()) }
+    }
 
-        client.upload(wfdXmlIpsLocation, wfdXml.toByteArray()).ifNotSuccess {
-            val message = "Failed to upload wfdXml input for conversion, $wfdXmlIpsLocation, $it"
-            logger.error(message)
-            return OperationResult.Failure(message)
+    /**
+     * Converts WFD XML written by [writeXml] without holding it in memory. The XML is spooled into a temporary file
+     * first, because IPS needs the size of an upload up front, and the file is then uploaded in chunks. The stream
+     * passed to [writeXml] is buffered. [BuiltXml] is uploaded directly, its size is already known.
+     */
+    fun xml2wfd(outputPath: IcmPath, writeXml: (OutputStream) -> Unit): OperationResult {
+        if (writeXml is BuiltXml) {
+            return xml2wfd(outputPath.toString()) { client, location -> client.upload(location, writeXml.size, writeXml) }
         }
 
-        val result = client.xml2wfd(wfdXmlIpsLocation, outputPath)
-        val operationResult = result.waitAndAckJobOrLogError()
-
-        client.remove(wfdXmlIpsLocation).ifNotSuccess {
-            logger.error("Failed to cleanup wfdXml input memory: {}", it)
+        val xmlFile = Files.createTempFile("wfd-xml-", ".xml")
+        try {
+            xmlFile.outputStream().buffered().use(writeXml)
+            logger.trace("Spooled WFD XML of size {} for '{}'.", xmlFile.fileSize(), outputPath)
+            return xml2wfd(outputPath.toString()) { client, location -> client.upload(location, xmlFile) }
+        } finally {
+            Files.deleteIfExists(xmlFile)
         }
+    }
+
+    private fun xml2wfd(
+        outputPath: String, upload: (IpsClient, String) -> IpsResult<Unit, Unit, Unit>
+    ): OperationResult {
+        return pool.withClient { client ->
+            val wfdXmlIpsLocation = "memory://${UUID.randomUUID()}"
 
-        return operationResult
+            upload(client, wfdXmlIpsLocation).ifNotSuccess {
+                val message = "Failed to upload wfdXml input for conversion, $wfdXmlIpsLocation, $it"
+                logger.error(message)
+                return OperationResult.Failure(message)
+            }
+
+            val result = client.xml2wfd(wfdXmlIpsLocation, outputPath)
+            val operationResult = result.waitAndAckJobOrLogError()
+
+            client.remove(wfdXmlIpsLocation).ifNotSuccess {
+                logger.error("Failed to cleanup wfdXml input memory: {}", it)
+            }
+
+            operationResult
+        }
     }
 
     fun wfd2xml(wfdPath: String): String {
-        val resultLocation = "memory://${UUID.randomUUID()}"
+        return pool.withClient { client ->
+            val resultLocation = "memory://${UUID.randomUUID()}"
 
-        val result = client.wfd2xml(wfdPath, resultLocation)
-        val operationResult = result.waitAndAckJobOrLogError()
-        if (operationResult is OperationResult.Failure) {
-            throw IpsClientException(operationResult.message)
-        }
+            val result = client.wfd2xml(wfdPath, resultLocation)
+            val operationResult = result.waitAndAckJobOrLogError()
+            if (operationResult is OperationResult.Failure) {
+                throw IpsClientException(operationResult.message)
+            }
 
-        val outputResult = client.download(resultLocation)
-        if (outputResult !is IpsResult.Ok) {
-            throw IpsClientException("Failed to download result xml: '$outputResult'")
-        }
+            val outputResult = client.download(resultLocation)
+            if (outputResult !is IpsResult.Ok) {
+                throw IpsClientException("Failed to download result xml: '$outputResult'")
+            }
 
-        client.remove(resultLocation).ifNotSuccess {
-            logger.error("Failed to cleanup wfdXml output memory: {}", it)
-        }
+            client.remove(resultLocation).ifNotSuccess {
+                logger.error("Failed to cleanup wfdXml output memory: {}", it)
+            }
 
-        return String(outputResult.customData).trimIndent()
+            String(outputResult.customData).trimIndent()
+        }
     }
 
     fun wfd2xml(wfdPath: IcmPath): String {
@@ -77,97 +128,110 @@ class IpsService(private val config: IpsConfig) : Closeable, IcmClient {
     }
 
     fun deployJld(
-        baseTemplate: IcmPath, type: String, moduleName: String, xmlContent: String, outputPath: String
+        baseTemplate: IcmPath, type: String, moduleName: String, writeXml: (OutputStream) -> Unit, outputPath: String
     ): OperationResult {
-        return deployJld(baseTemplate.toString(), type, moduleName, xmlContent, outputPath)
+        return deployJld(baseTemplate.toString(), type, moduleName, writeXml, outputPath)
     }
 
     fun deployJld(
-        baseTemplate: IcmPath, type: String, moduleName: String, xmlContent: String, outputPath: IcmPath
+        baseTemplate: IcmPath, type: String, moduleName: String, writeXml: (OutputStream) -> Unit, outputPath: IcmPath
     ): OperationResult {
-        return deployJld(baseTemplate.toString(), type, moduleName, xmlContent, outputPath.toString())
+        return deployJld(baseTemplate.toString(), type, moduleName, writeXml, outputPath.toString())
     }
 
     fun deployJld(
-        baseTemplate: String, type: String, moduleName: String, xmlContent: String, outputPath: String
+        baseTemplate: String, type: String, moduleName: String, writeXml: (OutputStream) -> Unit, outputPath: String
     ): OperationResult {
-        return deployJld(baseTemplate, moduleName, xmlContent) {
-            wfId -> client.extractJld(wfId, outputPath, type)
+        return deployJld(baseTemplate, moduleName, writeXml) { client, wfId ->
+            client.extractJld(wfId, outputPath, type)
         }
     }
 
     fun deployStyleJld(baseTemplate: IcmPath, xmlContent: String, outputPath: IcmPath): OperationResult {
-        return deployJld(baseTemplate.toString(), "DocumentLayout", xmlContent) {
-                wfId -> client.extractJldStyleDefinition(wfId, outputPath.toString())
-        }
+        return deployStyleJld(baseTemplate.toString(), xmlContent, outputPath.toString())
     }
 
     fun deployStyleJld(baseTemplate: String, xmlContent: String, outputPath: String): OperationResult {
-        return deployJld(baseTemplate, "DocumentLayout", xmlContent) {
-                wfId -> client.extractJldStyleDefinition(wfId, outputPath)
+        val writeXml: (OutputStream) -> Unit = { it.writer(Charsets.UTF_8).apply { write(xmlContent); flush() } }
+        return deployJld(baseTemplate, "DocumentLayout", writeXml) { client, wfId ->
+            client.extractJldStyleDefinition(wfId, outputPath)
         }
     }
 
+    /**
+     * Imports the layout XML written by [writeXml] into [baseTemplate] and extracts the JLD with [jldExtractor]. The XML
+     * is collected in memory before a connection is borrowed, because IPS needs the size of an upload up front. [BuiltXml]
+     * is uploaded directly, its size is already known.
+     */
     fun deployJld(
         baseTemplate: String,
         moduleName: String,
-        xmlContent: String,
-        jldExtractor: (WorkFlowId) -> IpsResult<JobId, Unit, Unit>
+        writeXml: (OutputStream) -> Unit,
+        jldExtractor: (IpsClient, WorkFlowId) -> IpsResult<JobId, Unit, Unit>
     ): OperationResult {
-        logger.debug("Starting deployment.")
-
-        val xmlContentIpsLocation = "memory://${UUID.randomUUID()}"
-        val commandXmlIpsLocation = "memory://${UUID.randomUUID()}"
-
-        val openResult = client.open(baseTemplate)
-        if (openResult is IpsResult.Ok) {
-            try {
-                client.waitForJob(openResult.jobId).ifNotSuccess {
-                    val message = "Waiting for workflow to open failed, $openResult.jobId"
-                    logger.error(message)
-                    return OperationResult.Failure(message)
-                }
-
-                val command = Coms(Coms.ImportLayoutXml(moduleName, xmlContentIpsLocation))
-                val commandXml = xmlMapper.writeValueAsString(command)
-                logger.debug(commandXml)
-
-                client.upload(commandXmlIpsLocation, commandXml.toByteArray()).ifNotSuccess {
-                    val message = "Failed to upload command xml, $commandXmlIpsLocation, $it"
-                    logger.error(message)
-                    return OperationResult.Failure(message)
-                }
-                client.upload(xmlContentIpsLocation, xmlContent.toByteArray()).ifNotSuccess {
-                    val message = "Failed to upload content xml, $xmlContentIpsLocation, $it"
-                    logger.error(message)
-                    return OperationResult.Failure(message)
-                }
-
-                client.editWfd(openResult.workFlowId, commandXmlIpsLocation).ifNotSuccess {
-                    val message = "Failed to edit wfd with content xml. $it"
-                    logger.error(message)
-                    return OperationResult.Failure(message)
-                }
-
-                val result = jldExtractor(openResult.workFlowId)
-                return result.waitAndAckJobOrLogError()
-            } finally {
-                client.close(openResult.workFlowId).ifOk { closeResult ->
-                    closeResult.waitAndAckJobOrLogError()
-                }
-                client.ackJob(openResult.jobId).ifNotSuccess {
-                    logger.error("Failed to ack open workflow: $it ")
-                }
-                client.remove(commandXmlIpsLocation).ifNotSuccess {
-                    logger.error("Failed to cleanup command.xml memory: {}", it)
-                }
-                client.remove(xmlContentIpsLocation).ifNotSuccess {
-                    logger.error("Failed to cleanup content xml memory: {}", it)
+        val builtXml = writeXml as? BuiltXml
+        val xmlContent = if (builtXml == null) ByteArrayOutputStream().also(writeXml) else null
+        return pool.withClient { client ->
+            logger.debug("Starting deployment.")
+
+            val xmlContentIpsLocation = "memory://${UUID.randomUUID()}"
+            val commandXmlIpsLocation = "memory://${UUID.randomUUID()}"
+
+            val openResult = client.open(baseTemplate)
+            if (openResult is IpsResult.Ok) {
+                try {
+                    client.waitForJob(openResult.jobId).ifNotSuccess {
+                        val message = "Waiting for workflow to open failed, $openResult.jobId"
+                        logger.error(message)
+                        return OperationResult.Failure(message)
+                    }
+
+                    val command = Coms(Coms.ImportLayoutXml(moduleName, xmlContentIpsLocation))
+                    val commandXml = xmlMapper.writeValueAsString(command)
+                    logger.debug(commandXml)
+
+                    client.upload(commandXmlIpsLocation, commandXml.toByteArray()).ifNotSuccess {
+                        val message = "Failed to upload command xml, $commandXmlIpsLocation, $it"
+                        logger.error(message)
+                        return OperationResult.Failure(message)
+                    }
+                    val xmlUpload = if (builtXml != null) {
+                        client.upload(xmlContentIpsLocation, builtXml.size, builtXml)
+                    } else {
+                        client.upload(xmlContentIpsLocation, xmlContent!!)
+                    }
+                    xmlUpload.ifNotSuccess {
+                        val message = "Failed to upload content xml, $xmlContentIpsLocation, $it"
+                        logger.error(message)
+                        return OperationResult.Failure(message)
+                    }
+
+                    client.editWfd(openResult.workFlowId, commandXmlIpsLocation).ifNotSuccess {
+                        val message = "Failed to edit wfd with content xml. $it"
+                        logger.error(message)
+                        return OperationResult.Failure(message)
+                    }
+
+                    val result = jldExtractor(client, openResult.workFlowId)
+                    return result.waitAndAckJobOrLogError()
+                } finally {
+                    client.close(openResult.workFlowId).ifOk { closeResult ->
+                        closeResult.waitAndAckJobOrLogError()
+                    }
+                    client.ackJob(openResult.jobId).ifNotSuccess {
+                        logger.error("Failed to ack open workflow: $it ")
+                    }
+                    client.remove(commandXmlIpsLocation).ifNotSuccess {
+                        logger.error("Failed to cleanup command.xml memory: {}", it)
+                    }
+                    client.remove(xmlContentIpsLocation).ifNotSuccess {
+                        logger.error("Failed to cleanup content xml memory: {}", it)
+                    }
                 }
             }
-        }
 
-        return OperationResult.Failure(openResult.toString())
+            OperationResult.Failure(openResult.toString())
+        }
     }
 
     @JvmName("setProductionApprovalStateByIcmPath")
@@ -176,96 +240,99 @@ class IpsService(private val config: IpsConfig) : Closeable, IcmClient {
     }
 
     fun setProductionApprovalState(paths: List<String>): OperationResult {
-        val pathsLocation = "memory://${UUID.randomUUID()}"
-        val json = """{"paths":[${paths.joinToString(",") { it.surroundWith("\"") }}]}"""
-        try {
-            logger.debug(json)
-            client.upload(pathsLocation, json.toByteArray()).ifNotSuccess {
-                val message = "Failed to upload paths.json $pathsLocation, $it"
-                logger.error(message)
-                return OperationResult.Failure(message)
-            }
-            return runWfd("setApprovalState.wfd", listOf("-difJSONDataInput", pathsLocation))
-        } finally {
-            client.remove(pathsLocation).ifNotSuccess {
-                logger.error("Failed to cleanup paths.json memory: {}", it)
+        return pool.withClient { client ->
+            val pathsLocation = "memory://${UUID.randomUUID()}"
+            val json = """{"paths":[${paths.joinToString(",") { it.surroundWith("\"") }}]}"""
+            try {
+                logger.debug(json)
+                client.upload(pathsLocation, json.toByteArray()).ifNotSuccess {
+                    val message = "Failed to upload paths.json $pathsLocation, $it"
+                    logger.error(message)
+                    return OperationResult.Failure(message)
+                }
+                return runWfd("setApprovalState.wfd", listOf("-difJSONDataInput", pathsLocation))
+            } finally {
+                client.remove(pathsLocation).ifNotSuccess {
+                    logger.error("Failed to cleanup paths.json memory: {}", it)
+                }
             }
         }
     }
 
     fun gatherFontData(fontRootFolder: IcmPath): String {
-        val resultLocation = "memory://${UUID.randomUUID()}"
+        return pool.withClient { client ->
+            val resultLocation = "memory://${UUID.randomUUID()}"
 
-        val result =
-            runWfd("gatherFontData.wfd", listOf("-f", resultLocation, "-fontRootFolderFontRootFolder", fontRootFolder.toString()))
-        if (result !is OperationResult.Success) {
-            throw IpsClientException("Failed to gather font data from root folder: $fontRootFolder")
-        }
+            val result =
+                runWfd("gatherFontData.wfd", listOf("-f", resultLocation, "-fontRootFolderFontRootFolder", fontRootFolder.toString()))
+            if (result !is OperationResult.Success) {
+                throw IpsClientException("Failed to gather font data from root folder: $fontRootFolder")
+            }
 
-        val resultXml = client.download(resultLocation).throwIfNotOk()
-        val resultXmlTree = xmlMapper.readTree(String(resultXml.customData))
-        return resultXmlTree["fontData"].stringValue()
+            val resultXml = client.download(resultLocation).throwIfNotOk()
+            val resultXmlTree = xmlMapper.readTree(String(resultXml.customData))
+            resultXmlTree["fontData"].stringValue()
+        }
     }
 
     fun runWfd(wfdPath: String, args: List<String>): OperationResult {
-        val uploadedResourcePath = getOrInitCachedWorkflow(wfdPath).getOrElse {
-            val message = "Failed to upload file: '$wfdPath'. Error: $it"
-            logger.error(message)
-            return OperationResult.Failure(message)
-        }
+        return pool.withClient { client ->
+            val uploadedResourcePath = getOrInitCachedWorkflow(client, wfdPath).getOrElse {
+                val message = "Failed to upload file: '$wfdPath'. Error: $it"
+                logger.error(message)
+                return OperationResult.Failure(message)
+            }
 
-        val openResult = client.open(uploadedResourcePath)
-        if (openResult is IpsResult.Ok) {
-            try {
-                client.waitForJob(openResult.jobId).ifNotSuccess {
-                    val message = "Waiting for workflow to open failed, $openResult.jobId"
-                    logger.error(message)
-                    return OperationResult.Failure(message)
-                }
-                return client.run(openResult.workFlowId.toString(), args).waitAndAckJobOrLogError()
-            } finally {
-                client.ackJob(openResult.jobId).ifNotSuccess {
-                    logger.error("Failed to ack open workflow: $it ")
-                }
-                client.close(openResult.workFlowId).ifOk { closeResult ->
-                    closeResult.waitAndAckJobOrLogError()
-                }.ifNotSuccess {
-                    logger.error("Failed to close workflow: $it")
+            val openResult = client.open(uploadedResourcePath)
+            if (openResult is IpsResult.Ok) {
+                try {
+                    client.waitForJob(openResult.jobId).ifNotSuccess {
+                        val message = "Waiting for workflow to open failed, $openResult.jobId"
+                        logger.error(message)
+                        return OperationResult.Failure(message)
+                    }
+                    return client.run(openResult.workFlowId.toString(), args).waitAndAckJobOrLogError()
+                } finally {
+                    client.ackJob(openResult.jobId).ifNotSuccess {
+                        logger.error("Failed to ack open workflow: $it ")
+                    }
+                    client.close(openResult.workFlowId).ifOk { closeResult ->
+                        closeResult.waitAndAckJobOrLogError()
+                    }.ifNotSuccess {
+                        logger.error("Failed to close workflow: $it")
+                    }
                 }
             }
-        }
 
-        return OperationResult.Failure(openResult.toString())
+            OperationResult.Failure(openResult.toString())
+        }
     }
 
-    private fun getOrInitCachedWorkflow(wfdPath: String): Result<String> {
-        val cached = uploadedResources[wfdPath]
-        if (cached != null) {
-            return Result.success(cached.path)
-        }
+    private fun getOrInitCachedWorkflow(client: IpsClient, wfdPath: String): Result<String> {
+        // Single flight, so that concurrent callers do not upload the same workflow more than once
+        return runCatching { uploadedResources.getOrLoad(wfdPath) { uploadWorkflow(client, it) }.path }
+    }
 
+    private fun uploadWorkflow(client: IpsClient, wfdPath: String): UploadedFile {
         val dataStream = this.javaClass.getResource("/$wfdPath")
-            ?: return Result.failure(MissingWfdException("Wfd not found: '${wfdPath}'"))
+            ?: throw MissingWfdException("Wfd not found: '${wfdPath}'")
 
         val uploadDest = "memory://${UUID.randomUUID()}"
-        val uploadResult = client.upload(uploadDest, dataStream.readBytes())
-        when (uploadResult) {
-            is IpsResult.Error -> return Result.failure(Exception("Failed to upload file: $uploadResult"))
-            is IpsResult.Exception -> return Result.failure(uploadResult.throwable)
+        when (val uploadResult = client.upload(uploadDest, dataStream.readBytes())) {
+            is IpsResult.Error -> throw Exception("Failed to upload file: $uploadResult")
+            is IpsResult.Exception -> throw uploadResult.throwable
             is IpsResult.Ok -> {}
         }
 
-        uploadedResources[wfdPath] = UploadedFile(uploadDest, {
-            val removeResult = client.remove(uploadDest)
+        return UploadedFile(uploadDest, {
+            val removeResult = pool.withClient { it.remove(uploadDest) }
             if (removeResult.isNotOk()) {
                 logger.error("Failed to cleanup resource '{}'. Operation result: '{}'", wfdPath, removeResult)
             }
         })
-
-        return Result.success(uploadDest)
     }
 
-    private fun waitAndAckJobAndGetErrorLog(jobId: JobId): String? {
+    private fun waitAndAckJobAndGetErrorLog(client: IpsClient, jobId: JobId): String? {
         client.waitForJob(jobId).ifNotSuccess {
             logger.error("Waiting for job run to finish failed, {}", jobId)
         }
@@ -294,45 +361,45 @@ class IpsService(private val config: IpsConfig) : Closeable, IcmClient {
     }
 
     private fun <W, C> IpsResult<JobId, W, C>.waitAndAckJobOrLogError(): OperationResult {
-        return when (this) {
-            is IpsResult.Ok -> {
-                val errorLog = waitAndAckJobAndGetErrorLog(this.jobId)
-                if (errorLog != null) {
-                    val message = "Job finished with error: '$errorLog'"
-                    logger.error(message)
-                    return OperationResult.Failure(message)
+        return pool.withClient { client ->
+            when (this) {
+                is IpsResult.Ok -> {
+                    val errorLog = waitAndAckJobAndGetErrorLog(client, this.jobId)
+                    if (errorLog != null) {
+                        val message = "Job finished with error: '$errorLog'"
+                        logger.error(message)
+                        return OperationResult.Failure(message)
+                    }
+                    OperationResult.Success
                 }
-                OperationResult.Success
-            }
 
-            is IpsResult.Error -> {
-                val errorLog = waitAndAckJobAndGetErrorLog(this.jobId)
-                var message = "Job failed. '$this'"
-                if (errorLog != null) {
-                    message += ". Error log: '$errorLog'"
+                is IpsResult.Error -> {
+                    val errorLog = waitAndAckJobAndGetErrorLog(client, this.jobId)
+                    var message = "Job failed. '$this'"
+                    if (errorLog != null) {
+                        message += ". Error log: '$errorLog'"
+                    }
+                    logger.error(message)
+                    OperationResult.Failure(message)
                 }
-                logger.error(message)
-                OperationResult.Failure(message)
-            }
 
-            is IpsResult.Exception -> {
-                val message = "Job failed with unexpected error. Error: '$this'"
-                logger.error(message)
-                OperationResult.Failure(message)
+                is IpsResult.Exception -> {
+                    val message = "Job failed with unexpected error. Error: '$this'"
+                    logger.error(message)
+                    OperationResult.Failure(message)
+                }
             }
         }
     }
 
     override fun close() {
         logger.trace("Cleaning resources for IPS service")
-        for (resource in uploadedResources.values) {
+        for (resource in uploadedResources.loadedValues()) {
             logger.trace("Cleaning up {}", resource)
             resource.onClose()
         }
 
-        if (_client.isInitialized()) {
-            client.close()
-        }
+        pool.close()
     }
 
     fun tryUpload(path: IcmPath, data: ByteArray): OperationResult {
@@ -350,7 +417,7 @@ class IpsService(private val config: IpsConfig) : Closeable, IcmClient {
     }
 
     override fun upload(path: String, data: ByteArray) {
-        client.upload(path, data).throwIfNotOk()
+        pool.withClient { it.upload(path, data).throwIfNotOk() }
     }
 
     override fun upload(path: IcmPath, data: ByteArray) {
@@ -358,7 +425,7 @@ class IpsService(private val config: IpsConfig) : Closeable, IcmClient {
     }
 
     override fun download(path: String): ByteArray {
-        return client.download(path).throwIfNotOk().customData
+        return pool.withClient { it.download(path).throwIfNotOk().customData }
     }
 
     override fun download(path: IcmPath): ByteArray {
@@ -381,37 +448,39 @@ class IpsService(private val config: IpsConfig) : Closeable, IcmClient {
     }
 
     override fun filesExist(paths: List<String>): List<Boolean> {
-        val pathsLocation = "memory://${UUID.randomUUID()}"
-        val resultLocation = "memory://${UUID.randomUUID()}"
-        val json = """{"paths":[${paths.joinToString(",") { it.surroundWith("\"") }}]}"""
-        try {
-            logger.debug(json)
-            client.upload(pathsLocation, json.toByteArray()).throwIfNotOk()
-            val result = runWfd("fileExists.wfd", listOf("-difJSONDataInput", pathsLocation, "-f", resultLocation))
-            if (result !is OperationResult.Success) {
-                throw IpsClientException("Failed to check file existence: $paths")
-            }
-            val resultCsv = client.download(resultLocation).throwIfNotOk()
-            val resultLines = String(resultCsv.customData).lines()
-            return paths.mapIndexed { index, path ->
-                val split = resultLines[index + 1].split(",") // +1 to skip CSV header
-                val filePath = split[0].removeSurrounding("\"")
-                val fileExists = when (split[1].removeSurrounding("\"")) {
-                    "1" -> true
-                    "0" -> false
-                    else -> throw IllegalStateException("Unexpected result value: ${split[1]}")
+        return pool.withClient { client ->
+            val pathsLocation = "memory://${UUID.randomUUID()}"
+            val resultLocation = "memory://${UUID.randomUUID()}"
+            val json = """{"paths":[${paths.joinToString(",") { it.surroundWith("\"") }}]}"""
+            try {
+                logger.debug(json)
+                client.upload(pathsLocation, json.toByteArray()).throwIfNotOk()
+                val result = runWfd("fileExists.wfd", listOf("-difJSONDataInput", pathsLocation, "-f", resultLocation))
+                if (result !is OperationResult.Success) {
+                    throw IpsClientException("Failed to check file existence: $paths")
                 }
-                if (filePath != path) {
-                    throw IllegalStateException("Unexpected result file path: $filePath")
+                val resultCsv = client.download(resultLocation).throwIfNotOk()
+                val resultLines = String(resultCsv.customData).lines()
+                return paths.mapIndexed { index, path ->
+                    val split = resultLines[index + 1].split(",") // +1 to skip CSV header
+                    val filePath = split[0].removeSurrounding("\"")
+                    val fileExists = when (split[1].removeSurrounding("\"")) {
+                        "1" -> true
+                        "0" -> false
+                        else -> throw IllegalStateException("Unexpected result value: ${split[1]}")
+                    }
+                    if (filePath != path) {
+                        throw IllegalStateException("Unexpected result file path: $filePath")
+                    }
+                    fileExists
+                }
+            } finally {
+                client.remove(pathsLocation).ifNotSuccess {
+                    logger.error("Failed to cleanup paths.json memory: {}", it)
+                }
+                client.remove(resultLocation).ifNotSuccess {
+                    logger.error("Failed to cleanup fileExists.wfd result csv memory: {}", it)
                 }
-                fileExists
-            }
-        } finally {
-            client.remove(pathsLocation).ifNotSuccess {
-                logger.error("Failed to cleanup paths.json memory: {}", it)
-            }
-            client.remove(resultLocation).ifNotSuccess {
-                logger.error("Failed to cleanup fileExists.wfd result csv memory: {}", it)
             }
         }
     }
@@ -425,37 +494,39 @@ class IpsService(private val config: IpsConfig) : Closeable, IcmClient {
     }
 
     override fun delete(paths: List<String>): List<Boolean> {
-        val pathsLocation = "memory://${UUID.randomUUID()}"
-        val resultLocation = "memory://${UUID.randomUUID()}"
-        val json = """{"paths":[${paths.joinToString(",") { it.surroundWith("\"") }}]}"""
-        try {
-            logger.debug(json)
-            client.upload(pathsLocation, json.toByteArray()).throwIfNotOk()
-            val result = runWfd("deleteFiles.wfd", listOf("-difJSONDataInput", pathsLocation, "-f", resultLocation))
-            if (result != OperationResult.Success) {
-                throw IpsClientException("Failed to delete files: $paths")
-            }
-            val resultCsv = client.download(resultLocation).throwIfNotOk()
-            val resultLines = String(resultCsv.customData).lines()
-            return paths.mapIndexed { index, path ->
-                val split = resultLines[index + 1].split(",") // +1 to skip CSV header
-                val filePath = split[0].removeSurrounding("\"")
-                val fileExists = when (split[1].removeSurrounding("\"")) {
-                    "1" -> true
-                    "0" -> false
-                    else -> throw IllegalStateException("Unexpected result value: ${split[1]}")
+        return pool.withClient { client ->
+            val pathsLocation = "memory://${UUID.randomUUID()}"
+            val resultLocation = "memory://${UUID.randomUUID()}"
+            val json = """{"paths":[${paths.joinToString(",") { it.surroundWith("\"") }}]}"""
+            try {
+                logger.debug(json)
+                client.upload(pathsLocation, json.toByteArray()).throwIfNotOk()
+                val result = runWfd("deleteFiles.wfd", listOf("-difJSONDataInput", pathsLocation, "-f", resultLocation))
+                if (result != OperationResult.Success) {
+                    throw IpsClientException("Failed to delete files: $paths")
                 }
-                if (filePath != path) {
-                    throw IllegalStateException("Unexpected result file path: $filePath")
+                val resultCsv = client.download(resultLocation).throwIfNotOk()
+                val resultLines = String(resultCsv.customData).lines()
+                return paths.mapIndexed { index, path ->
+                    val split = resultLines[index + 1].split(",") // +1 to skip CSV header
+                    val filePath = split[0].removeSurrounding("\"")
+                    val fileExists = when (split[1].removeSurrounding("\"")) {
+                        "1" -> true
+                        "0" -> false
+                        else -> throw IllegalStateException("Unexpected result value: ${split[1]}")
+                    }
+                    if (filePath != path) {
+                        throw IllegalStateException("Unexpected result file path: $filePath")
+                    }
+                    fileExists
+                }
+            } finally {
+                client.remove(pathsLocation).ifNotSuccess {
+                    logger.error("Failed to cleanup paths.json memory: {}", it)
+                }
+                client.remove(resultLocation).ifNotSuccess {
+                    logger.error("Failed to cleanup deleteFiles.wfd result csv memory: {}", it)
                 }
-                fileExists
-            }
-        } finally {
-            client.remove(pathsLocation).ifNotSuccess {
-                logger.error("Failed to cleanup paths.json memory: {}", it)
-            }
-            client.remove(resultLocation).ifNotSuccess {
-                logger.error("Failed to cleanup deleteFiles.wfd result csv memory: {}", it)
             }
         }
     }
@@ -470,33 +541,35 @@ class IpsService(private val config: IpsConfig) : Closeable, IcmClient {
     }
 
     override fun readMetadata(paths: List<String>): List<IcmFileMetadata> {
-        require(paths.all { it.startsWith("icm://") }) { "Expected all paths to start with icm:// but got '$paths" }
-        val pathsLocation = "memory://${UUID.randomUUID()}"
-        val resultLocation = "memory://${UUID.randomUUID()}"
-        val json = """{"paths":[${paths.joinToString(",") { it.surroundWith("\"") }}]}"""
-        try {
-            logger.debug(json)
-            client.upload(pathsLocation, json.toByteArray()).throwIfNotOk()
-            val result = runWfd("readMetadata.wfd", listOf("-difJSONDataInput", pathsLocation, "-f", resultLocation))
-            if (result != OperationResult.Success) {
-                throw IpsClientException("Failed to read metadata of files: $paths")
-            }
-            val resultJson = client.download(resultLocation).throwIfNotOk()
-
-            val json = Json.decodeFromString<JsonElement>(String(resultJson.customData))
-            return json .jsonObject["paths"]?.jsonArray?.map {
-                val obj = it.jsonObject
-                val path = obj["path"]?.jsonPrimitive?.content ?: ""
-                val metaStr = obj["metadata"]?.jsonPrimitive?.content ?: ""
-                val metadata = Json.decodeFromString<Map<String, MetadataValue>>(metaStr)
-                IcmFileMetadata(path, metadata)
-            } ?: emptyList()
-        } finally {
-            client.remove(pathsLocation).ifNotSuccess {
-                logger.error("Failed to cleanup metadata paths.json memory: {}", it)
-            }
-            client.remove(resultLocation).ifNotSuccess {
-                logger.error("Failed to cleanup readMetadata.wfd result memory: {}", it)
+        return pool.withClient { client ->
+            require(paths.all { it.startsWith("icm://") }) { "Expected all paths to start with icm:// but got '$paths" }
+            val pathsLocation = "memory://${UUID.randomUUID()}"
+            val resultLocation = "memory://${UUID.randomUUID()}"
+            val json = """{"paths":[${paths.joinToString(",") { it.surroundWith("\"") }}]}"""
+            try {
+                logger.debug(json)
+                client.upload(pathsLocation, json.toByteArray()).throwIfNotOk()
+                val result = runWfd("readMetadata.wfd", listOf("-difJSONDataInput", pathsLocation, "-f", resultLocation))
+                if (result != OperationResult.Success) {
+                    throw IpsClientException("Failed to read metadata of files: $paths")
+                }
+                val resultJson = client.download(resultLocation).throwIfNotOk()
+
+                val json = Json.decodeFromString<JsonElement>(String(resultJson.customData))
+                return json .jsonObject["paths"]?.jsonArray?.map {
+                    val obj = it.jsonObject
+                    val path = obj["path"]?.jsonPrimitive?.content ?: ""
+                    val metaStr = obj["metadata"]?.jsonPrimitive?.content ?: ""
+                    val metadata = Json.decodeFromString<Map<String, MetadataValue>>(metaStr)
+                    IcmFileMetadata(path, metadata)
+                } ?: emptyList()
+            } finally {
+                client.remove(pathsLocation).ifNotSuccess {
+                    logger.error("Failed to cleanup metadata paths.json memory: {}", it)
+                }
+                client.remove(resultLocation).ifNotSuccess {
+                    logger.error("Failed to cleanup readMetadata.wfd result memory: {}", it)
+                }
             }
         }
     }
@@ -510,25 +583,27 @@ class IpsService(private val config: IpsConfig) : Closeable, IcmClient {
     }
 
     override fun writeMetadata(metadata: List<IcmFileMetadata>) {
-        require(metadata.all { it.path.startsWith("icm://") }) { "Expected all paths to start with icm:// but got '$metadata'" }
-        val pathsLocation = "memory://${UUID.randomUUID()}"
-        val resultLocation = "memory://${UUID.randomUUID()}"
-        val writeMetadata = metadata.map { it.toWrite() }
-        val json = Json.encodeToString(writeMetadata)
-        try {
-            logger.debug(json)
-            client.upload(pathsLocation, json.toByteArray()).throwIfNotOk()
-            val result = runWfd("writeMetadata.wfd", listOf("-difJSONDataInput", pathsLocation, "-f", resultLocation))
-            if (result != OperationResult.Success) {
-                throw IpsClientException("Failed to write metadata of files: $metadata")
-            }
-            client.download(resultLocation).throwIfNotOk()
-        } finally {
-            client.remove(pathsLocation).ifNotSuccess {
-                logger.error("Failed to cleanup paths.json memory: {}", it)
-            }
-            client.remove(resultLocation).ifNotSuccess {
-                logger.error("Failed to cleanup deleteFiles.wfd result csv memory: {}", it)
+        pool.withClient { client ->
+            require(metadata.all { it.path.startsWith("icm://") }) { "Expected all paths to start with icm:// but got '$metadata'" }
+            val pathsLocation = "memory://${UUID.randomUUID()}"
+            val resultLocation = "memory://${UUID.randomUUID()}"
+            val writeMetadata = metadata.map { it.toWrite() }
+            val json = Json.encodeToString(writeMetadata)
+            try {
+                logger.debug(json)
+                client.upload(pathsLocation, json.toByteArray()).throwIfNotOk()
+                val result = runWfd("writeMetadata.wfd", listOf("-difJSONDataInput", pathsLocation, "-f", resultLocation))
+                if (result != OperationResult.Success) {
+                    throw IpsClientException("Failed to write metadata of files: $metadata")
+                }
+                client.download(resultLocation).throwIfNotOk()
+            } finally {
+                client.remove(pathsLocation).ifNotSuccess {
+                    logger.error("Failed to cleanup paths.json memory: {}", it)
+                }
+                client.remove(resultLocation).ifNotSuccess {
+                    logger.error("Failed to cleanup deleteFiles.wfd result csv memory: {}", it)
+                }
             }
         }
     }
@@ -0,0 +1,72 @@
+package com.quadient.migration.tools
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Runs at most one load per key at a time. Callers asking for a key that is already being loaded wait for the
+ * running load and share its result or exception. Results are not kept once the load finishes.
+ */
+class SingleFlight<K : Any, V> {
+    private val running = ConcurrentHashMap<K, CompletableFuture<V>>()
+
+    fun load(key: K, loader: (K) -> V): V {
+        val future = CompletableFuture<V>()
+        running.putIfAbsent(key, future)?.let { return it.await() }
+
+        try {
+            return loader(key).also { future.complete(it) }
+        } catch (e: Throwable) {
+            future.completeExceptionally(e)
+            throw e
+        } finally {
+            running.remove(key, future)
+        }
+    }
+}
+
+/**
+ * Values loaded on demand and kept for the lifetime of the cache. Concurrent callers asking for the same missing key
+ * trigger a single load and share its result. Failed loads are not kept, the next caller loads the value again.
+ */
+class LoadingCache<K : Any, V> {
+    private val values = ConcurrentHashMap<K, CompletableFuture<V>>()
+
+    fun getOrLoad(key: K, loader: (K) -> V): V {
+        values[key]?.let { return it.await() }
+
+        val future = CompletableFuture<V>()
+        values.putIfAbsent(key, future)?.let { return it.await() }
+
+        try {
+            return loader(key).also { future.complete(it) }
+        } catch (e: Throwable) {
+            values.remove(key, future)
+            future.completeExceptionally(e)
+            throw e
+        }
+    }
+
+    /**
+     * Successfully loaded values, loads still running are skipped.
+     */
+    fun loadedValues(): List<V> {
+        return values.values.filter { it.isDone && !it.isCompletedExceptionally }.map { it.join() }
+    }
+
+    /**
+     * Drops all values, callers already waiting for a running load still receive its result.
+     */
+    fun invalidateAll() {
+        values.clear()
+    }
+}
+
+private fun <V> CompletableFuture<V>.await(): V {
+    return try {
+        join()
+    } catch (e: CompletionException) {
+        throw e.cause ?: e
+    }
+}
@@ -44,6 +44,7 @@ annotation class Postgres {
         }
 
         override fun afterAll(p0: ExtensionContext) {
+            mig.close()
             postgres.stop()
         }
 
@@ -0,0 +1,50 @@
+package com.quadient.migration.api
+
+import com.quadient.migration.Postgres.Companion.POSTGRES_CONTAINER
+import com.quadient.migration.api.repository.ReferenceGraph
+import com.quadient.migration.tools.aMigConfig
+import com.quadient.migration.tools.aProjectConfig
+import com.quadient.migration.tools.aVariable
+import com.quadient.migration.tools.shouldBeEqualTo
+import org.junit.jupiter.api.Test
+import org.testcontainers.postgresql.PostgreSQLContainer
+import java.lang.ref.WeakReference
+
+class MigrationTest {
+
+    @Test
+    fun `closed migration releases its reference graph`() {
+        PostgreSQLContainer(POSTGRES_CONTAINER).use { postgres ->
+            postgres.start()
+
+            val config = aMigConfig(
+                dbConfig = DbConfig(
+                    host = postgres.host,
+                    port = postgres.firstMappedPort,
+                    dbName = postgres.databaseName,
+                    user = postgres.username,
+                    password = postgres.password,
+                )
+            )
+            val (migrationRef, graphRef) = closedMigration(config)
+
+            repeat(50) {
+                if (migrationRef.get() != null || graphRef.get() != null) {
+                    System.gc()
+                    Thread.sleep(20)
+                }
+            }
+
+            graphRef.get().shouldBeEqualTo(null)
+            migrationRef.get().shouldBeEqualTo(null)
+        }
+    }
+
+    private fun closedMigration(config: MigConfig): Pair<WeakReference<Migration>, WeakReference<ReferenceGraph>> {
+        val migration = Migration(config, aProjectConfig())
+        migration.variableRepository.upsert(aVariable("V_1"))
+        val graph = migration.variableRepository.referenceGraph
+        migration.close()
+        return WeakReference(migration) to WeakReference(graph)
+    }
+}
@@ -0,0 +1,129 @@
+package com.quadient.migration.api.repository
+
+import com.quadient.migration.api.dto.migrationmodel.DisplayRuleRef
+import com.quadient.migration.api.dto.migrationmodel.DocumentObjectRef
+import com.quadient.migration.api.dto.migrationmodel.VariableRef
+import com.quadient.migration.persistence.table.DocumentObjectTable
+import com.quadient.migration.tools.model.aBlock
+import com.quadient.migration.tools.shouldBeEqualTo
+import org.jetbrains.exposed.v1.jdbc.Database
+import org.jetbrains.exposed.v1.jdbc.transactions.TransactionManager
+import org.junit.jupiter.api.Test
+import java.lang.ref.WeakReference
+
+class ReferenceGraphTest {
+    private val graph = ReferenceGraph()
+
+    @Test
+    fun `resolves references of an object only once`() {
+        val block = aBlock("a", content = listOf(DocumentObjectRef("b"), VariableRef("v")))
+        var resolved = 0
+
+        repeat(2) { graph.referencesOf(DocumentObjectRef("a")) { resolved++; block } }
+
+        resolved.shouldBeEqualTo(1)
+        graph.referencesOf(DocumentObjectRef("a")) { error("not expected") }
+            .shouldBeEqualTo(setOf(DocumentObjectRef("b"), VariableRef("v")))
+    }
+
+    @Test
+    fun `missing object has no references`() {
+        graph.referencesOf(DocumentObjectRef("missing")) { null }.shouldBeEqualTo(null)
+    }
+
+    @Test
+    fun `types are loaded through the registered loader and follow updates`() {
+        graph.register(DocumentObjectTable) {
+            sequenceOf(
+                aBlock("a", content = listOf(VariableRef("v"))),
+                aBlock("b", content = listOf(DocumentObjectRef("c", DisplayRuleRef("rule")))),
+            )
+        }
+
+        graph.allReferences(listOf(DocumentObjectRef::class)).shouldBeEqualTo(
+            mapOf(
+                DocumentObjectRef("a") to setOf(VariableRef("v")),
+                DocumentObjectRef("b") to setOf(DocumentObjectRef("c", DisplayRuleRef("rule")), DisplayRuleRef("rule")),
+            )
+        )
+
+        graph.put(aBlock("a", content = listOf(DocumentObjectRef("c"))))
+        graph.remove(DocumentObjectTable, "b")
+
+        graph.allReferences(listOf(DocumentObjectRef::class))
+            .shouldBeEqualTo(mapOf(DocumentObjectRef("a") to setOf(DocumentObjectRef("c"))))
+        graph.referencesOf(DocumentObjectRef("b")) { error("not expected") }.shouldBeEqualTo(null)
+    }
+
+    @Test
+    fun `updates made while a type is loaded are kept`() {
+        graph.register(DocumentObjectTable) {
+            sequence {
+                // Writes of another thread committed while the loader reads its snapshot
+                graph.put(aBlock("a", content = listOf(DocumentObjectRef("c"))))
+                graph.remove(DocumentObjectTable, "b")
+
+                yield(aBlock("a", content = listOf(VariableRef("v"))))
+                yield(aBlock("b", content = listOf(VariableRef("v"))))
+                yield(aBlock("d", content = listOf(VariableRef("v"))))
+            }
+        }
+
+        graph.allReferences(listOf(DocumentObjectRef::class)).shouldBeEqualTo(
+            mapOf(
+                DocumentObjectRef("a") to setOf(DocumentObjectRef("c")),
+                DocumentObjectRef("d") to setOf(VariableRef("v")),
+            )
+        )
+    }
+
+    @Test
+    fun `cleared type is treated as empty`() {
+        graph.put(aBlock("a", content = listOf(VariableRef("v"))))
+
+        graph.clear(DocumentObjectTable)
+
+        graph.allReferences(listOf(DocumentObjectRef::class)).shouldBeEqualTo(emptyMap())
+        graph.referencesOf(DocumentObjectRef("a")) { error("not expected") }.shouldBeEqualTo(null)
+    }
+
+    @Test
+    fun `graph of a database is shared until it is released`() {
+        val database = Database.connect("jdbc:postgresql://localhost:1/unreachable", driver = "org.postgresql.Driver")
+        try {
+            val shared = ReferenceGraph.of("project", database)
+            ReferenceGraph.of("project", database).shouldBeEqualTo(shared)
+
+            ReferenceGraph.release(database)
+
+            (ReferenceGraph.of("project", database) === shared).shouldBeEqualTo(false)
+        } finally {
+            TransactionManager.closeAndUnregister(database)
+        }
+    }
+
+    @Test
+    fun `graph whose loaders capture its database is not kept alive by the registry`() {
+        val database = Database.connect("jdbc:postgresql://localhost:1/unreachable", driver = "org.postgresql.Driver")
+        TransactionManager.closeAndUnregister(database)
+        val graphRef = registerGraph(database)
+
+        repeat(50) {
+            if (graphRef.get() != null) {
+                System.gc()
+                Thread.sleep(20)
+            }
+        }
+
+        graphRef.get().shouldBeEqualTo(null)
+    }
+
+    private fun registerGraph(database: Database): WeakReference<ReferenceGraph> {
+        val graph = ReferenceGraph.of("project", database)
+        graph.register(DocumentObjectTable) {
+            check(database.url.isNotEmpty())
+            emptySequence()
+        }
+        return WeakReference(graph)
+    }
+}
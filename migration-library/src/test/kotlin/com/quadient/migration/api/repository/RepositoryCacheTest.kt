@@ -0,0 +1,105 @@
+package com.quadient.migration.api.repository
+
+import com.quadient.migration.api.CacheConfig
+import com.quadient.migration.api.CachePolicy
+import com.quadient.migration.api.dto.migrationmodel.DocumentObject
+import com.quadient.migration.api.dto.migrationmodel.StringValue
+import com.quadient.migration.tools.model.aBlock
+import com.quadient.migration.tools.shouldBeEqualTo
+import org.junit.jupiter.api.Test
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class RepositoryCacheTest {
+    private fun cache(config: CacheConfig) = RepositoryCache<DocumentObject>(config) { 1L + it.content.size }
+
+    @Test
+    fun `lru cache evicts least recently used objects`() {
+        val cache = cache(CacheConfig(policy = CachePolicy.Lru, maxEntries = 2))
+
+        cache.put(aBlock("a"))
+        cache.put(aBlock("b"))
+        cache.get("a")
+        cache.put(aBlock("c"))
+
+        cache.get("a")?.id.shouldBeEqualTo("a")
+        cache.get("b").shouldBeEqualTo(null)
+        cache.get("c")?.id.shouldBeEqualTo("c")
+        cache.stats().shouldBeEqualTo(CacheStats(hits = 3, misses = 1, evictions = 1, size = 2, weight = 2))
+    }
+
+    @Test
+    fun `size weighted cache is bounded by total weight`() {
+        val cache = cache(CacheConfig(policy = CachePolicy.SizeWeighted, maxWeight = 5))
+
+        cache.put(aBlock("a", content = listOf(StringValue("1"), StringValue("2"))))
+        cache.put(aBlock("b"))
+        cache.put(aBlock("c", content = listOf(StringValue("1"))))
+
+        cache.stats().shouldBeEqualTo(CacheStats(hits = 0, misses = 0, evictions = 1, size = 2, weight = 3))
+        cache.get("a").shouldBeEqualTo(null)
+    }
+
+    @Test
+    fun `all values are available until an object is evicted`() {
+        val cache = cache(CacheConfig(policy = CachePolicy.Lru, maxEntries = 3))
+
+        cache.putAll(listOf(aBlock("a"), aBlock("b")))
+        cache.values()?.map { it.id }.shouldBeEqualTo(listOf("a", "b"))
+
+        cache.put(aBlock("c"))
+        cache.put(aBlock("d"))
+        cache.values().shouldBeEqualTo(null)
+    }
+
+    @Test
+    fun `all values are not available after an object is removed`() {
+        val cache = cache(CacheConfig(policy = CachePolicy.Lru, maxEntries = 3))
+
+        cache.putAll(listOf(aBlock("a"), aBlock("b")))
+        cache.remove("a")
+
+        cache.values().shouldBeEqualTo(null)
+        cache.get("b")?.id.shouldBeEqualTo("b")
+    }
+
+    @Test
+    fun `lookups by predicate are counted`() {
+        val cache = cache(CacheConfig(policy = CachePolicy.Lru, maxEntries = 3))
+
+        cache.put(aBlock("a"))
+
+        cache.find { it.id == "a" }?.id.shouldBeEqualTo("a")
+        cache.find { it.id == "b" }.shouldBeEqualTo(null)
+        cache.stats().shouldBeEqualTo(CacheStats(hits = 1, misses = 1, evictions = 0, size = 1, weight = 1))
+    }
+
+    @Test
+    fun `disabled cache keeps nothing`() {
+        val cache = cache(CacheConfig(policy = CachePolicy.None))
+
+        cache.putAll(listOf(aBlock("a")))
+
+        cache.get("a").shouldBeEqualTo(null)
+        cache.values().shouldBeEqualTo(null)
+        cache.stats().shouldBeEqualTo(CacheStats(hits = 0, misses = 1, evictions = 0, size = 0, weight = 0))
+    }
+
+    @Test
+    fun `concurrent updates are not lost`() {
+        val cache = cache(CacheConfig(policy = CachePolicy.Lru, maxEntries = 10_000))
+        val executor = Executors.newFixedThreadPool(8)
+
+        (0 until 8).map { thread ->
+            executor.submit {
+                for (i in 0 until 500) {
+                    cache.put(aBlock("$thread-$i"))
+                    cache.get("$thread-${i / 2}")
+                }
+            }
+        }.forEach { it.get(10, TimeUnit.SECONDS) }
+        executor.shutdown()
+
+        cache.stats().shouldBeEqualTo(CacheStats(hits = 4000, misses = 0, evictions = 0, size = 4000, weight = 4000))
+    }
+}
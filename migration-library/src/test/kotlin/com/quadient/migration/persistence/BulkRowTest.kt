@@ -0,0 +1,26 @@
+package com.quadient.migration.persistence
+
+import com.quadient.migration.tools.shouldBeEqualTo
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import java.util.TimeZone
+import kotlin.time.Instant
+
+class BulkRowTest {
+    private val defaultZone = TimeZone.getDefault()
+
+    @AfterEach
+    fun restoreZone() {
+        TimeZone.setDefault(defaultZone)
+    }
+
+    @Test
+    fun `timestamp is written as local date time of the default time zone like Exposed binds it`() {
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"))
+        val csv = StringBuilder()
+
+        BulkRow(csv).timestamp(Instant.parse("2024-03-01T10:15:30.123456Z"))
+
+        csv.toString().shouldBeEqualTo("\"2024-03-01T05:15:30.123456\"")
+    }
+}
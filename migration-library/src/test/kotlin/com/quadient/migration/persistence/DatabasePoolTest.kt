@@ -0,0 +1,46 @@
+package com.quadient.migration.persistence
+
+import com.quadient.migration.Postgres.Companion.POSTGRES_CONTAINER
+import com.quadient.migration.api.DbConfig
+import com.quadient.migration.tools.shouldBeEqualTo
+import org.junit.jupiter.api.Test
+import org.testcontainers.postgresql.PostgreSQLContainer
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class DatabasePoolTest {
+
+    @Test
+    fun `connections are reused and metrics are reported`() {
+        PostgreSQLContainer(POSTGRES_CONTAINER).use { postgres ->
+            postgres.start()
+
+            val config = DbConfig(
+                host = postgres.host,
+                port = postgres.firstMappedPort,
+                dbName = postgres.databaseName,
+                user = postgres.username,
+                password = postgres.password,
+                poolSize = 2,
+                poolMinIdle = 0,
+            )
+            DatabasePool(config).use { pool ->
+                val executor = Executors.newFixedThreadPool(4)
+                (1..20).map {
+                    executor.submit {
+                        pool.dataSource.connection.use { conn ->
+                            conn.prepareStatement("SELECT pg_sleep(0.01)").use { it.execute() }
+                        }
+                    }
+                }.forEach { it.get(30, TimeUnit.SECONDS) }
+                executor.shutdown()
+
+                val metrics = pool.metrics()
+                metrics.acquired.shouldBeEqualTo(20L)
+                metrics.active.shouldBeEqualTo(0)
+                (metrics.total <= 2).shouldBeEqualTo(true)
+                metrics.timeouts.shouldBeEqualTo(0L)
+            }
+        }
+    }
+}
@@ -12,11 +12,13 @@ import com.quadient.migration.api.dto.migrationmodel.builder.ParagraphBuilder
 import com.quadient.migration.api.dto.migrationmodel.builder.SmsObjectBuilder
 import com.quadient.migration.api.dto.migrationmodel.builder.TableBuilder
 import com.quadient.migration.api.dto.migrationmodel.builder.documentcontent.GridLayoutBuilder
+import com.quadient.migration.api.repository.DocumentObjectRepository
 import com.quadient.migration.api.repository.StatusTrackingRepository
 import com.quadient.migration.data.Active
 import com.quadient.migration.service.deploy.utility.ResourceType
 import com.quadient.migration.shared.Color
 import com.quadient.migration.shared.DocumentObjectType
+import com.quadient.migration.shared.SkipOptions
 import com.quadient.migration.tools.aBlockDto
 import com.quadient.migration.tools.aCell
 import com.quadient.migration.tools.aDocumentObjectRepository
@@ -317,4 +319,80 @@ class DocumentObjectRepositoryTest {
         val updatedInput = input.copy(lastUpdated = result.first().lastUpdated, created = result.first().created)
         result.first().shouldBeEqualTo(updatedInput)
     }
+
+    @Test
+    fun `upsertBatch writes batches above the bind parameter limit`() {
+        val dtos = (1..5000).map { aBlockDto("bulk$it", name = "name \"$it\",\nwith, separators", originLocations = listOf("a\\b", "c\"d")) }
+
+        repo.upsertBatch(dtos)
+
+        repo.count().shouldBeEqualTo(5000L)
+        val result = repo.find("bulk4999")!!
+        result.name.shouldBeEqualTo("name \"4999\",\nwith, separators")
+        result.originLocations.shouldBeEqualTo(listOf("a\\b", "c\"d"))
+        val status = statusRepo.find("bulk4999", ResourceType.DocumentObject)!!.statusEvents.single() as Active
+        status.data.shouldBeEqualTo(mapOf("type" to "Block"))
+    }
+
+    @Test
+    fun `upsertBatch keeps created, merges origin locations and uses the last duplicate`() {
+        repo.upsert(aBlockDto("existing", originLocations = listOf("origin1")))
+        val created = repo.find("existing")!!.created
+
+        val freshRepo = aDocumentObjectRepository()
+        freshRepo.upsertBatch(
+            listOf(
+                aBlockDto("existing", targetFolder = "first", originLocations = listOf("origin2")),
+                aBlockDto("existing", targetFolder = "second", originLocations = listOf("origin1", "origin3")),
+            )
+        )
+
+        val result = aDocumentObjectRepository().find("existing")!!
+        result.created.shouldBeEqualTo(created)
+        result.targetFolder.shouldBeEqualTo("second")
+        result.originLocations.shouldBeEqualTo(listOf("origin1", "origin3"))
+        statusRepo.find("existing", ResourceType.DocumentObject)!!.statusEvents.shouldBeOfSize(1)
+    }
+
+    @Test
+    fun `listSummaries reads objects without content which is loaded on demand`() {
+        val block = aBlockDto("block1", content = listOf(Paragraph("content1")), name = "Block", targetFolder = "folder")
+        repo.upsert(block)
+        repo.upsert(aBlockDto("template1", type = DocumentObjectType.Template))
+        val stored = repo.find("block1")!!
+
+        val result = aDocumentObjectRepository().listSummaries()
+
+        result.shouldBeEqualTo(listOf(stored.toSummary(), repo.find("template1")!!.toSummary()))
+        aDocumentObjectRepository().findContent("block1").shouldBeEqualTo(stored.content)
+        aDocumentObjectRepository().findContent("missing").shouldBeEqualTo(null)
+    }
+
+    @Test
+    fun `countBySkipped counts objects by their skip flag`() {
+        aDocumentObjectRepository().countBySkipped().shouldBeEqualTo(mapOf(true to 0L, false to 0L))
+
+        repo.upsert(aBlockDto("block1"))
+        repo.upsert(aBlockDto("block2"))
+        repo.upsert(aBlockDto("block3").copy(skip = SkipOptions(true, null, "unsupported")))
+
+        aDocumentObjectRepository().countBySkipped().shouldBeEqualTo(mapOf(true to 1L, false to 2L))
+    }
+
+    @Test
+    fun `sequenceAll reads all objects of the project in id order across pages`() {
+        val ids = (1..7).map { "block$it" }
+        repo.upsertBatch(ids.reversed().map { aBlockDto(it) })
+        val otherStatusRepo = StatusTrackingRepository(ProjectName("other"))
+        val otherRepo = DocumentObjectRepository(ProjectName("other"), otherStatusRepo)
+        otherRepo.upsert(aBlockDto("block0"))
+
+        try {
+            repo.sequenceAll(batchSize = 3).map { it.id }.toList().shouldBeEqualTo(ids)
+            repo.streamAll(batchSize = 7).map { it.id }.toList().shouldBeEqualTo(ids)
+        } finally {
+            otherRepo.deleteAll()
+            otherStatusRepo.deleteAll()
+        }
+    }
 }
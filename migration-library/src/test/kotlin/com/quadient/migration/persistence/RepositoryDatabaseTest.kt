@@ -0,0 +1,34 @@
+package com.quadient.migration.persistence
+
+import com.quadient.migration.Postgres
+import com.quadient.migration.api.ProjectName
+import com.quadient.migration.api.repository.VariableRepository
+import com.quadient.migration.tools.aProjectConfig
+import com.quadient.migration.tools.aVariable
+import com.quadient.migration.tools.shouldBeEqualTo
+import org.jetbrains.exposed.v1.jdbc.Database
+import org.jetbrains.exposed.v1.jdbc.transactions.TransactionManager
+import org.junit.jupiter.api.Test
+
+@Postgres
+class RepositoryDatabaseTest {
+    private val database = checkNotNull(TransactionManager.primaryDatabase)
+    private val variableRepo = VariableRepository(ProjectName(aProjectConfig().name), database)
+
+    @Test
+    fun `repository keeps using its database when another one is connected`() {
+        // Becomes the primary database of Exposed, connecting to it would fail
+        val other = Database.connect("jdbc:postgresql://localhost:1/unreachable", driver = "org.postgresql.Driver")
+        try {
+            UnitOfWork.run(chunkSize = 10, database = database) {
+                variableRepo.upsert(aVariable("V_1"))
+            }
+
+            variableRepo.invalidateAll()
+            variableRepo.find("V_1")?.id.shouldBeEqualTo("V_1")
+            variableRepo.count().shouldBeEqualTo(1L)
+        } finally {
+            TransactionManager.closeAndUnregister(other)
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.quadient.migration.persistence
+
+import com.quadient.migration.Postgres
+import com.quadient.migration.api.InspireOutput
+import com.quadient.migration.api.ProjectName
+import com.quadient.migration.api.dto.migrationmodel.ResourceId
+import com.quadient.migration.api.repository.StatusTrackingRepository
+import com.quadient.migration.data.Active
+import com.quadient.migration.data.Deployed
+import com.quadient.migration.data.Error
+import com.quadient.migration.service.deploy.utility.ResourceType
+import com.quadient.migration.shared.toIcmPath
+import com.quadient.migration.tools.aProjectConfig
+import com.quadient.migration.tools.shouldBeEqualTo
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import kotlin.time.Clock
+import kotlin.uuid.Uuid
+
+@Postgres
+class StatusTrackingRepositoryTest {
+    private val repo = StatusTrackingRepository(ProjectName(aProjectConfig().name))
+    private val otherProjectRepo = StatusTrackingRepository(ProjectName("other"))
+
+    @AfterEach
+    fun cleanup() {
+        repo.deleteAll()
+        otherProjectRepo.deleteAll()
+    }
+
+    @Test
+    fun `bulk lookup returns last event relevant to output`() {
+        repo.active("D_1", ResourceType.DocumentObject)
+        repo.deployed("D_1", Uuid.random(), Clock.System.now(), ResourceType.DocumentObject, "icm://D_1".toIcmPath(), InspireOutput.Interactive)
+        repo.error("D_1", Uuid.random(), Clock.System.now(), ResourceType.DocumentObject, null, InspireOutput.Designer, "oops")
+        repo.active("D_2", ResourceType.DocumentObject)
+        repo.error("D_2", Uuid.random(), Clock.System.now(), ResourceType.DocumentObject, null, InspireOutput.Interactive, "oops")
+        repo.active("I_1", ResourceType.Image)
+        otherProjectRepo.active("D_3", ResourceType.DocumentObject)
+
+        val keys = listOf(
+            ResourceId("D_1", ResourceType.DocumentObject),
+            ResourceId("D_2", ResourceType.DocumentObject),
+            ResourceId("D_3", ResourceType.DocumentObject),
+            ResourceId("I_1", ResourceType.Image),
+            ResourceId("I_1", ResourceType.Attachment),
+        )
+        val result = repo.findLastEventsRelevantToOutput(keys, InspireOutput.Interactive)
+
+        result.mapValues { it.value::class }.shouldBeEqualTo(
+            mapOf(
+                ResourceId("D_1", ResourceType.DocumentObject) to Deployed::class,
+                ResourceId("D_2", ResourceType.DocumentObject) to Error::class,
+                ResourceId("I_1", ResourceType.Image) to Active::class,
+            )
+        )
+        for (key in keys) {
+            result[key]?.timestamp.shouldBeEqualTo(
+                repo.findLastEventRelevantToOutput(key.id, key.type, InspireOutput.Interactive)?.timestamp
+            )
+        }
+    }
+
+    @Test
+    fun `bulk lookup returns all events relevant to output in order`() {
+        repo.active("D_1", ResourceType.DocumentObject)
+        repo.deployed("D_1", Uuid.random(), Clock.System.now(), ResourceType.DocumentObject, null, InspireOutput.Designer)
+        repo.active("D_1", ResourceType.DocumentObject)
+        repo.deployed("D_1", Uuid.random(), Clock.System.now(), ResourceType.DocumentObject, null, InspireOutput.Interactive)
+
+        val key = ResourceId("D_1", ResourceType.DocumentObject)
+        val result = repo.findEventsRelevantToOutput(listOf(key), InspireOutput.Interactive)
+
+        result.getValue(key).map { it.timestamp }.shouldBeEqualTo(
+            repo.findEventsRelevantToOutput(key.id, key.type, InspireOutput.Interactive).map { it.timestamp }
+        )
+        result.getValue(key).map { it::class }.shouldBeEqualTo(listOf(Active::class, Active::class, Deployed::class))
+    }
+
+    @Test
+    fun `recording an event returns the whole history ending with that event`() {
+        repo.active("D_1", ResourceType.DocumentObject)
+        repo.deployed("D_1", Uuid.random(), Clock.System.now(), ResourceType.DocumentObject, null, InspireOutput.Designer)
+
+        val result = repo.error("D_1", Uuid.random(), Clock.System.now(), ResourceType.DocumentObject, null, InspireOutput.Designer, "oops")
+
+        result.statusEvents.map { it::class }.shouldBeEqualTo(listOf(Active::class, Deployed::class, Error::class))
+        (result.statusEvents.last() as Error).error.shouldBeEqualTo("oops")
+        result.statusEvents.map { it.timestamp }.shouldBeEqualTo(
+            repo.find("D_1", ResourceType.DocumentObject)!!.statusEvents.map { it.timestamp }
+        )
+    }
+}
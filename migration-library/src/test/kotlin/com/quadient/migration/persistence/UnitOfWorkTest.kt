@@ -0,0 +1,78 @@
+package com.quadient.migration.persistence
+
+import com.quadient.migration.Postgres
+import com.quadient.migration.api.ProjectName
+import com.quadient.migration.api.repository.StatusTrackingRepository
+import com.quadient.migration.service.deploy.utility.ResourceType
+import com.quadient.migration.tools.aProjectConfig
+import com.quadient.migration.tools.aVariable
+import com.quadient.migration.tools.aVariableRepository
+import com.quadient.migration.tools.shouldBeEqualTo
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+@Postgres
+class UnitOfWorkTest {
+    private val variableRepo = aVariableRepository()
+    private val statusRepo = StatusTrackingRepository(ProjectName(aProjectConfig().name))
+
+    @AfterEach
+    fun cleanup() {
+        statusRepo.deleteAll()
+    }
+
+    @Test
+    fun `writes are committed in chunks`() {
+        UnitOfWork.run(chunkSize = 3) {
+            for (i in 1..7) {
+                variableRepo.upsert(aVariable("V_$i"))
+            }
+            committedVariableCount().shouldBeEqualTo(6L)
+        }
+
+        committedVariableCount().shouldBeEqualTo(7L)
+    }
+
+    @Test
+    fun `failure rolls back writes since the last commit`() {
+        assertThrows<IllegalStateException> {
+            UnitOfWork.run(chunkSize = 3) {
+                for (i in 1..4) {
+                    variableRepo.upsert(aVariable("V_$i"))
+                }
+                statusRepo.active("D_1", ResourceType.DocumentObject)
+                error("import failed")
+            }
+        }
+
+        committedVariableCount().shouldBeEqualTo(3L)
+        variableRepo.find("V_4").shouldBeEqualTo(null)
+        statusRepo.find("D_1", ResourceType.DocumentObject).shouldBeEqualTo(null)
+    }
+
+    @Test
+    fun `nested unit of work joins the running one`() {
+        UnitOfWork.run(chunkSize = 10) { outer ->
+            UnitOfWork.run(chunkSize = 1) { inner ->
+                inner.shouldBeEqualTo(outer)
+                variableRepo.upsert(aVariable("V_1"))
+            }
+            committedVariableCount().shouldBeEqualTo(0L)
+        }
+
+        committedVariableCount().shouldBeEqualTo(1L)
+    }
+
+    private fun committedVariableCount(): Long {
+        // Runs on another thread, so it does not join the unit of work and sees committed rows only
+        val executor = Executors.newSingleThreadExecutor()
+        try {
+            return executor.submit<Long> { variableRepo.count() }.get(10, TimeUnit.SECONDS)
+        } finally {
+            executor.shutdown()
+        }
+    }
+}
@@ -7,6 +7,8 @@ import com.quadient.migration.api.dto.migrationmodel.builder.VariableBuilder
 import com.quadient.migration.shared.DataType
 import com.quadient.migration.tools.*
 import org.junit.jupiter.api.Test
+import java.util.TimeZone
+import kotlin.time.Duration.Companion.minutes
 
 @Postgres
 class VariableRepositoryTest {
@@ -32,14 +34,16 @@ class VariableRepositoryTest {
 
     @Test
     fun `reports usedBy correctly`() {
-        documentRepo.upsert(aBlockDto("parent1", listOf(DocumentObjectRef("subjectBlock"))))
-        documentRepo.upsert(aBlockDto("parent2", listOf(DocumentObjectRef("subjectBlock"))))
-        documentRepo.upsert(aBlockDto("parent3", listOf(DocumentObjectRef("subjectBlock"))))
-        documentRepo.upsert(aBlockDto("notParent1", listOf(DocumentObjectRef("nonSubjectBlock"))))
+        for (id in listOf("parent1", "parent2", "parent3")) {
+            documentRepo.upsert(
+                aBlockDto(id, listOf(aParagraph(content = listOf(aText(content = listOf(VariableRef("subjectVariable")))))))
+            )
+        }
+        documentRepo.upsert(aBlockDto("notParent1", listOf(DocumentObjectRef("subjectVariable"))))
         documentRepo.upsert(aBlockDto("notParent2", listOf(DocumentObjectRef("nonSubjectBlock"))))
         variableRepo.upsert(aVariable("subjectVariable"))
 
-        val result = variableRepo.findUsages("subjectBlock")
+        val result = variableRepo.findUsages("subjectVariable")
 
         result.shouldBeOfSize(3)
         result.map { it.id }.shouldBeEqualTo(listOf("parent1", "parent2", "parent3"))
@@ -124,4 +128,23 @@ class VariableRepositoryTest {
         updatedVar1.name.shouldBeEqualTo("Updated Variable 1")
         updatedVar2.name.shouldBeEqualTo("Updated Variable 2")
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `upsertBatch stores the same timestamps as upsert outside of UTC`() {
+        val defaultZone = TimeZone.getDefault()
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"))
+        try {
+            variableRepo.upsert(aVariable("single"))
+            variableRepo.upsertBatch(listOf(aVariable("batch")))
+            variableRepo.invalidateAll()
+
+            val single = variableRepo.findOrFail("single")
+            val batch = variableRepo.findOrFail("batch")
+
+            ((batch.created!! - single.created!!).absoluteValue < 1.minutes).shouldBeEqualTo(true)
+            ((batch.lastUpdated!! - single.lastUpdated!!).absoluteValue < 1.minutes).shouldBeEqualTo(true)
+        } finally {
+            TimeZone.setDefault(defaultZone)
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.quadient.migration.persistence.upgrade
+
+import com.quadient.migration.Postgres.Companion.POSTGRES_CONTAINER
+import com.quadient.migration.api.DbConfig
+import com.quadient.migration.api.Migration
+import com.quadient.migration.persistence.migrationmodel.DocumentContentEntity
+import com.quadient.migration.persistence.migrationmodel.DocumentObjectEntityRef
+import com.quadient.migration.tools.aMigConfig
+import com.quadient.migration.tools.aProjectConfig
+import com.quadient.migration.tools.shouldBeEqualTo
+import kotlinx.serialization.json.Json
+import org.flywaydb.core.Flyway
+import org.junit.jupiter.api.Test
+import org.testcontainers.postgresql.PostgreSQLContainer
+import java.sql.Connection
+import java.sql.DriverManager
+
+/**
+ * Integration test for V18 migration that introduces the reference table. Projects existing before the migration
+ * are marked for backfill and their references are rebuilt when the library starts.
+ */
+class V18MigrationTest {
+
+    @Test
+    fun `references of existing objects are backfilled`() {
+        PostgreSQLContainer(POSTGRES_CONTAINER).use { postgres ->
+            postgres.start()
+
+            Flyway.configure()
+                .dataSource(postgres.jdbcUrl, postgres.username, postgres.password)
+                .locations("classpath:com/quadient/migration/persistence/upgrade")
+                .target("17")
+                .load()
+                .migrate()
+
+            val projectName = aProjectConfig().name
+            connection(postgres).use { conn ->
+                insertDocumentObject(conn, projectName, "parent", listOf(DocumentObjectEntityRef("child")))
+                insertDocumentObject(conn, projectName, "child", emptyList())
+                insertDocumentObject(conn, "other", "otherParent", listOf(DocumentObjectEntityRef("child")))
+            }
+
+            val migration = Migration(
+                aMigConfig(
+                    dbConfig = DbConfig(
+                        host = postgres.host,
+                        port = postgres.firstMappedPort,
+                        dbName = postgres.databaseName,
+                        user = postgres.username,
+                        password = postgres.password,
+                    )
+                ),
+                aProjectConfig()
+            )
+
+            migration.documentObjectRepository.findUsages("child").map { it.id }.shouldBeEqualTo(listOf("parent"))
+            connection(postgres).use { conn ->
+                val rs = conn.prepareStatement("SELECT project_name FROM reference_backfill ORDER BY project_name")
+                    .executeQuery()
+                val pending = buildList { while (rs.next()) add(rs.getString("project_name")) }
+                pending.shouldBeEqualTo(listOf("other"))
+            }
+        }
+    }
+
+    private fun insertDocumentObject(
+        conn: Connection, projectName: String, id: String, content: List<DocumentContentEntity>
+    ) {
+        conn.prepareStatement(
+            """
+            INSERT INTO document_object (id, project_name, name, origin_locations, custom_fields, type, content, internal, metadata, skip, last_updated, created)
+            VALUES (?, ?, ?, '{}', '{}', 'Block', ?::jsonb, false, '[]', '{"skipped":false,"reason":null,"placeholder":null}'::jsonb, NOW(), NOW())
+            """.trimIndent()
+        ).apply {
+            setString(1, id)
+            setString(2, projectName)
+            setString(3, id)
+            setString(4, Json.encodeToString(content))
+        }.executeUpdate()
+    }
+
+    private fun connection(postgres: PostgreSQLContainer): Connection =
+        DriverManager.getConnection(postgres.jdbcUrl, postgres.username, postgres.password)
+}
@@ -0,0 +1,113 @@
+package com.quadient.migration.persistence.upgrade
+
+import com.quadient.migration.Postgres.Companion.POSTGRES_CONTAINER
+import com.quadient.migration.api.DbConfig
+import com.quadient.migration.api.InspireOutput
+import com.quadient.migration.api.Migration
+import com.quadient.migration.data.Active
+import com.quadient.migration.data.Deployed
+import com.quadient.migration.data.Error
+import com.quadient.migration.data.StatusEvent
+import com.quadient.migration.service.deploy.utility.ResourceType
+import com.quadient.migration.shared.toIcmPath
+import com.quadient.migration.tools.aMigConfig
+import com.quadient.migration.tools.aProjectConfig
+import com.quadient.migration.tools.shouldBeEqualTo
+import kotlinx.serialization.json.Json
+import org.flywaydb.core.Flyway
+import org.junit.jupiter.api.Test
+import org.testcontainers.postgresql.PostgreSQLContainer
+import java.sql.Connection
+import java.sql.DriverManager
+import kotlin.time.Instant
+import kotlin.uuid.Uuid
+
+/**
+ * Integration test for V19 migration that splits the status_events arrays of status_tracking into
+ * the append only status_event table and fills status_event_latest.
+ */
+class V19MigrationTest {
+
+    @Test
+    fun `status events are moved to the event table in their original order`() {
+        PostgreSQLContainer(POSTGRES_CONTAINER).use { postgres ->
+            postgres.start()
+
+            Flyway.configure()
+                .dataSource(postgres.jdbcUrl, postgres.username, postgres.password)
+                .locations("classpath:com/quadient/migration/persistence/upgrade")
+                .target("18")
+                .load()
+                .migrate()
+
+            val projectName = aProjectConfig().name
+            val timestamp = Instant.fromEpochMilliseconds(1_700_000_000_000)
+            val events = listOf(
+                Active(timestamp),
+                Deployed(Uuid.random(), timestamp, InspireOutput.Interactive, "icm://D_1".toIcmPath()),
+                Active(timestamp),
+                Error(Uuid.random(), timestamp, InspireOutput.Designer, null, "oops"),
+                Deployed(Uuid.random(), timestamp, InspireOutput.Interactive, "icm://D_1_v2".toIcmPath()),
+            )
+            connection(postgres).use { conn ->
+                insertStatusTracking(conn, projectName, "D_1", ResourceType.DocumentObject, events)
+                insertStatusTracking(conn, projectName, "I_1", ResourceType.Image, listOf(Active(timestamp)))
+            }
+
+            val migration = Migration(
+                aMigConfig(
+                    dbConfig = DbConfig(
+                        host = postgres.host,
+                        port = postgres.firstMappedPort,
+                        dbName = postgres.databaseName,
+                        user = postgres.username,
+                        password = postgres.password,
+                    )
+                ),
+                aProjectConfig()
+            )
+            val repo = migration.statusTrackingRepository
+
+            repo.find("D_1", ResourceType.DocumentObject)?.statusEvents.json().shouldBeEqualTo(events.json())
+            repo.find("I_1", ResourceType.Image)?.statusEvents.json().shouldBeEqualTo(listOf(Active(timestamp)).json())
+            repo.findLastEvent("D_1", ResourceType.DocumentObject)?.let { listOf(it) }.json()
+                .shouldBeEqualTo(listOf(events[4]).json())
+            repo.findLastEventRelevantToOutput("D_1", ResourceType.DocumentObject, InspireOutput.Designer)
+                ?.let { listOf(it) }.json().shouldBeEqualTo(listOf(events[3]).json())
+
+            repo.active("D_1", ResourceType.DocumentObject)
+            repo.find("D_1", ResourceType.DocumentObject)?.statusEvents?.size.shouldBeEqualTo(6)
+            repo.findLastEvent("D_1", ResourceType.DocumentObject)?.let { it is Active }.shouldBeEqualTo(true)
+
+            connection(postgres).use { conn ->
+                val rs = conn.prepareStatement(
+                    "SELECT resource_type, id, output FROM status_event_latest ORDER BY resource_type, id, output"
+                ).executeQuery()
+                val latest = buildList {
+                    while (rs.next()) add("${rs.getString("resource_type")}:${rs.getString("id")}:${rs.getString("output")}")
+                }
+                latest.shouldBeEqualTo(
+                    listOf("DocumentObject:D_1:", "DocumentObject:D_1:Designer", "DocumentObject:D_1:Interactive", "Image:I_1:")
+                )
+            }
+        }
+    }
+
+    private fun insertStatusTracking(
+        conn: Connection, projectName: String, id: String, resourceType: ResourceType, events: List<StatusEvent>
+    ) {
+        conn.prepareStatement(
+            "INSERT INTO status_tracking (id, resource_type, project_name, status_events) VALUES (?, ?, ?, ?::jsonb)"
+        ).apply {
+            setString(1, id)
+            setString(2, resourceType.name)
+            setString(3, projectName)
+            setString(4, Json.encodeToString(events))
+        }.executeUpdate()
+    }
+
+    private fun List<StatusEvent>?.json(): String = Json.encodeToString(this)
+
+    private fun connection(postgres: PostgreSQLContainer): Connection =
+        DriverManager.getConnection(postgres.jdbcUrl, postgres.username, postgres.password)
+}
@@ -6,7 +6,10 @@ import com.quadient.migration.shared.toIcmPath
 import com.quadient.migration.tools.shouldBeEqualTo
 import io.mockk.every
 import io.mockk.mockk
+import io.mockk.verify
 import org.junit.jupiter.api.Test
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 class IcmDataCacheTest {
     val inputBaseTemplate = """<?xml version="1.0" encoding="UTF-8"?>
@@ -2884,4 +2887,26 @@ class IcmDataCacheTest {
         result.paragraphStyleDisplayNamesToNames["spaceParagraphStyle"].shouldBeEqualTo("iiispaceParagraphStyle")
         result.paragraphStyleDisplayNamesToNames["alignRightParagraphStyle"].shouldBeEqualTo("iiialignRightParagraphStyle")
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `concurrent requests for the same base template load it once`() {
+        // given
+        val path = "icm://bt.wfd".toIcmPath()
+        every { ipsService.fileExists(any<IcmPath>()) } returns true
+        every { ipsService.wfd2xml(any<IcmPath>()) } answers {
+            Thread.sleep(50)
+            inputBaseTemplate
+        }
+        val executor = Executors.newFixedThreadPool(8)
+
+        // when
+        val results = (1..16).map { executor.submit<IcmDataCache.BaseTemplateData?> { subject.getOrLoadBaseTemplateData(path) } }
+            .map { it.get(10, TimeUnit.SECONDS) }
+        executor.shutdown()
+
+        // then
+        results.distinct().size.shouldBeEqualTo(1)
+        verify(exactly = 1) { ipsService.wfd2xml(path) }
+        verify(exactly = 1) { ipsService.fileExists(path) }
+    }
+}
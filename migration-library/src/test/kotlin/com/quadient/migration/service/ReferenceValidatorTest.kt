@@ -4,6 +4,7 @@ import com.quadient.migration.Postgres
 import com.quadient.migration.api.dto.migrationmodel.DocumentObjectRef
 import com.quadient.migration.api.dto.migrationmodel.ParagraphStyleRef
 import com.quadient.migration.api.dto.migrationmodel.TextStyleRef
+import com.quadient.migration.api.repository.ReferenceGraph
 import com.quadient.migration.shared.DocumentObjectType
 import com.quadient.migration.tools.aBlockDto
 import com.quadient.migration.tools.aBaseTemplateRepository
@@ -13,6 +14,7 @@ import com.quadient.migration.tools.aAttachmentRepository
 import com.quadient.migration.tools.aImageRepository
 import com.quadient.migration.tools.aParaStyleRepository
 import com.quadient.migration.tools.aParagraphStyle
+import com.quadient.migration.tools.aProjectConfig
 import com.quadient.migration.tools.aTextStyle
 import com.quadient.migration.tools.aTextStyleRepository
 import com.quadient.migration.tools.aVariableRepository
@@ -49,6 +51,7 @@ class ReferenceValidatorTest {
         imageRepository,
         attachmentRepository,
         baseTemplateRepository,
+        ReferenceGraph.of(aProjectConfig().name),
     )
 
     @Test
@@ -22,6 +22,7 @@ import com.quadient.migration.api.repository.ParagraphStyleRepository
 import com.quadient.migration.api.repository.TextStyleRepository
 import com.quadient.migration.api.repository.VariableRepository
 import com.quadient.migration.api.repository.VariableStructureRepository
+import com.quadient.migration.api.repository.ReferenceGraph
 import com.quadient.migration.service.Storage
 import com.quadient.migration.service.deploy.utility.DeployKind
 import com.quadient.migration.service.deploy.utility.DeploymentInfo
@@ -47,6 +48,7 @@ import com.quadient.migration.tools.aDeployedStatus
 import com.quadient.migration.tools.aDeployedStatusEvent
 import com.quadient.migration.tools.aErrorStatusEvent
 import com.quadient.migration.tools.aProjectConfig
+import com.quadient.migration.tools.answerBulkLookupsFromSingleLookups
 import com.quadient.migration.tools.model.aBlock
 import com.quadient.migration.tools.model.aAttachment
 import com.quadient.migration.tools.model.aImage
@@ -86,8 +88,9 @@ class DeployClientTest {
     val postProcess = PostProcessImpl(ipsService, documentObjectRepository, imageRepository, attachmentRepository, displayRuleRepository, textStyleRepository, paragraphStyleRepository)
     val resourcePathProvider = DesignerResourcePathProvider(projectConfig)
     val conflictDetector = ConflictDetectorImpl(documentObjectRepository, imageRepository, attachmentRepository, displayRuleRepository, statusTrackingRepository, resourcePathProvider, InspireOutput.Designer)
-    val progressReporter = ProgressReporterImpl(documentObjectRepository, imageRepository, attachmentRepository, displayRuleRepository, documentObjectBuilder, statusTrackingRepository, resourcePathProvider, InspireOutput.Designer)
-    val deployOrder = DeployOrderImpl(documentObjectRepository)
+    val referenceGraph = ReferenceGraph()
+    val progressReporter = ProgressReporterImpl(documentObjectRepository, imageRepository, attachmentRepository, displayRuleRepository, documentObjectBuilder, statusTrackingRepository, resourcePathProvider, InspireOutput.Designer, referenceGraph)
+    val deployOrder = DeployOrderImpl(documentObjectRepository, referenceGraph)
 
     private val subject = DesignerDeployClient(
         projectConfig,
@@ -114,6 +117,7 @@ class DeployClientTest {
 
     @BeforeEach
     fun setup() {
+        statusTrackingRepository.answerBulkLookupsFromSingleLookups()
         every { documentObjectBuilder.getProperty("projectConfig") } returns aProjectConfig()
         every { documentObjectBuilder.shouldIncludeInternalDependency(any()) } answers { callOriginal() }
     }
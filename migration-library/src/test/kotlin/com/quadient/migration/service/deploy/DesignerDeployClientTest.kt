@@ -1,5 +1,6 @@
 package com.quadient.migration.service.deploy
 
+import com.quadient.migration.api.DeployPipelineConfig
 import com.quadient.migration.api.InspireOutput
 import com.quadient.migration.api.dto.migrationmodel.Attachment
 import com.quadient.migration.api.dto.migrationmodel.AttachmentRef
@@ -25,6 +26,7 @@ import com.quadient.migration.api.repository.ParagraphStyleRepository
 import com.quadient.migration.api.repository.TextStyleRepository
 import com.quadient.migration.api.repository.VariableRepository
 import com.quadient.migration.api.repository.VariableStructureRepository
+import com.quadient.migration.api.repository.ReferenceGraph
 import com.quadient.migration.data.StatusEvent
 import com.quadient.migration.service.Storage
 import com.quadient.migration.service.deploy.utility.DeploymentError
@@ -54,8 +56,10 @@ import com.quadient.migration.shared.SkipOptions
 import com.quadient.migration.shared.toIcmPath
 import com.quadient.migration.tools.aActiveStatus
 import com.quadient.migration.tools.aDeployedStatus
+import com.quadient.migration.tools.aDeployedStatusEvent
 import com.quadient.migration.tools.aErrorStatus
 import com.quadient.migration.tools.aProjectConfig
+import com.quadient.migration.tools.answerBulkLookupsFromSingleLookups
 import com.quadient.migration.tools.computeIfPresentOrPut
 import com.quadient.migration.tools.model.aBlock
 import com.quadient.migration.tools.model.aDocObj
@@ -82,6 +86,15 @@ import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Nested
 import org.junit.jupiter.api.assertThrows
 import org.junit.jupiter.api.Test
+import org.slf4j.MDC
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicReference
 import kotlin.ByteArray
 import kotlin.uuid.Uuid
 
@@ -103,11 +116,16 @@ class DesignerDeployClientTest {
     val storage = mockk<Storage>()
     val resourcePathProvider = mockk<DesignerResourcePathProvider>()
     val conflictDetector = ConflictDetectorImpl(documentObjectRepository, imageRepository, attachmentRepository, displayRuleRepository, statusTrackingRepository, resourcePathProvider, InspireOutput.Designer)
-    val progressReporter = ProgressReporterImpl(documentObjectRepository, imageRepository, attachmentRepository, displayRuleRepository, documentObjectBuilder, statusTrackingRepository, resourcePathProvider, InspireOutput.Designer)
-    val deployOrder = DeployOrderImpl(documentObjectRepository)
-
-    private fun subject(selectedDocumentObjects: List<String> = emptyList()) = DesignerDeployClient(
-        aProjectConfig(output = InspireOutput.Designer, selectedDocumentObjects = selectedDocumentObjects),
+    val referenceGraph = ReferenceGraph()
+    val progressReporter = ProgressReporterImpl(documentObjectRepository, imageRepository, attachmentRepository, displayRuleRepository, documentObjectBuilder, statusTrackingRepository, resourcePathProvider, InspireOutput.Designer, referenceGraph)
+    val deployOrder = DeployOrderImpl(documentObjectRepository, referenceGraph)
+
+    private fun subject(
+        selectedDocumentObjects: List<String> = emptyList(),
+        deployPipeline: DeployPipelineConfig = DeployPipelineConfig(),
+    ) = DesignerDeployClient(
+        aProjectConfig(output = InspireOutput.Designer, selectedDocumentObjects = selectedDocumentObjects)
+            .copy(deployPipeline = deployPipeline),
         resourcePathProvider,
         metadataValidator,
         postProcess,
@@ -131,6 +149,7 @@ class DesignerDeployClientTest {
 
     @BeforeEach
     fun setupAll() {
+        statusTrackingRepository.answerBulkLookupsFromSingleLookups()
         every { documentObjectBuilder.shouldIncludeInternalDependency(any()) } answers {
             val documentObject = firstArg<DocumentObject>()
             (documentObject.internal ?: false) || documentObject.type == DocumentObjectType.Page
@@ -176,8 +195,8 @@ class DesignerDeployClientTest {
         deploymentResult.deployed.size.shouldBeEqualTo(5)
         deploymentResult.errors.shouldBeEqualTo(emptyList())
 
-        verify { ipsService.xml2wfd(any(), "icm://${template.nameOrId()}".toIcmPath()) }
-        verify { ipsService.xml2wfd(any(), "icm://${externalBlock.nameOrId()}".toIcmPath()) }
+        verify { ipsService.xml2wfd("icm://${template.nameOrId()}".toIcmPath(), any<(OutputStream) -> Unit>()) }
+        verify { ipsService.xml2wfd("icm://${externalBlock.nameOrId()}".toIcmPath(), any<(OutputStream) -> Unit>()) }
         verify { ipsService.tryUpload("icm://${image1.nameOrId()}".toIcmPath(), any()) }
         verify { ipsService.tryUpload("icm://${image2.nameOrId()}".toIcmPath(), any()) }
         verify { ipsService.tryUpload("icm://${attachment1.nameOrId()}".toIcmPath(), any()) }
@@ -422,9 +441,9 @@ class DesignerDeployClientTest {
         val template = aDocObj("T_1", Template, listOf(aDocumentObjectRef(block.id))).mock()
 
         every { documentObjectRepository.find(innerBlock.id) } returns innerBlock
-        every { documentObjectBuilder.buildDocumentObject(innerBlock) } throws IllegalStateException("Not found")
+        every { documentObjectBuilder.buildDocumentObject(innerBlock, any()) } throws IllegalStateException("Not found")
         every { documentObjectRepository.list(any<Op<Boolean>>()) } returns listOf(template, block, innerBlock)
-        every { documentObjectBuilder.buildDocumentObject(block) } throws IllegalStateException("Inner block not found")
+        every { documentObjectBuilder.buildDocumentObject(block, any()) } throws IllegalStateException("Inner block not found")
         every { statusTrackingRepository.findLastEventRelevantToOutput(any(), any(), any()) } returns Active()
         every { statusTrackingRepository.deployed(any(), any<Uuid>(), any(), any(), any(), any(), any()) } returns aDeployedStatus("id")
         every { resourcePathProvider.getStyleDefinitionPath() } returns "icm://some/path/style.wfd".toIcmPath()
@@ -449,7 +468,7 @@ class DesignerDeployClientTest {
             )
         )
 
-        verify(exactly = 1) { ipsService.xml2wfd(any(), "icm://${template.nameOrId()}".toIcmPath()) }
+        verify(exactly = 1) { ipsService.xml2wfd("icm://${template.nameOrId()}".toIcmPath(), any<(OutputStream) -> Unit>()) }
     }
 
     private fun Image.mock(success: Boolean = true): Image {
@@ -506,8 +525,11 @@ class DesignerDeployClientTest {
             val outputPath = "icm://${documentObject.nameOrId()}".toIcmPath()
 
             every { documentObjectBuilder.buildDocumentObject(documentObject) } returns xml
+            every { documentObjectBuilder.buildDocumentObject(documentObject, any()) } answers {
+                secondArg<OutputStream>().write(xml.toByteArray())
+            }
             every { resourcePathProvider.getDocumentObjectPath(documentObject) } returns outputPath
-            every { ipsService.xml2wfd(xml, outputPath) } returns OperationResult.Success
+            givenXml2wfdReturns(OperationResult.Success, outputPath)
         }
         return documentObject
     }
@@ -685,6 +707,23 @@ class DesignerDeployClientTest {
             )
         }
 
+        @Test
+        fun `validateConflicts resolves paths without building or reading resources`() {
+            val i1 = ImageBuilder("I_1").sourcePath("test").build().mock().active()
+            val b1 = DocumentObjectBuilder("B_1", Block).imageRef(i1).build().mock().active()
+            every { documentObjectRepository.list(any<Op<Boolean>>()) } returns listOf(b1)
+
+            val result = subject().validateConflicts()
+
+            assertTrue(result.hasNoConflicts())
+            verify(exactly = 0) { documentObjectBuilder.buildDocumentObject(any()) }
+            verify(exactly = 0) { documentObjectBuilder.buildDocumentObject(any(), any()) }
+            verify(exactly = 0) { storage.read(any()) }
+            verify(exactly = 0) { ipsService.xml2wfd(any(), any<IcmPath>()) }
+            verify(exactly = 0) { ipsService.xml2wfd(any<IcmPath>(), any<(OutputStream) -> Unit>()) }
+            verify(exactly = 0) { ipsService.tryUpload(any<IcmPath>(), any()) }
+        }
+
         @Test
         fun `validateConflicts detects cross resource with previously deployed`() {
             ImageBuilder("I_1").sourcePath("test").build().mock().deployed("icm://image")
@@ -787,7 +826,7 @@ class DesignerDeployClientTest {
     inner class StatusTrackingTests {
         @BeforeEach
         fun setup() {
-            every { documentObjectBuilder.buildDocumentObject(any()) } returns ""
+            every { documentObjectBuilder.buildDocumentObject(any(), any()) } just runs
             every { statusTrackingRepository.deployed(any(), any<Uuid>(), any(), any(), any(), any(), any()) } returns  aDeployedStatus("id")
             every { statusTrackingRepository.error(any(), any(), any(), any(), any(), any(), any(), any()) } returns aErrorStatus("id")
             every { statusTrackingRepository.active(any(), any()) } returns aActiveStatus("id")
@@ -814,7 +853,7 @@ class DesignerDeployClientTest {
             subject().runDeploy(docObjects)
 
             // then
-            verify(exactly = 0) { documentObjectBuilder.buildDocumentObject(any()) }
+            verify(exactly = 0) { documentObjectBuilder.buildDocumentObject(any(), any()) }
             verify(exactly = 3) { imageRepository.find(any()) }
         }
 
@@ -834,7 +873,7 @@ class DesignerDeployClientTest {
             givenObjectIsActive("I_2")
             givenObjectIsActive("D_3")
             givenObjectIsDeployed("I_3")
-            every { ipsService.xml2wfd(any(), any<IcmPath>()) } returns OperationResult.Success
+            givenXml2wfdReturns(OperationResult.Success)
             every { resourcePathProvider.getStyleDefinitionPath() } returns "icm://some/path/style.wfd".toIcmPath()
             every { ipsService.fileExists(any<IcmPath>()) } returns false
 
@@ -843,7 +882,7 @@ class DesignerDeployClientTest {
             subject().runDeploy(docObjects)
 
             // then
-            verify(exactly = 2) { documentObjectBuilder.buildDocumentObject(any()) }
+            verify(exactly = 2) { documentObjectBuilder.buildDocumentObject(any(), any()) }
             verify(exactly = 1) { statusTrackingRepository.deployed("D_2", any<Uuid>(), any(), any(), any(), any(), any()) }
             verify(exactly = 1) { statusTrackingRepository.deployed("D_3", any<Uuid>(), any(), any(), any(), any(), any()) }
             verify(exactly = 1) { statusTrackingRepository.deployed("I_1", any<Uuid>(), any(), any(), any(), any(), any()) }
@@ -857,7 +896,7 @@ class DesignerDeployClientTest {
             givenObjectIsActive("D_1")
             givenObjectIsActive("I_1")
             aImage("I_1").mock(success = false)
-            every { ipsService.xml2wfd(any(), any<IcmPath>()) } returns OperationResult.Failure("oops")
+            givenXml2wfdReturns(OperationResult.Failure("oops"))
             every { resourcePathProvider.getStyleDefinitionPath() } returns "icm://some/path/style.wfd".toIcmPath()
             every { ipsService.fileExists(any<IcmPath>()) } returns false
 
@@ -865,7 +904,7 @@ class DesignerDeployClientTest {
             subject().runDeploy(docObjects)
 
             // then
-            verify(exactly = 1) { documentObjectBuilder.buildDocumentObject(any()) }
+            verify(exactly = 1) { documentObjectBuilder.buildDocumentObject(any(), any()) }
             verify(exactly = 1) { statusTrackingRepository.error("D_1", any(), any(), any(), any(), any(), "oops", any()) }
             verify(exactly = 1) { statusTrackingRepository.error("I_1", any(), any(), any(), any(), any(), any(), any()) }
         }
@@ -900,7 +939,7 @@ class DesignerDeployClientTest {
             givenObjectIsActive("D_1")
             every { resourcePathProvider.getStyleDefinitionPath() } returns "icm://some/path/style.wfd".toIcmPath()
             every { ipsService.fileExists(any<IcmPath>()) } returns false
-            every { ipsService.xml2wfd(any(), any<IcmPath>()) } returns OperationResult.Success
+            every { ipsService.xml2wfd(any<IcmPath>(), any<(OutputStream) -> Unit>()) } returns OperationResult.Success
 
             // when
             val result = subject().runDeploy(docObjects)
@@ -985,11 +1024,250 @@ class DesignerDeployClientTest {
         }
     }
 
-    private fun DesignerDeployClient.runDeploy(documentObjects: List<DocumentObject>): DeploymentResult {
+    @Nested
+    inner class DeployPipelineTests {
+        private val pipeline = DeployPipelineConfig(enabled = true, buildThreads = 4, uploadThreads = 4, maxPendingUploads = 2)
+
+        @BeforeEach
+        fun setup() {
+            every { statusTrackingRepository.findLastEventRelevantToOutput(any(), any(), any()) } returns Active()
+            every { statusTrackingRepository.deployed(any(), any<Uuid>(), any(), any(), any(), any(), any()) } returns aDeployedStatus("id")
+            every { statusTrackingRepository.error(any(), any(), any(), any(), any(), any(), any(), any()) } returns aErrorStatus("id")
+        }
+
+        @Test
+        fun `objects are uploaded only after the previous dependency level is finished`() {
+            // given
+            val innerBlock = aDocObj("B_2").mock()
+            val block = aDocObj("B_1", Block, listOf(aDocumentObjectRef(innerBlock.id))).mock()
+            val otherBlock = aDocObj("B_3").mock()
+            val template = aDocObj("T_1", Template, listOf(aDocumentObjectRef(block.id))).mock()
+            val events = Collections.synchronizedList(mutableListOf<String>())
+
+            // when
+            val result = subject(deployPipeline = pipeline).runDeploy(listOf(innerBlock, block, otherBlock, template)) { obj, _, _ ->
+                events.add("start ${obj.id}")
+                Thread.sleep(20)
+                events.add("end ${obj.id}")
+                OperationResult.Success
+            }
+
+            // then
+            result.errors.shouldBeEqualTo(emptyList())
+            result.deployed.map { it.id }.toSet().shouldBeEqualTo(setOf("B_1", "B_2", "B_3", "T_1"))
+            assertTrue(events.indexOf("end B_2") < events.indexOf("start B_1"))
+            assertTrue(events.indexOf("end B_3") < events.indexOf("start B_1"))
+            assertTrue(events.indexOf("end B_1") < events.indexOf("start T_1"))
+        }
+
+        @Test
+        fun `at most maxPendingUploads objects are in flight`() {
+            // given
+            val blocks = (1..8).map { aDocObj("B_$it").mock() }
+            val inFlight = AtomicInteger()
+            val maxInFlight = AtomicInteger()
+            for (block in blocks) {
+                every { documentObjectBuilder.buildDocumentObject(block, any()) } answers {
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet()) { a, b -> maxOf(a, b) }
+                    secondArg<OutputStream>().write("<xml />".toByteArray())
+                }
+            }
+
+            // when
+            val result = subject(deployPipeline = pipeline).runDeploy(blocks) { _, _, _ ->
+                Thread.sleep(20)
+                inFlight.decrementAndGet()
+                OperationResult.Success
+            }
+
+            // then
+            result.deployed.size.shouldBeEqualTo(8)
+            assertTrue(maxInFlight.get() <= pipeline.maxPendingUploads, "${maxInFlight.get()} objects were in flight")
+        }
+
+        @Test
+        fun `built xml over maxPendingUploadBytes is uploaded from temporary files`() {
+            // given
+            val blocks = (1..4).map { aDocObj("B_$it").mock() }
+            for (block in blocks) {
+                every { documentObjectBuilder.buildDocumentObject(block, any()) } answers {
+                    secondArg<OutputStream>().write("<block id=\"${block.id}\" />".toByteArray())
+                }
+            }
+            val uploaded = ConcurrentHashMap<String, String>()
+
+            // when
+            val result = subject(deployPipeline = pipeline.copy(maxPendingUploadBytes = 0)).runDeploy(blocks) { obj, _, write ->
+                val output = ByteArrayOutputStream()
+                write(output)
+                uploaded[obj.id] = output.toString(Charsets.UTF_8)
+                OperationResult.Success
+            }
+
+            // then
+            result.deployed.size.shouldBeEqualTo(4)
+            uploaded.shouldBeEqualTo(blocks.associate { it.id to "<block id=\"${it.id}\" />" })
+        }
+
+        @Test
+        fun `workers run on named threads with the MDC of the caller`() {
+            // given
+            val blocks = (1..4).map { aDocObj("B_$it").mock() }
+            val seen = Collections.synchronizedList(mutableListOf<Pair<String, String?>>())
+            for (block in blocks) {
+                every { documentObjectBuilder.buildDocumentObject(block, any()) } answers {
+                    seen.add(Thread.currentThread().name to MDC.get("runId"))
+                    secondArg<OutputStream>().write("<xml />".toByteArray())
+                }
+            }
+
+            // when
+            MDC.put("runId", "run-1")
+            try {
+                subject(deployPipeline = pipeline).runDeploy(blocks) { _, _, _ ->
+                    seen.add(Thread.currentThread().name to MDC.get("runId"))
+                    OperationResult.Success
+                }
+            } finally {
+                MDC.remove("runId")
+            }
+
+            // then
+            seen.size.shouldBeEqualTo(8)
+            seen.map { it.second }.toSet().shouldBeEqualTo(setOf("run-1"))
+            assertTrue(seen.all { it.first.startsWith("deploy-build-") || it.first.startsWith("deploy-upload-") }, "$seen")
+        }
+
+        @Test
+        fun `non recoverable error stops the deployment before later levels`() {
+            // given
+            val innerBlock = aDocObj("B_1").mock()
+            val blocks = (2..6).map { aDocObj("B_$it", Block, listOf(aDocumentObjectRef(innerBlock.id))).mock() }
+            val uploaded = Collections.synchronizedList(mutableListOf<String>())
+
+            // when
+            val error = assertThrows<OutOfMemoryError> {
+                subject(deployPipeline = pipeline).runDeploy(listOf(innerBlock) + blocks) { obj, _, _ ->
+                    uploaded.add(obj.id)
+                    throw OutOfMemoryError("IPS is gone")
+                }
+            }
+
+            // then
+            error.message.shouldBeEqualTo("IPS is gone")
+            uploaded.shouldBeEqualTo(listOf(innerBlock.id))
+            verify(exactly = 0) { documentObjectBuilder.buildDocumentObject(blocks.last(), any()) }
+        }
+
+        @Test
+        fun `interrupting the caller cancels the remaining uploads`() {
+            // given
+            val blocks = (1..8).map { aDocObj("B_$it").mock() }
+            val uploadStarted = CountDownLatch(1)
+            val uploaded = AtomicInteger()
+            val failure = AtomicReference<Throwable?>()
+            val caller = Thread {
+                try {
+                    subject(deployPipeline = pipeline.copy(uploadThreads = 1)).runDeploy(blocks) { _, _, _ ->
+                        uploaded.incrementAndGet()
+                        uploadStarted.countDown()
+                        Thread.sleep(60_000)
+                        OperationResult.Success
+                    }
+                } catch (e: Throwable) {
+                    failure.set(e)
+                }
+            }
+
+            // when
+            caller.start()
+            assertTrue(uploadStarted.await(5, TimeUnit.SECONDS))
+            caller.interrupt()
+            caller.join(5_000)
+
+            // then
+            assertFalse(caller.isAlive, "Deployment did not stop after interrupt")
+            assertTrue(failure.get() is InterruptedException, "${failure.get()}")
+            uploaded.get().shouldBeEqualTo(1)
+        }
+
+        @Test
+        fun `failed builds and uploads are recorded as errors of their objects`() {
+            // given
+            val failingBuild = aDocObj("B_1").mock()
+            val failingUpload = aDocObj("B_2").mock()
+            val throwingUpload = aDocObj("B_3").mock()
+            val deployed = aDocObj("B_4").mock()
+            every { documentObjectBuilder.buildDocumentObject(failingBuild, any()) } throws IllegalStateException("Build failed")
+
+            // when
+            val result = subject(deployPipeline = pipeline).runDeploy(listOf(failingBuild, failingUpload, throwingUpload, deployed)) { obj, _, _ ->
+                when (obj.id) {
+                    failingUpload.id -> OperationResult.Failure("Upload failed")
+                    throwingUpload.id -> throw RuntimeException("Connection reset")
+                    else -> OperationResult.Success
+                }
+            }
+
+            // then
+            result.errors.toSet().shouldBeEqualTo(
+                setOf(
+                    DeploymentError("B_1", "Build failed"),
+                    DeploymentError("B_2", "Upload failed"),
+                    DeploymentError("B_3", "Connection reset"),
+                )
+            )
+            result.deployed.shouldBeEqualTo(
+                listOf(DeploymentInfo("B_4", ResourceType.DocumentObject, "icm://${deployed.nameOrId()}".toIcmPath()))
+            )
+        }
+
+        @Test
+        fun `statuses are checked before building and results are tracked`() {
+            // given
+            val alreadyDeployed = aDocObj("B_1").mock()
+            val failing = aDocObj("B_2").mock()
+            val active = aDocObj("B_3").mock()
+            every {
+                statusTrackingRepository.findLastEventRelevantToOutput(alreadyDeployed.id, any(), any())
+            } returns aDeployedStatusEvent()
+
+            // when
+            subject(deployPipeline = pipeline).runDeploy(listOf(alreadyDeployed, failing, active)) { obj, _, _ ->
+                if (obj.id == failing.id) OperationResult.Failure("Upload failed") else OperationResult.Success
+            }
+
+            // then
+            verify(exactly = 0) { documentObjectBuilder.buildDocumentObject(alreadyDeployed, any()) }
+            verify(exactly = 1) {
+                statusTrackingRepository.error(
+                    failing.id, any(), any(), ResourceType.DocumentObject, any(), InspireOutput.Designer, "Upload failed", any()
+                )
+            }
+            verify(exactly = 1) {
+                statusTrackingRepository.deployed(
+                    active.id, any<Uuid>(), any(), ResourceType.DocumentObject, any(), InspireOutput.Designer, any()
+                )
+            }
+            verify(exactly = 0) { statusTrackingRepository.deployed(alreadyDeployed.id, any<Uuid>(), any(), any(), any(), any(), any()) }
+        }
+    }
+
+    private fun givenXml2wfdReturns(result: OperationResult, outputPath: IcmPath? = null) {
+        every { ipsService.xml2wfd(outputPath ?: any(), any<(OutputStream) -> Unit>()) } answers {
+            secondArg<(OutputStream) -> Unit>().invoke(ByteArrayOutputStream())
+            result
+        }
+    }
+
+    private fun DesignerDeployClient.runDeploy(
+        documentObjects: List<DocumentObject>,
+        uploadDocumentObject: (DocumentObject, IcmPath, (OutputStream) -> Unit) -> OperationResult = this::uploadDocumentObject,
+    ): DeploymentResult {
         return this.deployDocumentObjectsInternal(
             documentObjects,
             ResultTrackerImpl(statusTrackingRepository, InspireOutput.Designer),
-            this::uploadDocumentObject,
+            uploadDocumentObject,
             this::uploadImage,
             this::uploadAttachment,
             this::uploadDisplayRule
@@ -17,6 +17,7 @@ import com.quadient.migration.api.repository.StatusTrackingRepository
 import com.quadient.migration.api.repository.TextStyleRepository
 import com.quadient.migration.api.repository.VariableRepository
 import com.quadient.migration.api.repository.VariableStructureRepository
+import com.quadient.migration.api.repository.ReferenceGraph
 import com.quadient.migration.service.Storage
 import com.quadient.migration.service.deploy.utility.MetadataValidatorImpl
 import com.quadient.migration.service.deploy.utility.PostProcessImpl
@@ -34,6 +35,7 @@ import com.quadient.migration.shared.DocumentObjectType
 import com.quadient.migration.shared.IcmPath
 import com.quadient.migration.shared.toIcmPath
 import com.quadient.migration.tools.aProjectConfig
+import com.quadient.migration.tools.answerBulkLookupsFromSingleLookups
 import com.quadient.migration.tools.shouldBeEqualTo
 import com.quadient.migration.tools.shouldBeOfInstance
 import com.quadient.migration.tools.shouldStartWith
@@ -84,11 +86,12 @@ class EvolveDeployClientTest {
         targetDefaultFolder = "defaultFolder"
     )
 
-    val deployOrder = DeployOrderImpl(documentObjectRepository)
+    val referenceGraph = ReferenceGraph()
+    val deployOrder = DeployOrderImpl(documentObjectRepository, referenceGraph)
     val refInheritanceService = RefInheritanceServiceImpl(documentObjectRepository)
 
     val conflictDetector = ConflictDetectorImpl(documentObjectRepository, imageRepository, attachmentRepository, displayRuleRepository, statusTrackingRepository, resourcePathProvider, projectConfig.inspireOutput)
-    val progressReporter = ProgressReporterImpl(documentObjectRepository, imageRepository, attachmentRepository, displayRuleRepository, documentObjectBuilder, statusTrackingRepository, resourcePathProvider, projectConfig.inspireOutput)
+    val progressReporter = ProgressReporterImpl(documentObjectRepository, imageRepository, attachmentRepository, displayRuleRepository, documentObjectBuilder, statusTrackingRepository, resourcePathProvider, projectConfig.inspireOutput, referenceGraph)
 
     private val subject = EvolveDeployClient(
         projectConfig,
@@ -124,11 +127,12 @@ class EvolveDeployClientTest {
 
     @BeforeEach
     fun setup() {
+        statusTrackingRepository.answerBulkLookupsFromSingleLookups()
         every { documentObjectBuilder.shouldIncludeInternalDependency(any()) } answers {
             val documentObject = firstArg<com.quadient.migration.api.dto.migrationmodel.DocumentObject>()
             (documentObject.internal ?: false) || documentObject.type == DocumentObjectType.Page
         }
-        every { ipsService.deployJld(any<IcmPath>(), any<String>(), any<String>(), any<String>(), any<String>()) } returns OperationResult.Success
+        every { ipsService.deployJld(any<IcmPath>(), any<String>(), any<String>(), any(), any<String>()) } returns OperationResult.Success
         every { ipsService.download(any<String>()) } returns jld
         every { ipsService.delete(any<String>()) } returns true
         every { caClient.targetVersion } returns null
@@ -220,7 +224,7 @@ class EvolveDeployClientTest {
         every { caClient.createTemplateDraft(any(), any(), any(), any()) } returns HttpResult.Success(draftResult)
         every { caClient.executeAction(evolveConfig.publishTemplateActionId, draftGuid, ObjectType.TemplateDraft) } returns HttpResult.Success(Unit)
 
-        val result = subject.uploadDocumentObject(template, targetPath, "<xml/>")
+        val result = subject.uploadDocumentObject(template, targetPath) { it.write("<xml/>".toByteArray()) }
 
         result.shouldBeOfInstance<OperationResult.Success>()
         verify { caClient.createTemplateDraft(template.nameOrId(), any(), baseTemplatePath, jld) }
@@ -238,7 +242,7 @@ class EvolveDeployClientTest {
         every { caClient.createTemplateDraft(any(), any(), any(), any()) } returns HttpResult.Success(draftResult)
         every { caClient.executeAction(evolveConfig.publishTemplateActionId, draftGuid, ObjectType.TemplateDraft) } returns HttpResult.Success(Unit)
 
-        val result = subject.uploadDocumentObject(page, targetPath, "<xml/>")
+        val result = subject.uploadDocumentObject(page, targetPath) { it.write("<xml/>".toByteArray()) }
 
         result.shouldBeOfInstance<OperationResult.Success>()
         verify { caClient.createTemplateDraft(page.nameOrId(), any(), baseTemplatePath, jld) }
@@ -256,7 +260,7 @@ class EvolveDeployClientTest {
         every { caClient.createBlockDraft(any(), any(), any(), any()) } returns HttpResult.Success(draftResult)
         every { caClient.executeAction(evolveConfig.publishBlockActionId, draftGuid, ObjectType.BlockDraft) } returns HttpResult.Success<Unit, ApiBadRequestException>(Unit)
 
-        val result = subject.uploadDocumentObject(block, targetPath, "<xml/>")
+        val result = subject.uploadDocumentObject(block, targetPath) { it.write("<xml/>".toByteArray()) }
 
         result.shouldBeOfInstance<OperationResult.Success>()
         verify { caClient.createBlockDraft(block.nameOrId(), any(), baseTemplatePath, jld) }
@@ -268,7 +272,7 @@ class EvolveDeployClientTest {
         val snippet = DocumentObjectBuilder("S1", DocumentObjectType.Snippet).build()
         val targetPath = "icm://Interactive/tenant/S1.jld".toIcmPath()
 
-        val result = subject.uploadDocumentObject(snippet, targetPath, "<xml/>")
+        val result = subject.uploadDocumentObject(snippet, targetPath) { it.write("<xml/>".toByteArray()) }
 
         result.shouldBeOfInstance<OperationResult.Failure>()
         (result as OperationResult.Failure).message.shouldBeEqualTo("Snippets are not currently supported in Evolve output")
@@ -278,9 +282,9 @@ class EvolveDeployClientTest {
     fun `uploadDocumentObject returns Failure when IPS deployJld fails`() {
         val block = DocumentObjectBuilder("B1", DocumentObjectType.Block).build()
         val targetPath = "icm://Interactive/tenant/B1.jld".toIcmPath()
-        every { ipsService.deployJld(any<IcmPath>(), any<String>(), any<String>(), any<String>(), any<String>()) } returns OperationResult.Failure("IPS deploy failed")
+        every { ipsService.deployJld(any<IcmPath>(), any<String>(), any<String>(), any(), any<String>()) } returns OperationResult.Failure("IPS deploy failed")
 
-        val result = subject.uploadDocumentObject(block, targetPath, "<xml/>")
+        val result = subject.uploadDocumentObject(block, targetPath) { it.write("<xml/>".toByteArray()) }
 
         result.shouldBeOfInstance<OperationResult.Failure>()
         (result as OperationResult.Failure).message.shouldBeEqualTo("IPS deploy failed")
@@ -292,7 +296,7 @@ class EvolveDeployClientTest {
         val targetPath = "icm://Interactive/tenant/B1.jld".toIcmPath()
         every { ipsService.download(any<String>()) } throws RuntimeException("download error")
 
-        val result = subject.uploadDocumentObject(block, targetPath, "<xml/>")
+        val result = subject.uploadDocumentObject(block, targetPath) { it.write("<xml/>".toByteArray()) }
 
         result.shouldBeOfInstance<OperationResult.Failure>()
         (result as OperationResult.Failure).message.shouldStartWith("Failed to download deployed JLD")
@@ -305,7 +309,7 @@ class EvolveDeployClientTest {
         val error = ApiBadRequestException(status = 422, title = "Unprocessable", detail = "Invalid template")
         every { caClient.createTemplateDraft(any(), any(), any(), any()) } returns HttpResult.Failure(error)
 
-        val result = subject.uploadDocumentObject(template, targetPath, "<xml/>")
+        val result = subject.uploadDocumentObject(template, targetPath) { it.write("<xml/>".toByteArray()) }
 
         result.shouldBeOfInstance<OperationResult.Failure>()
         (result as OperationResult.Failure).message.shouldBeEqualTo("CA API error 422: Unprocessable - Invalid template")
@@ -318,7 +322,7 @@ class EvolveDeployClientTest {
         val error = ApiBadRequestException(status = 400, title = "Bad Request", detail = "Invalid block")
         every { caClient.createBlockDraft(any(), any(), any(), any()) } returns HttpResult.Failure(error)
 
-        val result = subject.uploadDocumentObject(block, targetPath, "<xml/>")
+        val result = subject.uploadDocumentObject(block, targetPath) { it.write("<xml/>".toByteArray()) }
 
         result.shouldBeOfInstance<OperationResult.Failure>()
         (result as OperationResult.Failure).message.shouldBeEqualTo("CA API error 400: Bad Request - Invalid block")
@@ -336,7 +340,7 @@ class EvolveDeployClientTest {
         val error = ApiBadRequestException(status = 500, title = "Server Error", detail = "Action failed")
         every { caClient.executeAction(any(), any(), any()) } returns HttpResult.Failure(error)
 
-        val result = subject.uploadDocumentObject(template, targetPath, "<xml/>")
+        val result = subject.uploadDocumentObject(template, targetPath) { it.write("<xml/>".toByteArray()) }
 
         result.shouldBeOfInstance<OperationResult.Failure>()
         (result as OperationResult.Failure).message.shouldBeEqualTo("CA API error 500: Server Error - Action failed")
@@ -354,7 +358,7 @@ class EvolveDeployClientTest {
         every { caClient.createBlockDraft(any(), any(), any(), any()) } returns HttpResult.Success(draftResult)
         every { caClient.executeAction(any(), any(), any()) } returns HttpResult.Success(Unit)
 
-        subject.uploadDocumentObject(block, targetPath, "<xml/>")
+        subject.uploadDocumentObject(block, targetPath) { it.write("<xml/>".toByteArray()) }
 
         verify { caClient.createBlockDraft(any(), any(), customBaseTemplate.toIcmPath(), any()) }
     }
@@ -364,7 +368,7 @@ class EvolveDeployClientTest {
         val template = DocumentObjectBuilder("T1", DocumentObjectType.Template).targetFolder("icm://absolute/path").build()
         val targetPath = "icm://Interactive/tenant/T1.jld".toIcmPath()
 
-        val result = subject.uploadDocumentObject(template, targetPath, "<xml/>")
+        val result = subject.uploadDocumentObject(template, targetPath) { it.write("<xml/>".toByteArray()) }
 
         result.shouldBeOfInstance<OperationResult.Failure>()
         (result as OperationResult.Failure).message.shouldStartWith("TargetFolder")
@@ -375,7 +379,7 @@ class EvolveDeployClientTest {
         val block = DocumentObjectBuilder("B1", DocumentObjectType.Block).targetFolder("icm://absolute/path").build()
         val targetPath = "icm://Interactive/tenant/B1.jld".toIcmPath()
 
-        val result = subject.uploadDocumentObject(block, targetPath, "<xml/>")
+        val result = subject.uploadDocumentObject(block, targetPath) { it.write("<xml/>".toByteArray()) }
 
         result.shouldBeOfInstance<OperationResult.Failure>()
         (result as OperationResult.Failure).message.shouldStartWith("TargetFolder")
@@ -392,7 +396,7 @@ class EvolveDeployClientTest {
         every { caClient.createTemplateDraft(any(), any(), any(), any()) } returns HttpResult.Success(draftResult)
         every { caClient.executeAction(any(), any(), any()) } returns HttpResult.Success(Unit)
 
-        subject.uploadDocumentObject(template, targetPath, "<xml/>")
+        subject.uploadDocumentObject(template, targetPath) { it.write("<xml/>".toByteArray()) }
 
         verify { caClient.createTemplateDraft(any(), projectConfig.defaultTargetFolder, any(), any()) }
     }
@@ -544,7 +548,7 @@ class EvolveDeployClientTest {
             every { caClient.createTemplateDraft(any(), any(), any(), any()) } returns HttpResult.Success(draftResult)
             every { caClient.executeAction(any(), any(), any()) } returns HttpResult.Success(Unit)
 
-            subject.uploadDocumentObject(doc, targetPath, "<xml/>")
+            subject.uploadDocumentObject(doc, targetPath) { it.write("<xml/>".toByteArray()) }
 
             verify(exactly = 0) { caClient.setCategorization(any()) }
         }
@@ -563,7 +567,7 @@ class EvolveDeployClientTest {
             every { caClient.executeAction(any(), any(), any()) } returns HttpResult.Success(Unit)
             every { caClient.setCategorization(any()) } returns HttpResult.Success(Unit)
 
-            subject.uploadDocumentObject(doc, targetPath, "<xml/>")
+            subject.uploadDocumentObject(doc, targetPath) { it.write("<xml/>".toByteArray()) }
 
             verify {
                 caClient.setCategorization(
@@ -675,7 +679,7 @@ class EvolveDeployClientTest {
             every { caClient.createTemplateDraft(any(), any(), any(), any()) } returns HttpResult.Success(draftResult)
             every { caClient.executeAction(any(), any(), any()) } returns HttpResult.Success(Unit)
 
-            subject.uploadDocumentObject(doc, targetPath, "<xml/>")
+            subject.uploadDocumentObject(doc, targetPath) { it.write("<xml/>".toByteArray()) }
 
             verify(exactly = 0) { caClient.setCategorization(any()) }
         }
@@ -698,8 +702,8 @@ class EvolveDeployClientTest {
             every { caClient.executeAction(any(), any(), any()) } returns HttpResult.Success(Unit)
             every { caClient.setCategorization(any()) } returns HttpResult.Success(Unit)
 
-            subject.uploadDocumentObject(doc1, path1, "<xml/>")
-            subject.uploadDocumentObject(doc2, path2, "<xml/>")
+            subject.uploadDocumentObject(doc1, path1) { it.write("<xml/>".toByteArray()) }
+            subject.uploadDocumentObject(doc2, path2) { it.write("<xml/>".toByteArray()) }
 
             verify(exactly = 2) { caClient.setCategorization(any()) }
         }
@@ -719,7 +723,7 @@ class EvolveDeployClientTest {
             every { caClient.executeAction(any(), any(), any()) } returns HttpResult.Success(Unit)
             every { caClient.setCategorization(any()) } returns HttpResult.Success(Unit)
 
-            subject.uploadDocumentObject(doc, targetPath, "<xml/>")
+            subject.uploadDocumentObject(doc, targetPath) { it.write("<xml/>".toByteArray()) }
 
             verify {
                 caClient.setCategorization(
@@ -1,5 +1,6 @@
 package com.quadient.migration.service.deploy
 
+import com.quadient.migration.api.DeployPipelineConfig
 import com.quadient.migration.api.InspireOutput
 import com.quadient.migration.api.dto.migrationmodel.Attachment
 import com.quadient.migration.api.dto.migrationmodel.AttachmentRef
@@ -10,6 +11,8 @@ import com.quadient.migration.api.dto.migrationmodel.DocumentObject
 import com.quadient.migration.api.dto.migrationmodel.Image
 import com.quadient.migration.api.dto.migrationmodel.ImageRef
 import com.quadient.migration.api.dto.migrationmodel.Paragraph
+import com.quadient.migration.api.dto.migrationmodel.ResourceId
+import com.quadient.migration.api.dto.migrationmodel.StatusTracking
 import com.quadient.migration.api.dto.migrationmodel.StringValue
 import com.quadient.migration.api.dto.migrationmodel.VariableRef
 import com.quadient.migration.api.dto.migrationmodel.builder.AttachmentBuilder
@@ -27,6 +30,7 @@ import com.quadient.migration.api.repository.StatusTrackingRepository
 import com.quadient.migration.api.repository.TextStyleRepository
 import com.quadient.migration.api.repository.VariableRepository
 import com.quadient.migration.api.repository.VariableStructureRepository
+import com.quadient.migration.api.repository.ReferenceGraph
 import com.quadient.migration.data.Active
 import com.quadient.migration.data.Deployed
 import com.quadient.migration.data.Error
@@ -67,6 +71,7 @@ import com.quadient.migration.tools.aActiveStatus
 import com.quadient.migration.tools.aDeployedStatus
 import com.quadient.migration.tools.aErrorStatus
 import com.quadient.migration.tools.aProjectConfig
+import com.quadient.migration.tools.answerBulkLookupsFromSingleLookups
 import com.quadient.migration.tools.model.aBlock
 import com.quadient.migration.tools.model.aDocObj
 import com.quadient.migration.tools.model.aDocumentObjectRef
@@ -91,6 +96,9 @@ import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Nested
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.assertThrows
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.util.Collections
 import kotlin.uuid.Uuid
 
 class InteractiveDeployClientTest {
@@ -117,16 +125,20 @@ class InteractiveDeployClientTest {
     val postProcess = PostProcessImpl(ipsService, documentObjectRepository, imageRepository, attachmentRepository, displayRuleRepository, textStyleRepository, paragraphStyleRepository)
     val resourcePathProvider = mockk<InteractiveResourcePathProvider>()
     val conflictDetector = ConflictDetectorImpl(documentObjectRepository, imageRepository, attachmentRepository, displayRuleRepository, statusTrackingRepository, resourcePathProvider, config.inspireOutput)
-    val progressReporter = ProgressReporterImpl(documentObjectRepository, imageRepository, attachmentRepository, displayRuleRepository, documentObjectBuilder, statusTrackingRepository, resourcePathProvider, config.inspireOutput)
-    val deployOrder = DeployOrderImpl(documentObjectRepository)
+    val referenceGraph = ReferenceGraph()
+    val progressReporter = ProgressReporterImpl(documentObjectRepository, imageRepository, attachmentRepository, displayRuleRepository, documentObjectBuilder, statusTrackingRepository, resourcePathProvider, config.inspireOutput, referenceGraph)
+    val deployOrder = DeployOrderImpl(documentObjectRepository, referenceGraph)
     val refInheritanceService = RefInheritanceServiceImpl(documentObjectRepository)
 
-    private fun subject(selectedDocumentObjects: List<String> = emptyList()) = InteractiveDeployClient(
+    private fun subject(
+        selectedDocumentObjects: List<String> = emptyList(),
+        deployPipeline: DeployPipelineConfig = DeployPipelineConfig(),
+    ) = InteractiveDeployClient(
         aProjectConfig(
             targetDefaultFolder = "defaultFolder",
             baseTemplatePath = "icm://Interactive/tenant/BaseTemplates/templ.wfd",
             selectedDocumentObjects = selectedDocumentObjects,
-        ),
+        ).copy(deployPipeline = deployPipeline),
         resourcePathProvider,
         metadataValidator,
         postProcess,
@@ -152,10 +164,12 @@ class InteractiveDeployClientTest {
 
     @BeforeEach
     fun setupAll() {
+        statusTrackingRepository.answerBulkLookupsFromSingleLookups()
         every { documentObjectBuilder.shouldIncludeInternalDependency(any()) } answers {
             val documentObject = firstArg<DocumentObject>()
             (documentObject.internal ?: false) || documentObject.type == DocumentObjectType.Page
         }
+        every { documentObjectBuilder.buildDocumentObject(any(), any()) } answers { callOriginal() }
         every { ipsService.writeMetadata(any()) } just runs
         every { ipsService.setProductionApprovalState(any<List<IcmPath>>()) } returns OperationResult.Success
         every { documentObjectRepository.find(any()) } returns null
@@ -248,11 +262,7 @@ class InteractiveDeployClientTest {
         // given
         mockBasicDocumentObjects()
         mockBasicSuccessfulIpsOperations()
-        every {
-            ipsService.deployJld(
-                any(), any(), any(), any(), "icm://Interactive/$tenant/Blocks/defaultFolder/0.jld".toIcmPath()
-            )
-        } returns OperationResult.Failure("Problem")
+        givenDeployJldReturns(OperationResult.Failure("Problem"), "icm://Interactive/$tenant/Blocks/defaultFolder/0.jld".toIcmPath())
         every { documentObjectBuilder.buildDocumentObject(any()) } returns "<xml />"
         every { documentObjectRepository.find(any()) } returns aBlock("99", internal = false)
         every { statusTrackingRepository.findLastEventRelevantToOutput(any(), any(), any()) } returns Active()
@@ -1142,12 +1152,17 @@ class InteractiveDeployClientTest {
     }
 
     private fun mockBasicSuccessfulIpsOperations() {
-        every {
-            ipsService.deployJld(any(), any(), any(), any(), any<IcmPath>())
-        } returns OperationResult.Success
+        givenDeployJldReturns(OperationResult.Success)
         every { ipsService.setProductionApprovalState(any<List<IcmPath>>()) } returns OperationResult.Success
     }
 
+    private fun givenDeployJldReturns(result: OperationResult, outputPath: IcmPath? = null) {
+        every { ipsService.deployJld(any(), any(), any(), any(), outputPath ?: any<IcmPath>()) } answers {
+            arg<(OutputStream) -> Unit>(3).invoke(ByteArrayOutputStream())
+            result
+        }
+    }
+
     private fun verifyBasicIpsOperations(expectedOutputPaths: List<String>, deployCount: Int? = null) {
         val deployCountValue = deployCount ?: expectedOutputPaths.size
         verify(exactly = deployCountValue) { ipsService.deployJld(any(), any(), any(), any(), any<IcmPath>()) }
@@ -1187,7 +1202,7 @@ class InteractiveDeployClientTest {
             every { resourcePathProvider.getDocumentObjectPath(any()) } returns "icm://path".toIcmPath()
             every { ipsService.setProductionApprovalState(any<List<IcmPath>>()) } returns OperationResult.Success
             every { ipsService.tryUpload(any<IcmPath>(), any()) } returns OperationResult.Success
-            every { ipsService.deployJld(any(), any(), any(), any(), any<IcmPath>()) } returns OperationResult.Success
+            givenDeployJldReturns(OperationResult.Success)
             every { imageRepository.find(any()) } returns null
         }
 
@@ -1267,7 +1282,7 @@ class InteractiveDeployClientTest {
             givenObjectIsActive("D_1")
             givenObjectIsActive("I_1")
             aImage("I_1").mock(success = false)
-            every { ipsService.deployJld(any(), any(), any(), any(), any<IcmPath>()) } returns OperationResult.Failure("oops")
+            givenDeployJldReturns(OperationResult.Failure("oops"))
 
             // when
             runDeploy(docObjects)
@@ -1461,18 +1476,238 @@ class InteractiveDeployClientTest {
         }
     }
 
-    private fun runDeploy(documentObjects: List<DocumentObject>): DeploymentResult {
-        val localSubject = subject()
+    private fun runDeploy(
+        documentObjects: List<DocumentObject>,
+        localSubject: InteractiveDeployClient = subject(),
+        uploadDocumentObject: (DocumentObject, IcmPath, (OutputStream) -> Unit) -> OperationResult = localSubject::uploadDocumentObject,
+    ): DeploymentResult {
         return localSubject.deployDocumentObjectsInternal(
             documentObjects,
             ResultTrackerImpl(statusTrackingRepository, InspireOutput.Interactive),
-            localSubject::uploadDocumentObject,
+            uploadDocumentObject,
             localSubject::uploadImage,
             localSubject::uploadAttachment,
             localSubject::uploadDisplayRule
         )
     }
 
+    @Nested
+    inner class DeployPipelineTests {
+        private val pipelined = subject(
+            deployPipeline = DeployPipelineConfig(enabled = true, buildThreads = 2, uploadThreads = 2, maxPendingUploads = 4)
+        )
+
+        @BeforeEach
+        fun setup() {
+            every { statusTrackingRepository.findLastEventRelevantToOutput(any(), any(), any()) } returns Active()
+            every { statusTrackingRepository.deployed(any(), any<Uuid>(), any(), any(), any(), any(), any()) } returns aDeployedStatus("id")
+            every { statusTrackingRepository.error(any(), any(), any(), any(), any(), any(), any(), any()) } returns aErrorStatus("id")
+        }
+
+        @Test
+        fun `dependencies are uploaded before their dependents`() {
+            // given
+            val block = mockObj(aBlock("B_1"))
+            val template = mockObj(aTemplate("T_1", listOf(aDocumentObjectRef(block.id))))
+            val uploaded = Collections.synchronizedList(mutableListOf<String>())
+
+            // when
+            val result = runDeploy(listOf(block, template), pipelined) { obj, _, _ ->
+                uploaded.add(obj.id)
+                OperationResult.Success
+            }
+
+            // then
+            uploaded.shouldBeEqualTo(listOf("B_1", "T_1"))
+            result.deployed.map { it.id }.shouldBeEqualTo(listOf("B_1", "T_1"))
+        }
+
+        @Test
+        fun `recoverable errors are recorded and tracked as errors of their objects`() {
+            // given
+            val failing = mockObj(aBlock("B_1"))
+            val deployed = mockObj(aBlock("B_2"))
+            every { documentObjectBuilder.buildDocumentObject(failing) } throws IllegalStateException("Variable not found")
+
+            // when
+            val result = runDeploy(listOf(failing, deployed), pipelined) { _, _, _ -> OperationResult.Success }
+
+            // then
+            result.errors.shouldBeEqualTo(listOf(DeploymentError("B_1", "Variable not found")))
+            result.deployed.map { it.id }.shouldBeEqualTo(listOf("B_2"))
+            verify(exactly = 1) {
+                statusTrackingRepository.error(
+                    "B_1", any(), any(), ResourceType.DocumentObject, any(), InspireOutput.Interactive, "Variable not found", any()
+                )
+            }
+            verify(exactly = 1) {
+                statusTrackingRepository.deployed("B_2", any<Uuid>(), any(), ResourceType.DocumentObject, any(), InspireOutput.Interactive, any())
+            }
+        }
+
+        @Test
+        fun `other exceptions stop the deployment and are rethrown`() {
+            // given
+            val failing = mockObj(aBlock("B_1"))
+            val dependent = mockObj(aBlock("B_2", content = listOf(aDocumentObjectRef(failing.id))))
+            val uploaded = Collections.synchronizedList(mutableListOf<String>())
+
+            // when
+            val ex = assertThrows<IllegalArgumentException> {
+                runDeploy(listOf(failing, dependent), pipelined) { obj, _, _ ->
+                    uploaded.add(obj.id)
+                    if (obj.id == failing.id) throw IllegalArgumentException("Unexpected") else OperationResult.Success
+                }
+            }
+
+            // then
+            ex.message.shouldBeEqualTo("Unexpected")
+            uploaded.shouldBeEqualTo(listOf(failing.id))
+            verify(exactly = 0) { statusTrackingRepository.deployed(any(), any<Uuid>(), any(), any(), any(), any(), any()) }
+            verify(exactly = 0) { statusTrackingRepository.error("B_1", any(), any(), any(), any(), any(), any(), any()) }
+        }
+
+        @Test
+        fun `objects not marked for deployment are neither built nor uploaded`() {
+            // given
+            val deployedBefore = mockObj(aBlock("B_1"))
+            val active = mockObj(aBlock("B_2"))
+            every {
+                statusTrackingRepository.findLastEventRelevantToOutput(deployedBefore.id, any(), any())
+            } returns Deployed(
+                output = InspireOutput.Interactive,
+                deploymentId = Uuid.random(),
+                timestamp = Clock.System.now(),
+                icmPath = "icm://path".toIcmPath()
+            )
+            val uploaded = Collections.synchronizedList(mutableListOf<String>())
+
+            // when
+            val result = runDeploy(listOf(deployedBefore, active), pipelined) { obj, _, _ ->
+                uploaded.add(obj.id)
+                OperationResult.Success
+            }
+
+            // then
+            uploaded.shouldBeEqualTo(listOf("B_2"))
+            result.deployed.map { it.id }.shouldBeEqualTo(listOf("B_2"))
+            verify(exactly = 0) { documentObjectBuilder.buildDocumentObject(deployedBefore) }
+        }
+    }
+
+    @Nested
+    inner class ConflictValidationTests {
+        @BeforeEach
+        fun setup() {
+            every { statusTrackingRepository.findLastEventRelevantToOutput(any(), any(), any()) } returns Active()
+            every { statusTrackingRepository.listAll() } returns emptyList()
+        }
+
+        @Test
+        fun `validateConflicts plans display rules, resources and document objects that pass the deployment checks`() {
+            // given
+            val image = aImage("I_1").mock()
+            val attachment = aAttachment("A_1").mock()
+            val validRule = DisplayRuleBuilder("valid")
+                .comparison { value("a").equals().value("b") }
+                .internal(false)
+                .build()
+                .mock()
+            val ruleWithFunction = DisplayRuleBuilder("withFunction")
+                .comparison { value("a").equals().value(Function.UpperCase(Literal("", LiteralDataType.String))) }
+                .internal(false)
+                .build()
+                .mock()
+            val ruleWithInvalidMetadata = DisplayRuleBuilder("invalidMetadata")
+                .comparison { value("a").equals().value("b") }
+                .metadata("Brand") { string("value") }
+                .internal(false)
+                .build()
+                .mock()
+            val block = mockDocumentObject(
+                aBlock(
+                    "B_1", listOf(
+                        ImageRef(image.id),
+                        AttachmentRef(attachment.id),
+                        aParagraph(displayRuleRef = DisplayRuleRef(validRule.id)),
+                        aParagraph(displayRuleRef = DisplayRuleRef(ruleWithFunction.id)),
+                        aParagraph(displayRuleRef = DisplayRuleRef(ruleWithInvalidMetadata.id)),
+                    )
+                )
+            )
+            val deployedBlock = mockDocumentObject(aBlock("B_2"))
+            every {
+                statusTrackingRepository.findLastEventRelevantToOutput(deployedBlock.id, any(), any())
+            } returns Deployed(Uuid.random(), Clock.System.now(), InspireOutput.Interactive, "icm://other/path".toIcmPath())
+            every { documentObjectRepository.list(any<Op<Boolean>>()) } returns listOf(block, deployedBlock)
+
+            // Every object that is planned ends up in the in batch conflict of this path
+            val samePath = "icm://same/path".toIcmPath()
+            every { resourcePathProvider.getDocumentObjectPath(any()) } returns samePath
+            every { resourcePathProvider.getImagePath(any()) } returns samePath
+            every { resourcePathProvider.getAttachmentPath(any()) } returns samePath
+            every { resourcePathProvider.getDisplayRulePath(any()) } returns samePath
+
+            // when
+            val result = subject().validateConflicts()
+
+            // then
+            result.conflictingInBatchResources.shouldBeEqualTo(
+                mapOf(
+                    samePath to setOf(
+                        ResourceId("valid", ResourceType.DisplayRule),
+                        ResourceId("I_1", ResourceType.Image),
+                        ResourceId("A_1", ResourceType.Attachment),
+                        ResourceId("B_1", ResourceType.DocumentObject),
+                    )
+                )
+            )
+            result.deploymentResult.warnings.shouldBeEqualTo(
+                listOf(
+                    DeploymentWarning(
+                        "withFunction",
+                        "External display rule 'withFunction' contains functions. Will fallback to internal display rule"
+                    )
+                )
+            )
+            result.deploymentResult.errors.shouldBeEqualTo(
+                listOf(DeploymentError("invalidMetadata", "Metadata of display rule 'invalidMetadata' contains invalid keys: [Brand]"))
+            )
+            verify(exactly = 0) { documentObjectBuilder.buildDocumentObject(any()) }
+            verify(exactly = 0) { storage.read(any()) }
+            verify(exactly = 0) { ipsService.tryUpload(any<IcmPath>(), any()) }
+            verify(exactly = 0) { ipsService.deployJld(any(), any(), any(), any(), any<IcmPath>()) }
+        }
+
+        @Test
+        fun `validateConflicts detects display rule conflicting with previously deployed resource`() {
+            // given
+            val rule = DisplayRuleBuilder("R_1")
+                .comparison { value("a").equals().value("b") }
+                .internal(false)
+                .build()
+                .mock()
+            val block = mockDocumentObject(aBlock("B_1", listOf(aParagraph(displayRuleRef = DisplayRuleRef(rule.id)))))
+            val rulePath = resourcePathProvider.getDisplayRulePath(rule)
+            every { documentObjectRepository.list(any<Op<Boolean>>()) } returns listOf(block)
+            every { statusTrackingRepository.listAll() } returns listOf(
+                StatusTracking(
+                    "B_OLD", "", ResourceType.DocumentObject,
+                    listOf(Deployed(Uuid.random(), Clock.System.now(), InspireOutput.Interactive, rulePath))
+                )
+            )
+
+            // when
+            val result = subject().validateConflicts()
+
+            // then
+            result.conflictingInBatchResources.shouldBeEqualTo(emptyMap())
+            val conflict = result.conflictingWithPreviousResources.getValue(rulePath)
+            conflict.current.shouldBeEqualTo(setOf(ResourceId("R_1", ResourceType.DisplayRule)))
+            conflict.previous.shouldBeEqualTo(setOf(ResourceId("B_OLD", ResourceType.DocumentObject)))
+        }
+    }
+
     @Nested
     inner class MetadataPostProcessorTest {
         private val metadataPostProcessor: PostProcessor = subject().clearPostProcessors().first()
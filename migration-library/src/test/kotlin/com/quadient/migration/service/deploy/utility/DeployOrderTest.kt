@@ -3,16 +3,19 @@ package com.quadient.migration.service.deploy.utility
 import com.quadient.migration.api.dto.migrationmodel.DocumentObject
 import com.quadient.migration.api.dto.migrationmodel.builder.DocumentObjectBuilder
 import com.quadient.migration.api.repository.DocumentObjectRepository
+import com.quadient.migration.api.repository.ReferenceGraph
 import com.quadient.migration.shared.DocumentObjectType
 import com.quadient.migration.tools.shouldBeEqualTo
 import io.mockk.every
 import io.mockk.mockk
+import io.mockk.verify
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.assertThrows
 
 class DeployOrderTest {
     val documentObjectRepository = mockk<DocumentObjectRepository>()
-    val subject = DeployOrderImpl(documentObjectRepository)
+    val referenceGraph = ReferenceGraph()
+    val subject = DeployOrderImpl(documentObjectRepository, referenceGraph)
 
     @Test
     fun `deployOrder is correct`() {
@@ -32,6 +35,22 @@ class DeployOrderTest {
         result.map { it.id }.shouldBeEqualTo(listOf("c", "e", "f", "b", "d", "a", "a2", "a3"))
     }
 
+    @Test
+    fun `deployLevels groups objects that do not depend on each other`() {
+        val list = listOf(
+            DocumentObjectBuilder("a", DocumentObjectType.Block).documentObjectRef("b").mock(),
+            DocumentObjectBuilder("b", DocumentObjectType.Block).documentObjectRef("c").mock(),
+            DocumentObjectBuilder("c", DocumentObjectType.Block).mock(),
+            DocumentObjectBuilder("d", DocumentObjectType.Block).documentObjectRef("f").mock(),
+            DocumentObjectBuilder("e", DocumentObjectType.Block).mock(),
+            DocumentObjectBuilder("f", DocumentObjectType.Block).mock(),
+        )
+
+        val result = subject.deployLevels(list)
+
+        result.map { level -> level.map { it.id } }.shouldBeEqualTo(listOf(listOf("c", "e", "f"), listOf("b", "d"), listOf("a")))
+    }
+
     @Test
     fun `deployOrder has missing object`() {
         val list = listOf(
@@ -73,7 +92,35 @@ class DeployOrderTest {
 
         val result = assertThrows<RuntimeException> { subject.deployOrder(list) }
 
-        result.message.shouldBeEqualTo("Cannot determine deploy order. Either circular reference or some references are missing.")
+        result.message.shouldBeEqualTo("Cannot determine deploy order because of circular reference: 'b' -> 'c' -> 'b'")
+    }
+
+    @Test
+    fun `deployOrder names cycle going through objects outside of the list`() {
+        val list = listOf(
+            DocumentObjectBuilder("a", DocumentObjectType.Block).documentObjectRef("internal").mock(),
+            DocumentObjectBuilder("b", DocumentObjectType.Block).documentObjectRef("a").mock(),
+        )
+        DocumentObjectBuilder("internal", DocumentObjectType.Block).internal(true).documentObjectRef("b").mock()
+
+        val result = assertThrows<RuntimeException> { subject.deployOrder(list) }
+
+        result.message.shouldBeEqualTo("Cannot determine deploy order because of circular reference: 'a' -> 'b' -> 'a'")
+    }
+
+    @Test
+    fun `deployOrder looks up each object outside of the list only once`() {
+        val shared = DocumentObjectBuilder("shared", DocumentObjectType.Block).internal(true).documentObjectRef("c").mock()
+        val list = listOf(
+            DocumentObjectBuilder("a", DocumentObjectType.Block).documentObjectRef(shared).mock(),
+            DocumentObjectBuilder("b", DocumentObjectType.Block).documentObjectRef(shared).mock(),
+            DocumentObjectBuilder("c", DocumentObjectType.Block).mock(),
+        )
+
+        val result = subject.deployLevels(list)
+
+        result.map { level -> level.map { it.id } }.shouldBeEqualTo(listOf(listOf("c"), listOf("a", "b")))
+        verify(exactly = 1) { documentObjectRepository.find("shared") }
     }
 
     private fun DocumentObjectBuilder.mock(): DocumentObject {
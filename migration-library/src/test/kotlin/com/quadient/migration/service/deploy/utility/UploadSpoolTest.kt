@@ -0,0 +1,85 @@
+package com.quadient.migration.service.deploy.utility
+
+import com.quadient.migration.tools.shouldBeEqualTo
+import org.junit.jupiter.api.Test
+import java.io.ByteArrayOutputStream
+
+class UploadSpoolTest {
+    @Test
+    fun `documents within the memory limit are kept in memory until released`() {
+        UploadSpool(maxMemoryBytes = 11).use { spool ->
+            val first = spool.add("12345")
+            val second = spool.add("žluť")
+
+            spool.pendingMemoryBytes.shouldBeEqualTo(11L)
+            spool.pendingFiles.shouldBeEqualTo(0)
+            first.content().shouldBeEqualTo("12345")
+            second.content().shouldBeEqualTo("žluť")
+
+            first.close()
+            second.close()
+            spool.pendingMemoryBytes.shouldBeEqualTo(0L)
+        }
+    }
+
+    @Test
+    fun `documents over the memory limit are spooled to files deleted once released`() {
+        UploadSpool(maxMemoryBytes = 4).use { spool ->
+            val inMemory = spool.add("1234")
+            val spooled = spool.add("<xml />")
+
+            spool.pendingMemoryBytes.shouldBeEqualTo(4L)
+            spool.pendingFiles.shouldBeEqualTo(1)
+            spooled.content().shouldBeEqualTo("<xml />")
+
+            spooled.close()
+            spool.pendingFiles.shouldBeEqualTo(0)
+
+            inMemory.close()
+            spool.add("abc").content().shouldBeEqualTo("abc")
+            spool.pendingFiles.shouldBeEqualTo(0)
+        }
+    }
+
+    @Test
+    fun `closing the spool deletes files not uploaded`() {
+        val spool = UploadSpool(maxMemoryBytes = 0)
+        spool.add("<xml />")
+        spool.add("<xml />")
+        spool.pendingFiles.shouldBeEqualTo(2)
+
+        spool.close()
+
+        spool.pendingFiles.shouldBeEqualTo(0)
+    }
+
+    @Test
+    fun `document crossing the memory limit while written continues in a file`() {
+        UploadSpool(maxMemoryBytes = 8).use { spool ->
+            val pending = spool.add { out -> repeat(4) { out.write("<a/>".toByteArray()) } }
+
+            spool.pendingMemoryBytes.shouldBeEqualTo(0L)
+            spool.pendingFiles.shouldBeEqualTo(1)
+            pending.size.shouldBeEqualTo(16L)
+            pending.content().shouldBeEqualTo("<a/><a/><a/><a/>")
+        }
+    }
+
+    @Test
+    fun `failed write releases its memory and file`() {
+        UploadSpool(maxMemoryBytes = 4).use { spool ->
+            runCatching { spool.add { out -> out.write("<xml />".toByteArray()); error("Build failed") } }
+
+            spool.pendingMemoryBytes.shouldBeEqualTo(0L)
+            spool.pendingFiles.shouldBeEqualTo(0)
+        }
+    }
+
+    private fun UploadSpool.add(content: String) = add { it.write(content.toByteArray()) }
+
+    private fun UploadSpool.PendingUpload.content(): String {
+        val output = ByteArrayOutputStream()
+        invoke(output)
+        return output.toString(Charsets.UTF_8)
+    }
+}
@@ -0,0 +1,145 @@
+package com.quadient.migration.service.ipsclient
+
+import com.quadient.migration.tools.shouldBeEqualTo
+import io.mockk.every
+import io.mockk.just
+import io.mockk.mockk
+import io.mockk.runs
+import io.mockk.verify
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.time.Duration.Companion.milliseconds
+import kotlin.time.Duration.Companion.minutes
+import kotlin.time.Duration.Companion.seconds
+
+class IpsClientPoolTest {
+    private val created = mutableListOf<IpsClient>()
+
+    private fun aClient(): IpsClient {
+        val client = mockk<IpsClient>()
+        every { client.ping() } returns IpsResult.Ok(IpsResponse("ok;"))
+        every { client.close() } just runs
+        every { client.version } returns null
+        every { client.broken } returns false
+        synchronized(created) { created.add(client) }
+        return client
+    }
+
+    @Test
+    fun `idle connection is reused`() {
+        val pool = IpsClientPool(2, 1.seconds, 1.minutes, ::aClient)
+
+        val first = pool.withClient { it }
+        val second = pool.withClient { it }
+
+        (first === second).shouldBeEqualTo(true)
+        created.size.shouldBeEqualTo(1)
+        verify(exactly = 0) { first.ping() }
+    }
+
+    @Test
+    fun `nested calls on the same thread share the connection`() {
+        val pool = IpsClientPool(1, 100.milliseconds, 1.minutes, ::aClient)
+
+        val (outer, inner) = pool.withClient { outer -> outer to pool.withClient { it } }
+
+        (outer === inner).shouldBeEqualTo(true)
+        created.size.shouldBeEqualTo(1)
+    }
+
+    @Test
+    fun `connection is kept when a command fails`() {
+        val pool = IpsClientPool(1, 1.seconds, 1.minutes, ::aClient)
+
+        assertThrows<IpsClientException> {
+            pool.withClient { IpsClientException("missing path").toIpsResult<Unit, Unit, Unit>().throwIfNotOk() }
+        }
+        val failed = created.single()
+        val next = pool.withClient { it }
+
+        (failed === next).shouldBeEqualTo(true)
+        verify(exactly = 0) { failed.close() }
+    }
+
+    @Test
+    fun `broken connection is discarded`() {
+        val pool = IpsClientPool(1, 1.seconds, 1.minutes, ::aClient)
+
+        assertThrows<IllegalStateException> {
+            pool.withClient {
+                every { it.broken } returns true
+                error("connection reset")
+            }
+        }
+        val broken = created.single()
+        val next = pool.withClient { it }
+
+        (broken === next).shouldBeEqualTo(false)
+        verify { broken.close() }
+    }
+
+    @Test
+    fun `unhealthy idle connection is replaced`() {
+        val pool = IpsClientPool(1, 1.seconds, 0.milliseconds, ::aClient)
+
+        val first = pool.withClient { it }
+        every { first.ping() } returns IpsClientException("closed").toIpsResult()
+        val second = pool.withClient { it }
+
+        (first === second).shouldBeEqualTo(false)
+        verify { first.close() }
+    }
+
+    @Test
+    fun `borrow times out when all connections are in use`() {
+        val pool = IpsClientPool(1, 50.milliseconds, 1.minutes, ::aClient)
+        val borrowed = CountDownLatch(1)
+        val done = CountDownLatch(1)
+        val executor = Executors.newSingleThreadExecutor()
+
+        try {
+            executor.submit {
+                pool.withClient {
+                    borrowed.countDown()
+                    done.await()
+                }
+            }
+            borrowed.await()
+
+            assertThrows<IpsClientException> { pool.withClient { } }
+        } finally {
+            done.countDown()
+            executor.shutdown()
+        }
+    }
+
+    @Test
+    fun `never hands out more connections than the pool size`() {
+        val pool = IpsClientPool(3, 10.seconds, 1.minutes, ::aClient)
+        val inUse = ConcurrentHashMap.newKeySet<IpsClient>()
+        val maxInUse = AtomicInteger()
+        val executor = Executors.newFixedThreadPool(8)
+
+        val futures = (0 until 200).map {
+            executor.submit {
+                pool.withClient { client ->
+                    check(inUse.add(client)) { "Connection handed out twice" }
+                    maxInUse.accumulateAndGet(inUse.size, ::maxOf)
+                    Thread.sleep(1)
+                    inUse.remove(client)
+                }
+            }
+        }
+        // Rethrows failures of the workers, such as a connection handed out twice
+        futures.forEach { it.get(30, TimeUnit.SECONDS) }
+        executor.shutdown()
+
+        (maxInUse.get() <= 3).shouldBeEqualTo(true)
+        (created.size <= 3).shouldBeEqualTo(true)
+    }
+}
@@ -0,0 +1,64 @@
+package com.quadient.migration.service.ipsclient
+
+import com.quadient.migration.tools.shouldBeEqualTo
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import java.net.ServerSocket
+import java.util.concurrent.LinkedBlockingQueue
+import kotlin.concurrent.thread
+import kotlin.time.Duration.Companion.seconds
+
+class IpsClientProtocolTest {
+    private val server = ServerSocket(0)
+    private val responses = LinkedBlockingQueue<String>()
+
+    // Answers every command with the next queued response, an empty response closes the connection
+    private val serverThread = thread(isDaemon = true) {
+        server.accept().use { socket ->
+            val reader = socket.getInputStream().bufferedReader()
+            val writer = socket.getOutputStream().writer()
+            while (reader.readLine() != null) {
+                val response = responses.take()
+                if (response.isEmpty()) break
+                writer.write("$response\r\n")
+                writer.flush()
+            }
+        }
+    }
+
+    private val client = IpsClient("localhost", server.localPort, 5.seconds)
+
+    @AfterEach
+    fun cleanup() {
+        client.close()
+        server.close()
+        serverThread.join(1_000)
+    }
+
+    @Test
+    fun `failed command keeps the connection`() {
+        responses.addAll(listOf("error;version", "error;diag", "error;file not found"))
+
+        client.remove("icm://missing.wfd").isNotOk().shouldBeEqualTo(true)
+
+        client.broken.shouldBeEqualTo(false)
+    }
+
+    @Test
+    fun `closed connection is broken`() {
+        responses.addAll(listOf("error;version", "error;diag", ""))
+
+        client.remove("icm://missing.wfd").isNotOk().shouldBeEqualTo(true)
+
+        client.broken.shouldBeEqualTo(true)
+    }
+
+    @Test
+    fun `response outside the protocol breaks the connection`() {
+        responses.addAll(listOf("error;version", "error;diag", "ok;upload-start"))
+
+        client.download("icm://file.wfd").isNotOk().shouldBeEqualTo(true)
+
+        client.broken.shouldBeEqualTo(true)
+    }
+}
@@ -9,6 +9,8 @@ import kotlin.time.Clock
 import org.junit.jupiter.api.Assertions
 import org.junit.jupiter.api.Disabled
 import org.junit.jupiter.api.Test
+import java.nio.file.Files
+import kotlin.io.path.writeBytes
 import kotlin.random.Random
 import kotlin.time.Duration.Companion.seconds
 
@@ -71,4 +73,21 @@ class IpsClientTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    fun `file upload from disk round trip`() {
+        val inputData = Random.Default.nextBytes(1_000_000)
+        val inputFile = Files.createTempFile("upload", ".bin")
+        inputFile.writeBytes(inputData)
+        val uploadPath = "memory://test-file"
+
+        try {
+            client.upload(uploadPath, inputFile).throwIfNotOk()
+            client.download(uploadPath).throwIfNotOk().ifOk {
+                Assertions.assertArrayEquals(inputData, it.customData)
+            }
+        } finally {
+            Files.deleteIfExists(inputFile)
+        }
+    }
+}
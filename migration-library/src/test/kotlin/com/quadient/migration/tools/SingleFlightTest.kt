@@ -0,0 +1,82 @@
+package com.quadient.migration.tools
+
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class SingleFlightTest {
+    @Test
+    fun `loading cache loads every key once under concurrent access`() {
+        val cache = LoadingCache<Int, String>()
+        val loads = ConcurrentHashMap<Int, AtomicInteger>()
+        val threads = 16
+        val keys = 200
+        val start = CountDownLatch(1)
+        val results = ConcurrentHashMap<Int, MutableSet<String>>()
+
+        val executor = Executors.newFixedThreadPool(threads)
+        repeat(threads) {
+            executor.submit {
+                start.await()
+                for (key in 0 until keys) {
+                    val value = cache.getOrLoad(key) {
+                        loads.computeIfAbsent(it) { AtomicInteger() }.incrementAndGet()
+                        Thread.yield()
+                        "value$it"
+                    }
+                    results.computeIfAbsent(key) { ConcurrentHashMap.newKeySet() }.add(value)
+                }
+            }
+        }
+        start.countDown()
+        executor.shutdown()
+        executor.awaitTermination(30, TimeUnit.SECONDS).shouldBeEqualTo(true)
+
+        loads.keys.size.shouldBeEqualTo(keys)
+        loads.values.all { it.get() == 1 }.shouldBeEqualTo(true)
+        results.all { (key, values) -> values == setOf("value$key") }.shouldBeEqualTo(true)
+        cache.loadedValues().size.shouldBeEqualTo(keys)
+    }
+
+    @Test
+    fun `failed load is not kept`() {
+        val cache = LoadingCache<String, String>()
+
+        assertThrows<IllegalStateException> { cache.getOrLoad("key") { error("failed") } }
+
+        cache.loadedValues().shouldBeEqualTo(emptyList())
+        cache.getOrLoad("key") { "value" }.shouldBeEqualTo("value")
+    }
+
+    @Test
+    fun `concurrent callers share a running load`() {
+        val singleFlight = SingleFlight<String, Int>()
+        val loads = AtomicInteger()
+        val loading = CountDownLatch(1)
+        val release = CountDownLatch(1)
+
+        val executor = Executors.newFixedThreadPool(2)
+        val first = executor.submit<Int> {
+            singleFlight.load("key") {
+                loading.countDown()
+                release.await()
+                loads.incrementAndGet()
+            }
+        }
+        loading.await()
+        val second = executor.submit<Int> { singleFlight.load("key") { loads.incrementAndGet() } }
+        Thread.sleep(100)
+        release.countDown()
+
+        first.get(5, TimeUnit.SECONDS).shouldBeEqualTo(1)
+        second.get(5, TimeUnit.SECONDS).shouldBeEqualTo(1)
+        loads.get().shouldBeEqualTo(1)
+        executor.shutdown()
+
+        singleFlight.load("key") { loads.incrementAndGet() }.shouldBeEqualTo(2)
+    }
+}
@@ -0,0 +1,28 @@
+package com.quadient.migration.tools
+
+import com.quadient.migration.api.InspireOutput
+import com.quadient.migration.api.dto.migrationmodel.ResourceId
+import com.quadient.migration.api.repository.StatusTrackingRepository
+import io.mockk.every
+
+/**
+ * Answers bulk status lookups of a mocked [StatusTrackingRepository] through the per object lookups stubbed
+ * by the test. Objects without a stubbed lookup are reported as not tracked.
+ */
+fun StatusTrackingRepository.answerBulkLookupsFromSingleLookups() {
+    val repository = this
+    every { repository.findLastEventsRelevantToOutput(any(), any()) } answers {
+        val output = secondArg<InspireOutput>()
+        firstArg<Collection<ResourceId>>().mapNotNull { key ->
+            runCatching { repository.findLastEventRelevantToOutput(key.id, key.type, output) }.getOrNull()
+                ?.let { key to it }
+        }.toMap()
+    }
+    every { repository.findEventsRelevantToOutput(any<Collection<ResourceId>>(), any()) } answers {
+        val output = secondArg<InspireOutput>()
+        firstArg<Collection<ResourceId>>().mapNotNull { key ->
+            runCatching { repository.findEventsRelevantToOutput(key.id, key.type, output) }.getOrNull()
+                ?.let { key to it }
+        }.toMap()
+    }
+}
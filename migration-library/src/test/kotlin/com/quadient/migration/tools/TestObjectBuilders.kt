@@ -41,8 +41,6 @@ import com.quadient.migration.api.repository.VariableStructureRepository
 import com.quadient.migration.data.Active
 import com.quadient.migration.data.Deployed
 import com.quadient.migration.data.StatusEvent
-import com.quadient.migration.persistence.table.StatusTrackingEntity
-import com.quadient.migration.persistence.table.StatusTrackingTable
 import com.quadient.migration.service.deploy.utility.ResourceType
 import com.quadient.migration.shared.Alignment
 import com.quadient.migration.shared.BorderOptions
@@ -60,12 +58,8 @@ import com.quadient.migration.shared.SkipOptions
 import com.quadient.migration.shared.SuperOrSubscript
 import com.quadient.migration.shared.TableAlignment
 import com.quadient.migration.shared.toIcmPath
-import io.mockk.every
-import io.mockk.mockk
 import kotlin.time.Clock
 import kotlin.time.Instant
-import org.jetbrains.exposed.v1.core.dao.id.CompositeID
-import org.jetbrains.exposed.v1.core.dao.id.EntityID
 import kotlin.uuid.Uuid
 
 fun aBlockDto(
@@ -407,30 +401,6 @@ fun aErrorStatusEvent(
     )
 }
 
-fun aStatusEntity(
-    id: String,
-    resourceType: ResourceType = ResourceType.DocumentObject,
-    projectName: String = "project",
-    events: List<StatusEvent> = listOf()
-): StatusTrackingEntity {
-    val mock = mockk<StatusTrackingEntity>()
-    every { mock.id } returns EntityID(CompositeID {
-        it[StatusTrackingTable.projectName] = projectName
-        it[StatusTrackingTable.resourceType] = resourceType.name
-        it[StatusTrackingTable.resourceId] = id
-    }, StatusTrackingTable)
-    every { mock.statusEvents } returns events
-    return mock
-}
-
-fun aActiveStatusEntity(
-    id: String,
-    resourceType: ResourceType = ResourceType.DocumentObject,
-    projectName: String = "project",
-): StatusTrackingEntity {
-    return aStatusEntity(id, resourceType, projectName, listOf(Active()))
-}
-
 fun aActiveStatus(
     id: String,
     resourceType: ResourceType = ResourceType.DocumentObject,
@@ -439,23 +409,6 @@ fun aActiveStatus(
     return StatusTracking(id, projectName, resourceType, listOf(Active()))
 }
 
-fun aDeployedStatusEntity(
-    id: String,
-    resourceType: ResourceType = ResourceType.DocumentObject,
-    projectName: String = "project",
-    output: InspireOutput = InspireOutput.Designer,
-    icmPath: String = "icm://path",
-    timestamp: Instant = Clock.System.now(),
-    deploymentId: Uuid = Uuid.random()
-): StatusTrackingEntity {
-    return aStatusEntity(
-        id,
-        resourceType,
-        projectName,
-        listOf(Deployed(deploymentId = deploymentId, icmPath = icmPath.toIcmPath(), timestamp = timestamp, output = output))
-    )
-}
-
 fun aDeployedStatus(
     id: String,
     resourceType: ResourceType = ResourceType.DocumentObject,
@@ -473,31 +426,6 @@ fun aDeployedStatus(
     )
 }
 
-fun aErrorStatusEntity(
-    id: String,
-    resourceType: ResourceType = ResourceType.DocumentObject,
-    projectName: String = "project",
-    output: InspireOutput = InspireOutput.Designer,
-    icmPath: String = "icm://path",
-    timestamp: Instant = Clock.System.now(),
-    deploymentId: Uuid = Uuid.random()
-): StatusTrackingEntity {
-    return aStatusEntity(
-        id,
-        resourceType,
-        projectName,
-        listOf(
-            com.quadient.migration.data.Error(
-                deploymentId = deploymentId,
-                icmPath = icmPath.toIcmPath(),
-                timestamp = timestamp,
-                output = output,
-                error = "oops"
-            )
-        )
-    )
-}
-
 fun aErrorStatus(
     id: String,
     resourceType: ResourceType = ResourceType.DocumentObject,
@@ -0,0 +1,90 @@
+import groovy.json.JsonSlurper
+
+plugins {
+    id("build.java-module")
+    alias(libs.plugins.jmh)
+}
+
+dependencies {
+    jmhImplementation(project(":${rootProject.name}-api"))
+    jmhImplementation(project(":${rootProject.name}-impl"))
+}
+
+val jmhResults = layout.buildDirectory.file("results/jmh/results.json")
+val jmhBaseline = layout.projectDirectory.file("baselines/results.json")
+
+jmh {
+    jmhVersion.set(libs.versions.jmh.asProvider())
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(jmhResults)
+
+    // -PjmhIncludes=TableExport runs only matching benchmarks
+    // -PjmhParams=flows=100,1000;textStyles=5000 overrides the sizes of the synthetic layouts
+    findProperty("jmhIncludes")?.let { includes.add(it.toString()) }
+    findProperty("jmhParams")?.toString()?.split(";")?.filter { it.isNotBlank() }?.forEach { param ->
+        val (name, values) = param.split("=", limit = 2)
+        benchmarkParameters.put(name.trim(), objects.listProperty(String::class.java).value(values.split(",").map { it.trim() }))
+    }
+}
+
+tasks.register<Copy>("jmhUpdateBaseline") {
+    description = "Stores the results of the last jmh run as the baseline."
+    from(jmhResults)
+    into(jmhBaseline.asFile.parentFile)
+}
+
+tasks.register("jmhCompare") {
+    description = "Compares the results of the last jmh run with the baseline stored by jmhUpdateBaseline."
+
+    doLast {
+        val resultsFile = jmhResults.get().asFile
+        val baselineFile = jmhBaseline.asFile
+        val maxRegression = project.findProperty("jmhMaxRegression")?.toString()?.toDouble()
+
+        if (!resultsFile.exists()) {
+            throw GradleException("No jmh results in $resultsFile, run the jmh task first.")
+        }
+        if (!baselineFile.exists()) {
+            throw GradleException("No baseline in $baselineFile, store one with the jmhUpdateBaseline task.")
+        }
+
+        val baseline = readJmhResults(baselineFile)
+        val regressions = mutableListOf<String>()
+        for ((key, current) in readJmhResults(resultsFile)) {
+            val previous = baseline[key]
+            if (previous == null) {
+                logger.lifecycle("%-90s %14.1f ops/s %14.0f B/op   (new)".format(key, current.score, current.allocation))
+                continue
+            }
+
+            val scoreChange = (current.score - previous.score) / previous.score * 100
+            val allocationChange = if (previous.allocation > 0) (current.allocation - previous.allocation) / previous.allocation * 100 else 0.0
+            logger.lifecycle(
+                "%-90s %14.1f ops/s %+7.1f%% %14.0f B/op %+7.1f%%".format(key, current.score, scoreChange, current.allocation, allocationChange)
+            )
+            if (maxRegression != null && (-scoreChange > maxRegression || allocationChange > maxRegression)) {
+                regressions.add(key)
+            }
+        }
+
+        if (regressions.isNotEmpty()) {
+            throw GradleException("Benchmarks regressed by more than $maxRegression% against the baseline: ${regressions.joinToString()}")
+        }
+    }
+}
+
+data class JmhResult(val score: Double, val allocation: Double)
+
+@Suppress("UNCHECKED_CAST")
+fun readJmhResults(file: File): Map<String, JmhResult> {
+    val runs = JsonSlurper().parse(file) as List<Map<String, Any?>>
+    return runs.associate { run ->
+        val params = (run["params"] as Map<String, Any?>?).orEmpty().entries.joinToString(",") { "${it.key}=${it.value}" }
+        val name = run["benchmark"].toString().substringAfterLast("benchmarks.") + if (params.isEmpty()) "" else " [$params]"
+        val score = ((run["primaryMetric"] as Map<String, Any?>)["score"] as Number).toDouble()
+        val secondary = run["secondaryMetrics"] as Map<String, Map<String, Any?>>?
+        val allocation = (secondary?.get("gc.alloc.rate.norm")?.get("score") as Number?)?.toDouble() ?: 0.0
+        name to JmhResult(score, allocation)
+    }
+}
@@ -0,0 +1,82 @@
+package com.quadient.wfdxml.benchmarks;
+
+import com.quadient.wfdxml.internal.xml.export.XmlExporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction and export of whole layouts, covering {@code LayoutImpl.export} with the forward references and all
+ * node exports. Sizes are overridden with {@code -PjmhParams}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LayoutExportBenchmark {
+
+    @Param({"10", "200"})
+    int flows;
+
+    @Param("20")
+    int paragraphs;
+
+    @Param("5")
+    int tableRows;
+
+    @Param("4")
+    int tableColumns;
+
+    @Param("1000")
+    int textStyles;
+
+    @Param("1000")
+    int variables;
+
+    private SyntheticLayout synthetic;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        synthetic = create();
+    }
+
+    @Benchmark
+    public SyntheticLayout buildLayout() {
+        return create();
+    }
+
+    @Benchmark
+    public String exportLayout() {
+        XmlExporter exporter = new XmlExporter();
+        synthetic.layout.export(exporter);
+        return exporter.buildString();
+    }
+
+    @Benchmark
+    public String exportLayoutDelta() {
+        return synthetic.builder.buildLayoutDelta();
+    }
+
+    @Benchmark
+    public void exportWorkFlowToStream() {
+        synthetic.builder.build(OutputStream.nullOutputStream());
+    }
+
+    private SyntheticLayout create() {
+        return SyntheticLayout.create(flows, paragraphs, tableRows, tableColumns, textStyles, variables);
+    }
+}
@@ -0,0 +1,106 @@
+package com.quadient.wfdxml.benchmarks;
+
+import com.quadient.wfdxml.WfdXmlBuilder;
+import com.quadient.wfdxml.api.layoutnodes.Flow;
+import com.quadient.wfdxml.api.layoutnodes.Font;
+import com.quadient.wfdxml.api.layoutnodes.ParagraphStyle;
+import com.quadient.wfdxml.api.layoutnodes.Pages;
+import com.quadient.wfdxml.api.layoutnodes.TextStyle;
+import com.quadient.wfdxml.api.layoutnodes.data.DataType;
+import com.quadient.wfdxml.api.layoutnodes.data.Variable;
+import com.quadient.wfdxml.api.layoutnodes.data.VariableKind;
+import com.quadient.wfdxml.api.layoutnodes.flow.Text;
+import com.quadient.wfdxml.api.layoutnodes.tables.GeneralRowSet;
+import com.quadient.wfdxml.api.layoutnodes.tables.RowSet;
+import com.quadient.wfdxml.api.layoutnodes.tables.Table;
+import com.quadient.wfdxml.api.module.Layout;
+import com.quadient.wfdxml.internal.module.layout.LayoutImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generated layout of a configurable size. The main flow of the only page references {@code flows} flows of
+ * {@code paragraphs} paragraphs each, every flow ends with a table of {@code tableRows} x {@code tableColumns} cells.
+ * Texts cycle through {@code textStyles} text styles and reference {@code variables} data variables.
+ */
+final class SyntheticLayout {
+    private static final String[] TEXTS = {
+            "Dear customer, thank you for your order",
+            "Total amount including VAT",
+            " preserved spaces ",
+            "Terms & conditions apply <see below>",
+    };
+
+    final WfdXmlBuilder builder;
+    final LayoutImpl layout;
+
+    private SyntheticLayout(WfdXmlBuilder builder, LayoutImpl layout) {
+        this.builder = builder;
+        this.layout = layout;
+    }
+
+    static SyntheticLayout create(int flows, int paragraphs, int tableRows, int tableColumns, int textStyles, int variables) {
+        WfdXmlBuilder builder = new WfdXmlBuilder();
+        Layout layout = builder.addLayout().setName("Synthetic");
+
+        Font font = layout.addFont().setFontName("Arial").setName("Arial");
+        List<TextStyle> styles = new ArrayList<>(textStyles);
+        for (int i = 0; i < textStyles; i++) {
+            styles.add(layout.addTextStyle().setName("TextStyle " + i).setFont(font).setFontSize(8 + i % 10).setBold(i % 2 == 0));
+        }
+        ParagraphStyle paragraphStyle = layout.addParagraphStyle().setName("Paragraph").setTextStyle(styles.get(0));
+
+        List<Variable> data = new ArrayList<>(variables);
+        for (int i = 0; i < variables; i++) {
+            data.add(layout.getData().addVariable()
+                    .setName("Variable" + i)
+                    .setKind(VariableKind.CALCULATED)
+                    .setDataType(DataType.STRING)
+                    .setScript("return 'value " + i + "';"));
+        }
+
+        Flow mainFlow = layout.addFlow().setName("Main").setType(Flow.Type.SIMPLE);
+        int counter = 0;
+        for (int f = 0; f < flows; f++) {
+            Flow flow = layout.addFlow().setName("Flow " + f).setType(Flow.Type.SIMPLE);
+            for (int p = 0; p < paragraphs; p++, counter++) {
+                Text text = flow.addParagraph().setParagraphStyle(paragraphStyle).addText()
+                        .setTextStyle(styles.get(counter % styles.size()))
+                        .appendText(TEXTS[counter % TEXTS.length]);
+                if (!data.isEmpty()) {
+                    text.appendVariable(data.get(counter % data.size()));
+                }
+            }
+            if (tableRows > 0 && tableColumns > 0) {
+                flow.addParagraph().addText().appendTable(table(layout, f, tableRows, tableColumns));
+            }
+            mainFlow.addParagraph().addText().appendFlow(flow);
+        }
+
+        layout.addPage().setName("Page 1").setType(Pages.PageConditionType.SIMPLE)
+                .addFlowArea().setPosX(0.015).setPosY(0.015).setWidth(0.18).setHeight(0.267).setFlow(mainFlow);
+        layout.getPages().setMainFlow(mainFlow);
+
+        return new SyntheticLayout(builder, (LayoutImpl) layout);
+    }
+
+    private static Table table(Layout layout, int index, int rows, int columns) {
+        Table table = layout.addTable().setName("Table " + index);
+        GeneralRowSet rowSets = layout.addRowSet().setType(RowSet.Type.MULTIPLE_ROWS);
+        for (int r = 0; r < rows; r++) {
+            GeneralRowSet row = layout.addRowSet().setType(RowSet.Type.SINGLE_ROW);
+            for (int c = 0; c < columns; c++) {
+                Flow cellFlow = layout.addFlow().setType(Flow.Type.SIMPLE);
+                cellFlow.addParagraph().addText().appendText("Cell " + r + "/" + c);
+                row.addCell(layout.addCell().setFlow(cellFlow));
+            }
+            rowSets.addRowSet(row);
+        }
+        table.setRowSet(rowSets);
+        for (int c = 0; c < columns; c++) {
+            table.addColumn();
+        }
+        return table;
+    }
+}
@@ -0,0 +1,49 @@
+package com.quadient.wfdxml.benchmarks;
+
+import com.quadient.wfdxml.internal.xml.export.XmlExporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Export of a layout made of a single large table, dominated by the table, row set and cell exports.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableExportBenchmark {
+
+    @Param({"100", "1000"})
+    int rows;
+
+    @Param({"5", "20"})
+    int columns;
+
+    private SyntheticLayout synthetic;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        synthetic = SyntheticLayout.create(1, 0, rows, columns, 1, 0);
+    }
+
+    @Benchmark
+    public String exportTable() {
+        XmlExporter exporter = new XmlExporter();
+        synthetic.layout.export(exporter);
+        return exporter.buildString();
+    }
+}
@@ -0,0 +1,55 @@
+package com.quadient.wfdxml.benchmarks;
+
+import com.quadient.wfdxml.internal.xml.export.XmlBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text escaping of {@link XmlBuilder}, writing {@value #ELEMENTS} text elements per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XmlBuilderBenchmark {
+    private static final int ELEMENTS = 10_000;
+
+    @Param({"plain", "escaped"})
+    String text;
+
+    @Param({"40", "400"})
+    int length;
+
+    private String value;
+
+    @Setup
+    public void setUp() {
+        String pattern = text.equals("plain") ? "Lorem ipsum dolor sit amet " : "Terms & conditions <apply> \"here\"\n";
+        value = pattern.repeat(length / pattern.length() + 1).substring(0, length);
+    }
+
+    @Benchmark
+    public void writeText() {
+        XmlBuilder builder = new XmlBuilder(OutputStream.nullOutputStream());
+        builder.e("Texts");
+        for (int i = 0; i < ELEMENTS; i++) {
+            builder.e("T").text(value).up();
+        }
+        builder.up();
+        builder.finish();
+    }
+}
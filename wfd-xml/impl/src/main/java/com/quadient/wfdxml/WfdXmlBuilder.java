@@ -11,6 +11,9 @@ import com.quadient.wfdxml.internal.module.textreplacer.TextReplacerImpl;
 import com.quadient.wfdxml.internal.module.xmldatainput.XmlDataInputImpl;
 import com.quadient.wfdxml.internal.xml.export.XmlExporter;
 
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -48,6 +51,28 @@ public class WfdXmlBuilder {
 
     public String build() {
         XmlExporter exporter = new XmlExporter();
+        exportWorkFlow(exporter);
+        return exporter.buildString();
+    }
+
+    /**
+     * Writes the workflow xml in UTF-8 into {@code outputStream} while it is exported, without holding the whole xml
+     * in memory. The stream is flushed but not closed.
+     */
+    public void build(OutputStream outputStream) {
+        XmlExporter exporter = new XmlExporter(outputStream);
+        exportWorkFlow(exporter);
+        exporter.finish();
+    }
+
+    /**
+     * Writes the workflow xml in UTF-8 into {@code channel}, see {@link #build(OutputStream)}. The channel is not closed.
+     */
+    public void build(WritableByteChannel channel) {
+        build(Channels.newOutputStream(channel));
+    }
+
+    private void exportWorkFlow(XmlExporter exporter) {
         exporter.declaration("1.0", "UTF-8");
         exporter.beginElement("WorkFlow");
 
@@ -65,7 +90,6 @@ public class WfdXmlBuilder {
         }
 
         exporter.endElement();
-        return exporter.buildString();
     }
 
     public String buildStyleLayoutDelta() {
@@ -1,33 +1,31 @@
 package com.quadient.wfdxml.internal.xml.export;
 
-import com.quadient.wfdxml.utils.SequenceIdGenerator;
-
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
+/**
+ * Xml ids of the objects of one export. Objects are told apart by identity, generated ids are numbered from 1 in the
+ * order they are requested.
+ */
 public class IdRegister {
-    private final Map<Integer, String> register = new HashMap<>();
-    private final SequenceIdGenerator idGenerator = new SequenceIdGenerator("SR_");
+    private static final String ID_PREFIX = "SR_";
+
+    private final Map<Object, String> register = new IdentityHashMap<>();
+    private int nextId = 1;
 
     public void setObjectId(Object obj, String id) {
-        int objIdentifier = getObjectIdentifier(obj);
-        register.put(objIdentifier, id);
+        register.put(obj, id);
     }
 
     public String getOrCreateId(Object obj) {
         if (obj == null) {
             throw new NullPointerException("Its not possible to get Id from null object.");
         }
-        int identity = getObjectIdentifier(obj);
-        String id = register.get(identity);
+        String id = register.get(obj);
         if (id == null) {
-            id = idGenerator.generateId();
-            register.put(identity, id);
+            id = ID_PREFIX + nextId++;
+            register.put(obj, id);
         }
         return id;
     }
-
-    private int getObjectIdentifier(Object obj) {
-        return System.identityHashCode(obj);
-    }
-}
\ No newline at end of file
+}
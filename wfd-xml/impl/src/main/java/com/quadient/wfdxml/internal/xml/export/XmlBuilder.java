@@ -7,23 +7,38 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class XmlBuilder {
 
     private static final String XML_FACTORY_ID = "xmlBuilderFactory";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
     private final ByteArrayOutputStream byteArrayOutputStream;
+    private final Writer writer;
     private final XMLStreamWriter xmlStreamWriter;
+    private char[] escapeBuffer = new char[256];
 
     public XmlBuilder() {
-        byteArrayOutputStream = new ByteArrayOutputStream();
+        this(new ByteArrayOutputStream());
+    }
+
+    /**
+     * Builder writing the xml straight into {@code outputStream} as it is built. The stream is flushed but not closed
+     * by {@link #finish()}.
+     */
+    public XmlBuilder(OutputStream outputStream) {
+        this.byteArrayOutputStream = outputStream instanceof ByteArrayOutputStream ? (ByteArrayOutputStream) outputStream : null;
+        // The writer encodes into its own byte buffer, the stream receives whole blocks without another buffer
+        this.writer = new OutputStreamWriter(outputStream, UTF_8);
         try {
             System.setProperty(XML_FACTORY_ID, System.getProperty(XML_FACTORY_ID, "com.sun.xml.internal.stream.XMLOutputFactoryImpl"));
             XMLOutputFactory factory = XMLOutputFactory.newFactory(XML_FACTORY_ID, this.getClass().getClassLoader());
             factory.setProperty("escapeCharacters", false);
-            xmlStreamWriter = factory.createXMLStreamWriter(new OutputStreamWriter(byteArrayOutputStream, UTF_8));
+            xmlStreamWriter = factory.createXMLStreamWriter(writer);
         } catch (XMLStreamException e) {
             throw new WfdXmlException("Unexpected xml builder error", e);
         }
@@ -77,11 +92,9 @@ public class XmlBuilder {
      */
     public XmlBuilder rawXml(String xmlFragment) {
         try {
-            xmlStreamWriter.writeCharacters("");
-            xmlStreamWriter.flush();
-            byteArrayOutputStream.write(xmlFragment.getBytes(UTF_8));
-            byteArrayOutputStream.flush();
-        } catch (XMLStreamException | IOException e) {
+            // Characters are written as they are, the writer is created with escaping turned off
+            xmlStreamWriter.writeCharacters(xmlFragment);
+        } catch (XMLStreamException e) {
             throw new WfdXmlException(e);
         }
         return this;
@@ -89,44 +102,98 @@ public class XmlBuilder {
 
     private void writeEscapedCharacters(String text) {
         try {
-            xmlStreamWriter.writeCharacters(escapeCharacters(text, true));
+            int first = firstToEscape(text);
+            if (first == text.length()) {
+                xmlStreamWriter.writeCharacters(text);
+            } else {
+                int length = escapeCharacters(text, first);
+                xmlStreamWriter.writeCharacters(escapeBuffer, 0, length);
+            }
         } catch (XMLStreamException e) {
             throw new WfdXmlException(e);
         }
     }
 
-    private String escapeCharacters(String string, boolean aSpaceBeginEnd) {
-        StringBuilder sb = new StringBuilder();
-        char[] text = string.toCharArray();
-        for (int i = 0; i < text.length; i++) {
-            char c = text[i];
-            if (c < 0x20 || (c == 0x20 && aSpaceBeginEnd && (i == 0 || i == text.length - 1))) {
-                int ordinal = c;
-                sb.append("&#x").append(Integer.toHexString(ordinal)).append(";");
+    private static int firstToEscape(String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (needsEscape(text.charAt(i), i, length)) {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    private static boolean needsEscape(char c, int index, int length) {
+        return c < 0x20
+                || (c == 0x20 && (index == 0 || index == length - 1))
+                || c == '<' || c == '>' || c == '&' || c == '\'' || c == '\"';
+    }
+
+    /**
+     * Escapes {@code text} into {@link #escapeBuffer}, characters before {@code first} are copied as they are.
+     * Returns the number of characters written.
+     */
+    private int escapeCharacters(String text, int first) {
+        int length = text.length();
+        // No escape sequence is longer than 6 characters
+        int capacity = first + (length - first) * 6;
+        if (escapeBuffer.length < capacity) {
+            escapeBuffer = new char[Math.max(capacity, escapeBuffer.length * 2)];
+        }
+        char[] buffer = escapeBuffer;
+        text.getChars(0, first, buffer, 0);
+
+        int pos = first;
+        for (int i = first; i < length; i++) {
+            char c = text.charAt(i);
+            if (!needsEscape(c, i, length)) {
+                buffer[pos++] = c;
             } else if (c == '<') {
-                sb.append("&lt;");
+                pos = append(buffer, pos, "&lt;");
             } else if (c == '>') {
-                sb.append("&gt;");
+                pos = append(buffer, pos, "&gt;");
             } else if (c == '&') {
-                sb.append("&amp;");
+                pos = append(buffer, pos, "&amp;");
             } else if (c == '\'') {
-                sb.append("&#39;");
+                pos = append(buffer, pos, "&#39;");
             } else if (c == '\"') {
-                sb.append("&quot;");
+                pos = append(buffer, pos, "&quot;");
             } else {
-                sb.append(c);
+                pos = append(buffer, pos, "&#x");
+                if (c >= 0x10) {
+                    buffer[pos++] = HEX_DIGITS[c >> 4];
+                }
+                buffer[pos++] = HEX_DIGITS[c & 0xf];
+                buffer[pos++] = ';';
             }
         }
-        return sb.toString();
+        return pos;
+    }
+
+    private static int append(char[] buffer, int pos, String escaped) {
+        escaped.getChars(0, escaped.length(), buffer, pos);
+        return pos + escaped.length();
     }
 
     public String asString() {
+        if (byteArrayOutputStream == null) {
+            throw new IllegalStateException("Xml was written to an output stream");
+        }
+        finish();
+        return byteArrayOutputStream.toString(UTF_8);
+    }
+
+    /**
+     * Closes all open elements and flushes the xml into the output stream.
+     */
+    public void finish() {
         try {
             xmlStreamWriter.writeEndDocument();
             xmlStreamWriter.close();
-            return byteArrayOutputStream.toString();
-        } catch (XMLStreamException e) {
+            writer.flush();
+        } catch (XMLStreamException | IOException e) {
             throw new WfdXmlException(e);
         }
     }
-}
\ No newline at end of file
+}
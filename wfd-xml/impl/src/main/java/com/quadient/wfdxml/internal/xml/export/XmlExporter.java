@@ -2,17 +2,28 @@ package com.quadient.wfdxml.internal.xml.export;
 
 import com.quadient.wfdxml.api.Node;
 
+import java.io.OutputStream;
+
 public class XmlExporter {
-    private final XmlBuilder builder = new XmlBuilder();
+    private final XmlBuilder builder;
     private IdRegister idRegister = new IdRegister();
 
     public XmlExporter() {
+        builder = new XmlBuilder();
     }
 
     public XmlExporter(IdRegister idRegister) {
+        this();
         this.idRegister = idRegister;
     }
 
+    /**
+     * Exporter writing the xml straight into {@code outputStream}, finish the export with {@link #finish()}.
+     */
+    public XmlExporter(OutputStream outputStream) {
+        builder = new XmlBuilder(outputStream);
+    }
+
     public IdRegister getIdRegister() {
         return idRegister;
     }
@@ -206,4 +217,8 @@ public class XmlExporter {
     public String buildString() {
         return builder.asString();
     }
+
+    public void finish() {
+        builder.finish();
+    }
 }
\ No newline at end of file
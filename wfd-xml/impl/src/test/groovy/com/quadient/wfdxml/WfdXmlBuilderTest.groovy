@@ -4,6 +4,8 @@ import com.quadient.wfdxml.api.layoutnodes.Flow
 import com.quadient.wfdxml.api.module.Layout
 import spock.lang.Specification
 
+import java.nio.channels.Channels
+
 import static com.quadient.wfdxml.utils.AssertXml.assertXmlFileEquals
 
 class WfdXmlBuilderTest extends Specification {
@@ -58,4 +60,34 @@ class WfdXmlBuilderTest extends Specification {
         then:
         assertXmlFileEquals("com/quadient/wfdxml/workflow/SimpleDeltaLayout.xml", wfdXml)
     }
-}
\ No newline at end of file
+
+    def "build into output stream writes the same xml as build"() {
+        given:
+        WfdXmlBuilder builder = new WfdXmlBuilder()
+        Layout layout = builder.addLayout()
+        layout.addColor().setRGB(0, 220, 0).setName("Zelená barva <&>")
+        layout.addFlow().setName("flow").setType(Flow.Type.SIMPLE).addParagraph().addText().appendText(" text ")
+        def output = new ByteArrayOutputStream()
+
+        when:
+        builder.build(output)
+
+        then:
+        output.toString("UTF-8") == builder.build()
+    }
+
+    def "build into channel writes the same xml as build and leaves the channel open"() {
+        given:
+        WfdXmlBuilder builder = new WfdXmlBuilder()
+        builder.addLayout().addColor().setRGB(0, 220, 0).setName("My Custom Green Color")
+        def output = new ByteArrayOutputStream()
+        def channel = Channels.newChannel(output)
+
+        when:
+        builder.build(channel)
+
+        then:
+        channel.isOpen()
+        output.toString("UTF-8") == builder.build()
+    }
+}
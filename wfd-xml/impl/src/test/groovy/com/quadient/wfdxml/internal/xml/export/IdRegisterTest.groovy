@@ -19,6 +19,28 @@ class IdRegisterTest extends Specification {
         assert [id1, id2, id3] == ["SR_1", "SR_2", "SR_1"]
     }
 
+    def "equal objects get different ids"() {
+        given:
+        IdRegister idRegister = new IdRegister()
+
+        expect:
+        idRegister.getOrCreateId(new ArrayList()) != idRegister.getOrCreateId(new ArrayList())
+    }
+
+    def "every object of a large export gets its own id"() {
+        given:
+        IdRegister idRegister = new IdRegister()
+        List<Object> objects = (1..300_000).collect { new Object() }
+
+        when:
+        List<String> ids = objects.collect { idRegister.getOrCreateId(it) }
+
+        then:
+        ids.toSet().size() == objects.size()
+        ids.last() == "SR_300000"
+        idRegister.getOrCreateId(objects[12345]) == "SR_12346"
+    }
+
     def "null object is not supported"() {
         given:
         IdRegister idRegister = new IdRegister()
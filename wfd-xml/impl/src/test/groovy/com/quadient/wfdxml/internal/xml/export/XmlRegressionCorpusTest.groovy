@@ -0,0 +1,35 @@
+package com.quadient.wfdxml.internal.xml.export
+
+import com.quadient.wfdxml.utils.RegressionCorpus
+import spock.lang.Specification
+
+class XmlRegressionCorpusTest extends Specification {
+
+    def "#name is exported byte for byte as before"() {
+        when:
+        byte[] actual = RegressionCorpus.CASES[name]().getBytes("UTF-8")
+
+        then:
+        actual == expected(name)
+
+        where:
+        name << RegressionCorpus.CASES.keySet()
+    }
+
+    def "workflow written into a stream is exported byte for byte as before"() {
+        given:
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+        // Not a ByteArrayOutputStream itself, so the builder takes the stream path
+        OutputStream stream = new FilterOutputStream(bytes)
+
+        when:
+        RegressionCorpus.textsWorkflow().build(stream)
+
+        then:
+        bytes.toByteArray() == expected("texts")
+    }
+
+    private static byte[] expected(String name) {
+        return XmlRegressionCorpusTest.getResourceAsStream("/com/quadient/wfdxml/regression/${name}.xml").bytes
+    }
+}
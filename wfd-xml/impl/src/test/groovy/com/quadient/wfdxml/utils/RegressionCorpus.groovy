@@ -0,0 +1,131 @@
+package com.quadient.wfdxml.utils
+
+import com.quadient.wfdxml.WfdXmlBuilder
+import com.quadient.wfdxml.api.layoutnodes.Flow
+import com.quadient.wfdxml.api.layoutnodes.Pages
+import com.quadient.wfdxml.api.layoutnodes.ParagraphStyle
+import com.quadient.wfdxml.api.layoutnodes.TextStyle
+import com.quadient.wfdxml.api.layoutnodes.data.DataType
+import com.quadient.wfdxml.api.layoutnodes.data.Variable
+import com.quadient.wfdxml.api.layoutnodes.data.VariableKind
+import com.quadient.wfdxml.api.layoutnodes.tables.RowSet
+import com.quadient.wfdxml.api.module.Layout
+import com.quadient.wfdxml.internal.xml.export.XmlExporter
+
+/**
+ * Workflows exported byte for byte into the files in resources/com/quadient/wfdxml/regression. Changes of the xml
+ * export must keep producing exactly these bytes.
+ */
+class RegressionCorpus {
+
+    static final List<String> TEXTS = [
+            "Plain text without anything special",
+            "",
+            " ",
+            " leading and trailing spaces ",
+            "inner  spaces stay",
+            "special <chars> & \"quotes\" 'apostrophes'",
+            "line\nbreak\r\nand\ttab",
+            "control \u0001\u001f chars",
+            "Příliš žluťoučký kůň úpěl ďábelské ódy",
+            "emoji 😀 and cjk 中文",
+            "&amp; already escaped",
+            "<",
+            "trailing >",
+    ]
+
+    static final Map<String, Closure<String>> CASES = [
+            "texts"       : { texts() },
+            "styles"      : { styles() },
+            "pagesTables" : { pagesAndTables() },
+            "layoutDelta" : { layoutDelta() },
+            "exporter"    : { exporter() },
+    ]
+
+    private static String texts() {
+        return textsWorkflow().build()
+    }
+
+    static WfdXmlBuilder textsWorkflow() {
+        WfdXmlBuilder builder = new WfdXmlBuilder()
+        Layout layout = builder.addLayout().setName("Texts & <names>")
+        Flow flow = layout.addFlow().setName(" flow with spaces ").setType(Flow.Type.SIMPLE)
+        TEXTS.each { flow.addParagraph().addText().appendText(it) }
+
+        Variable variable = layout.data.addVariable()
+                .setName("Variable \"quoted\"")
+                .setKind(VariableKind.CALCULATED)
+                .setDataType(DataType.STRING)
+                .setScript('return a < b && c > d ? "x" : \'y\';')
+        flow.addParagraph().addText().appendText("Value: ").appendVariable(variable).appendText(" end")
+        return builder
+    }
+
+    private static String styles() {
+        WfdXmlBuilder builder = new WfdXmlBuilder()
+        Layout layout = builder.addLayout()
+        def color = layout.addColor().setRGB(12, 34, 56).setName("Color <1>")
+        def fill = layout.addFillStyle().setColor(color).setName("Fill & 1")
+        def font = layout.addFont().setFontName("Arial").setName("Arial")
+        TextStyle textStyle = layout.addTextStyle().setName("Bold 'text'")
+                .setFont(font).setFillStyle(fill).setFontSize(10.5).setBold(true).setUnderline(true)
+        ParagraphStyle paragraphStyle = layout.addParagraphStyle().setName("Paragraph \"style\"")
+                .setTextStyle(textStyle).setSpaceBefore(0.001).setSpaceAfter(1.0E-4).setLeftIndent(0.0125)
+                .addTabulator(0.05, com.quadient.wfdxml.api.layoutnodes.TabulatorType.LEFT)
+        Flow flow = layout.addFlow().setType(Flow.Type.SIMPLE)
+        flow.addParagraph().setParagraphStyle(paragraphStyle).addText().setTextStyle(textStyle).appendText("Styled")
+        return builder.build()
+    }
+
+    private static String pagesAndTables() {
+        WfdXmlBuilder builder = new WfdXmlBuilder()
+        Layout layout = builder.addLayout()
+        Flow mainFlow = layout.addFlow().setType(Flow.Type.SIMPLE).setName("Main")
+        def page = layout.addPage().setName("Page 1").setType(Pages.PageConditionType.SIMPLE)
+        page.addFlowArea().setPosX(0.015).setPosY(0.015).setWidth(0.18).setHeight(0.267).setFlow(mainFlow)
+
+        def table = layout.addTable()
+        def rows = layout.addRowSet().setType(RowSet.Type.MULTIPLE_ROWS)
+        (1..2).each { row ->
+            def rowSet = layout.addRowSet().setType(RowSet.Type.SINGLE_ROW)
+            (1..3).each { column ->
+                Flow cellFlow = layout.addFlow().setType(Flow.Type.SIMPLE)
+                cellFlow.addParagraph().addText().appendText("Cell $row/$column <&>")
+                rowSet.addCell(layout.addCell().setFlow(cellFlow))
+            }
+            rows.addRowSet(rowSet)
+        }
+        table.setRowSet(rows).addColumn().addColumn().addColumn()
+        mainFlow.addParagraph().addText().appendTable(table)
+        layout.pages.setMainFlow(mainFlow)
+        return builder.build()
+    }
+
+    private static String layoutDelta() {
+        WfdXmlBuilder builder = new WfdXmlBuilder()
+        Layout layout = builder.addLayout()
+        Flow flow = layout.addFlow().setName("Delta \"flow\"").setType(Flow.Type.SIMPLE)
+        TEXTS.each { flow.addParagraph().addText().appendText(it) }
+        return builder.buildLayoutDelta()
+    }
+
+    private static String exporter() {
+        XmlExporter exporter = new XmlExporter()
+        exporter.declaration("1.0", "UTF-8")
+        exporter.beginElement("Root")
+        exporter.addStringAttribute("name", "plain")
+        TEXTS.each { exporter.addElementWithStringData("S", it) }
+        exporter.beginElement("P", true).addPCData(" preserved ").endElement()
+        exporter.beginElement("Numbers")
+                .addElementWithDoubleData("D", 0.1d + 0.2d)
+                .addElementWithDoubleData("Small", 1.0E-7)
+                .addElementWithIntData("I", -42)
+                .addElementWithInt64Data("L", Long.MAX_VALUE)
+                .addElementWithBoolData("B", true)
+                .endElement()
+        exporter.addRawXml("<Raw a=\"1\">raw &amp; kept</Raw>")
+        exporter.addElement("Empty")
+        exporter.endElement()
+        return exporter.buildString()
+    }
+}
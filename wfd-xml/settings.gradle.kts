@@ -3,11 +3,12 @@ plugins {
 }
 rootProject.name = "wfd-xml"
 
-include("api", "impl")
+include("api", "impl", "benchmarks")
 includeBuild("build-logic")
 
 project(":api").name = "${rootProject.name}-api"
 project(":impl").name = "${rootProject.name}-impl"
+project(":benchmarks").name = "${rootProject.name}-benchmarks"
 
 dependencyResolutionManagement {
     versionCatalogs {